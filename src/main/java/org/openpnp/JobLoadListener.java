@@ -0,0 +1,48 @@
+package org.openpnp;
+
+import org.openpnp.model.Board;
+import org.openpnp.model.Job;
+
+/**
+ * Receives the progress of a job whose boards are being loaded in the background, see
+ * Configuration.loadJob(File, Executor, JobLoadListener). Each method is called through the
+ * Executor given to loadJob().
+ */
+public interface JobLoadListener {
+    /**
+     * Called as a board's file is read.
+     *
+     * @param percent How much of the file has been read, from 0 to 100.
+     */
+    public void boardLoadProgress(Job job, Board board, int percent);
+
+    /**
+     * Called when a board's placements and other content have been added to it.
+     */
+    public void boardLoaded(Job job, Board board);
+
+    /**
+     * Called once every board in the job is loaded, after any progress in the job's journal has
+     * been restored. The job can be run from here on.
+     */
+    public void jobLoaded(Job job);
+
+    /**
+     * Called instead of jobLoaded() if any of the boards could not be loaded.
+     */
+    public void jobLoadFailed(Job job, Exception e);
+
+    public static class Adapter implements JobLoadListener {
+        @Override
+        public void boardLoadProgress(Job job, Board board, int percent) {}
+
+        @Override
+        public void boardLoaded(Job job, Board board) {}
+
+        @Override
+        public void jobLoaded(Job job) {}
+
+        @Override
+        public void jobLoadFailed(Job job, Exception e) {}
+    }
+}
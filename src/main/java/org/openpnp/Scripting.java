@@ -10,14 +10,23 @@ import java.nio.file.FileSystems;
 import java.nio.file.StandardWatchEventKinds;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineFactory;
 import javax.script.ScriptEngineManager;
@@ -35,6 +44,7 @@ import org.pmw.tinylog.Logger;
 
 import com.google.common.io.Files;
 
+import bsh.engine.BshScriptEngine;
 import bsh.engine.BshScriptEngineFactory;
 
 public class Scripting {
@@ -45,6 +55,13 @@ public class Scripting {
     File eventsDirectory;
     WatchService watcher;
 
+    /**
+     * Event scripts by event name, rebuilt whenever the Events directory changes. Events with no
+     * scripts have no entry, so firing them costs a single lookup.
+     */
+    volatile Map<String, List<EventScript>> eventScripts = Collections.emptyMap();
+    final Map<String, EventStatistics> eventStatistics = new ConcurrentHashMap<>();
+
     public Scripting() {
         // Collect all the script filename extensions we know how to handle from the list of
         // available scripting engines.
@@ -103,10 +120,14 @@ public class Scripting {
             eventsDirectory.mkdirs();
         }
 
+        indexEventScripts();
+
         // Add a file watcher so that we can be notified if any scripts change
         try {
             watcher = FileSystems.getDefault().newWatchService();
             watchDirectory(getScriptsDirectory());
+            watchDirectory(eventsDirectory);
+            Path eventsPath = eventsDirectory.toPath();
             Thread thread = new Thread(() -> {
                 for (;;) {
                     try {
@@ -115,6 +136,10 @@ public class Scripting {
                         key.pollEvents();
                         key.reset();
                         // rescan
+                        if (eventsPath.equals(key.watchable())) {
+                            indexEventScripts();
+                            continue;
+                        }
                         synchronizeMenu(menu, getScriptsDirectory());
                     }
                     catch (Exception e) {
@@ -275,32 +300,166 @@ public class Scripting {
         ScriptEngine engine =
                 manager.getEngineByExtension(Files.getFileExtension(script.getName()));
 
-        engine.put("config", Configuration.get());
-        engine.put("machine", Configuration.get().getMachine());
-        engine.put("gui", MainFrame.get());
-        engine.put("scripting", this);
-
-        if (additionalGlobals != null) {
-            for (String name : additionalGlobals.keySet()) {
-                engine.put(name, additionalGlobals.get(name));
-            }
-        }
+        putGlobals(engine.getBindings(ScriptContext.ENGINE_SCOPE), additionalGlobals);
 
         try (FileReader reader = new FileReader(script)) {
             engine.eval(reader);
         }
     }
 
+    private void putGlobals(Bindings bindings, Map<String, Object> additionalGlobals) {
+        bindings.put("config", Configuration.get());
+        bindings.put("machine", Configuration.get().getMachine());
+        bindings.put("gui", MainFrame.get());
+        bindings.put("scripting", this);
+
+        if (additionalGlobals != null) {
+            bindings.putAll(additionalGlobals);
+        }
+    }
+
+    /**
+     * Returns true if there is at least one script for the event. Callers on hot paths can use
+     * this to skip building globals for events nobody handles.
+     */
+    public boolean hasHandlers(String event) {
+        return eventScripts.containsKey(event);
+    }
+
     public void on(String event, Map<String, Object> globals) throws Exception {
+        List<EventScript> scripts = eventScripts.get(event);
+        if (scripts == null) {
+            return;
+        }
         Logger.trace("Scripting.on " + event);
-        for (File script : FileUtils.listFiles(eventsDirectory, extensions, false)) {
-            if (!script.isFile()) {
+        long t = System.nanoTime();
+        try {
+            for (EventScript script : scripts) {
+                Logger.trace("Scripting.on found " + script.file.getName());
+                script.execute(globals);
+            }
+        }
+        finally {
+            eventStatistics.computeIfAbsent(event, EventStatistics::new)
+                    .add(System.nanoTime() - t);
+        }
+    }
+
+    /**
+     * Returns the time spent running scripts for each event that has fired since startup.
+     */
+    public Map<String, EventStatistics> getEventStatistics() {
+        return Collections.unmodifiableMap(eventStatistics);
+    }
+
+    /**
+     * Rebuild the event index from the Events directory. Scripts whose files have not changed
+     * keep their compiled form.
+     */
+    synchronized void indexEventScripts() {
+        Map<String, EventScript> existing = new HashMap<>();
+        for (List<EventScript> scripts : eventScripts.values()) {
+            for (EventScript script : scripts) {
+                existing.put(script.file.getName(), script);
+            }
+        }
+        Map<String, List<EventScript>> eventScripts = new HashMap<>();
+        for (File file : FileUtils.listFiles(eventsDirectory, extensions, false)) {
+            if (!file.isFile()) {
                 continue;
             }
-            if (FilenameUtils.getBaseName(script.getName()).equals(event)) {
-                Logger.trace("Scripting.on found " + script.getName());
-                execute(script, globals);
+            EventScript script = existing.get(file.getName());
+            if (script == null || script.lastModified != file.lastModified()) {
+                script = new EventScript(file);
+            }
+            eventScripts.computeIfAbsent(FilenameUtils.getBaseName(file.getName()),
+                    k -> new ArrayList<>()).add(script);
+        }
+        this.eventScripts = eventScripts;
+        Logger.debug("Indexed event scripts {}", eventScripts.keySet());
+    }
+
+    /**
+     * An event script along with the engine that runs it and, if the engine supports it, the
+     * compiled script. Each run gets fresh bindings so that scripts don't see globals left over
+     * from a previous run.
+     */
+    class EventScript {
+        final File file;
+        final long lastModified;
+        ScriptEngine engine;
+        CompiledScript compiled;
+        String source;
+
+        EventScript(File file) {
+            this.file = file;
+            this.lastModified = file.lastModified();
+        }
+
+        synchronized void execute(Map<String, Object> globals) throws Exception {
+            if (engine == null) {
+                load();
+            }
+            Bindings bindings = engine.createBindings();
+            putGlobals(bindings, globals);
+            if (compiled != null) {
+                compiled.eval(bindings);
             }
+            else {
+                engine.eval(source, bindings);
+            }
+        }
+
+        private void load() throws Exception {
+            ScriptEngine engine =
+                    manager.getEngineByExtension(Files.getFileExtension(file.getName()));
+            String source = FileUtils.readFileToString(file);
+            // BeanShell claims to be Compilable but compile() throws an Error, so it runs from
+            // the cached source instead.
+            if (engine instanceof Compilable && !(engine instanceof BshScriptEngine)) {
+                compiled = ((Compilable) engine).compile(source);
+            }
+            this.source = source;
+            this.engine = engine;
+        }
+    }
+
+    public static class EventStatistics {
+        private final String event;
+        private long count;
+        private long totalTimeNs;
+        private long maxTimeNs;
+
+        EventStatistics(String event) {
+            this.event = event;
+        }
+
+        synchronized void add(long timeNs) {
+            count++;
+            totalTimeNs += timeNs;
+            maxTimeNs = Math.max(maxTimeNs, timeNs);
+        }
+
+        public String getEvent() {
+            return event;
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized double getTotalTimeMs() {
+            return totalTimeNs / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        public synchronized double getMaxTimeMs() {
+            return maxTimeNs / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%s: %d runs, %.3f ms total, %.3f ms max", event, count,
+                    getTotalTimeMs(), getMaxTimeMs());
         }
     }
 }
@@ -64,6 +64,7 @@ import javax.swing.event.TableModelEvent;
 import javax.swing.event.TableModelListener;
 
 import org.openpnp.ConfigurationListener;
+import org.openpnp.JobLoadListener;
 import org.openpnp.events.BoardLocationSelectedEvent;
 import org.openpnp.events.JobLoadedEvent;
 import org.openpnp.events.PlacementSelectedEvent;
@@ -84,7 +85,6 @@ import org.openpnp.model.BoardPad;
 import org.openpnp.model.Configuration;
 import org.openpnp.model.Job;
 import org.openpnp.model.Location;
-import org.openpnp.model.Placement;
 import org.openpnp.spi.Camera;
 import org.openpnp.spi.HeadMountable;
 import org.openpnp.spi.JobProcessor;
@@ -670,8 +670,8 @@ public class JobPanel extends JPanel {
         }
 
         // We allow the above to run first so that all state is represented
-        // correctly even if the machine is disabled.
-        if (!configuration.getMachine().isEnabled()) {
+        // correctly even if the machine is disabled or the job is still loading.
+        if (!configuration.getMachine().isEnabled() || (job != null && job.isLoading())) {
             startPauseResumeJobAction.setEnabled(false);
             stopJobAction.setEnabled(false);
             stepJobAction.setEnabled(false);
@@ -715,9 +715,7 @@ public class JobPanel extends JPanel {
             Board importedBoard = boardImporter.importBoard((Frame) getTopLevelAncestor());
             if (importedBoard != null) {
                 Board existingBoard = getSelectedBoardLocation().getBoard();
-                for (Placement placement : importedBoard.getPlacements()) {
-                    existingBoard.addPlacement(placement);
-                }
+                existingBoard.addPlacements(importedBoard.getPlacements());
                 for (BoardPad pad : importedBoard.getSolderPastePads()) {
                     // TODO: This is a temporary hack until we redesign the
                     // importer
@@ -726,8 +724,8 @@ public class JobPanel extends JPanel {
                     // try to get it closer to what the user expects to see.
                     pad.setLocation(pad.getLocation()
                             .convertToUnits(getSelectedBoardLocation().getLocation().getUnits()));
-                    existingBoard.addSolderPastePad(pad);
                 }
+                existingBoard.addSolderPastePads(importedBoard.getSolderPastePads());
                 jobPlacementsPanel.setBoardLocation(getSelectedBoardLocation());
                 jobPastePanel.setBoardLocation(getSelectedBoardLocation());
             }
@@ -765,7 +763,8 @@ public class JobPanel extends JPanel {
                     return;
                 }
                 File file = new File(new File(fileDialog.getDirectory()), fileDialog.getFile());
-                Job job = configuration.loadJob(file);
+                Job job = configuration.loadJob(file, SwingUtilities::invokeLater,
+                        jobLoadListener);
                 setJob(job);
                 addRecentJob(file);
             }
@@ -1378,7 +1377,8 @@ public class JobPanel extends JPanel {
                 return;
             }
             try {
-                Job job = configuration.loadJob(file);
+                Job job = configuration.loadJob(file, SwingUtilities::invokeLater,
+                        jobLoadListener);
                 setJob(job);
                 addRecentJob(file);
             }
@@ -1420,6 +1420,42 @@ public class JobPanel extends JPanel {
                 }
             };
 
+    private final JobLoadListener jobLoadListener = new JobLoadListener.Adapter() {
+        @Override
+        public void boardLoadProgress(Job job, Board board, int percent) {
+            if (job == getJob()) {
+                MainFrame.get().setStatus(
+                        String.format("Loading %s (%d%%)", board.getFile().getName(), percent));
+            }
+        }
+
+        @Override
+        public void boardLoaded(Job job, Board board) {
+            if (job == getJob()) {
+                boardLocationsTableModel.fireTableRowsUpdated(0,
+                        boardLocationsTableModel.getRowCount() - 1);
+                jobPlacementsPanel.refresh();
+            }
+        }
+
+        @Override
+        public void jobLoaded(Job job) {
+            if (job == getJob()) {
+                MainFrame.get().setStatus("Loaded " + job.getFile().getName());
+                updateJobActions();
+            }
+        }
+
+        @Override
+        public void jobLoadFailed(Job job, Exception e) {
+            if (job == getJob()) {
+                e.printStackTrace();
+                MessageBoxes.errorBox(frame, "Job Load Error", e.getMessage());
+                setJob(new Job());
+            }
+        }
+    };
+
     private final TextStatusListener textStatusListener = text -> {
         MainFrame.get().setStatus(text);
         // Repainting here refreshes the tables, which contain status that needs to be updated.
@@ -21,6 +21,7 @@ import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 
 import org.openpnp.logging.SystemLogger;
+import org.openpnp.util.AsyncImageWriter;
 import org.pmw.tinylog.Configurator;
 import org.pmw.tinylog.Level;
 import org.pmw.tinylog.LogEntry;
@@ -32,6 +33,20 @@ public class LogPanel extends JPanel {
     private static final String PREF_LOG_LEVEL = "LogPanel.logLevel";
     private static final String PREF_LOG_LEVEL_DEF = Level.INFO.toString();
 
+    private static final String PREF_VISION_IMAGE_ENCODING = "LogPanel.visionImageEncoding";
+    private static final String PREF_VISION_IMAGE_ENCODING_DEF =
+            AsyncImageWriter.Encoding.Png.toString();
+
+    private static final String PREF_VISION_IMAGE_PNG_COMPRESSION =
+            "LogPanel.visionImagePngCompression";
+    private static final int PREF_VISION_IMAGE_PNG_COMPRESSION_DEF = 1;
+
+    private static final String PREF_VISION_IMAGE_JPEG_QUALITY = "LogPanel.visionImageJpegQuality";
+    private static final int PREF_VISION_IMAGE_JPEG_QUALITY_DEF = 90;
+
+    private static final String PREF_VISION_IMAGE_QUOTA_MB = "LogPanel.visionImageQuotaMb";
+    private static final int PREF_VISION_IMAGE_QUOTA_MB_DEF = 500;
+
     private boolean systemOutEnabled = true;
 
     private LogEntryListModel logEntries = new LogEntryListModel();
@@ -71,6 +86,7 @@ public class LogPanel extends JPanel {
                 "Global Logging Settings", TitledBorder.LEADING, TitledBorder.TOP, null, new Color(0, 0, 0)));
 
         settingsPanel.add(createGlobalLogLevelPanel());
+        settingsPanel.add(createVisionImageEncodingPanel());
 
         settingsAndFilterPanel.add(settingsPanel, BorderLayout.NORTH);
 
@@ -243,6 +259,69 @@ public class LogPanel extends JPanel {
         return globalLogLevelPanel;
     }
 
+    private JPanel createVisionImageEncodingPanel() {
+        AsyncImageWriter.Encoding encoding = AsyncImageWriter.Encoding.Png;
+        try {
+            encoding = AsyncImageWriter.Encoding
+                    .valueOf(prefs.get(PREF_VISION_IMAGE_ENCODING, PREF_VISION_IMAGE_ENCODING_DEF));
+        } catch (Exception ignored) {
+        }
+        AsyncImageWriter writer = AsyncImageWriter.get();
+        writer.setEncoding(encoding);
+        writer.setPngCompression(prefs.getInt(PREF_VISION_IMAGE_PNG_COMPRESSION,
+                PREF_VISION_IMAGE_PNG_COMPRESSION_DEF));
+        writer.setJpegQuality(
+                prefs.getInt(PREF_VISION_IMAGE_JPEG_QUALITY, PREF_VISION_IMAGE_JPEG_QUALITY_DEF));
+        int quotaMb = prefs.getInt(PREF_VISION_IMAGE_QUOTA_MB, PREF_VISION_IMAGE_QUOTA_MB_DEF);
+        writer.setQuotaBytes(quotaMb * 1024L * 1024L);
+
+        JPanel encodingPanel = new JPanel();
+        encodingPanel.add(new JLabel("Debug Image Format:"));
+        JComboBox<AsyncImageWriter.Encoding> encodingComboBox =
+                new JComboBox<>(AsyncImageWriter.Encoding.values());
+        encodingComboBox.setSelectedItem(encoding);
+        encodingComboBox.addActionListener(e -> {
+            AsyncImageWriter.Encoding selected =
+                    (AsyncImageWriter.Encoding) encodingComboBox.getSelectedItem();
+            prefs.put(PREF_VISION_IMAGE_ENCODING, selected.toString());
+            writer.setEncoding(selected);
+        });
+        encodingPanel.add(encodingComboBox);
+
+        encodingPanel.add(new JLabel("PNG Compression:"));
+        JSpinner pngCompressionSpinner =
+                new JSpinner(new SpinnerNumberModel(writer.getPngCompression(), 0, 9, 1));
+        pngCompressionSpinner.setToolTipText("0 is the fastest to write, 9 the smallest.");
+        pngCompressionSpinner.addChangeListener(e -> {
+            int pngCompression = (Integer) pngCompressionSpinner.getValue();
+            prefs.putInt(PREF_VISION_IMAGE_PNG_COMPRESSION, pngCompression);
+            writer.setPngCompression(pngCompression);
+        });
+        encodingPanel.add(pngCompressionSpinner);
+
+        encodingPanel.add(new JLabel("JPEG Quality:"));
+        JSpinner jpegQualitySpinner =
+                new JSpinner(new SpinnerNumberModel(writer.getJpegQuality(), 0, 100, 5));
+        jpegQualitySpinner.addChangeListener(e -> {
+            int jpegQuality = (Integer) jpegQualitySpinner.getValue();
+            prefs.putInt(PREF_VISION_IMAGE_JPEG_QUALITY, jpegQuality);
+            writer.setJpegQuality(jpegQuality);
+        });
+        encodingPanel.add(jpegQualitySpinner);
+
+        encodingPanel.add(new JLabel("Disk Quota (MB):"));
+        JSpinner quotaSpinner =
+                new JSpinner(new SpinnerNumberModel(quotaMb, 1, Integer.MAX_VALUE, 100));
+        quotaSpinner.setToolTipText("The oldest debug images are deleted beyond this.");
+        quotaSpinner.addChangeListener(e -> {
+            int quota = (Integer) quotaSpinner.getValue();
+            prefs.putInt(PREF_VISION_IMAGE_QUOTA_MB, quota);
+            writer.setQuotaBytes(quota * 1024L * 1024L);
+        });
+        encodingPanel.add(quotaSpinner);
+        return encodingPanel;
+    }
+
     private void copyStringToClipboard(String s) {
         StringSelection selection = new StringSelection(s);
         Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
@@ -553,12 +553,6 @@ public class EagleBoardImporter implements BoardImporter {
                                                         // pads to a board.
                                                         pads.add(boardPad);
 
-                                                        board.addSolderPastePad(boardPad); // This
-                                                                                           // adds
-                                                                                           // the
-                                                                                           // pad to
-                                                                                           // the
-                                                                                           // SolderPaste
                                                     }
                                                 }
                                                 else if (e instanceof org.openpnp.model.eagle.xml.Pad) {
@@ -644,12 +638,6 @@ public class EagleBoardImporter implements BoardImporter {
 
                                                         pads.add(boardPad);
 
-                                                        board.addSolderPastePad(boardPad); // This
-                                                                                           // adds
-                                                                                           // the
-                                                                                           // pad to
-                                                                                           // the
-                                                                                           // SolderPaste
                                                     }
                                                 }
                                             }
@@ -662,8 +650,6 @@ public class EagleBoardImporter implements BoardImporter {
 
                     placement.setSide(element_side);
                     placements.add(placement);
-                    board.addPlacement(placement); // this adds the placement to the Pick and Place
-                                                   // list
 
                 }
             }
@@ -675,6 +661,11 @@ public class EagleBoardImporter implements BoardImporter {
 
         }
 
+        // Add everything to the board at once so that listeners only see a single change for
+        // each list.
+        board.addSolderPastePads(pads);
+        board.addPlacements(placements);
+
         return placements;
     }
 
@@ -190,10 +190,8 @@ class SolderPasteGerberImporterDlg extends JDialog {
                 MessageBoxes.errorBox(SolderPasteGerberImporterDlg.this, "Import Error", e1);
                 return;
             }
-            for (BoardPad pad : pads) {
-                SolderPasteGerberImporterDlg.this.solderPasteGerberImporter.board
-                        .addSolderPastePad(pad);
-            }
+            SolderPasteGerberImporterDlg.this.solderPasteGerberImporter.board
+                    .addSolderPastePads(pads);
             setVisible(false);
         }
     }
@@ -8,16 +8,27 @@ import org.pmw.tinylog.writers.Writer;
 import javax.swing.*;
 import java.util.*;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 /**
  * A LogEntry List Model which contains LogEntries from tinylog
+ *
+ * Log entries are written from any thread into a pending queue and moved into the model in
+ * batches on the event dispatch thread, so writers never wait on the GUI and the list is told
+ * about many new lines at once. The model keeps the newest LINE_LIMIT entries in a ring buffer and
+ * only runs the filters over the entries that are new in each batch. The whole list is only
+ * filtered again when the filters change.
  */
 public class LogEntryListModel extends AbstractListModel<LogEntry> implements Writer {
 
-    private List<LogEntry> originalLogEntries = new ArrayList<>();
-    private List<LogEntry> filteredLogEntries = new ArrayList<>(originalLogEntries);
-    private HashSet<LogEntryFilter> filters = new HashSet<>();
+    private final RingBuffer originalLogEntries;
+    private final RingBuffer filteredLogEntries;
+    private final Set<LogEntryFilter> filters = Collections.synchronizedSet(new HashSet<>());
+
+    /**
+     * Entries written since the last batch was moved into the model. Guarded by itself.
+     */
+    private final ArrayDeque<LogEntry> pending = new ArrayDeque<>();
+    private boolean flushScheduled;
 
     public static class LogEntryFilter {
         Predicate<LogEntry> filter;
@@ -41,12 +52,27 @@ public class LogEntryListModel extends AbstractListModel<LogEntry> implements Wr
 
     private static final int LINE_LIMIT = 10000;
 
+    public LogEntryListModel() {
+        this(LINE_LIMIT);
+    }
+
+    public LogEntryListModel(int lineLimit) {
+        originalLogEntries = new RingBuffer(lineLimit);
+        filteredLogEntries = new RingBuffer(lineLimit);
+    }
+
+    /**
+     * Get a copy of all the entries in the model. Call on the event dispatch thread.
+     */
     public List<LogEntry> getOriginalLogEntries() {
-        return originalLogEntries;
+        return originalLogEntries.toList();
     }
 
+    /**
+     * Get a copy of the entries that pass the filters. Call on the event dispatch thread.
+     */
     public List<LogEntry> getFilteredLogEntries() {
-        return filteredLogEntries;
+        return filteredLogEntries.toList();
     }
 
     @Override
@@ -81,29 +107,115 @@ public class LogEntryListModel extends AbstractListModel<LogEntry> implements Wr
 
     @Override
     public void write(LogEntry logEntry) throws Exception {
-        originalLogEntries.add(logEntry);
-        trim();
+        synchronized (pending) {
+            pending.add(logEntry);
+            // Anything beyond the line limit would be dropped by the next batch anyway.
+            if (pending.size() > originalLogEntries.capacity()) {
+                pending.removeFirst();
+            }
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+        }
+        SwingUtilities.invokeLater(this::flushPending);
     }
 
     public void clear() {
-        this.originalLogEntries.clear();
-        filter();
+        onEventDispatchThread(() -> {
+            synchronized (pending) {
+                pending.clear();
+            }
+            int size = filteredLogEntries.size();
+            originalLogEntries.clear();
+            filteredLogEntries.clear();
+            if (size > 0) {
+                fireIntervalRemoved(this, 0, size - 1);
+            }
+        });
     }
 
+    /**
+     * Run all the entries through the filters again. Call after changing a filter.
+     */
     public void filter() {
-        // Reduce all filters to a single one and apply it to our logEntries
-        this.filteredLogEntries = originalLogEntries.stream().filter(
-                filters.stream().map(LogEntryFilter::getFilter).reduce(Predicate::and).orElse(t -> false)
-        ).collect(Collectors.toList());
+        onEventDispatchThread(() -> {
+            Predicate<LogEntry> predicate = getPredicate();
+            int oldSize = filteredLogEntries.size();
+            filteredLogEntries.clear();
+            for (int i = 0; i < originalLogEntries.size(); i++) {
+                LogEntry logEntry = originalLogEntries.get(i);
+                if (predicate.test(logEntry)) {
+                    filteredLogEntries.add(logEntry);
+                }
+            }
+            int size = filteredLogEntries.size();
+            if (size < oldSize) {
+                fireIntervalRemoved(this, size, oldSize - 1);
+            }
+            else if (size > oldSize) {
+                fireIntervalAdded(this, oldSize, size - 1);
+            }
+            if (size > 0) {
+                fireContentsChanged(this, 0, size - 1);
+            }
+        });
+    }
+
+    /**
+     * Move the pending entries into the model, filtering only the new ones, and tell the list
+     * about the whole batch at once. Runs on the event dispatch thread.
+     */
+    private void flushPending() {
+        List<LogEntry> batch;
+        synchronized (pending) {
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            flushScheduled = false;
+        }
+        Predicate<LogEntry> predicate = getPredicate();
+        int oldSize = filteredLogEntries.size();
+        // Entries only ever leave from the front, oldest first.
+        int removed = 0;
+        for (LogEntry logEntry : batch) {
+            LogEntry evicted = originalLogEntries.add(logEntry);
+            // The filtered entries are in the same order as the originals, so an evicted entry
+            // that passed the filters is the oldest filtered entry.
+            if (evicted != null && filteredLogEntries.size() > 0
+                    && filteredLogEntries.get(0) == evicted) {
+                filteredLogEntries.removeFirst();
+                removed++;
+            }
+            if (predicate.test(logEntry) && filteredLogEntries.add(logEntry) != null) {
+                removed++;
+            }
+        }
+        int removedOld = Math.min(removed, oldSize);
+        int size = filteredLogEntries.size();
+        int added = size - (oldSize - removedOld);
+        if (removedOld > 0) {
+            fireIntervalRemoved(this, 0, removedOld - 1);
+        }
+        if (added > 0) {
+            fireIntervalAdded(this, size - added, size - 1);
+        }
+    }
 
-        SwingUtilities.invokeLater(() -> fireContentsChanged(this, 0, filteredLogEntries.size() - 1));
+    private Predicate<LogEntry> getPredicate() {
+        // Reduce all filters to a single one
+        synchronized (filters) {
+            return filters.stream().map(LogEntryFilter::getFilter).reduce(Predicate::and)
+                    .orElse(t -> false);
+        }
     }
 
-    private void trim() {
-        if (originalLogEntries.size() > LINE_LIMIT) {
-            originalLogEntries.subList(0, originalLogEntries.size() - LINE_LIMIT).clear();
+    private static void onEventDispatchThread(Runnable runnable) {
+        if (SwingUtilities.isEventDispatchThread()) {
+            runnable.run();
+        }
+        else {
+            SwingUtilities.invokeLater(runnable);
         }
-        filter();
     }
 
     @Override
@@ -115,4 +227,67 @@ public class LogEntryListModel extends AbstractListModel<LogEntry> implements Wr
     public void close() throws Exception {
 
     }
+
+    /**
+     * A fixed capacity list that drops its oldest entry when full.
+     */
+    private static class RingBuffer {
+        private final LogEntry[] entries;
+        private int head;
+        private int size;
+
+        RingBuffer(int capacity) {
+            entries = new LogEntry[capacity];
+        }
+
+        /**
+         * Add an entry at the end, and return the entry it pushed out, if any.
+         */
+        LogEntry add(LogEntry logEntry) {
+            LogEntry evicted = null;
+            if (size == entries.length) {
+                evicted = removeFirst();
+            }
+            entries[(head + size) % entries.length] = logEntry;
+            size++;
+            return evicted;
+        }
+
+        LogEntry removeFirst() {
+            LogEntry logEntry = entries[head];
+            entries[head] = null;
+            head = (head + 1) % entries.length;
+            size--;
+            return logEntry;
+        }
+
+        LogEntry get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException(index + " of " + size);
+            }
+            return entries[(head + index) % entries.length];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int capacity() {
+            return entries.length;
+        }
+
+        void clear() {
+            Arrays.fill(entries, null);
+            head = 0;
+            size = 0;
+        }
+
+        List<LogEntry> toList() {
+            List<LogEntry> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(get(i));
+            }
+            return list;
+        }
+    }
 }
@@ -27,6 +27,7 @@ import java.util.Locale;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.JButton;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
@@ -39,10 +40,12 @@ import org.openpnp.gui.MainFrame;
 import org.openpnp.gui.components.CameraView;
 import org.openpnp.gui.components.ComponentDecorators;
 import org.openpnp.gui.support.AbstractConfigurationWizard;
+import org.openpnp.gui.support.DoubleConverter;
 import org.openpnp.gui.support.LengthConverter;
 import org.openpnp.gui.support.LongConverter;
 import org.openpnp.gui.support.MutableLocationProxy;
 import org.openpnp.spi.Camera;
+import org.openpnp.spi.base.AbstractCamera;
 
 import com.jgoodies.forms.layout.ColumnSpec;
 import com.jgoodies.forms.layout.FormLayout;
@@ -155,7 +158,9 @@ public class CameraConfigurationWizard extends AbstractConfigurationWizard {
         panelVision.setLayout(new FormLayout(
                 new ColumnSpec[] {FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,
                         FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,},
-                new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,}));
+                new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,}));
 
         lblSettleTimems = new JLabel("Settle Time (ms)");
         panelVision.add(lblSettleTimems, "2, 2, right, default");
@@ -163,12 +168,30 @@ public class CameraConfigurationWizard extends AbstractConfigurationWizard {
         textFieldSettleTime = new JTextField();
         panelVision.add(textFieldSettleTime, "4, 2, fill, default");
         textFieldSettleTime.setColumns(10);
+
+        lblSettleAdaptive = new JLabel("Adaptive Settle?");
+        lblSettleAdaptive.setToolTipText(
+                "Capture until consecutive frames stop changing, waiting at most the settle time.");
+        panelVision.add(lblSettleAdaptive, "2, 4, right, default");
+
+        chckbxSettleAdaptive = new JCheckBox("");
+        panelVision.add(chckbxSettleAdaptive, "4, 4");
+
+        lblSettleThreshold = new JLabel("Settle Threshold");
+        lblSettleThreshold.setToolTipText(
+                "Mean frame difference, in gray levels, below which the camera is settled.");
+        panelVision.add(lblSettleThreshold, "2, 6, right, default");
+
+        textFieldSettleThreshold = new JTextField();
+        panelVision.add(textFieldSettleThreshold, "4, 6, fill, default");
+        textFieldSettleThreshold.setColumns(10);
     }
 
     @Override
     public void createBindings() {
         LengthConverter lengthConverter = new LengthConverter(uppFormat);
         LongConverter longConverter = new LongConverter();
+        DoubleConverter doubleConverter = new DoubleConverter("%.2f");
 
         addWrappedBinding(camera, "name", nameTf, "text");
         addWrappedBinding(camera, "looking", lookingCb, "selectedItem");
@@ -179,6 +202,11 @@ public class CameraConfigurationWizard extends AbstractConfigurationWizard {
         addWrappedBinding(unitsPerPixel, "lengthY", textFieldUppY, "text", lengthConverter);
 
         addWrappedBinding(camera, "settleTimeMs", textFieldSettleTime, "text", longConverter);
+        if (camera instanceof AbstractCamera) {
+            addWrappedBinding(camera, "settleAdaptive", chckbxSettleAdaptive, "selected");
+            addWrappedBinding(camera, "settleThreshold", textFieldSettleThreshold, "text",
+                    doubleConverter);
+        }
 
         ComponentDecorators.decorateWithAutoSelect(textFieldUppX);
         ComponentDecorators.decorateWithAutoSelect(textFieldUppY);
@@ -189,6 +217,7 @@ public class CameraConfigurationWizard extends AbstractConfigurationWizard {
         ComponentDecorators.decorateWithAutoSelect(textFieldWidth);
         ComponentDecorators.decorateWithAutoSelect(textFieldHeight);
         ComponentDecorators.decorateWithAutoSelect(textFieldSettleTime);
+        ComponentDecorators.decorateWithAutoSelect(textFieldSettleThreshold);
     }
 
     private Action measureAction = new AbstractAction("Measure") {
@@ -237,6 +266,10 @@ public class CameraConfigurationWizard extends AbstractConfigurationWizard {
     private JPanel panelVision;
     private JLabel lblSettleTimems;
     private JTextField textFieldSettleTime;
+    private JLabel lblSettleAdaptive;
+    private JCheckBox chckbxSettleAdaptive;
+    private JLabel lblSettleThreshold;
+    private JTextField textFieldSettleThreshold;
     private JPanel panel;
     private JLabel lblName;
     private JLabel lblLooking;
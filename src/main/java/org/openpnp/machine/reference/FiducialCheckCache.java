@@ -0,0 +1,166 @@
+package org.openpnp.machine.reference;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Location;
+
+/**
+ * Remembers the fiducial compensated location measured for each BoardLocation so that
+ * placement-level fiducial checks can reuse a recent measurement instead of locating the board's
+ * fiducials again for every placement. How long a measurement stays fresh is set by the
+ * FreshnessPolicy. Whatever the policy, the cache is emptied by invalidate(), which the job
+ * processor calls when the machine is homed, enabled or disabled.
+ */
+public class FiducialCheckCache {
+    public enum FreshnessPolicy {
+        /**
+         * Never reuse a measurement. Every placement-level check locates the board.
+         */
+        Always,
+        /**
+         * A measurement is good for the rest of the job.
+         */
+        Job,
+        /**
+         * A measurement is good until the end of the cycle it was made in.
+         */
+        Cycle,
+        /**
+         * A measurement is good for a number of placement-level checks on the board.
+         */
+        Placements,
+        /**
+         * A measurement is good for a number of milliseconds.
+         */
+        Time
+    }
+
+    private final Map<BoardLocation, Entry> entries = new HashMap<>();
+    private final FreshnessPolicy policy;
+    private final int maxPlacements;
+    private final long maxAgeMs;
+    private final LongSupplier clock;
+    private long cycle;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param policy How long a measurement stays fresh.
+     * @param maxPlacements The number of checks a measurement serves, for
+     *        FreshnessPolicy.Placements.
+     * @param maxAgeMs The age at which a measurement expires, for FreshnessPolicy.Time.
+     */
+    public FiducialCheckCache(FreshnessPolicy policy, int maxPlacements, long maxAgeMs) {
+        this(policy, maxPlacements, maxAgeMs, System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock The current time in milliseconds, for FreshnessPolicy.Time.
+     */
+    public FiducialCheckCache(FreshnessPolicy policy, int maxPlacements, long maxAgeMs,
+            LongSupplier clock) {
+        this.policy = policy;
+        this.maxPlacements = maxPlacements;
+        this.maxAgeMs = maxAgeMs;
+        this.clock = clock;
+    }
+
+    /**
+     * Get a fresh measurement for the board and count it as used, or return null if the board
+     * must be located again.
+     */
+    public synchronized Location get(BoardLocation boardLocation) {
+        Entry entry = entries.get(boardLocation);
+        if (entry == null || !isFresh(entry)) {
+            entries.remove(boardLocation);
+            misses++;
+            return null;
+        }
+        entry.uses++;
+        hits++;
+        return entry.location;
+    }
+
+    /**
+     * Store a new measurement for the board. The check that made it counts as its first use.
+     */
+    public synchronized void put(BoardLocation boardLocation, Location location) {
+        if (policy == FreshnessPolicy.Always) {
+            return;
+        }
+        Entry entry = new Entry(location, clock.getAsLong(), cycle);
+        entry.uses = 1;
+        entries.put(boardLocation, entry);
+    }
+
+    /**
+     * Called at the start of each cycle, which expires measurements under
+     * FreshnessPolicy.Cycle.
+     */
+    public synchronized void nextCycle() {
+        cycle++;
+    }
+
+    public synchronized void invalidate() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * The number of checks that reused a measurement.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * The number of checks that had to locate the board.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public FreshnessPolicy getPolicy() {
+        return policy;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s, %d cached, %d hits, %d misses", policy, entries.size(), hits,
+                misses);
+    }
+
+    private boolean isFresh(Entry entry) {
+        switch (policy) {
+            case Job:
+                return true;
+            case Cycle:
+                return entry.cycle == cycle;
+            case Placements:
+                return entry.uses < maxPlacements;
+            case Time:
+                return clock.getAsLong() - entry.measuredAt < maxAgeMs;
+            default:
+                return false;
+        }
+    }
+
+    private static class Entry {
+        final Location location;
+        final long measuredAt;
+        final long cycle;
+        int uses;
+
+        Entry(Location location, long measuredAt, long cycle) {
+            this.location = location;
+            this.measuredAt = measuredAt;
+            this.cycle = cycle;
+        }
+    }
+}
@@ -31,23 +31,23 @@ import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.JOptionPane;
 
-import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.Point;
-import org.opencv.core.Rect;
-import org.opencv.core.RotatedRect;
-import org.opencv.core.Size;
-import org.opencv.imgproc.Imgproc;
+import org.openpnp.Scripting;
 import org.openpnp.gui.MainFrame;
 import org.openpnp.gui.support.Icons;
 import org.openpnp.gui.support.PropertySheetWizardAdapter;
 import org.openpnp.gui.wizards.CameraConfigurationWizard;
+import org.openpnp.machine.reference.camera.FrameBuffer;
+import org.openpnp.machine.reference.camera.ImageTransform;
 import org.openpnp.model.AbstractModelObject;
 import org.openpnp.model.Configuration;
 import org.openpnp.model.Length;
 import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.MachineListener;
 import org.openpnp.spi.base.AbstractCamera;
 import org.openpnp.util.OpenCvUtils;
 import org.openpnp.vision.LensCalibration;
@@ -66,6 +66,12 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
     }
 
     private static final int CAPTURE_RETRY_COUNT = 10;
+
+    /**
+     * How long capture() waits for the capture thread to deliver a fresh frame before capturing
+     * one itself.
+     */
+    private static final long FRAME_TIMEOUT_MS = 2000;
     
     private static BufferedImage CAPTURE_ERROR_IMAGE = null;
     
@@ -105,6 +111,9 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
     @Attribute(required = false)
     protected boolean deinterlace;
 
+    @Attribute(required = false)
+    protected int frameBufferSize = 3;
+
     @Element(required = false)
     private LensCalibrationParams calibration = new LensCalibrationParams();
     
@@ -112,36 +121,194 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
     private CalibrationCallback calibrationCallback;
     private int calibrationCountGoal = 25;
 
-    private Mat undistortionMap1;
-    private Mat undistortionMap2;
+    /**
+     * Reused from frame to frame. Both are guarded by the transform.
+     */
+    private final ImageTransform imageTransform = new ImageTransform();
+    private Mat transformInput = new Mat();
 
     private LensCalibration lensCalibration;
-    
+
+    private FrameBuffer frameBuffer;
+
+    /**
+     * The thread that last called captureFrame(). While it is alive capture() takes frames from
+     * the frame buffer instead of capturing them itself.
+     */
+    private volatile Thread frameThread;
+
+    /**
+     * The System.nanoTime() before which frames are considered stale, because the machine has
+     * moved or the camera has settled since.
+     */
+    private volatile long framesNotBefore;
+
+    /**
+     * The timestamp of the last frame compared during an adaptive settle.
+     */
+    private long settleFrameTimestamp;
+
+    private MachineListener motionListener;
+
     public ReferenceCamera() {
     }
     
     @Override
     public BufferedImage capture() {
+        Scripting scripting = Configuration.get().getScripting();
+        if (scripting.hasHandlers("Camera.BeforeCapture")) {
+            try {
+                Map<String, Object> globals = new HashMap<>();
+                globals.put("camera", this);
+                scripting.on("Camera.BeforeCapture", globals);
+            }
+            catch (Exception e) {
+                Logger.warn(e);
+            }
+            // The script may have changed the scene, such as by turning on a light.
+            invalidateFrames();
+        }
+        FrameBuffer.Frame frame = awaitFrame(framesNotBefore);
+        BufferedImage image = frame == null ? safeInternalCapture() : frame.getImage();
+        if (scripting.hasHandlers("Camera.AfterCapture")) {
+            try {
+                Map<String, Object> globals = new HashMap<>();
+                globals.put("camera", this);
+                scripting.on("Camera.AfterCapture", globals);
+            }
+            catch (Exception e) {
+                Logger.warn(e);
+            }
+        }
+        return image;
+    }
+    
+    @Override
+    public long settle() {
+        // If the driver streams commands the machine may still be moving, so make sure it has
+        // stopped before the settle time starts.
         try {
-            Map<String, Object> globals = new HashMap<>();
-            globals.put("camera", this);
-            Configuration.get().getScripting().on("Camera.BeforeCapture", globals);
+            getDriver().waitForCompletion();
         }
         catch (Exception e) {
             Logger.warn(e);
         }
-        BufferedImage image = safeInternalCapture();
-        try {
-            Map<String, Object> globals = new HashMap<>();
-            globals.put("camera", this);
-            Configuration.get().getScripting().on("Camera.AfterCapture", globals);
+        settleFrameTimestamp = System.nanoTime();
+        long time = super.settle();
+        invalidateFrames();
+        return time;
+    }
+
+    @Override
+    protected BufferedImage captureForSettle() {
+        // Frames compared while settling are never seen by the caller, so skip the scripting
+        // events. Each comparison needs a frame newer than the last one.
+        FrameBuffer.Frame frame = awaitFrame(settleFrameTimestamp + 1);
+        if (frame == null) {
+            // Not safeInternalCapture(), as its error image would compare as settled. A null
+            // is retried by settle().
+            synchronized (this) {
+                return internalCapture();
+            }
         }
-        catch (Exception e) {
-            Logger.warn(e);
+        settleFrameTimestamp = frame.getTimestamp();
+        return frame.getImage();
+    }
+
+    /**
+     * Capture a frame with internalCapture(), add it to the frame buffer and send it to the
+     * continuous capture listeners. Subclasses that run a capture thread should call this from
+     * it, so that capture() can use the frames instead of capturing on the caller's thread.
+     * 
+     * @return The captured image, or null if internalCapture() failed.
+     */
+    protected BufferedImage captureFrame() {
+        frameThread = Thread.currentThread();
+        long timestamp = System.nanoTime();
+        BufferedImage image = internalCapture();
+        if (image != null) {
+            getFrameBuffer().put(image, timestamp);
+            broadcastCapture(image);
         }
         return image;
     }
-    
+
+    /**
+     * Called by capture threads between frames in place of sleeping. Returns early if someone is
+     * waiting for a new frame.
+     * 
+     * @throws InterruptedException
+     */
+    protected void waitForNextFrame(long timeoutMs) throws InterruptedException {
+        getFrameBuffer().awaitDemand(timeoutMs);
+    }
+
+    /**
+     * Require frames returned by capture() to have been started from now on.
+     */
+    public void invalidateFrames() {
+        framesNotBefore = System.nanoTime();
+    }
+
+    public synchronized FrameBuffer getFrameBuffer() {
+        if (frameBuffer == null) {
+            frameBuffer = new FrameBuffer(Math.max(1, frameBufferSize));
+        }
+        return frameBuffer;
+    }
+
+    /**
+     * Wait for the capture thread to deliver a frame started at or after notBefore.
+     * 
+     * @return The frame, or null if there is no capture thread running or it did not deliver a
+     *         frame in time, in which case the caller should capture one itself.
+     */
+    private FrameBuffer.Frame awaitFrame(long notBefore) {
+        Thread thread = frameThread;
+        if (thread == null || !thread.isAlive() || thread == Thread.currentThread()) {
+            return null;
+        }
+        if (motionListener == null && !listenForMotion()) {
+            return null;
+        }
+        try {
+            FrameBuffer.Frame frame = getFrameBuffer().await(Math.max(notBefore, framesNotBefore),
+                    FRAME_TIMEOUT_MS);
+            if (frame == null) {
+                Logger.warn("Camera {} capture thread did not deliver a frame in {} ms.", this,
+                        FRAME_TIMEOUT_MS);
+            }
+            return frame;
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Buffered frames are only valid until something moves, so watch the machine for head
+     * activity. Frames captured before we started watching can't be trusted.
+     */
+    private synchronized boolean listenForMotion() {
+        if (motionListener != null) {
+            return true;
+        }
+        Machine machine = Configuration.get().getMachine();
+        if (machine == null) {
+            return false;
+        }
+        motionListener = new MachineListener.Adapter() {
+            @Override
+            public void machineHeadActivity(Machine machine, Head head) {
+                invalidateFrames();
+            }
+        };
+        machine.addListener(motionListener);
+        invalidateFrames();
+        return true;
+    }
+
     protected abstract BufferedImage internalCapture();
     
     /**
@@ -302,149 +469,45 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
     }
 
     protected BufferedImage transformImage(BufferedImage image) {
-        Mat mat = OpenCvUtils.toMat(image);
-
-        mat = crop(mat);
-
-        mat = calibrate(mat);
-
-        mat = undistort(mat);
-
-        // apply affine transformations
-        mat = scale(mat, scaleWidth, scaleHeight);
-        
-        mat = rotate(mat, rotation);
-
-        mat = offset(mat, offsetX, offsetY);
-        
-        mat = deinterlace(mat);
-
-        if (flipX || flipY) {
-            int flipCode;
-            if (flipX && flipY) {
-                flipCode = -1;
-            }
-            else {
-                flipCode = flipX ? 0 : 1;
-            }
-            Core.flip(mat, mat, flipCode);
-        }
-
-        image = OpenCvUtils.toBufferedImage(mat);
-        mat.release();
-        return image;
-    }
-
-    private Mat crop(Mat mat) {
-        if (cropWidth != 0 || cropHeight != 0) {
-            int cw = (cropWidth != 0) ? cropWidth : (int) mat.size().width;
-            int ch = (cropHeight != 0) ? cropHeight : (int) mat.size().height;
-            Rect roi = new Rect(
-                    (int) ((mat.size().width / 2) - (cw / 2)),
-                    (int) ((mat.size().height / 2) - (ch / 2)),
-                    cw,
-                    ch);
-            Mat tmp = new Mat(mat, roi);
-            tmp.copyTo(mat);
-            tmp.release();
-        }
-        return mat;
-    }
-    
-    private Mat deinterlace(Mat mat) {
-        if (!deinterlace) {
-            return mat;
-        }
-        Mat dst = new Mat(mat.size(), mat.type());
-        for (int i = 0; i < mat.rows() / 2; i++) {
-            mat.row(i).copyTo(dst.row(i * 2));
-            mat.row(i + mat.rows() / 2).copyTo(dst.row(i * 2 + 1));
-        }
-        mat.release();
-        return dst;
-    }
-
-    private static Mat rotate(Mat mat, double rotation) {
-        if (rotation == 0D) {
-            return mat;
+        synchronized (imageTransform) {
+            transformInput = OpenCvUtils.toMat(image, transformInput);
+            return transformImage(transformInput);
         }
-
-        // See:
-        // http://stackoverflow.com/questions/22041699/rotate-an-image-without-cropping-in-opencv-in-c
-        Point center = new Point(mat.width() / 2D, mat.height() / 2D);
-        Mat mapMatrix = Imgproc.getRotationMatrix2D(center, rotation, 1.0);
-
-        // determine bounding rectangle
-        Rect bbox = new RotatedRect(center, mat.size(), rotation).boundingRect();
-        // adjust transformation matrix
-        double[] cx = mapMatrix.get(0, 2);
-        double[] cy = mapMatrix.get(1, 2);
-        cx[0] += bbox.width / 2D - center.x;
-        cy[0] += bbox.height / 2D - center.y;
-        mapMatrix.put(0, 2, cx);
-        mapMatrix.put(1, 2, cy);
-
-        Mat dst = new Mat(bbox.width, bbox.height, mat.type());
-        Imgproc.warpAffine(mat, dst, mapMatrix, bbox.size(), Imgproc.INTER_LINEAR);
-        mat.release();
-
-        mapMatrix.release();
-
-        return dst;
     }
 
-    private static Mat offset(Mat mat, int offsetX, int offsetY) {
-        if (offsetX == 0D && offsetY == 0D) {
-            return mat;
-        }
-
-        Mat mapMatrix = new Mat(2, 3, CvType.CV_32F) {
-            {
-                put(0, 0, 1, 0, offsetX);
-                put(1, 0, 0, 1, offsetY);
+    /**
+     * Transform a frame that was captured into a Mat, skipping the conversion from a
+     * BufferedImage. The Mat is left as it was.
+     */
+    protected BufferedImage transformImage(Mat mat) {
+        ImageTransform.Settings settings = getImageTransformSettings();
+        synchronized (imageTransform) {
+            Mat cropped = ImageTransform.crop(mat, settings);
+            Mat calibrated = calibrate(cropped);
+            BufferedImage image =
+                    OpenCvUtils.toBufferedImage(imageTransform.apply(calibrated, settings));
+            if (calibrated != cropped) {
+                calibrated.release();
             }
-        };
-
-        Mat dst = mat.clone();
-        Imgproc.warpAffine(mat, dst, mapMatrix, mat.size(), Imgproc.INTER_LINEAR);
-        mat.release();
-
-        mapMatrix.release();
-
-        return dst;
-    }
-    
-    private static Mat scale(Mat mat, int scaleWidth, int scaleHeight) {
-        if (scaleWidth == 0 || scaleHeight == 0) {
-            return mat;
+            if (cropped != mat) {
+                cropped.release();
+            }
+            return image;
         }
-        Mat dst = new Mat();
-        Imgproc.resize(mat, dst, new Size(scaleWidth, scaleHeight));
-        mat.release();
-        return dst;
     }
 
-    private Mat undistort(Mat mat) {
-        if (!calibration.isEnabled()) {
-            return mat;
-        }
-
-        if (undistortionMap1 == null || undistortionMap2 == null) {
-            undistortionMap1 = new Mat();
-            undistortionMap2 = new Mat();
-            Mat rectification = Mat.eye(3, 3, CvType.CV_32F);
-            Imgproc.initUndistortRectifyMap(calibration.getCameraMatrixMat(),
-                    calibration.getDistortionCoefficientsMat(), rectification,
-                    calibration.getCameraMatrixMat(), mat.size(), CvType.CV_32FC1, undistortionMap1,
-                    undistortionMap2);
-            rectification.release();
+    private ImageTransform.Settings getImageTransformSettings() {
+        double[] cameraMatrix = null;
+        double[] distortionCoefficients = null;
+        if (calibration.isEnabled()) {
+            cameraMatrix = new double[9];
+            distortionCoefficients = new double[5];
+            calibration.getCameraMatrixMat().get(0, 0, cameraMatrix);
+            calibration.getDistortionCoefficientsMat().get(0, 0, distortionCoefficients);
         }
-
-        Mat dst = mat.clone();
-        Imgproc.remap(mat, dst, undistortionMap1, undistortionMap2, Imgproc.INTER_LINEAR);
-        mat.release();
-
-        return dst;
+        return new ImageTransform.Settings(cropWidth, cropHeight, scaleWidth, scaleHeight,
+                rotation, offsetX, offsetY, deinterlace, flipX, flipY, cameraMatrix,
+                distortionCoefficients);
     }
 
     private Mat calibrate(Mat mat) {
@@ -472,15 +535,6 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
                 calibration.setCameraMatrixMat(lensCalibration.getCameraMatrix());
                 calibration
                         .setDistortionCoefficientsMat(lensCalibration.getDistortionCoefficients());
-                // Clear the calibration cache
-                if (undistortionMap1 != null) {
-                    undistortionMap1.release();
-                    undistortionMap1 = null;
-                }
-                if (undistortionMap2 != null) {
-                    undistortionMap2.release();
-                    undistortionMap2 = null;
-                }
                 calibration.setEnabled(true);
 
                 lensCalibration.close();
@@ -535,7 +589,17 @@ public abstract class ReferenceCamera extends AbstractCamera implements Referenc
     }
 
     @Override
-    public void close() throws IOException {}
+    public void close() throws IOException {
+        synchronized (this) {
+            if (motionListener != null) {
+                Machine machine = Configuration.get().getMachine();
+                if (machine != null) {
+                    machine.removeListener(motionListener);
+                }
+                motionListener = null;
+            }
+        }
+    }
 
     @Override
     public PropertySheet[] getPropertySheets() {
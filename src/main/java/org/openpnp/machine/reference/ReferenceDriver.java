@@ -127,5 +127,16 @@ public interface ReferenceDriver extends WizardConfigurable, PropertySheetHolder
     public void dispense(ReferencePasteDispenser dispenser, Location startLocation,
             Location endLocation, long dispenseTimeMilliseconds) throws Exception;
 
+    /**
+     * Blocks until every command previously sent to the machine has completed. Drivers that may
+     * return from a method before the machine has finished the operation, such as a driver that
+     * streams commands, must implement this. Callers use it before doing anything that depends on
+     * the machine being physically at rest, such as capturing an image or timing a dwell.
+     * 
+     * @throws Exception
+     */
+    public default void waitForCompletion() throws Exception {
+    }
+
     public default void createDefaults() {};
 }
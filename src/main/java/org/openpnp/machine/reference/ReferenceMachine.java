@@ -61,6 +61,7 @@ import org.openpnp.spi.PartAlignment;
 import org.openpnp.spi.PasteDispenseJobProcessor;
 import org.openpnp.spi.PnpJobProcessor;
 import org.openpnp.spi.PropertySheetHolder;
+import org.openpnp.spi.SafeZPlanner;
 import org.openpnp.spi.base.AbstractMachine;
 import org.openpnp.spi.base.SimplePropertySheetHolder;
 import org.pmw.tinylog.Logger;
@@ -85,6 +86,9 @@ public class ReferenceMachine extends AbstractMachine {
     @Element(required = false)
     protected FiducialLocator fiducialLocator = new ReferenceFiducialLocator();
 
+    @Element(required = false)
+    protected SafeZPlanner safeZPlanner = new ReferenceSafeZPlanner();
+
     private boolean enabled;
 
     private List<Class<? extends Feeder>> registeredFeederClasses = new ArrayList<>();
@@ -186,6 +190,8 @@ public class ReferenceMachine extends AbstractMachine {
         }
         vision.add(getFiducialLocator());
         children.add(new SimplePropertySheetHolder("Vision", vision));
+        children.add(new SimplePropertySheetHolder("Motion",
+                Collections.singletonList(getSafeZPlanner())));
         return children.toArray(new PropertySheetHolder[] {});
     }
 
@@ -287,6 +293,11 @@ public class ReferenceMachine extends AbstractMachine {
         return fiducialLocator;
     }
 
+    @Override
+    public SafeZPlanner getSafeZPlanner() {
+        return safeZPlanner;
+    }
+
     @Override
     public PnpJobProcessor getPnpJobProcessor() {
         return pnpJobProcessor;
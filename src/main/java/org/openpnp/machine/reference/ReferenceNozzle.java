@@ -53,6 +53,17 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
     @Attribute(required = false)
     protected boolean invertVacuumSenseLogic;
 
+    /**
+     * If enabled, pick() and place() poll the vacuum sense actuator every
+     * vacuumPollMilliseconds and continue as soon as the part on or part off level is reached,
+     * instead of always waiting out the dwell time. The dwell time becomes the timeout.
+     */
+    @Attribute(required = false)
+    protected boolean adaptiveDwell = false;
+
+    @Attribute(required = false)
+    protected int vacuumPollMilliseconds = 5;
+
     /**
      * If limitRotation is enabled the nozzle will reverse directions when commanded to rotate past
      * 180 degrees. So, 190 degrees becomes -170 and -190 becomes 170.
@@ -62,6 +73,8 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
 
     protected ReferenceNozzleTip nozzleTip;
 
+    private final VacuumSettleStatistics vacuumSettleStatistics = new VacuumSettleStatistics();
+
     public ReferenceNozzle() {
         Configuration.get().addListener(new ConfigurationListener.Adapter() {
             @Override
@@ -121,6 +134,29 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
         this.invertVacuumSenseLogic = invertVacuumSenseLogic;
     }
 
+    public boolean isAdaptiveDwell() {
+        return adaptiveDwell;
+    }
+
+    public void setAdaptiveDwell(boolean adaptiveDwell) {
+        this.adaptiveDwell = adaptiveDwell;
+    }
+
+    public int getVacuumPollMilliseconds() {
+        return vacuumPollMilliseconds;
+    }
+
+    public void setVacuumPollMilliseconds(int vacuumPollMilliseconds) {
+        this.vacuumPollMilliseconds = vacuumPollMilliseconds;
+    }
+
+    /**
+     * Settle times recorded by adaptive dwell.
+     */
+    public VacuumSettleStatistics getVacuumSettleStatistics() {
+        return vacuumSettleStatistics;
+    }
+
     @Override
     public ReferenceNozzleTip getNozzleTip() {
         return nozzleTip;
@@ -138,12 +174,30 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
         this.part = part;
         getDriver().pick(this);
         getMachine().fireMachineHeadActivity(head);
-        Thread.sleep(pickDwellMilliseconds);
+        // The dwell must start once the pick has actually happened.
+        getDriver().waitForCompletion();
 
         Actuator actuator = getHead().getActuatorByName(vacuumSenseActuatorName);
+        if (actuator == null || !adaptiveDwell) {
+            Thread.sleep(pickDwellMilliseconds);
+        }
         if (actuator != null) {
             ReferenceNozzleTip nt = getNozzleTip();
-            double vacuumLevel = Double.parseDouble(actuator.read());
+            double vacuumLevel;
+            if (adaptiveDwell) {
+                long t = System.currentTimeMillis();
+                vacuumLevel = awaitVacuumLevel(actuator, nt.getVacuumLevelPartOn(), true,
+                        pickDwellMilliseconds);
+                long ms = System.currentTimeMillis() - t;
+                boolean timedOut =
+                        !isVacuumLevelReached(vacuumLevel, nt.getVacuumLevelPartOn(), true);
+                vacuumSettleStatistics.addPick(part.getId(), nt.getId(), ms, timedOut);
+                Logger.debug("{}.pick() vacuum settled in {} ms{}", getName(), ms,
+                        timedOut ? " (timed out)" : "");
+            }
+            else {
+                vacuumLevel = Double.parseDouble(actuator.read());
+            }
             if (invertVacuumSenseLogic) {
                 if (vacuumLevel > nt.getVacuumLevelPartOn()) {
                     throw new Exception(String.format(
@@ -167,15 +221,33 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
         if (nozzleTip == null) {
             throw new Exception("Can't place, no nozzle tip loaded");
         }
+        String partId = part == null ? null : part.getId();
         getDriver().place(this);
         this.part = null;
         getMachine().fireMachineHeadActivity(head);
-        Thread.sleep(placeDwellMilliseconds);
+        getDriver().waitForCompletion();
 
         Actuator actuator = getHead().getActuatorByName(vacuumSenseActuatorName);
+        if (actuator == null || !adaptiveDwell) {
+            Thread.sleep(placeDwellMilliseconds);
+        }
         if (actuator != null) {
             ReferenceNozzleTip nt = getNozzleTip();
-            double vacuumLevel = Double.parseDouble(actuator.read());
+            double vacuumLevel;
+            if (adaptiveDwell) {
+                long t = System.currentTimeMillis();
+                vacuumLevel = awaitVacuumLevel(actuator, nt.getVacuumLevelPartOff(), false,
+                        placeDwellMilliseconds);
+                long ms = System.currentTimeMillis() - t;
+                boolean timedOut =
+                        !isVacuumLevelReached(vacuumLevel, nt.getVacuumLevelPartOff(), false);
+                vacuumSettleStatistics.addPlace(partId, nt.getId(), ms, timedOut);
+                Logger.debug("{}.place() vacuum settled in {} ms{}", getName(), ms,
+                        timedOut ? " (timed out)" : "");
+            }
+            else {
+                vacuumLevel = Double.parseDouble(actuator.read());
+            }
             if (invertVacuumSenseLogic) {
                 if (vacuumLevel < nt.getVacuumLevelPartOff()) {
                     throw new Exception(String.format(
@@ -193,6 +265,34 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
         }
     }
 
+    /**
+     * Poll the vacuum sense actuator until the reading reaches the threshold or timeoutMs has
+     * passed, and return the last reading. With partOn the reading must reach the part on level,
+     * otherwise the part off level, in the direction given by invertVacuumSenseLogic.
+     */
+    protected double awaitVacuumLevel(Actuator actuator, double threshold, boolean partOn,
+            long timeoutMs) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (true) {
+            double vacuumLevel = Double.parseDouble(actuator.read());
+            if (isVacuumLevelReached(vacuumLevel, threshold, partOn)) {
+                return vacuumLevel;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return vacuumLevel;
+            }
+            Thread.sleep(Math.max(1, Math.min(remaining, vacuumPollMilliseconds)));
+        }
+    }
+
+    private boolean isVacuumLevelReached(double vacuumLevel, double threshold, boolean partOn) {
+        // Part on means the reading went up, or down if the logic is inverted. Part off is the
+        // opposite.
+        boolean rising = partOn != invertVacuumSenseLogic;
+        return rising ? vacuumLevel >= threshold : vacuumLevel <= threshold;
+    }
+
     @Override
     public void moveTo(Location location, double speed) throws Exception {
         // Shortcut Double.NaN. Sending Double.NaN in a Location is an old API that should no
@@ -285,7 +385,9 @@ public class ReferenceNozzle extends AbstractNozzle implements ReferenceHeadMoun
         }
         
         this.nozzleTip = nt;
-        this.nozzleTip.getCalibration().reset();
+        // The runout calibration stays with the tip, so a tip change doesn't have to calibrate
+        // again unless the tip was calibrated on another nozzle.
+        this.nozzleTip.getCalibration().resetIfMeasuredOnOtherNozzle(this);
         currentNozzleTipId = nozzleTip.getId();
         firePropertyChange("nozzleTip", null, getNozzleTip());
         ((ReferenceMachine) head.getMachine()).fireMachineHeadActivity(head);
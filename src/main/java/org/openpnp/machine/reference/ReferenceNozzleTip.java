@@ -2,10 +2,11 @@ package org.openpnp.machine.reference;
 
 import java.awt.event.ActionEvent;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 import javax.swing.AbstractAction;
@@ -22,6 +23,7 @@ import org.openpnp.gui.support.PropertySheetWizardAdapter;
 import org.openpnp.gui.support.Wizard;
 import org.openpnp.machine.reference.wizards.ReferenceNozzleTipConfigurationWizard;
 import org.openpnp.model.Configuration;
+import org.openpnp.model.Length;
 import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
 import org.openpnp.model.Part;
@@ -37,6 +39,7 @@ import org.openpnp.util.UiUtils;
 import org.openpnp.util.VisionUtils;
 import org.openpnp.vision.pipeline.CvPipeline;
 import org.openpnp.vision.pipeline.CvStage.Result;
+import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
 import org.simpleframework.xml.ElementList;
@@ -351,18 +354,41 @@ public class ReferenceNozzleTip extends AbstractNozzleTip {
             }
         }
 
+        /**
+         * The number of angles measured before the first fit.
+         */
+        private static final int INITIAL_SAMPLES = 6;
+
+        /**
+         * The fewest angles the model can be fitted to, which limits angleIncrement to 120
+         * degrees.
+         */
+        private static final int MIN_SAMPLES = 3;
+
         @Element(required = false)
         private CvPipeline pipeline = createDefaultPipeline();
 
+        /**
+         * The finest spacing of the measurements, in degrees. Measurements are only added down to
+         * this spacing while the model doesn't fit them within fitTolerance.
+         */
         @Attribute(required = false)
         private double angleIncrement = 15;
-        
+
+        @Element(required = false)
+        private Length fitTolerance = new Length(0.02, LengthUnit.Millimeters);
+
         @Attribute(required = false)
         private boolean enabled;
         
         private boolean calibrating;
 
-        List<CalibrationOffset> offsets;
+        /**
+         * The runout measured by the last calibration. Kept with the tip across tip changes
+         * until reset().
+         */
+        @Element(required = false)
+        private RunoutModel model;
 
         public void calibrate(ReferenceNozzleTip nozzleTip) throws Exception {
             if (!isEnabled()) {
@@ -376,35 +402,57 @@ public class ReferenceNozzleTip extends AbstractNozzleTip {
                 Nozzle nozzle = nozzleTip.getParentNozzle();
                 Camera camera = VisionUtils.getBottomVisionCamera();
 
-                // Move to the camera with an angle of 0.
+                // Move to the camera with an angle of 0 and center the nozzle. The model is made
+                // relative to angle 0 afterwards, so this only needs to get the nozzle near the
+                // center.
                 Location location = camera.getLocation();
                 location = location.derive(null, null, null, 0d);
                 MovableUtils.moveToLocationAtSafeZ(nozzle, location);
-                for (int i = 0; i < 3; i++) {
-                    // Locate the nozzle offsets.
-                    Location offset = findCircle();
-
-                    // Subtract the offsets and move to that position to center the nozzle.
-                    location = location.subtract(offset);
-                    nozzle.moveTo(location);
-                }
-                // This is our baseline location and should have the nozzle well centered over the
-                // camera.
+                location = location.subtract(findCircle());
+                nozzle.moveTo(location);
                 Location startLocation = location;
 
-                // Now we rotate the nozzle 360 degrees at calibration.angleIncrement steps, find the
-                // nozzle using the camera and record the offsets.
-                List<CalibrationOffset> offsets = new ArrayList<>();
+                // Measure a handful of angles and fit the model to them. While it doesn't fit
+                // well enough measure the angles in between as well, down to angleIncrement.
+                double angleIncrement = getSampleIncrement(this.angleIncrement);
+                List<Double> angles = new ArrayList<>();
                 for (double i = 0; i < 360; i += angleIncrement) {
-                    location = startLocation.derive(null, null, null, i);
-                    nozzle.moveTo(location);
-                    Location offset = findCircle();
-                    offsets.add(new CalibrationOffset(offset, i));
+                    angles.add(i);
                 }
+                double tolerance = fitTolerance.convertToUnits(
+                        camera.getUnitsPerPixel().getUnits()).getValue();
+                Map<Integer, CalibrationOffset> measured = new TreeMap<>();
+                int step = Math.max(1, angles.size() / INITIAL_SAMPLES);
+                RunoutModel model;
+                double residual;
+                while (true) {
+                    for (int i = 0; i < angles.size(); i += step) {
+                        if (!measured.containsKey(i)) {
+                            double angle = angles.get(i);
+                            nozzle.moveTo(startLocation.derive(null, null, null, angle));
+                            measured.put(i, new CalibrationOffset(findCircle(), angle));
+                        }
+                    }
+                    List<CalibrationOffset> offsets = new ArrayList<>(measured.values());
+                    model = RunoutModel.fit(offsets);
+                    residual = model.getMaxResidual(offsets);
+                    if (residual <= tolerance || step == 1) {
+                        if (residual > tolerance) {
+                            // Not an ellipse, so keep what the fit misses at each angle.
+                            model.setResiduals(offsets, angleIncrement);
+                        }
+                        break;
+                    }
+                    step /= 2;
+                }
+                model.setReferenceAngle(0);
+                model.setNozzleId(nozzle.getId());
+                Logger.debug("{} runout from {} angles, residual {}: {}", nozzleTip.getName(),
+                        measured.size(), residual, model);
 
                 // The nozzle tip is now calibrated and calibration.getCalibratedOffset() can be
                 // used.
-                this.offsets = offsets;
+                this.model = model;
                 
                 nozzle.moveToSafeZ();
             }
@@ -417,33 +465,13 @@ public class ReferenceNozzleTip extends AbstractNozzleTip {
             if (!isEnabled() || !isCalibrated()) {
                 return new Location(LengthUnit.Millimeters, 0, 0, 0, 0);
             }
-
-            // Make sure the angle is between 0 and 360.
-            while (angle < 0) {
-                angle += 360;
-            }
-            while (angle > 360) {
-                angle -= 360;
-            }
-            List<CalibrationOffset> offsets = getOffsetPairForAngle(angle);
-            CalibrationOffset a = offsets.get(0);
-            CalibrationOffset b = offsets.get(1);
-            Location offsetA = a.offset;
-            Location offsetB = b.offset.convertToUnits(a.offset.getUnits());
-
-            double ratio = (angle - a.angle) / (b.angle - a.angle);
-            double deltaX = offsetB.getX() - offsetA.getX();
-            double deltaY = offsetB.getY() - offsetA.getY();
-            double offsetX = offsetA.getX() + (deltaX * ratio);
-            double offsetY = offsetA.getY() + (deltaY * ratio);
-
-            return new Location(offsetA.getUnits(), offsetX, offsetY, 0, 0);
+            return model.getOffset(angle);
         }
 
         private Location findCircle() throws Exception {
             Camera camera = VisionUtils.getBottomVisionCamera();
             pipeline.setProperty("camera", camera);
-            pipeline.process();
+            pipeline.processHeadless();
             Location location;
             Object result = pipeline.getResult("result").model;
             if (result instanceof List) {
@@ -480,25 +508,6 @@ public class ReferenceNozzleTip extends AbstractNozzleTip {
             return location;
         }
 
-        /**
-         * Find the two closest offsets to the angle being requested. The offsets start at angle 0
-         * and go to angle 360 - angleIncrement in angleIncrement steps.
-         */
-        private List<CalibrationOffset> getOffsetPairForAngle(double angle) {
-            CalibrationOffset a = null, b = null;
-            if (angle >= offsets.get(offsets.size() - 1).angle) {
-                return Arrays.asList(offsets.get(offsets.size() - 1), offsets.get(0));
-            }
-            for (int i = 0; i < offsets.size(); i++) {
-                if (angle < offsets.get(i + 1).angle) {
-                    a = offsets.get(i);
-                    b = offsets.get(i + 1);
-                    break;
-                }
-            }
-            return Arrays.asList(a, b);
-        }
-
         public static CvPipeline createDefaultPipeline() {
             try {
                 String xml = IOUtils.toString(ReferenceNozzleTip.class
@@ -511,11 +520,32 @@ public class ReferenceNozzleTip extends AbstractNozzleTip {
         }
 
         public void reset() {
-            offsets = null;
+            model = null;
+        }
+
+        /**
+         * Reset the calibration if it was measured with the tip on a different nozzle. Called
+         * when the tip is loaded, since the runout depends on the nozzle as well as the tip.
+         */
+        public void resetIfMeasuredOnOtherNozzle(Nozzle nozzle) {
+            if (model != null && !nozzle.getId().equals(model.getNozzleId())) {
+                reset();
+            }
         }
 
         public boolean isCalibrated() {
-            return offsets != null && !offsets.isEmpty();
+            return model != null;
+        }
+
+        public RunoutModel getModel() {
+            return model;
+        }
+
+        /**
+         * Set the runout model, as if it had been measured by calibrate().
+         */
+        public void setModel(RunoutModel model) {
+            this.model = model;
         }
         
         public boolean isCalibrating() {
@@ -534,6 +564,33 @@ public class ReferenceNozzleTip extends AbstractNozzleTip {
             this.enabled = enabled;
         }
 
+        public double getAngleIncrement() {
+            return angleIncrement;
+        }
+
+        /**
+         * Get the spacing of the measurements for an angleIncrement, which is made finer if
+         * needed so that at least MIN_SAMPLES angles are measured.
+         */
+        public static double getSampleIncrement(double angleIncrement) {
+            if (!(angleIncrement > 0) || angleIncrement > 360.0 / MIN_SAMPLES) {
+                return 360.0 / MIN_SAMPLES;
+            }
+            return angleIncrement;
+        }
+
+        public void setAngleIncrement(double angleIncrement) {
+            this.angleIncrement = angleIncrement;
+        }
+
+        public Length getFitTolerance() {
+            return fitTolerance;
+        }
+
+        public void setFitTolerance(Length fitTolerance) {
+            this.fitTolerance = fitTolerance;
+        }
+
         public CvPipeline getPipeline() throws Exception {
             pipeline.setProperty("camera", VisionUtils.getBottomVisionCamera());
             return pipeline;
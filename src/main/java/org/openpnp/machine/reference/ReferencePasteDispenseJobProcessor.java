@@ -251,6 +251,7 @@ public class ReferencePasteDispenseJobProcessor extends AbstractPasteDispenseJob
         fireTextStatus("Performing fiducial checks.");
 
         FiducialLocator locator = Configuration.get().getMachine().getFiducialLocator();
+        List<BoardLocation> boardLocations = new ArrayList<>();
         for (BoardLocation boardLocation : job.getBoardLocations()) {
             if (!boardLocation.isEnabled()) {
                 continue;
@@ -258,8 +259,11 @@ public class ReferencePasteDispenseJobProcessor extends AbstractPasteDispenseJob
             if (!boardLocation.isCheckFiducials()) {
                 continue;
             }
-            Location location = locator.locateBoard(boardLocation);
-            boardLocationFiducialOverrides.put(boardLocation, location);
+            boardLocations.add(boardLocation);
+        }
+        Map<BoardLocation, Location> locations = locator.locateBoards(boardLocations);
+        for (BoardLocation boardLocation : boardLocations) {
+            boardLocationFiducialOverrides.put(boardLocation, locations.get(boardLocation));
             Logger.debug("Fiducial check for {}", boardLocation);
         }
     }
@@ -21,20 +21,32 @@ package org.openpnp.machine.reference;
 
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
+import org.openpnp.Scripting;
 import org.openpnp.gui.support.Wizard;
+import org.openpnp.machine.reference.FiducialCheckCache.FreshnessPolicy;
+import org.openpnp.machine.reference.planner.AssignmentPnpJobPlanner;
+import org.openpnp.machine.reference.planner.TravelOptimizingSequencer;
+import org.openpnp.machine.reference.vision.ReferenceBottomVision;
 import org.openpnp.machine.reference.wizards.ReferencePnpJobProcessorConfigurationWizard;
 import org.openpnp.model.BoardLocation;
 import org.openpnp.model.Configuration;
 import org.openpnp.model.Job;
+import org.openpnp.model.JobJournal;
 import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
 import org.openpnp.model.Panel;
@@ -44,19 +56,21 @@ import org.openpnp.spi.Feeder;
 import org.openpnp.spi.FiducialLocator;
 import org.openpnp.spi.Head;
 import org.openpnp.spi.Machine;
+import org.openpnp.spi.MachineListener;
 import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.NozzleTip;
 import org.openpnp.spi.PartAlignment;
 import org.openpnp.spi.PnpJobProcessor.JobPlacement.Status;
 import org.openpnp.spi.base.AbstractJobProcessor;
 import org.openpnp.spi.base.AbstractPnpJobProcessor;
-import org.openpnp.util.Collect;
+import org.openpnp.spi.base.PartResolutionIndex;
 import org.openpnp.util.FiniteStateMachine;
 import org.openpnp.util.MovableUtils;
 import org.openpnp.util.Utils2D;
 import org.openpnp.util.VisionUtils;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
+import org.simpleframework.xml.Element;
 import org.simpleframework.xml.Root;
 
 @Root
@@ -84,11 +98,37 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         Reset
     }
 
+    /**
+     * A PnpJobPlanner decides which of the pending JobPlacements each Nozzle on the Head will
+     * handle during the next cycle.
+     */
+    public interface PnpJobPlanner {
+        /**
+         * Plan a single cycle.
+         * 
+         * @param head The Head whose Nozzles should be filled.
+         * @param jobPlacements The pending JobPlacements, sorted by part height. Never empty.
+         * @param index Used to find which Nozzles can handle each Part.
+         * @return A PlannedPlacement for each Nozzle that should perform a placement in this cycle,
+         *         in Nozzle order. Nozzles that will not place a part are omitted.
+         */
+        List<PlannedPlacement> plan(Head head, List<JobPlacement> jobPlacements,
+                PartResolutionIndex index);
+    }
+
     public static class PlannedPlacement {
         public final JobPlacement jobPlacement;
         public final Nozzle nozzle;
         public Feeder feeder;
         public PartAlignment.PartAlignmentOffset alignmentOffsets;
+        /**
+         * Alignment still being processed in the background, see asyncAlignment.
+         */
+        public Future<PartAlignment.PartAlignmentOffset> pendingAlignment;
+        /**
+         * Set when a background alignment failed, so that it is done again before placing.
+         */
+        public boolean realign;
         public boolean fed;
         public boolean stepComplete;
 
@@ -108,6 +148,57 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     @Attribute(required = false)
     protected boolean parkWhenComplete = false;
 
+    @Attribute(required = false)
+    protected boolean optimizePlacementOrder = false;
+
+    @Attribute(required = false)
+    protected long optimizePlacementOrderTimeMs = 2000;
+
+    /**
+     * How long a board location measured by a placement-level fiducial check is reused for
+     * further checks on the same board. See FiducialCheckCache.
+     */
+    @Attribute(required = false)
+    protected FreshnessPolicy fiducialCheckFreshness = FreshnessPolicy.Always;
+
+    @Attribute(required = false)
+    protected int fiducialCheckMaxPlacements = 10;
+
+    @Attribute(required = false)
+    protected long fiducialCheckMaxAgeMs = 60000;
+
+    /**
+     * When the parts for a cycle have been picked, plan the next cycle and feed any of its
+     * feeders that do not need the nozzle in the background, so that they advance while this
+     * cycle aligns and places.
+     */
+    @Attribute(required = false)
+    protected boolean prefeed = false;
+
+    /**
+     * Run the bottom vision pipelines in the background, so that the next nozzle moves to the
+     * camera while the last capture is processed. The results are waited for when placing.
+     */
+    @Attribute(required = false)
+    protected boolean asyncAlignment = false;
+
+    /**
+     * Append each place to a journal next to the job file, which is replayed when the job is
+     * loaded, so that a crash doesn't lose track of what was placed.
+     */
+    @Attribute(required = false)
+    protected boolean journalProgress = false;
+
+    /**
+     * How often the journal is synced to disk. Records reach the file right away and survive the
+     * application dying, this only limits what a power failure can lose.
+     */
+    @Attribute(required = false)
+    protected long journalSyncIntervalMs = 1000;
+
+    @Element(required = false)
+    protected PnpJobPlanner planner = new AssignmentPnpJobPlanner();
+
     private FiniteStateMachine<State, Message> fsm = new FiniteStateMachine<>(State.Uninitialized);
 
     protected Job job;
@@ -121,6 +212,64 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
     protected List<PlannedPlacement> plannedPlacements = new ArrayList<>();
 
     protected Map<BoardLocation, Location> boardLocationFiducialOverrides = new HashMap<>();
+
+    /**
+     * Feeders, nozzle tips and aligners for each Part in the current job. Created in
+     * doPreFlight() and disposed in doCleanup().
+     */
+    protected PartResolutionIndex partIndex;
+
+    /**
+     * Board locations measured during the current job, reused by placement-level fiducial checks
+     * while they are fresh. Created in doPreFlight().
+     */
+    protected FiducialCheckCache fiducialCheckCache;
+
+    /**
+     * Feeders that were fed ahead of time by doPrefeed() and have a part waiting. Their next
+     * feed is skipped.
+     */
+    protected Set<Feeder> prefedFeeders = new HashSet<>();
+
+    /**
+     * The feeds started by doPrefeed(), which give the feeders that were fed. Collected into
+     * prefedFeeders by awaitPrefeed().
+     */
+    protected Future<Set<Feeder>> pendingPrefeed;
+
+    /**
+     * Records the job's progress while it runs, see journalProgress.
+     */
+    protected JobJournal journal;
+
+    /**
+     * Processes alignments when asyncAlignment or multi-nozzle bottom vision is on. Created when
+     * first needed and shut down in doCleanup().
+     */
+    private ExecutorService alignmentExecutor;
+
+    /**
+     * Runs the feeds started by doPrefeed(), one at a time. Created when first needed and shut
+     * down in doCleanup().
+     */
+    private ExecutorService prefeedExecutor;
+
+    private final MachineListener fiducialCheckInvalidator = new MachineListener.Adapter() {
+        @Override
+        public void machineHomed(Machine machine) {
+            invalidateFiducialChecks("homed");
+        }
+
+        @Override
+        public void machineEnabled(Machine machine) {
+            invalidateFiducialChecks("enabled");
+        }
+
+        @Override
+        public void machineDisabled(Machine machine, String reason) {
+            invalidateFiducialChecks("disabled");
+        }
+    };
     
     long startTime;
     int totalPartsPlaced;
@@ -270,9 +419,48 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         this.head = this.machine.getDefaultHead();
         this.jobPlacements.clear();
         this.boardLocationFiducialOverrides.clear();
+        if (this.partIndex != null) {
+            this.partIndex.dispose();
+        }
+        this.partIndex = new PartResolutionIndex(machine);
+        prefedFeeders.clear();
+        this.fiducialCheckCache = new FiducialCheckCache(fiducialCheckFreshness,
+                fiducialCheckMaxPlacements, fiducialCheckMaxAgeMs);
+        this.machine.removeListener(fiducialCheckInvalidator);
+        this.machine.addListener(fiducialCheckInvalidator);
 
         fireTextStatus("Checking job for setup errors.");
 
+        jobPlacements.addAll(getJobPlacements(job, head, partIndex));
+
+        if (optimizePlacementOrder) {
+            doSequence();
+        }
+
+        // Everything looks good, so prepare the machine.
+        fireTextStatus("Preparing machine.");
+
+        // Safe Z the machine
+        head.moveToSafeZ();
+        // Discard any currently picked parts
+        discardAll(head);
+        
+        HashMap<String, Object> params = new HashMap<>();
+        params.put("job", job);
+        params.put("jobProcessor", this);
+        Configuration.get().getScripting().on("Job.Starting", params);
+
+        openJournal();
+    }
+
+    /**
+     * Get the placements of a job that are still to be placed, checking each for setup errors.
+     * 
+     * @throws Exception if a placement can't be placed as set up.
+     */
+    protected static List<JobPlacement> getJobPlacements(Job job, Head head,
+            PartResolutionIndex partIndex) throws Exception {
+        List<JobPlacement> jobPlacements = new ArrayList<>();
         for (BoardLocation boardLocation : job.getBoardLocations()) {
             // Only check enabled boards
             if (!boardLocation.isEnabled()) {
@@ -322,27 +510,159 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                 }
 
                 // Make sure there is at least one compatible nozzle tip available
-                findNozzleTip(head, placement.getPart());
+                partIndex.findNozzleTip(head, placement.getPart());
 
                 // Make sure there is at least one compatible and enabled feeder available
-                findFeeder(machine, placement.getPart());
+                partIndex.findFeeder(placement.getPart());
 
                 jobPlacements.add(jobPlacement);
             }
         }
+        return jobPlacements;
+    }
 
-        // Everything looks good, so prepare the machine.
-        fireTextStatus("Preparing machine.");
+    /**
+     * Start recording the job's progress in its journal, if it is enabled and the job has been
+     * saved. A journal that can't be written is logged and the job runs without it.
+     */
+    protected void openJournal() {
+        closeJournal();
+        if (!journalProgress || job.getFile() == null) {
+            return;
+        }
+        try {
+            journal = JobJournal.open(job, journalSyncIntervalMs);
+        }
+        catch (Exception e) {
+            Logger.warn("Unable to journal job progress to {}: {}",
+                    JobJournal.getFile(job.getFile()), e.getMessage());
+        }
+    }
 
-        // Safe Z the machine
-        head.moveToSafeZ();
-        // Discard any currently picked parts
-        discardAll(head);
-        
-        HashMap<String, Object> params = new HashMap<>();
-        params.put("job", job);
-        params.put("jobProcessor", this);
-        Configuration.get().getScripting().on("Job.Starting", params);
+    /**
+     * Record a place in the journal. If that fails the journal is given up on for the rest of
+     * the job, rather than failing the job.
+     */
+    protected void journalPlaced(PlannedPlacement plannedPlacement, BoardLocation boardLocation) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.placed(boardLocation, plannedPlacement.jobPlacement.placement.getId(), true);
+            if (plannedPlacement.feeder != null) {
+                journal.feeder(plannedPlacement.feeder);
+            }
+        }
+        catch (Exception e) {
+            Logger.warn("Unable to journal job progress to {}, stopping: {}", journal.getFile(),
+                    e.getMessage());
+            closeJournal();
+        }
+    }
+
+    protected void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        }
+        catch (Exception e) {
+            Logger.warn("Unable to close job journal {}: {}", journal.getFile(), e.getMessage());
+        }
+        journal = null;
+    }
+
+    /**
+     * Reorder the jobPlacements list to minimize the estimated XY travel of the whole job. If
+     * that can't be done the order is left as it is.
+     * 
+     * @throws Exception
+     */
+    protected void doSequence() throws Exception {
+        fireTextStatus("Optimizing placement order.");
+
+        TravelOptimizingSequencer.Report report;
+        try {
+            report = sequence(jobPlacements, partIndex, optimizePlacementOrderTimeMs);
+        }
+        catch (Exception e) {
+            Logger.warn("{}, placement order not optimized.", e.getMessage());
+            return;
+        }
+        Logger.info("Placement order optimized: {}", report);
+        fireTextStatus("Placement order optimized: %s.", report);
+    }
+
+    /**
+     * Work out how much optimizing the placement order would shorten the estimated travel of a
+     * job, without running it. The job and the machine are left as they are.
+     * 
+     * @return A Report of the estimated travel in the job's order and in the optimized order.
+     * @throws Exception if the job has setup errors or its placements can't be ordered.
+     */
+    public TravelOptimizingSequencer.Report estimatePlacementOrder(Job job) throws Exception {
+        Machine machine = Configuration.get().getMachine();
+        PartResolutionIndex partIndex = new PartResolutionIndex(machine);
+        try {
+            List<JobPlacement> jobPlacements =
+                    getJobPlacements(job, machine.getDefaultHead(), partIndex);
+            return sequence(jobPlacements, partIndex, optimizePlacementOrderTimeMs);
+        }
+        finally {
+            partIndex.dispose();
+        }
+    }
+
+    /**
+     * Reorder the given placements to minimize the estimated XY travel. Pick locations come from
+     * the feeder that would be used for each part and placement locations from the nominal board
+     * locations, before any fiducial correction.
+     * 
+     * @throws Exception if a feeder has no location to estimate the travel from.
+     */
+    protected static TravelOptimizingSequencer.Report sequence(List<JobPlacement> jobPlacements,
+            PartResolutionIndex partIndex, long timeBudgetMs) throws Exception {
+        Map<Feeder, Location> feederPickLocations = new HashMap<>();
+        Map<JobPlacement, Location> pickLocations = new HashMap<>();
+        Map<JobPlacement, Location> placementLocations = new HashMap<>();
+        for (JobPlacement jobPlacement : jobPlacements) {
+            Feeder feeder = partIndex.findFeeder(jobPlacement.placement.getPart());
+            Location pickLocation = feederPickLocations.get(feeder);
+            if (pickLocation == null) {
+                pickLocation = getSequencePickLocation(feeder);
+                if (pickLocation == null) {
+                    throw new Exception(
+                            String.format("No location for feeder %s", feeder.getName()));
+                }
+                feederPickLocations.put(feeder, pickLocation);
+            }
+            pickLocations.put(jobPlacement, pickLocation);
+            placementLocations.put(jobPlacement, Utils2D.calculateBoardPlacementLocation(
+                    jobPlacement.boardLocation, jobPlacement.placement.getLocation()));
+        }
+
+        return new TravelOptimizingSequencer(timeBudgetMs).sequence(jobPlacements,
+                pickLocations, placementLocations);
+    }
+
+    /**
+     * Get where a part will be picked from for the purpose of ordering the placements. A feeder
+     * that can't say yet, such as a tray that is empty until it is refilled, is assumed to pick
+     * from its own location.
+     */
+    private static Location getSequencePickLocation(Feeder feeder) {
+        try {
+            return feeder.getPickLocation();
+        }
+        catch (Exception e) {
+            Logger.debug("No pick location for feeder {} ({}), using its location.",
+                    feeder.getName(), e.getMessage());
+        }
+        if (feeder instanceof ReferenceFeeder) {
+            return ((ReferenceFeeder) feeder).getLocation();
+        }
+        return null;
     }
 
     protected void doFiducialCheck() throws Exception {
@@ -360,6 +680,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         	Logger.debug("Panel Fiducial check for {}", boardLocation);
         }
         
+        List<BoardLocation> boardLocations = new ArrayList<>();
         for (BoardLocation boardLocation : job.getBoardLocations()) {
             if (!boardLocation.isEnabled()) {
                 continue;
@@ -367,112 +688,177 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             if (!boardLocation.isCheckFiducials()) {
                 continue;
             }
-            Location location = locator.locateBoard(boardLocation);
-            boardLocationFiducialOverrides.put(boardLocation, location);
+            boardLocations.add(boardLocation);
+        }
+        Map<BoardLocation, Location> locations = locator.locateBoards(boardLocations);
+        for (BoardLocation boardLocation : boardLocations) {
+            boardLocationFiducialOverrides.put(boardLocation, locations.get(boardLocation));
+            fiducialCheckCache.put(boardLocation, locations.get(boardLocation));
             Logger.debug("Fiducial check for {}", boardLocation);
         }
     }
     
     protected void doIndividualFiducialCheck(BoardLocation boardLocation) throws Exception {
+        Location location = fiducialCheckCache.get(boardLocation);
+        if (location != null) {
+            boardLocationFiducialOverrides.put(boardLocation, location);
+            Logger.debug("Fiducial check cache hit for {} ({})", boardLocation,
+                    fiducialCheckCache);
+            return;
+        }
+
         fireTextStatus("Performing individual fiducial check.");
 
         FiducialLocator locator = Configuration.get().getMachine().getFiducialLocator();
         
-        Location location = locator.locateBoard(boardLocation);
+        location = locator.locateBoard(boardLocation);
         boardLocationFiducialOverrides.put(boardLocation, location);
-        Logger.debug("Fiducial check for {}", boardLocation);
+        fiducialCheckCache.put(boardLocation, location);
+        Logger.debug("Fiducial check for {} ({})", boardLocation, fiducialCheckCache);
+    }
+
+    protected void invalidateFiducialChecks(String reason) {
+        if (fiducialCheckCache != null && fiducialCheckCache.size() > 0) {
+            Logger.debug("Machine {}, discarding cached fiducial checks.", reason);
+            fiducialCheckCache.invalidate();
+        }
     }
 
     /**
-     * Description of the planner:
-     * 
-     * 1. Create a List<List<JobPlacement>> where each List<JobPlacement> is a List of JobPlacements
-     * that the corresponding (in order) Nozzle can handle in Nozzle order.
-     * 
-     * In addition, each List<JobPlacement> contains one instance of null which represents a
-     * solution where that Nozzle does not perform a placement.
-     * 
-     * 2. Create the Cartesian product of all of the List<JobPlacement>. The resulting List<List
-     * <JobPlacement>> represents possible solutions for a single cycle with each JobPlacement
-     * corresponding to a Nozzle.
-     * 
-     * 3. Filter out any solutions where the same JobPlacement is represented more than once. We
-     * don't want more than one Nozzle trying to place the same Placement.
-     * 
-     * 4. Sort the solutions by fewest nulls followed by fewest nozzle changes. The result is that
-     * we prefer solutions that use more nozzles in a cycle and require fewer nozzle changes.
-     * 
-     * Note: TODO: Originally planned to have this sort by part height but that went out the window
-     * during development. Need to think about how to best combine the height requirement with the
-     * want to fill all nozzles and perform minimal nozzle changes. Based on IRC discussion, the
-     * part height thing might be a red herring - most machines will have enough Z to place all
-     * parts regardless of height order.
+     * Plan the next cycle. The pending placements are sorted by part height and handed to the
+     * configured PnpJobPlanner which decides which JobPlacement, if any, each Nozzle on the head
+     * will handle in this cycle. See the PnpJobPlanner implementations for a description of how
+     * the solution is chosen.
      */
     protected void doPlan() throws Exception {
         plannedPlacements.clear();
+        fiducialCheckCache.nextCycle();
 
         fireTextStatus("Planning placements.");
 
-        // Get the list of unfinished placements and sort them by part height.
-        List<JobPlacement> jobPlacements = getPendingJobPlacements().stream()
-                .sorted(Comparator.comparing(JobPlacement::getPartHeight))
-                .collect(Collectors.toList());
+        List<JobPlacement> jobPlacements = getPlanningJobPlacements();
 
         if (jobPlacements.isEmpty()) {
             return;
         }
 
-        // Create a List of Lists of JobPlacements that each Nozzle can handle, including
-        // one instance of null per Nozzle. The null indicates a possible "no solution"
-        // for that Nozzle.
-        List<List<JobPlacement>> solutions = head.getNozzles().stream().map(nozzle -> {
-            return Stream.concat(jobPlacements.stream().filter(jobPlacement -> {
-                return nozzleCanHandle(nozzle, jobPlacement.placement.getPart());
-            }), Stream.of((JobPlacement) null)).collect(Collectors.toList());
-        }).collect(Collectors.toList());
+        // Now we have a solution, so apply it to the nozzles and plan the placements.
+        for (PlannedPlacement plannedPlacement : planner.plan(head, jobPlacements, partIndex)) {
+            plannedPlacement.jobPlacement.status = Status.Processing;
+            plannedPlacements.add(plannedPlacement);
+        }
 
-        // Get the cartesian product of those Lists
-        List<JobPlacement> result = Collect.cartesianProduct(solutions).stream()
-                // Filter out any results that contains the same JobPlacement more than once
-                .filter(list -> {
-                    // Note: A previous version of this code just dumped everything into a
-                    // set and compared the size. This worked for two nozzles since there would
-                    // never be more than two nulls, but for > 2 nozzles there will always be a
-                    // solution that has > 2 nulls, which means the size will never match.
-                    // This version of the code ignores the nulls (since they are valid
-                    // solutions) and instead only checks for duplicate valid JobPlacements.
-                    // There is probably a more clever way to do this, but it isn't coming
-                    // to me at the moment.
-                    HashSet<JobPlacement> set = new HashSet<>();
-                    for (JobPlacement jp : list) {
-                        if (jp == null) {
-                            continue;
-                        }
-                        if (set.contains(jp)) {
-                            return false;
-                        }
-                        set.add(jp);
-                    }
-                    return true;
-                })
-                // Sort by the solutions that contain the fewest nulls followed by the
-                // solutions that require the fewest nozzle changes.
-                .sorted(byFewestNulls.thenComparing(byFewestNozzleChanges))
-                // And return the top result.
-                .findFirst().orElse(null);
+        Logger.debug("Planned placements {}", plannedPlacements);
+    }
 
-        // Now we have a solution, so apply it to the nozzles and plan the placements.
-        for (Nozzle nozzle : head.getNozzles()) {
-            // The solution is in Nozzle order, so grab the next one.
-            JobPlacement jobPlacement = result.remove(0);
-            if (jobPlacement == null) {
+    /**
+     * Get the unfinished placements, sorted by part height, in the order doPlan() gives them to
+     * the planner.
+     */
+    protected List<JobPlacement> getPlanningJobPlacements() {
+        return getPendingJobPlacements().stream()
+                .sorted(Comparator.comparing(JobPlacement::getPartHeight))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Plan the cycle after the current one, assuming the current one succeeds, and start feeding
+     * the feeders it will use that can feed without the nozzle. The plan is made here, while
+     * the placements can't change, and only the feeds run in the background, sharing the
+     * controller with the job's moves through the driver, which serializes its commands. This is
+     * only a prediction: if the next cycle turns out differently a prefed feeder keeps its part
+     * until it is next used. Failures are left for the regular feed to handle.
+     */
+    protected void doPrefeed() {
+        List<JobPlacement> jobPlacements = getPlanningJobPlacements();
+        if (jobPlacements.isEmpty()) {
+            return;
+        }
+        Map<Feeder, Nozzle> feeds = new LinkedHashMap<>();
+        for (PlannedPlacement plannedPlacement : planner.plan(head, jobPlacements, partIndex)) {
+            Feeder feeder;
+            try {
+                feeder = partIndex.findFeeder(plannedPlacement.jobPlacement.placement.getPart());
+            }
+            catch (Exception e) {
                 continue;
             }
-            jobPlacement.status = Status.Processing;
-            plannedPlacements.add(new PlannedPlacement(nozzle, jobPlacement));
+            if (feeder.isNozzleRequiredToFeed() || prefedFeeders.contains(feeder)) {
+                continue;
+            }
+            feeds.putIfAbsent(feeder, plannedPlacement.nozzle);
         }
+        if (feeds.isEmpty()) {
+            return;
+        }
+        pendingPrefeed = getPrefeedExecutor().submit(() -> {
+            Set<Feeder> fed = new HashSet<>();
+            for (Entry<Feeder, Nozzle> entry : feeds.entrySet()) {
+                Feeder feeder = entry.getKey();
+                try {
+                    Logger.debug("Prefeed {} from {} for {}.",
+                            new Object[] {feeder.getPart(), feeder, entry.getValue()});
+                    feeder.feed(entry.getValue());
+                    fed.add(feeder);
+                }
+                catch (Exception e) {
+                    Logger.warn("Prefeed {} from {} failed: {}", feeder.getPart().getId(),
+                            feeder.getName(), e.getMessage());
+                }
+            }
+            return fed;
+        });
+    }
 
-        Logger.debug("Planned placements {}", plannedPlacements);
+    /**
+     * Wait for the feeds started by doPrefeed(), if any, and add the feeders that were fed to
+     * prefedFeeders.
+     */
+    protected void awaitPrefeed() {
+        if (pendingPrefeed == null) {
+            return;
+        }
+        try {
+            prefedFeeders.addAll(pendingPrefeed.get());
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException e) {
+            Logger.warn("Prefeed failed: {}", e.getCause().getMessage());
+        }
+        finally {
+            pendingPrefeed = null;
+        }
+    }
+
+    /**
+     * Undo the prefeeds whose parts were not used, such as when the job is aborted. A feeder that
+     * isFeedCounted() has its count set back so its next feed presents the same part again.
+     * Any other feeder has already advanced, which can only be reported.
+     */
+    protected void rollbackPrefeed() {
+        for (Feeder feeder : prefedFeeders) {
+            if (feeder.isFeedCounted() && feeder.getFeedCount() > 0) {
+                feeder.setFeedCount(feeder.getFeedCount() - 1);
+                Logger.info("Set {} back to feed count {}, its prefed part was not used.",
+                        feeder.getName(), feeder.getFeedCount());
+                if (journal != null) {
+                    try {
+                        journal.feeder(feeder);
+                    }
+                    catch (Exception e) {
+                        Logger.warn("Unable to journal feed count of {}: {}", feeder.getName(),
+                                e.getMessage());
+                    }
+                }
+            }
+            else {
+                Logger.warn("Feeder {} was fed ahead for a placement that was not made and has a "
+                        + "part waiting.", feeder.getName());
+            }
+        }
+        prefedFeeders.clear();
     }
 
     protected void doChangeNozzleTip() throws Exception {
@@ -496,7 +882,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             fireTextStatus("Changing nozzle tip on nozzle %s.", nozzle.getId());
 
             // Otherwise find a compatible tip and load it
-            NozzleTip nozzleTip = findNozzleTip(nozzle, part);
+            NozzleTip nozzleTip = partIndex.findNozzleTip(nozzle, part);
             Logger.debug("Change nozzle tip on {} from {} to {}",
                     new Object[] {nozzle, nozzle.getNozzleTip(), nozzleTip});
             nozzle.unloadNozzleTip();
@@ -529,6 +915,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
      * https://imgur.com/a/63Y1t
      */
     protected void doFeedAndPick() throws Exception {
+        awaitPrefeed();
         for (PlannedPlacement plannedPlacement : plannedPlacements) {
             if (plannedPlacement.stepComplete) {
                 continue;
@@ -545,7 +932,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                     // Find a compatible, enabled feeder
                     Feeder feeder;
                     try {
-                        feeder = findFeeder(machine, part);
+                        feeder = partIndex.findFeeder(part);
                     }
                     catch (Exception e) {
                         if (lastError != null) {
@@ -561,6 +948,13 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                     }
                     plannedPlacement.feeder = feeder;
 
+                    // A part was fed ahead of time, use it.
+                    if (prefedFeeders.remove(feeder)) {
+                        Logger.debug("Using prefed {} from {} with {}.",
+                                new Object[] {part, feeder, nozzle});
+                        break;
+                    }
+
                     // Feed the part
                     try {
                         // Try to feed the part. If it fails, retry the specified number of times
@@ -587,6 +981,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
                         // more valid feeders the findFeeder() call above will throw and exit the
                         // loop.
                         feeder.setEnabled(false);
+                        partIndex.invalidateFeeders();
                         lastErrorFeeder = feeder;
                         lastError = e;
                     }
@@ -609,7 +1004,7 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             nozzle.pick(part);
 
             // Retract
-            nozzle.moveToSafeZ();
+            MovableUtils.moveToClearanceZ(nozzle);
 
             Logger.debug("Pick {} from {} with {}", part, feeder, nozzle);
 
@@ -620,10 +1015,16 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             plannedPlacement.stepComplete = true;
         }
 
+        if (prefeed) {
+            doPrefeed();
+        }
+
         clearStepComplete();
     }
 
     protected void doAlign() throws Exception {
+        doMultiNozzleAlign();
+
         for (PlannedPlacement plannedPlacement : plannedPlacements) {
             if (plannedPlacement.stepComplete) {
                 continue;
@@ -634,12 +1035,23 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             Part part = placement.getPart();
             fireTextStatus("Aligning %s for %s.", part.getId(), placement.getId());
 
-            PartAlignment partAlignment = findPartAligner(machine, part);
+            PartAlignment partAlignment = partIndex.findPartAligner(part);
 
             // Check if there is a fiducial override for the board location and if so, use it.
             BoardLocation boardLocation = getFiducialCompensatedBoardLocation(jobPlacement.boardLocation);
             
-            if(partAlignment!=null) {
+            plannedPlacement.pendingAlignment = null;
+            plannedPlacement.realign = false;
+            if (partAlignment != null && asyncAlignment
+                    && partAlignment instanceof ReferenceBottomVision) {
+                ReferenceBottomVision bottomVision = (ReferenceBottomVision) partAlignment;
+                plannedPlacement.alignmentOffsets = null;
+                plannedPlacement.pendingAlignment = VisionUtils.withPartAlignmentScripts(part,
+                        nozzle, () -> bottomVision.findOffsetsAsync(part, boardLocation,
+                                placement.getLocation(), nozzle, getAlignmentExecutor()));
+                Logger.debug("Align {} with {} in the background", part, nozzle);
+            }
+            else if(partAlignment!=null) {
                 plannedPlacement.alignmentOffsets = VisionUtils.findPartAlignmentOffsets(
                         partAlignment,
                         part,
@@ -677,6 +1089,8 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             // Check if there is a fiducial override for the board location and if so, use it.
             boardLocation = getFiducialCompensatedBoardLocation(boardLocation);
 
+            awaitAlignment(plannedPlacement, boardLocation);
+
             Location placementLocation =
                     Utils2D.calculateBoardPlacementLocation(boardLocation, placement.getLocation());
 
@@ -734,25 +1148,28 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
             nozzle.place();
 
             // Retract
-            nozzle.moveToSafeZ();
+            MovableUtils.moveToClearanceZ(nozzle);
 
             // Mark the placement as finished
             jobPlacement.status = Status.Complete;
             
             // Mark the placement as "placed"
             boardLocation.setPlaced(jobPlacement.placement.getId(), true);
+            journalPlaced(plannedPlacement, jobPlacement.boardLocation);
 
             plannedPlacement.stepComplete = true;
 
-            HashMap<String, Object> params = new HashMap<>();
-            params.put("job", job);
-            params.put("jobProcessor", this);
-            params.put("part", part);
-            params.put("nozzle", nozzle);
-            params.put("placement", placement);
-            params.put("boardLocation", boardLocation);
-            params.put("placementLocation", placementLocation);
-            Configuration.get().getScripting().on("Job.Placement.Complete", params);
+            if (Configuration.get().getScripting().hasHandlers("Job.Placement.Complete")) {
+                HashMap<String, Object> params = new HashMap<>();
+                params.put("job", job);
+                params.put("jobProcessor", this);
+                params.put("part", part);
+                params.put("nozzle", nozzle);
+                params.put("placement", placement);
+                params.put("boardLocation", boardLocation);
+                params.put("placementLocation", placementLocation);
+                Configuration.get().getScripting().on("Job.Placement.Complete", params);
+            }
             
             Logger.debug("Place {} with {}", part, nozzle.getName());
         }
@@ -760,9 +1177,126 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         clearStepComplete();
     }
 
+    /**
+     * If bottom vision is set to align several nozzles from one frame, align every part it
+     * handles that way first and mark those placements complete, leaving the rest for doAlign()
+     * to align one at a time.
+     */
+    protected void doMultiNozzleAlign() throws Exception {
+        ReferenceBottomVision bottomVision = null;
+        Map<Nozzle, Part> parts = new LinkedHashMap<>();
+        for (PlannedPlacement plannedPlacement : plannedPlacements) {
+            if (plannedPlacement.stepComplete) {
+                continue;
+            }
+            Part part = plannedPlacement.jobPlacement.placement.getPart();
+            PartAlignment partAlignment = partIndex.findPartAligner(part);
+            if (!(partAlignment instanceof ReferenceBottomVision)
+                    || !((ReferenceBottomVision) partAlignment).isMultiNozzle()
+                    || (bottomVision != null && partAlignment != bottomVision)) {
+                continue;
+            }
+            bottomVision = (ReferenceBottomVision) partAlignment;
+            parts.put(plannedPlacement.nozzle, part);
+        }
+        if (parts.size() < 2) {
+            return;
+        }
+
+        ReferenceBottomVision multiNozzleVision = bottomVision;
+        fireTextStatus("Aligning %d parts.", parts.size());
+        Map<Nozzle, PartAlignment.PartAlignmentOffset> offsets =
+                VisionUtils.withPartAlignmentScripts(parts,
+                        () -> multiNozzleVision.findOffsets(parts, getAlignmentExecutor()));
+        for (PlannedPlacement plannedPlacement : plannedPlacements) {
+            PartAlignment.PartAlignmentOffset alignmentOffsets =
+                    offsets.get(plannedPlacement.nozzle);
+            if (plannedPlacement.stepComplete || alignmentOffsets == null) {
+                continue;
+            }
+            plannedPlacement.alignmentOffsets = alignmentOffsets;
+            plannedPlacement.pendingAlignment = null;
+            plannedPlacement.realign = false;
+            plannedPlacement.stepComplete = true;
+            Logger.debug("Aligned {} with {} in a multi-nozzle frame",
+                    plannedPlacement.jobPlacement.placement.getPart(), plannedPlacement.nozzle);
+        }
+    }
+
+    /**
+     * Wait for a background alignment to finish. If it failed, the error is thrown for this
+     * placement and the next attempt aligns again on this thread.
+     */
+    protected void awaitAlignment(PlannedPlacement plannedPlacement, BoardLocation boardLocation)
+            throws Exception {
+        Placement placement = plannedPlacement.jobPlacement.placement;
+        Part part = placement.getPart();
+        if (plannedPlacement.realign) {
+            PartAlignment partAlignment = partIndex.findPartAligner(part);
+            plannedPlacement.alignmentOffsets = VisionUtils.findPartAlignmentOffsets(
+                    partAlignment, part, boardLocation, placement.getLocation(),
+                    plannedPlacement.nozzle);
+            plannedPlacement.realign = false;
+            return;
+        }
+        Future<PartAlignment.PartAlignmentOffset> pendingAlignment =
+                plannedPlacement.pendingAlignment;
+        if (pendingAlignment == null) {
+            return;
+        }
+        plannedPlacement.pendingAlignment = null;
+        try {
+            plannedPlacement.alignmentOffsets = pendingAlignment.get();
+        }
+        catch (ExecutionException e) {
+            plannedPlacement.realign = true;
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw new Exception(cause);
+        }
+    }
+
+    private synchronized ExecutorService getPrefeedExecutor() {
+        if (prefeedExecutor == null) {
+            prefeedExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "Prefeed");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return prefeedExecutor;
+    }
+
+    private synchronized ExecutorService getAlignmentExecutor() {
+        if (alignmentExecutor == null) {
+            alignmentExecutor =
+                    Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                        Thread thread = new Thread(r, "Alignment");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+        return alignmentExecutor;
+    }
+
     protected void doCleanup() throws Exception {
         fireTextStatus("Cleaning up.");
 
+        // Let any feeds in progress finish before moving the machine.
+        awaitPrefeed();
+        synchronized (this) {
+            if (alignmentExecutor != null) {
+                alignmentExecutor.shutdownNow();
+                alignmentExecutor = null;
+            }
+            if (prefeedExecutor != null) {
+                prefeedExecutor.shutdown();
+                prefeedExecutor = null;
+            }
+        }
+
         // Safe Z the machine
         head.moveToSafeZ();
         
@@ -780,12 +1314,34 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         double dtSec = (System.currentTimeMillis() - startTime)/1000.0;
         DecimalFormat df = new DecimalFormat("###,###.0");
         
+        rollbackPrefeed();
+        closeJournal();
+        if (partIndex != null) {
+            partIndex.dispose();
+        }
+        machine.removeListener(fiducialCheckInvalidator);
+        Logger.debug("Fiducial check cache: {}", fiducialCheckCache);
+        for (Nozzle nozzle : head.getNozzles()) {
+            if (nozzle instanceof ReferenceNozzle
+                    && !((ReferenceNozzle) nozzle).getVacuumSettleStatistics().isEmpty()) {
+                Logger.debug("{} vacuum settle times:\n{}", nozzle.getName(),
+                        ((ReferenceNozzle) nozzle).getVacuumSettleStatistics());
+            }
+        }
+
         Logger.info("Job finished {} parts in {} sec. This is {} pph", totalPartsPlaced, df.format(dtSec), df.format(totalPartsPlaced / (dtSec / 3600.0)));
         
         HashMap<String, Object> params = new HashMap<>();
         params.put("job", job);
         params.put("jobProcessor", this);
         Configuration.get().getScripting().on("Job.Finished", params);
+        Collection<Scripting.EventStatistics> eventStatistics =
+                Configuration.get().getScripting().getEventStatistics().values();
+        if (!eventStatistics.isEmpty()) {
+            Logger.debug("Script event times since startup:\n{}", eventStatistics.stream()
+                    .map(Object::toString)
+                    .collect(Collectors.joining("\n")));
+        }
         
         fireTextStatus("Job finished - placed %s parts in %s sec. (%s CPH)", totalPartsPlaced, df.format(dtSec), df.format(totalPartsPlaced / (dtSec / 3600.0)));
     }
@@ -840,6 +1396,93 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         this.parkWhenComplete = parkWhenComplete;
     }
     
+    public boolean isOptimizePlacementOrder() {
+        return optimizePlacementOrder;
+    }
+
+    public void setOptimizePlacementOrder(boolean optimizePlacementOrder) {
+        this.optimizePlacementOrder = optimizePlacementOrder;
+    }
+
+    public long getOptimizePlacementOrderTimeMs() {
+        return optimizePlacementOrderTimeMs;
+    }
+
+    public void setOptimizePlacementOrderTimeMs(long optimizePlacementOrderTimeMs) {
+        this.optimizePlacementOrderTimeMs = optimizePlacementOrderTimeMs;
+    }
+
+    public boolean isPrefeed() {
+        return prefeed;
+    }
+
+    public void setPrefeed(boolean prefeed) {
+        this.prefeed = prefeed;
+    }
+
+    public boolean isAsyncAlignment() {
+        return asyncAlignment;
+    }
+
+    public void setAsyncAlignment(boolean asyncAlignment) {
+        this.asyncAlignment = asyncAlignment;
+    }
+
+    public boolean isJournalProgress() {
+        return journalProgress;
+    }
+
+    public void setJournalProgress(boolean journalProgress) {
+        this.journalProgress = journalProgress;
+    }
+
+    public long getJournalSyncIntervalMs() {
+        return journalSyncIntervalMs;
+    }
+
+    public void setJournalSyncIntervalMs(long journalSyncIntervalMs) {
+        this.journalSyncIntervalMs = journalSyncIntervalMs;
+    }
+
+    /**
+     * The placement-level fiducial checks of the current job, or null if no job has started.
+     */
+    public FiducialCheckCache getFiducialCheckCache() {
+        return fiducialCheckCache;
+    }
+
+    public FreshnessPolicy getFiducialCheckFreshness() {
+        return fiducialCheckFreshness;
+    }
+
+    public void setFiducialCheckFreshness(FreshnessPolicy fiducialCheckFreshness) {
+        this.fiducialCheckFreshness = fiducialCheckFreshness;
+    }
+
+    public int getFiducialCheckMaxPlacements() {
+        return fiducialCheckMaxPlacements;
+    }
+
+    public void setFiducialCheckMaxPlacements(int fiducialCheckMaxPlacements) {
+        this.fiducialCheckMaxPlacements = fiducialCheckMaxPlacements;
+    }
+
+    public long getFiducialCheckMaxAgeMs() {
+        return fiducialCheckMaxAgeMs;
+    }
+
+    public void setFiducialCheckMaxAgeMs(long fiducialCheckMaxAgeMs) {
+        this.fiducialCheckMaxAgeMs = fiducialCheckMaxAgeMs;
+    }
+
+    public PnpJobPlanner getPlanner() {
+        return planner;
+    }
+
+    public void setPlanner(PnpJobPlanner planner) {
+        this.planner = planner;
+    }
+
     public List<JobPlacement> getJobPlacementsById(String id) { 
         return jobPlacements.stream().filter((jobPlacement) -> {
             return jobPlacement.toString() == id;
@@ -852,34 +1495,6 @@ public class ReferencePnpJobProcessor extends AbstractPnpJobProcessor {
         }).collect(Collectors.toList());
     }
 
-    // Sort a List<JobPlacement> by the number of nulls it contains in ascending order.
-    Comparator<List<JobPlacement>> byFewestNulls = (a, b) -> {
-        return Collections.frequency(a, null) - Collections.frequency(b, null);
-    };
-
-    // Sort a List<JobPlacement> by the number of nozzle changes it will require in
-    // descending order.
-    Comparator<List<JobPlacement>> byFewestNozzleChanges = (a, b) -> {
-        int countA = 0, countB = 0;
-        for (int i = 0; i < head.getNozzles().size(); i++) {
-            Nozzle nozzle = head.getNozzles().get(i);
-            JobPlacement jpA = a.get(i);
-            JobPlacement jpB = b.get(i);
-            if (nozzle.getNozzleTip() == null) {
-                countA++;
-                countB++;
-                continue;
-            }
-            if (jpA != null && !nozzle.getNozzleTip().canHandle(jpA.placement.getPart())) {
-                countA++;
-            }
-            if (jpB != null && !nozzle.getNozzleTip().canHandle(jpB.placement.getPart())) {
-                countB++;
-            }
-        }
-        return countA - countB;
-    };
-    
     BoardLocation getFiducialCompensatedBoardLocation(BoardLocation boardLocation) {
         // Check if there is a fiducial override for the board location and if so, use it.
         if (boardLocationFiducialOverrides.containsKey(boardLocation)) {
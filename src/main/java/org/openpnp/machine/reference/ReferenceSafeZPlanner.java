@@ -0,0 +1,312 @@
+package org.openpnp.machine.reference;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.swing.Action;
+import javax.swing.Icon;
+
+import org.openpnp.gui.support.PropertySheetWizardAdapter;
+import org.openpnp.machine.reference.wizards.ReferenceSafeZPlannerConfigurationWizard;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.HeadMountable;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.PropertySheetHolder;
+import org.openpnp.spi.SafeZPlanner;
+import org.pmw.tinylog.Logger;
+import org.simpleframework.xml.Attribute;
+import org.simpleframework.xml.Element;
+import org.simpleframework.xml.ElementList;
+
+/**
+ * A SafeZPlanner that raises the nozzles only as far as needed to clear the obstacles they pass
+ * over. The machine's obstacles are described by a list of rectangular regions in machine
+ * coordinates, each with the Z of the highest thing inside it, such as a feeder bank or the
+ * board conveyor. A nozzle moving over regions only has to clear the highest of them by the
+ * height of the part it is carrying plus the clearance, and never goes above its safe Z. Any
+ * part of a move that crosses an area no region covers goes at full safe Z.
+ *
+ * This means a move between two points in the same region, such as two pockets of a tray,
+ * often needs no Z move at all, and when the destination Z is above the clearance Z the move
+ * to it is made in one combined XYZ move.
+ *
+ * Z is assumed to increase upwards. Cameras, actuators and paste dispensers are left where they
+ * are, since whatever lowered them raises them again when it is done, and are moved to their
+ * safe Z only when they are the HeadMountable being moved.
+ *
+ * When disabled, moves go to full safe Z as they always have.
+ */
+public class ReferenceSafeZPlanner implements SafeZPlanner {
+    @Attribute(required = false)
+    protected boolean enabled = false;
+
+    /**
+     * How far above an obstacle the bottom of a part is kept.
+     */
+    @Element(required = false)
+    protected Length clearance = new Length(1, LengthUnit.Millimeters);
+
+    @ElementList(required = false)
+    protected List<Region> regions = new ArrayList<>();
+
+    @Override
+    public void moveToLocationAtSafeZ(HeadMountable hm, Location location, double speed)
+            throws Exception {
+        Head head = hm.getHead();
+        if (!enabled) {
+            head.moveToSafeZ(speed);
+            hm.moveTo(location.derive(null, null, Double.NaN, null), speed);
+            hm.moveTo(location, speed);
+            return;
+        }
+
+        Location from = hm.getLocation().convertToUnits(location.getUnits());
+        double dx = Double.isNaN(location.getX()) ? 0 : location.getX() - from.getX();
+        double dy = Double.isNaN(location.getY()) ? 0 : location.getY() - from.getY();
+
+        // Every nozzle on the head travels the same XY distance, each along its own path.
+        double hmClearanceZ = Double.NaN;
+        for (Nozzle nozzle : head.getNozzles()) {
+            double z = raise(nozzle, dx, dy, speed);
+            if (nozzle == hm) {
+                hmClearanceZ = z;
+            }
+        }
+        if (!(hm instanceof Nozzle)) {
+            hm.moveToSafeZ(speed);
+        }
+
+        if (!Double.isNaN(hmClearanceZ) && !Double.isNaN(location.getZ())
+                && location.getZ() >= hmClearanceZ) {
+            // The whole move stays above the clearance, so do it in one.
+            hm.moveTo(location, speed);
+            return;
+        }
+        hm.moveTo(location.derive(null, null, Double.NaN, null), speed);
+        hm.moveTo(location, speed);
+    }
+
+    @Override
+    public void moveToClearanceZ(HeadMountable hm, double speed) throws Exception {
+        if (!enabled || !(hm instanceof Nozzle)) {
+            hm.moveToSafeZ(speed);
+            return;
+        }
+        raise((Nozzle) hm, 0, 0, speed);
+    }
+
+    /**
+     * Raise the nozzle to its clearance Z for a move of dx, dy, if it is not already above it.
+     *
+     * @return The clearance Z in the units of the nozzle's location, or NaN if the nozzle was
+     *         moved to its safe Z.
+     */
+    protected double raise(Nozzle nozzle, double dx, double dy, double speed) throws Exception {
+        Location from = nozzle.getLocation();
+        Location to = from.add(new Location(from.getUnits(), dx, dy, 0, 0));
+        double z = getClearanceZ(nozzle, from, to);
+        if (Double.isNaN(z)) {
+            nozzle.moveToSafeZ(speed);
+            return Double.NaN;
+        }
+        if (from.getZ() < z) {
+            Logger.debug("{} clearance Z {} for move of {}, {}", nozzle.getName(), z, dx, dy);
+            nozzle.moveTo(new Location(from.getUnits(), Double.NaN, Double.NaN, z, Double.NaN),
+                    speed);
+        }
+        return z;
+    }
+
+    /**
+     * Get the lowest Z at which the nozzle, with the part it is carrying, clears every obstacle
+     * between from and to.
+     *
+     * @return The Z in the units of from, or NaN if the nozzle must go to its safe Z.
+     */
+    public double getClearanceZ(Nozzle nozzle, Location from, Location to) {
+        // Without a known safe Z there is nothing to limit the clearance against.
+        if (!(nozzle instanceof ReferenceNozzle)) {
+            return Double.NaN;
+        }
+        double obstacleZ = getObstacleZ(from, to);
+        if (Double.isNaN(obstacleZ)) {
+            return Double.NaN;
+        }
+        LengthUnit units = from.getUnits();
+        double z = obstacleZ + clearance.convertToUnits(units).getValue();
+        if (nozzle.getPart() != null) {
+            z += nozzle.getPart().getHeight().convertToUnits(units).getValue();
+        }
+        double safeZ = ((ReferenceNozzle) nozzle).getSafeZ().convertToUnits(units).getValue();
+        if (z >= safeZ) {
+            return Double.NaN;
+        }
+        return z;
+    }
+
+    /**
+     * Get the Z of the highest region that the XY segment from, to passes over.
+     *
+     * @return The Z in the units of from, or NaN if any part of the segment is outside every
+     *         region.
+     */
+    public double getObstacleZ(Location from, Location to) {
+        LengthUnit units = from.getUnits();
+        to = to.convertToUnits(units);
+        List<double[]> spans = new ArrayList<>();
+        double obstacleZ = Double.NEGATIVE_INFINITY;
+        for (Region region : regions) {
+            double[] span = region.clip(from, to);
+            if (span != null) {
+                spans.add(span);
+                obstacleZ = Math.max(obstacleZ,
+                        region.getHeight().convertToUnits(units).getValue());
+            }
+        }
+        // The spans must cover the whole segment.
+        spans.sort(Comparator.comparingDouble(span -> span[0]));
+        double covered = 0;
+        for (double[] span : spans) {
+            if (span[0] > covered + 1e-9) {
+                break;
+            }
+            covered = Math.max(covered, span[1]);
+        }
+        if (spans.isEmpty() || covered < 1 - 1e-9) {
+            return Double.NaN;
+        }
+        return obstacleZ;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Length getClearance() {
+        return clearance;
+    }
+
+    public void setClearance(Length clearance) {
+        this.clearance = clearance;
+    }
+
+    public List<Region> getRegions() {
+        return regions;
+    }
+
+    @Override
+    public String getPropertySheetHolderTitle() {
+        return "Safe Z Planner";
+    }
+
+    @Override
+    public PropertySheetHolder[] getChildPropertySheetHolders() {
+        return null;
+    }
+
+    @Override
+    public PropertySheet[] getPropertySheets() {
+        return new PropertySheet[] {new PropertySheetWizardAdapter(
+                new ReferenceSafeZPlannerConfigurationWizard(this))};
+    }
+
+    @Override
+    public Action[] getPropertySheetHolderActions() {
+        return null;
+    }
+
+    @Override
+    public Icon getPropertySheetHolderIcon() {
+        return null;
+    }
+
+    /**
+     * An axis aligned rectangle on the machine and the Z of the highest obstacle inside it.
+     */
+    public static class Region {
+        @Attribute(required = false)
+        protected String name;
+
+        @Element
+        protected Location corner1 = new Location(LengthUnit.Millimeters);
+
+        @Element
+        protected Location corner2 = new Location(LengthUnit.Millimeters);
+
+        @Element
+        protected Length height = new Length(0, LengthUnit.Millimeters);
+
+        public Region() {
+
+        }
+
+        public Region(String name, Location corner1, Location corner2, Length height) {
+            this.name = name;
+            this.corner1 = corner1;
+            this.corner2 = corner2;
+            this.height = height;
+        }
+
+        /**
+         * Clip the XY segment from, to against this region.
+         *
+         * @return The start and end of the part of the segment inside the region as fractions of
+         *         its length, or null if it doesn't pass through the region.
+         */
+        double[] clip(Location from, Location to) {
+            Location c1 = corner1.convertToUnits(from.getUnits());
+            Location c2 = corner2.convertToUnits(from.getUnits());
+            double[] min = {Math.min(c1.getX(), c2.getX()), Math.min(c1.getY(), c2.getY())};
+            double[] max = {Math.max(c1.getX(), c2.getX()), Math.max(c1.getY(), c2.getY())};
+            double[] p = {from.getX(), from.getY()};
+            double[] d = {to.getX() - from.getX(), to.getY() - from.getY()};
+            double t0 = 0;
+            double t1 = 1;
+            for (int axis = 0; axis < 2; axis++) {
+                if (d[axis] == 0) {
+                    if (p[axis] < min[axis] || p[axis] > max[axis]) {
+                        return null;
+                    }
+                    continue;
+                }
+                double a = (min[axis] - p[axis]) / d[axis];
+                double b = (max[axis] - p[axis]) / d[axis];
+                t0 = Math.max(t0, Math.min(a, b));
+                t1 = Math.min(t1, Math.max(a, b));
+                if (t0 > t1) {
+                    return null;
+                }
+            }
+            return new double[] {t0, t1};
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Location getCorner1() {
+            return corner1;
+        }
+
+        public Location getCorner2() {
+            return corner2;
+        }
+
+        public Length getHeight() {
+            return height;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%s, %s, %s)", name, corner1, corner2, height);
+        }
+    }
+}
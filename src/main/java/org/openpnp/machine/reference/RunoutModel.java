@@ -0,0 +1,257 @@
+package org.openpnp.machine.reference;
+
+import java.util.List;
+
+import org.openpnp.machine.reference.ReferenceNozzleTip.Calibration.CalibrationOffset;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.simpleframework.xml.Attribute;
+import org.simpleframework.xml.ElementArray;
+
+/**
+ * The runout of a nozzle tip as a function of the nozzle's angle, fitted to measurements taken
+ * at a few angles. A tip that is off the axis of the nozzle traces an eccentric circle as the
+ * nozzle turns, which seen through a camera that is slightly skewed or scaled becomes an
+ * ellipse, so the offsets are modelled as
+ *
+ * x = centerX + cosX * cos(angle) + sinX * sin(angle)
+ * y = centerY + cosY * cos(angle) + sinY * sin(angle)
+ *
+ * fitted by least squares. Runout that is not a clean ellipse, such as from a bent tip, can
+ * additionally be given as the measured error of the fit at evenly spaced angles, which is
+ * interpolated. Either way getOffset() is a constant time calculation.
+ */
+public class RunoutModel {
+    @Attribute
+    private LengthUnit units;
+
+    @Attribute
+    private double centerX;
+
+    @Attribute
+    private double cosX;
+
+    @Attribute
+    private double sinX;
+
+    @Attribute
+    private double centerY;
+
+    @Attribute
+    private double cosY;
+
+    @Attribute
+    private double sinY;
+
+    /**
+     * The nozzle the tip was on when it was measured.
+     */
+    @Attribute(required = false)
+    private String nozzleId;
+
+    /**
+     * The spacing of the residuals, in degrees, starting at 0.
+     */
+    @Attribute(required = false)
+    private double residualIncrement;
+
+    @ElementArray(required = false)
+    private double[] residualX;
+
+    @ElementArray(required = false)
+    private double[] residualY;
+
+    public RunoutModel() {
+
+    }
+
+    /**
+     * Fit the model to the given measurements.
+     *
+     * @throws Exception if there are fewer than three different angles to fit to.
+     */
+    public static RunoutModel fit(List<CalibrationOffset> offsets) throws Exception {
+        if (offsets.isEmpty()) {
+            throw new Exception("No runout measurements to fit.");
+        }
+        RunoutModel model = new RunoutModel();
+        model.units = offsets.get(0).offset.getUnits();
+
+        // The normal equations of the least squares fit. X and Y share the same matrix.
+        double[][] a = new double[3][3];
+        double[] bx = new double[3];
+        double[] by = new double[3];
+        for (CalibrationOffset offset : offsets) {
+            Location location = offset.offset.convertToUnits(model.units);
+            double[] row = terms(offset.angle);
+            for (int i = 0; i < 3; i++) {
+                for (int j = 0; j < 3; j++) {
+                    a[i][j] += row[i] * row[j];
+                }
+                bx[i] += row[i] * location.getX();
+                by[i] += row[i] * location.getY();
+            }
+        }
+        double[] x = solve(a, bx);
+        double[] y = solve(a, by);
+        if (x == null || y == null) {
+            throw new Exception(
+                    "Runout measurements at " + offsets.size() + " angles can't be fitted.");
+        }
+        model.centerX = x[0];
+        model.cosX = x[1];
+        model.sinX = x[2];
+        model.centerY = y[0];
+        model.cosY = y[1];
+        model.sinY = y[2];
+        return model;
+    }
+
+    /**
+     * Get the offset of the tip at the given angle, in degrees.
+     */
+    public Location getOffset(double angle) {
+        double radians = Math.toRadians(angle);
+        double cos = Math.cos(radians);
+        double sin = Math.sin(radians);
+        double x = centerX + cosX * cos + sinX * sin;
+        double y = centerY + cosY * cos + sinY * sin;
+        if (residualX != null) {
+            angle %= 360;
+            if (angle < 0) {
+                angle += 360;
+            }
+            int count = residualX.length;
+            int i = Math.min((int) (angle / residualIncrement), count - 1);
+            int j = (i + 1) % count;
+            double from = i * residualIncrement;
+            double to = (j == 0) ? 360 : j * residualIncrement;
+            double ratio = (angle - from) / (to - from);
+            x += residualX[i] + (residualX[j] - residualX[i]) * ratio;
+            y += residualY[i] + (residualY[j] - residualY[i]) * ratio;
+        }
+        return new Location(units, x, y, 0, 0);
+    }
+
+    /**
+     * Get the largest distance between the model, without residuals, and the given measurements.
+     */
+    public double getMaxResidual(List<CalibrationOffset> offsets) {
+        double max = 0;
+        for (CalibrationOffset offset : offsets) {
+            Location residual = getResidual(offset);
+            max = Math.max(max, Math.hypot(residual.getX(), residual.getY()));
+        }
+        return max;
+    }
+
+    /**
+     * Make the model go through each of the given measurements exactly, by keeping what the fit
+     * misses and interpolating it between them.
+     *
+     * @param offsets Measurements at every multiple of increment from 0 up to 360, in order.
+     */
+    public void setResiduals(List<CalibrationOffset> offsets, double increment) {
+        residualIncrement = increment;
+        double[] x = new double[offsets.size()];
+        double[] y = new double[offsets.size()];
+        for (int i = 0; i < offsets.size(); i++) {
+            Location residual = getResidual(offsets.get(i));
+            x[i] = residual.getX();
+            y[i] = residual.getY();
+        }
+        residualX = x;
+        residualY = y;
+    }
+
+    /**
+     * Shift the model so that the offset at the given angle is zero, making the offsets relative
+     * to where the tip is at that angle.
+     */
+    public void setReferenceAngle(double angle) {
+        Location offset = getOffset(angle);
+        centerX -= offset.getX();
+        centerY -= offset.getY();
+    }
+
+    public boolean hasResiduals() {
+        return residualX != null;
+    }
+
+    public String getNozzleId() {
+        return nozzleId;
+    }
+
+    public void setNozzleId(String nozzleId) {
+        this.nozzleId = nozzleId;
+    }
+
+    public LengthUnit getUnits() {
+        return units;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("center (%f, %f), x %f cos + %f sin, y %f cos + %f sin %s%s",
+                centerX, centerY, cosX, sinX, cosY, sinY, units,
+                hasResiduals() ? ", with residuals" : "");
+    }
+
+    /**
+     * The difference between a measurement and the model without residuals.
+     */
+    private Location getResidual(CalibrationOffset offset) {
+        double[] row = terms(offset.angle);
+        Location location = offset.offset.convertToUnits(units);
+        double x = location.getX() - (centerX * row[0] + cosX * row[1] + sinX * row[2]);
+        double y = location.getY() - (centerY * row[0] + cosY * row[1] + sinY * row[2]);
+        return new Location(units, x, y, 0, 0);
+    }
+
+    private static double[] terms(double angle) {
+        double radians = Math.toRadians(angle);
+        return new double[] {1, Math.cos(radians), Math.sin(radians)};
+    }
+
+    /**
+     * Solve a 3x3 system by Gaussian elimination with partial pivoting, or return null if it is
+     * singular. The arguments are left unchanged.
+     */
+    private static double[] solve(double[][] a, double[] b) {
+        int n = b.length;
+        double[][] m = new double[n][n + 1];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(a[i], 0, m[i], 0, n);
+            m[i][n] = b[i];
+        }
+        for (int col = 0; col < n; col++) {
+            int pivot = col;
+            for (int row = col + 1; row < n; row++) {
+                if (Math.abs(m[row][col]) > Math.abs(m[pivot][col])) {
+                    pivot = row;
+                }
+            }
+            if (Math.abs(m[pivot][col]) < 1e-9) {
+                return null;
+            }
+            double[] swap = m[col];
+            m[col] = m[pivot];
+            m[pivot] = swap;
+            for (int row = col + 1; row < n; row++) {
+                double factor = m[row][col] / m[col][col];
+                for (int k = col; k <= n; k++) {
+                    m[row][k] -= factor * m[col][k];
+                }
+            }
+        }
+        double[] x = new double[n];
+        for (int row = n - 1; row >= 0; row--) {
+            double sum = m[row][n];
+            for (int k = row + 1; k < n; k++) {
+                sum -= m[row][k] * x[k];
+            }
+            x[row] = sum / m[row][row];
+        }
+        return x;
+    }
+}
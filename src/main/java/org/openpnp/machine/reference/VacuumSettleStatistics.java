@@ -0,0 +1,166 @@
+package org.openpnp.machine.reference;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Histograms of how long the vacuum took to reach the part on level after a pick and the part
+ * off level after a place, by part and by nozzle tip. Used to tune the dwell times and to spot
+ * parts or nozzle tips that are slow to seal.
+ */
+public class VacuumSettleStatistics {
+    private final Map<String, Histogram> pickByPart = new TreeMap<>();
+    private final Map<String, Histogram> pickByNozzleTip = new TreeMap<>();
+    private final Map<String, Histogram> placeByPart = new TreeMap<>();
+    private final Map<String, Histogram> placeByNozzleTip = new TreeMap<>();
+
+    public synchronized void addPick(String partId, String nozzleTipId, long ms,
+            boolean timedOut) {
+        add(pickByPart, partId, ms, timedOut);
+        add(pickByNozzleTip, nozzleTipId, ms, timedOut);
+    }
+
+    public synchronized void addPlace(String partId, String nozzleTipId, long ms,
+            boolean timedOut) {
+        add(placeByPart, partId, ms, timedOut);
+        add(placeByNozzleTip, nozzleTipId, ms, timedOut);
+    }
+
+    public synchronized Histogram getPickByPart(String partId) {
+        return pickByPart.get(partId);
+    }
+
+    public synchronized Histogram getPickByNozzleTip(String nozzleTipId) {
+        return pickByNozzleTip.get(nozzleTipId);
+    }
+
+    public synchronized Histogram getPlaceByPart(String partId) {
+        return placeByPart.get(partId);
+    }
+
+    public synchronized Histogram getPlaceByNozzleTip(String nozzleTipId) {
+        return placeByNozzleTip.get(nozzleTipId);
+    }
+
+    public synchronized boolean isEmpty() {
+        return pickByNozzleTip.isEmpty() && placeByNozzleTip.isEmpty();
+    }
+
+    public synchronized void reset() {
+        pickByPart.clear();
+        pickByNozzleTip.clear();
+        placeByPart.clear();
+        placeByNozzleTip.clear();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        append(sb, "Pick by part", pickByPart);
+        append(sb, "Pick by nozzle tip", pickByNozzleTip);
+        append(sb, "Place by part", placeByPart);
+        append(sb, "Place by nozzle tip", placeByNozzleTip);
+        return sb.toString();
+    }
+
+    private static void add(Map<String, Histogram> histograms, String key, long ms,
+            boolean timedOut) {
+        if (key == null) {
+            return;
+        }
+        Histogram histogram = histograms.get(key);
+        if (histogram == null) {
+            histogram = new Histogram();
+            histograms.put(key, histogram);
+        }
+        histogram.add(ms, timedOut);
+    }
+
+    private static void append(StringBuilder sb, String title, Map<String, Histogram> histograms) {
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            sb.append(String.format("%s %s: %s%n", title, entry.getKey(), entry.getValue()));
+        }
+    }
+
+    /**
+     * Counts of settle times in power of two millisecond buckets: 0, 1, 2-3, 4-7, ... The last
+     * bucket holds everything from 2^(BUCKETS - 2) ms up.
+     */
+    public static class Histogram {
+        public static final int BUCKETS = 16;
+
+        private final long[] counts = new long[BUCKETS];
+        private long count;
+        private long timeouts;
+        private long total;
+        private long max;
+
+        public synchronized void add(long ms, boolean timedOut) {
+            counts[bucket(ms)]++;
+            count++;
+            total += ms;
+            max = Math.max(max, ms);
+            if (timedOut) {
+                timeouts++;
+            }
+        }
+
+        /**
+         * Get the upper bound, in ms, of the bucket holding the given fraction of the samples.
+         * For example, getPercentile(0.95) is a dwell that would have covered 95% of the
+         * recorded settles.
+         */
+        public synchronized long getPercentile(double fraction) {
+            if (count == 0) {
+                return 0;
+            }
+            long target = (long) Math.ceil(fraction * count);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS - 1; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(max, upperBound(i));
+                }
+            }
+            return max;
+        }
+
+        public synchronized long[] getCounts() {
+            return counts.clone();
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        public synchronized long getTimeouts() {
+            return timeouts;
+        }
+
+        public synchronized long getMax() {
+            return max;
+        }
+
+        public synchronized double getAverage() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format(
+                    "count %d, timeouts %d, avg %.1f ms, p50 %d ms, p95 %d ms, max %d ms", count,
+                    timeouts, getAverage(), getPercentile(0.5), getPercentile(0.95), max);
+        }
+
+        static int bucket(long ms) {
+            if (ms <= 0) {
+                return 0;
+            }
+            return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(ms));
+        }
+
+        private static long upperBound(int bucket) {
+            return bucket == 0 ? 0 : (1L << bucket) - 1;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.openpnp.machine.reference.camera;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A small ring buffer of the most recent frames captured by a camera, each stamped with the
+ * System.nanoTime() at which its capture started. A single capture thread puts frames in and any
+ * number of consumers can take the newest frame, optionally waiting for one that was started
+ * after a given time, such as the end of the last move.
+ *
+ * The capture thread can use awaitDemand() in place of sleeping between frames so that it starts
+ * the next frame right away when a consumer is waiting for one.
+ */
+public class FrameBuffer {
+    private final Frame[] frames;
+    private int next;
+    private int size;
+    private int waiting;
+
+    public FrameBuffer(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1.");
+        }
+        frames = new Frame[capacity];
+    }
+
+    public synchronized void put(BufferedImage image, long timestamp) {
+        frames[next] = new Frame(image, timestamp);
+        next = (next + 1) % frames.length;
+        size = Math.min(size + 1, frames.length);
+        notifyAll();
+    }
+
+    /**
+     * Get the newest frame, or null if the buffer is empty.
+     */
+    public synchronized Frame getNewest() {
+        if (size == 0) {
+            return null;
+        }
+        return frames[(next + frames.length - 1) % frames.length];
+    }
+
+    /**
+     * Get the newest frame if it was started at or after the given time, otherwise null.
+     */
+    public synchronized Frame getNewest(long notBefore) {
+        Frame frame = getNewest();
+        if (frame == null || frame.getTimestamp() - notBefore < 0) {
+            return null;
+        }
+        return frame;
+    }
+
+    /**
+     * Wait for a frame that was started at or after the given time and return it. Returns the
+     * newest frame immediately if it is recent enough.
+     *
+     * @return The frame, or null if none arrived within timeoutMs.
+     * @throws InterruptedException
+     */
+    public synchronized Frame await(long notBefore, long timeoutMs) throws InterruptedException {
+        Frame frame = getNewest(notBefore);
+        if (frame != null) {
+            return frame;
+        }
+        long deadline = System.nanoTime() + timeoutMs * 1000000L;
+        waiting++;
+        try {
+            // Wake the capture thread in case it is waiting in awaitDemand().
+            notifyAll();
+            while ((frame = getNewest(notBefore)) == null) {
+                long remainingMs = (deadline - System.nanoTime()) / 1000000L;
+                if (remainingMs <= 0) {
+                    return null;
+                }
+                wait(remainingMs);
+            }
+            return frame;
+        }
+        finally {
+            waiting--;
+        }
+    }
+
+    /**
+     * Called by the capture thread between frames. Waits up to timeoutMs but returns as soon as
+     * a consumer is waiting in await().
+     *
+     * @throws InterruptedException
+     */
+    public synchronized void awaitDemand(long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMs * 1000000L;
+        while (waiting == 0) {
+            long remainingMs = (deadline - System.nanoTime()) / 1000000L;
+            if (remainingMs <= 0) {
+                return;
+            }
+            wait(remainingMs);
+        }
+    }
+
+    /**
+     * Get the buffered frames, newest first.
+     */
+    public synchronized List<Frame> getFrames() {
+        List<Frame> list = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            list.add(frames[(next + frames.length - i) % frames.length]);
+        }
+        return list;
+    }
+
+    public synchronized int getCapacity() {
+        return frames.length;
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = null;
+        }
+        size = 0;
+    }
+
+    public static class Frame {
+        private final BufferedImage image;
+        private final long timestamp;
+
+        public Frame(BufferedImage image, long timestamp) {
+            this.image = image;
+            this.timestamp = timestamp;
+        }
+
+        public BufferedImage getImage() {
+            return image;
+        }
+
+        /**
+         * The System.nanoTime() at which capture of this frame started.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+    }
+}
@@ -166,10 +166,9 @@ public class ImageCamera extends ReferenceCamera implements Runnable {
 
     public void run() {
         while (!Thread.interrupted()) {
-            BufferedImage frame = internalCapture();
-            broadcastCapture(frame);
+            captureFrame();
             try {
-                Thread.sleep(1000 / fps);
+                waitForNextFrame(1000 / fps);
             }
             catch (InterruptedException e) {
                 return;
@@ -0,0 +1,316 @@
+package org.openpnp.machine.reference.camera;
+
+import java.util.Arrays;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * The geometric part of a camera's image transform: lens undistortion, scale, rotation, offset,
+ * deinterlace and flip, combined into a single remap. The map is computed once whenever the
+ * settings or the frame size change, and each frame is then remapped into a destination buffer
+ * that is reused from frame to frame, instead of allocating a new full frame for every step.
+ *
+ * Cropping is not part of the map. It is applied as a view of the source frame with crop() so
+ * that anything that wants to see the cropped frame before the rest of the transform, such as
+ * lens calibration, can.
+ *
+ * Not thread safe. The Mat returned by apply() belongs to the transform and is only valid until
+ * the next call.
+ */
+public class ImageTransform {
+    static {
+        nu.pattern.OpenCV.loadShared();
+        System.loadLibrary(org.opencv.core.Core.NATIVE_LIBRARY_NAME);
+    }
+
+    private Settings settings;
+    private Size size;
+    private Mat map1;
+    private Mat map2;
+    private Mat dst = new Mat();
+
+    /**
+     * Get the center crop of the frame given by the settings, as a view of the frame, or the
+     * frame itself if the settings do not crop.
+     */
+    public static Mat crop(Mat mat, Settings settings) {
+        if (settings.cropWidth == 0 && settings.cropHeight == 0) {
+            return mat;
+        }
+        int cw = (settings.cropWidth != 0) ? settings.cropWidth : (int) mat.size().width;
+        int ch = (settings.cropHeight != 0) ? settings.cropHeight : (int) mat.size().height;
+        Rect roi = new Rect(
+                (int) ((mat.size().width / 2) - (cw / 2)),
+                (int) ((mat.size().height / 2) - (ch / 2)),
+                cw,
+                ch);
+        return new Mat(mat, roi);
+    }
+
+    /**
+     * Apply everything but the crop to an already cropped frame.
+     *
+     * @return The transformed frame, or mat itself if the settings leave it unchanged.
+     */
+    public Mat apply(Mat mat, Settings settings) {
+        if (!settings.isGeometric()) {
+            return mat;
+        }
+        if (!settings.equals(this.settings) || !mat.size().equals(size)) {
+            release();
+            this.settings = settings;
+            this.size = mat.size();
+            computeMaps();
+        }
+        Imgproc.remap(mat, dst, map1, map2, Imgproc.INTER_LINEAR, Imgproc.BORDER_CONSTANT,
+                new Scalar(0));
+        return dst;
+    }
+
+    /**
+     * Release the map and the buffers. The transform can still be used afterwards.
+     */
+    public void release() {
+        if (map1 != null) {
+            map1.release();
+            map2.release();
+            map1 = null;
+            map2 = null;
+        }
+        dst.release();
+        dst = new Mat();
+        settings = null;
+        size = null;
+    }
+
+    /**
+     * Work out, for each pixel of the output, where it comes from in the source by undoing each
+     * step of the transform in reverse order, then pack the result into the fixed point format
+     * remap() is fastest with.
+     */
+    private void computeMaps() {
+        int srcWidth = (int) size.width;
+        int srcHeight = (int) size.height;
+
+        // Sizes after undistort and scale.
+        int scaledWidth = srcWidth;
+        int scaledHeight = srcHeight;
+        if (settings.scaleWidth != 0 && settings.scaleHeight != 0) {
+            scaledWidth = settings.scaleWidth;
+            scaledHeight = settings.scaleHeight;
+        }
+
+        // Size after rotation, and the matrix that takes a rotated point back to the scaled image.
+        int width = scaledWidth;
+        int height = scaledHeight;
+        double[] inverseRotation = null;
+        if (settings.rotation != 0D) {
+            Point center = new Point(scaledWidth / 2D, scaledHeight / 2D);
+            Mat mapMatrix = Imgproc.getRotationMatrix2D(center, settings.rotation, 1.0);
+            Rect bbox = new RotatedRect(center, new Size(scaledWidth, scaledHeight),
+                    settings.rotation).boundingRect();
+            mapMatrix.put(0, 2, mapMatrix.get(0, 2)[0] + bbox.width / 2D - center.x);
+            mapMatrix.put(1, 2, mapMatrix.get(1, 2)[0] + bbox.height / 2D - center.y);
+            Mat inverse = new Mat();
+            Imgproc.invertAffineTransform(mapMatrix, inverse);
+            inverseRotation = new double[6];
+            inverse.get(0, 0, inverseRotation);
+            inverse.release();
+            mapMatrix.release();
+            width = bbox.width;
+            height = bbox.height;
+        }
+
+        float[] undistortX = null;
+        float[] undistortY = null;
+        if (settings.cameraMatrix != null) {
+            Mat cameraMatrix = new Mat(3, 3, CvType.CV_64FC1);
+            cameraMatrix.put(0, 0, settings.cameraMatrix);
+            Mat distortionCoefficients = new Mat(5, 1, CvType.CV_64FC1);
+            distortionCoefficients.put(0, 0, settings.distortionCoefficients);
+            Mat rectification = Mat.eye(3, 3, CvType.CV_32F);
+            Mat undistortMap1 = new Mat();
+            Mat undistortMap2 = new Mat();
+            Imgproc.initUndistortRectifyMap(cameraMatrix, distortionCoefficients, rectification,
+                    cameraMatrix, size, CvType.CV_32FC1, undistortMap1, undistortMap2);
+            undistortX = new float[srcWidth * srcHeight];
+            undistortY = new float[srcWidth * srcHeight];
+            undistortMap1.get(0, 0, undistortX);
+            undistortMap2.get(0, 0, undistortY);
+            undistortMap1.release();
+            undistortMap2.release();
+            rectification.release();
+            distortionCoefficients.release();
+            cameraMatrix.release();
+        }
+
+        float[] mapX = new float[width * height];
+        float[] mapY = new float[width * height];
+        double scaleX = (double) srcWidth / scaledWidth;
+        double scaleY = (double) srcHeight / scaledHeight;
+        int half = height / 2;
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                double x = col;
+                double y = row;
+
+                if (settings.flipX) {
+                    y = height - 1 - y;
+                }
+                if (settings.flipY) {
+                    x = width - 1 - x;
+                }
+
+                if (settings.deinterlace) {
+                    int r = (int) y;
+                    if (r >= half * 2) {
+                        // An odd height leaves the last row with nothing to copy.
+                        x = y = Double.NaN;
+                    }
+                    else {
+                        y = (r % 2 == 0) ? r / 2 : r / 2 + half;
+                    }
+                }
+
+                x -= settings.offsetX;
+                y -= settings.offsetY;
+
+                if (inverseRotation != null) {
+                    double rx = inverseRotation[0] * x + inverseRotation[1] * y
+                            + inverseRotation[2];
+                    double ry = inverseRotation[3] * x + inverseRotation[4] * y
+                            + inverseRotation[5];
+                    x = rx;
+                    y = ry;
+                }
+
+                // The same pixel center alignment resize() uses.
+                x = (x + 0.5) * scaleX - 0.5;
+                y = (y + 0.5) * scaleY - 0.5;
+
+                if (undistortX != null) {
+                    double ux = sample(undistortX, srcWidth, srcHeight, x, y);
+                    double uy = sample(undistortY, srcWidth, srcHeight, x, y);
+                    x = ux;
+                    y = uy;
+                }
+
+                int i = row * width + col;
+                if (Double.isNaN(x) || Double.isNaN(y)) {
+                    // Far enough outside that the border color is all that is sampled.
+                    mapX[i] = mapY[i] = -10;
+                }
+                else {
+                    mapX[i] = (float) x;
+                    mapY[i] = (float) y;
+                }
+            }
+        }
+
+        Mat floatMapX = new Mat(height, width, CvType.CV_32FC1);
+        Mat floatMapY = new Mat(height, width, CvType.CV_32FC1);
+        floatMapX.put(0, 0, mapX);
+        floatMapY.put(0, 0, mapY);
+        map1 = new Mat();
+        map2 = new Mat();
+        Imgproc.convertMaps(floatMapX, floatMapY, map1, map2, CvType.CV_16SC2, false);
+        floatMapX.release();
+        floatMapY.release();
+    }
+
+    /**
+     * Bilinear sample of a single channel float map, or NaN outside of it.
+     */
+    private static double sample(float[] map, int width, int height, double x, double y) {
+        if (!(x > -0.5 && x < width - 0.5 && y > -0.5 && y < height - 0.5)) {
+            return Double.NaN;
+        }
+        x = Math.max(0, Math.min(width - 1, x));
+        y = Math.max(0, Math.min(height - 1, y));
+        int x0 = Math.max(0, Math.min((int) x, width - 2));
+        int y0 = Math.max(0, Math.min((int) y, height - 2));
+        int x1 = Math.min(x0 + 1, width - 1);
+        int y1 = Math.min(y0 + 1, height - 1);
+        double fx = x - x0;
+        double fy = y - y0;
+        double top = map[y0 * width + x0] * (1 - fx) + map[y0 * width + x1] * fx;
+        double bottom = map[y1 * width + x0] * (1 - fx) + map[y1 * width + x1] * fx;
+        return top * (1 - fy) + bottom * fy;
+    }
+
+    /**
+     * The camera settings the transform depends on. Compared by value, so a camera can build
+     * a new one for every frame and the map is only recomputed when something changed.
+     */
+    public static class Settings {
+        private final int cropWidth;
+        private final int cropHeight;
+        private final int scaleWidth;
+        private final int scaleHeight;
+        private final double rotation;
+        private final int offsetX;
+        private final int offsetY;
+        private final boolean deinterlace;
+        private final boolean flipX;
+        private final boolean flipY;
+        private final double[] cameraMatrix;
+        private final double[] distortionCoefficients;
+
+        /**
+         * @param cameraMatrix The 3x3 camera matrix, row major, or null to not undistort.
+         * @param distortionCoefficients The 5 distortion coefficients, or null to not undistort.
+         */
+        public Settings(int cropWidth, int cropHeight, int scaleWidth, int scaleHeight,
+                double rotation, int offsetX, int offsetY, boolean deinterlace, boolean flipX,
+                boolean flipY, double[] cameraMatrix, double[] distortionCoefficients) {
+            this.cropWidth = cropWidth;
+            this.cropHeight = cropHeight;
+            this.scaleWidth = scaleWidth;
+            this.scaleHeight = scaleHeight;
+            this.rotation = rotation;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.deinterlace = deinterlace;
+            this.flipX = flipX;
+            this.flipY = flipY;
+            this.cameraMatrix = cameraMatrix == null ? null : cameraMatrix.clone();
+            this.distortionCoefficients =
+                    distortionCoefficients == null ? null : distortionCoefficients.clone();
+        }
+
+        /**
+         * True if anything other than the crop changes the frame.
+         */
+        boolean isGeometric() {
+            return (scaleWidth != 0 && scaleHeight != 0) || rotation != 0D || offsetX != 0
+                    || offsetY != 0 || deinterlace || flipX || flipY || cameraMatrix != null;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Settings)) {
+                return false;
+            }
+            Settings o = (Settings) obj;
+            return cropWidth == o.cropWidth && cropHeight == o.cropHeight
+                    && scaleWidth == o.scaleWidth && scaleHeight == o.scaleHeight
+                    && Double.compare(rotation, o.rotation) == 0 && offsetX == o.offsetX
+                    && offsetY == o.offsetY && deinterlace == o.deinterlace && flipX == o.flipX
+                    && flipY == o.flipY && Arrays.equals(cameraMatrix, o.cameraMatrix)
+                    && Arrays.equals(distortionCoefficients, o.distortionCoefficients);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new double[] {cropWidth, cropHeight, scaleWidth, scaleHeight,
+                    rotation, offsetX, offsetY}) * 31 + Arrays.hashCode(cameraMatrix);
+        }
+    }
+}
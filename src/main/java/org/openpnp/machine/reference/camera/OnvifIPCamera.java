@@ -134,16 +134,13 @@ public class OnvifIPCamera extends ReferenceCamera implements Runnable {
     public void run() {
         while (!Thread.interrupted()) {
             try {
-                BufferedImage image = internalCapture();
-                if (image != null) {
-                    broadcastCapture(image);
-                }
+                captureFrame();
             }
             catch (Exception e) {
                 e.printStackTrace();
             }
             try {
-                Thread.sleep(1000 / fps);
+                waitForNextFrame(1000 / fps);
             }
             catch (InterruptedException e) {
                 break;
@@ -32,7 +32,6 @@ import org.openpnp.gui.support.Wizard;
 import org.openpnp.machine.reference.ReferenceCamera;
 import org.openpnp.machine.reference.camera.wizards.OpenCvCameraConfigurationWizard;
 import org.openpnp.spi.PropertySheetHolder;
-import org.openpnp.util.OpenCvUtils;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.ElementList;
@@ -60,6 +59,7 @@ public class OpenCvCamera extends ReferenceCamera implements Runnable {
     private List<OpenCvCapturePropertyValue> properties = new ArrayList<>();
 
     private VideoCapture fg = new VideoCapture();
+    private Mat frame = new Mat();
     private Thread thread;
     private boolean dirty = false;
 
@@ -70,20 +70,16 @@ public class OpenCvCamera extends ReferenceCamera implements Runnable {
         if (thread == null) {
             initCamera();
         }
-        Mat mat = new Mat();
         try {
-            if (!fg.read(mat)) {
+            // VideoCapture.read() reuses the Mat's memory when the frame size does not change.
+            if (!fg.read(frame)) {
                 return null;
             }
-            BufferedImage img = OpenCvUtils.toBufferedImage(mat);
-            return transformImage(img);
+            return transformImage(frame);
         }
         catch (Exception e) {
             return null;
         }
-        finally {
-            mat.release();
-        }
     }
 
     @Override
@@ -97,16 +93,13 @@ public class OpenCvCamera extends ReferenceCamera implements Runnable {
     public void run() {
         while (!Thread.interrupted()) {
             try {
-                BufferedImage image = internalCapture();
-                if (image != null) {
-                    broadcastCapture(image);
-                }
+                captureFrame();
             }
             catch (Exception e) {
                 e.printStackTrace();
             }
             try {
-                Thread.sleep(1000 / fps);
+                waitForNextFrame(1000 / fps);
             }
             catch (InterruptedException e) {
                 break;
@@ -191,10 +191,9 @@ public class SimulatedUpCamera extends ReferenceCamera implements Runnable {
 
     public void run() {
         while (!Thread.interrupted()) {
-            BufferedImage frame = internalCapture();
-            broadcastCapture(frame);
+            captureFrame();
             try {
-                Thread.sleep(1000 / fps);
+                waitForNextFrame(1000 / fps);
             }
             catch (InterruptedException e) {
                 return;
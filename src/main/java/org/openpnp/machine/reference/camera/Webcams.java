@@ -104,17 +104,15 @@ public class Webcams extends ReferenceCamera implements Runnable, WebcamImageTra
     public void run() {
         while (!Thread.interrupted()) {
             try {
-                BufferedImage image = internalCapture();
-                if (image == null) {
-                    image = redImage;
+                if (captureFrame() == null) {
+                    broadcastCapture(redImage);
                 }
-                broadcastCapture(image);
             }
             catch (Exception e) {
                 e.printStackTrace();
             }
             try {
-                Thread.sleep(1000 / 30);
+                waitForNextFrame(1000 / 30);
             }
             catch (InterruptedException e) {
                 break;
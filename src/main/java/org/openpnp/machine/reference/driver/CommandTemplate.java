@@ -0,0 +1,137 @@
+package org.openpnp.machine.reference.driver;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A command with variables in the format {Name:Format}, parsed once so that it can be rendered
+ * many times without rescanning the text. Rendering gives the same result as substituting each
+ * variable in the map in turn with String.format: Format is optional and defaults to %s, a null
+ * value replaces the variable with "" and variables that are not in the map are left as they
+ * are.
+ */
+public class CommandTemplate {
+    static final Pattern VARIABLE_PATTERN = Pattern.compile("\\{(\\w+)(?::(.+?))?\\}");
+
+    /**
+     * Matches formats with a single %.Nf conversion and optional literal text around it, such as
+     * X%.4f, which can be rendered without going through Formatter.
+     */
+    private static final Pattern FIXED_FORMAT_PATTERN =
+            Pattern.compile("([^%]*)%\\.(\\d{1,2})f([^%]*)");
+
+    private final String text;
+
+    // literals[i] is the text before variable i, and the last literal is the text after the last
+    // variable.
+    private final String[] literals;
+    private final String[] names;
+    private final String[] formats;
+    private final String[] originals;
+    // Number of decimal places for variables with a simple %.Nf format, or -1, and the literal
+    // text before and after the conversion.
+    private final int[] precisions;
+    private final String[] prefixes;
+    private final String[] suffixes;
+
+    public CommandTemplate(String text) {
+        this.text = text;
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        List<String> formats = new ArrayList<>();
+        List<String> originals = new ArrayList<>();
+        Matcher matcher = VARIABLE_PATTERN.matcher(text);
+        int last = 0;
+        while (matcher.find()) {
+            literals.add(text.substring(last, matcher.start()));
+            names.add(matcher.group(1));
+            formats.add(matcher.group(2) == null ? "%s" : matcher.group(2));
+            originals.add(matcher.group());
+            last = matcher.end();
+        }
+        literals.add(text.substring(last));
+        this.literals = literals.toArray(new String[0]);
+        this.names = names.toArray(new String[0]);
+        this.formats = formats.toArray(new String[0]);
+        this.originals = originals.toArray(new String[0]);
+        this.precisions = new int[this.formats.length];
+        this.prefixes = new String[this.formats.length];
+        this.suffixes = new String[this.formats.length];
+        for (int i = 0; i < this.formats.length; i++) {
+            Matcher m = FIXED_FORMAT_PATTERN.matcher(this.formats[i]);
+            if (m.matches()) {
+                prefixes[i] = m.group(1);
+                precisions[i] = Integer.parseInt(m.group(2));
+                suffixes[i] = m.group(3);
+            }
+            else {
+                precisions[i] = -1;
+            }
+        }
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String render(Map<String, Object> variables) {
+        StringBuilder sb = new StringBuilder(text.length() + 16 * names.length);
+        Formatter formatter = null;
+        for (int i = 0; i < names.length; i++) {
+            sb.append(literals[i]);
+            if (!variables.containsKey(names[i])) {
+                sb.append(originals[i]);
+                continue;
+            }
+            Object value = variables.get(names[i]);
+            if (value == null) {
+                continue;
+            }
+            if (precisions[i] >= 0 && value instanceof Double) {
+                sb.append(prefixes[i]);
+                appendFixed(sb, (Double) value, precisions[i]);
+                sb.append(suffixes[i]);
+            }
+            else if (formats[i].equals("%s")) {
+                sb.append(value);
+            }
+            else {
+                if (formatter == null) {
+                    formatter = new Formatter(sb, (Locale) null);
+                }
+                formatter.format(formats[i], value);
+            }
+        }
+        sb.append(literals[names.length]);
+        return sb.toString();
+    }
+
+    /**
+     * Appends the value formatted the same as String.format("%.Nf", value), which rounds the
+     * shortest decimal representation of the value half up, without parsing a format string.
+     */
+    static void appendFixed(StringBuilder sb, double value, int precision) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            sb.append(String.format((Locale) null, "%." + precision + "f", value));
+            return;
+        }
+        if (Double.compare(value, 0.0) < 0) {
+            sb.append('-');
+            value = -value;
+        }
+        sb.append(new BigDecimal(Double.toString(value)).setScale(precision, RoundingMode.HALF_UP)
+                .toPlainString());
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
@@ -2,11 +2,13 @@ package org.openpnp.machine.reference.driver;
 
 import java.awt.event.ActionEvent;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
@@ -116,7 +118,20 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
             setCommand(text);
         }
 
+        /**
+         * Parsed form of the command text, built when first needed and discarded whenever the
+         * text changes.
+         */
+        private transient CommandTemplate template;
+
+        /**
+         * Compiled form of the command text for commands that are regular expressions.
+         */
+        private transient Pattern pattern;
+
         public void setCommand(String text) {
+            this.template = null;
+            this.pattern = null;
             this.commands.clear();
             if (text != null) {
                 text = text.trim();
@@ -130,6 +145,24 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
             return Joiner.on('\n').join(commands);
         }
 
+        public CommandTemplate getTemplate() {
+            CommandTemplate template = this.template;
+            if (template == null) {
+                template = new CommandTemplate(getCommand());
+                this.template = template;
+            }
+            return template;
+        }
+
+        public Pattern getPattern() {
+            Pattern pattern = this.pattern;
+            if (pattern == null) {
+                pattern = Pattern.compile(getCommand());
+                this.pattern = pattern;
+            }
+            return pattern;
+        }
+
         private Command() {
 
         }
@@ -159,6 +192,22 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
     @Attribute(required = false)
     protected int connectWaitTimeMilliseconds = 3000;
 
+    /**
+     * When enabled, commands are written without waiting for their confirmation as long as the
+     * unconfirmed commands fit in the controller's receive buffer. Confirmations are matched to
+     * commands in the order they were sent. Callers block only at sync points, see
+     * waitForCompletion().
+     */
+    @Attribute(required = false)
+    protected boolean streaming = false;
+
+    /**
+     * Size, in characters, of the controller's receive buffer. The characters of all unconfirmed
+     * commands, including line endings, are kept below this limit when streaming.
+     */
+    @Attribute(required = false)
+    protected int streamingBufferSize = 127;
+
     @Element(required = false)
     protected Location homingFiducialLocation = new Location(LengthUnit.Millimeters);
 
@@ -175,6 +224,8 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
     private boolean disconnectRequested;
     private boolean connected;
     private LinkedBlockingQueue<String> responseQueue = new LinkedBlockingQueue<>();
+    private ArrayDeque<String> inFlightCommands = new ArrayDeque<>();
+    private int inFlightCharacters;
     private Set<Nozzle> pickedNozzles = new HashSet<>();
     private GcodeDriver parent = null;
     
@@ -203,6 +254,8 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         super.connect();
 
         connected = false;
+        inFlightCommands.clear();
+        inFlightCharacters = 0;
         readerThread = new Thread(this);
         readerThread.setDaemon(true);
         readerThread.start();
@@ -252,33 +305,29 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
     public void dispense(ReferencePasteDispenser dispenser,Location startLocation,Location endLocation,long dispenseTimeMilliseconds) throws Exception {
         Logger.debug("dispense({}, {}, {}, {})", new Object[] {dispenser, startLocation, endLocation, dispenseTimeMilliseconds});
 
-        String command = getCommand(null, CommandType.PRE_DISPENSE_COMMAND);
-        command = substituteVariable(command, "DispenseTime", dispenseTimeMilliseconds);
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("DispenseTime", dispenseTimeMilliseconds);
 
-        sendGcode(command);
+        streamGcode(render(null, CommandType.PRE_DISPENSE_COMMAND, variables));
 
         for (ReferenceDriver driver: subDrivers )
         {
             driver.dispense(dispenser,startLocation,endLocation,dispenseTimeMilliseconds);
         }
 
-        command = getCommand(null, CommandType.DISPENSE_COMMAND);
-        command = substituteVariable(command, "DispenseTime", dispenseTimeMilliseconds);
-        sendGcode(command);
+        streamGcode(render(null, CommandType.DISPENSE_COMMAND, variables));
 
-        command = getCommand(null, CommandType.POST_DISPENSE_COMMAND);
-        command = substituteVariable(command, "DispenseTime", dispenseTimeMilliseconds);
-        sendGcode(command);
+        streamGcode(render(null, CommandType.POST_DISPENSE_COMMAND, variables));
     }
 
     @Override
     public void home(ReferenceHead head) throws Exception {
         // Home is sent with an infinite timeout since it's tough to tell how long it will
         // take.
-        String command = getCommand(null, CommandType.HOME_COMMAND);
-        command = substituteVariable(command, "Id", head.getId());
-        command = substituteVariable(command, "Name", head.getName());
-        sendGcode(command, -1);
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("Id", head.getId());
+        variables.put("Name", head.getName());
+        sendGcode(render(null, CommandType.HOME_COMMAND, variables), -1);
 
         for (Axis axis : axes) {
             axis.setCoordinate(axis.getHomeCoordinate());
@@ -314,10 +363,10 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
                 }
             }
 
-            String g92command = getCommand(null, CommandType.POST_VISION_HOME_COMMAND);
-            g92command = substituteVariable(g92command, "X", xHomeCoordinate);
-            g92command = substituteVariable(g92command, "Y", yHomeCoordinate);
-            sendGcode(g92command, -1);
+            variables = new HashMap<>();
+            variables.put("X", xHomeCoordinate);
+            variables.put("Y", yHomeCoordinate);
+            sendGcode(render(null, CommandType.POST_VISION_HOME_COMMAND, variables), -1);
 
         }
     }
@@ -364,6 +413,30 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         return c.getCommand();
     }
 
+    /**
+     * Get the parsed template for the command, or null if there is no such command. The
+     * template is cached on the Command, so rendering it does not reparse the text.
+     */
+    public CommandTemplate getCommandTemplate(HeadMountable hm, CommandType type) {
+        Command c = getCommand(hm, type, true);
+        if (c == null) {
+            return null;
+        }
+        return c.getTemplate();
+    }
+
+    /**
+     * Get the compiled regular expression for the command, or null if there is no such
+     * command. The Pattern is cached on the Command, so it is only compiled once per change.
+     */
+    public Pattern getCommandPattern(HeadMountable hm, CommandType type) {
+        Command c = getCommand(hm, type, true);
+        if (c == null) {
+            return null;
+        }
+        return c.getPattern();
+    }
+
     public void setCommand(HeadMountable hm, CommandType type, String text) {
         Command c = getCommand(hm, type, false);
         if (text == null || text.trim().length() == 0) {
@@ -416,8 +489,12 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         return location;
     }
 
+    /**
+     * Holds the driver's lock from sending the move until it is known to be complete, so that a
+     * command sent from another thread can't take the responses that say it is.
+     */
     @Override
-    public void moveTo(ReferenceHeadMountable hm, Location location, double speed)
+    public synchronized void moveTo(ReferenceHeadMountable hm, Location location, double speed)
             throws Exception {
         // keep copy for calling subdrivers as to not add offset on offset
         Location locationOriginal = location;
@@ -468,11 +545,11 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
                 rotation = rotationAxis.getTransform().toRaw(rotationAxis, hm, rotation);
             }
 
-            String command = getCommand(hm, CommandType.MOVE_TO_COMMAND);
-            command = substituteVariable(command, "Id", hm.getId());
-            command = substituteVariable(command, "Name", hm.getName());
-            command = substituteVariable(command, "FeedRate", maxFeedRate * speed);
-            command = substituteVariable(command, "BacklashFeedRate", maxFeedRate * speed * backlashFeedRateFactor);
+            Map<String, Object> variables = new HashMap<>();
+            variables.put("Id", hm.getId());
+            variables.put("Name", hm.getName());
+            variables.put("FeedRate", maxFeedRate * speed);
+            variables.put("BacklashFeedRate", maxFeedRate * speed * backlashFeedRateFactor);
 
             /**
              * NSF gets applied to X and is multiplied by Y
@@ -502,54 +579,55 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
             }
             
             if (includeX) {
-                command = substituteVariable(command, "X", x + nonSquarenessFactor * y);
-                command = substituteVariable(command, "BacklashOffsetX", x + backlashOffsetX + nonSquarenessFactor * y); // Backlash Compensation
+                variables.put("X", x + nonSquarenessFactor * y);
+                variables.put("BacklashOffsetX", x + backlashOffsetX + nonSquarenessFactor * y); // Backlash Compensation
                 if (xAxis.getPreMoveCommand() != null) {
-                    sendGcode(xAxis.getPreMoveCommand());
+                    streamGcode(xAxis.getPreMoveCommand());
                 }
                 xAxis.setCoordinate(x);
             }
             else {
-                command = substituteVariable(command, "X", null);
-                command = substituteVariable(command, "BacklashOffsetX", null); // Backlash Compensation
+                variables.put("X", null);
+                variables.put("BacklashOffsetX", null); // Backlash Compensation
             }
 
             if (includeY) {
-                command = substituteVariable(command, "Y", y);
-                command = substituteVariable(command, "BacklashOffsetY", y + backlashOffsetY); // Backlash Compensation
+                variables.put("Y", y);
+                variables.put("BacklashOffsetY", y + backlashOffsetY); // Backlash Compensation
                 if (yAxis.getPreMoveCommand() != null) {
-                    sendGcode(yAxis.getPreMoveCommand());
+                    streamGcode(yAxis.getPreMoveCommand());
                 }
             }
             else {
-                command = substituteVariable(command, "Y", null);
-                command = substituteVariable(command, "BacklashOffsetY", null); // Backlash Compensation
+                variables.put("Y", null);
+                variables.put("BacklashOffsetY", null); // Backlash Compensation
             }
 
             if (includeZ) {
-                command = substituteVariable(command, "Z", z);
+                variables.put("Z", z);
                 if (zAxis.getPreMoveCommand() != null) {
-                    sendGcode(zAxis.getPreMoveCommand());
+                    streamGcode(zAxis.getPreMoveCommand());
                 }
             }
             else {
-                command = substituteVariable(command, "Z", null);
+                variables.put("Z", null);
             }
 
             if (includeRotation) {
-                command = substituteVariable(command, "Rotation", rotation);
+                variables.put("Rotation", rotation);
                 if (rotationAxis.getPreMoveCommand() != null) {
-                    sendGcode(rotationAxis.getPreMoveCommand());
+                    streamGcode(rotationAxis.getPreMoveCommand());
                 }
             }
             else {
-                command = substituteVariable(command, "Rotation", null);
+                variables.put("Rotation", null);
             }
 
             // Only give a command when move is necessary
             if (includeX || includeY || includeZ || includeRotation) {
 
-                List<String> responses = sendGcode(command);
+                List<String> responses =
+                        streamGcode(render(hm, CommandType.MOVE_TO_COMMAND, variables));
 
                 /*
                  * If moveToCompleteRegex is specified we need to wait until we match the regex in a
@@ -559,8 +637,12 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
                  * matched we continue. If it's not matched within the timeout we throw an
                  * Exception.
                  */
-                String moveToCompleteRegex = getCommand(hm, CommandType.MOVE_TO_COMPLETE_REGEX);
+                Pattern moveToCompleteRegex =
+                        getCommandPattern(hm, CommandType.MOVE_TO_COMPLETE_REGEX);
                 if (moveToCompleteRegex != null) {
+                    // When streaming the responses are collected as the commands are confirmed,
+                    // so wait for all of them before searching.
+                    responses.addAll(flush(timeoutMilliseconds));
                     if (!containsMatch(responses, moveToCompleteRegex)) {
                         long t = System.currentTimeMillis();
                         boolean done = false;
@@ -598,9 +680,9 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
 
     }
 
-    private boolean containsMatch(List<String> responses, String regex) {
+    private boolean containsMatch(List<String> responses, Pattern regex) {
         for (String response : responses) {
-            if (response.matches(regex)) {
+            if (regex.matcher(response).matches()) {
                 return true;
             }
         }
@@ -611,18 +693,18 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
     public void pick(ReferenceNozzle nozzle) throws Exception {
         pickedNozzles.add(nozzle);
         if (pickedNozzles.size() > 0) {
-            sendGcode(getCommand(nozzle, CommandType.PUMP_ON_COMMAND));
+            streamGcode(getCommand(nozzle, CommandType.PUMP_ON_COMMAND));
         }
 
-        String command = getCommand(nozzle, CommandType.PICK_COMMAND);
-        command = substituteVariable(command, "Id", nozzle.getId());
-        command = substituteVariable(command, "Name", nozzle.getName());
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("Id", nozzle.getId());
+        variables.put("Name", nozzle.getName());
 
         ReferenceNozzleTip nt = nozzle.getNozzleTip();
-        command = substituteVariable(command, "VacuumLevelPartOn", nt.getVacuumLevelPartOn());
-        command = substituteVariable(command, "VacuumLevelPartOff", nt.getVacuumLevelPartOff());
+        variables.put("VacuumLevelPartOn", nt.getVacuumLevelPartOn());
+        variables.put("VacuumLevelPartOff", nt.getVacuumLevelPartOff());
 
-        sendGcode(command);
+        streamGcode(render(nozzle, CommandType.PICK_COMMAND, variables));
 
         for (ReferenceDriver driver : subDrivers) {
             driver.pick(nozzle);
@@ -634,17 +716,17 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
 
         ReferenceNozzleTip nt = nozzle.getNozzleTip();
 
-        String command = getCommand(nozzle, CommandType.PLACE_COMMAND);
-        command = substituteVariable(command, "Id", nozzle.getId());
-        command = substituteVariable(command, "Name", nozzle.getName());
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("Id", nozzle.getId());
+        variables.put("Name", nozzle.getName());
 
-        command = substituteVariable(command, "VacuumLevelPartOn", nt.getVacuumLevelPartOn());
-        command = substituteVariable(command, "VacuumLevelPartOff", nt.getVacuumLevelPartOff());
-        sendGcode(command);
+        variables.put("VacuumLevelPartOn", nt.getVacuumLevelPartOn());
+        variables.put("VacuumLevelPartOff", nt.getVacuumLevelPartOff());
+        streamGcode(render(nozzle, CommandType.PLACE_COMMAND, variables));
 
         pickedNozzles.remove(nozzle);
         if (pickedNozzles.size() < 1) {
-            sendGcode(getCommand(nozzle, CommandType.PUMP_OFF_COMMAND));
+            streamGcode(getCommand(nozzle, CommandType.PUMP_OFF_COMMAND));
         }
 
         for (ReferenceDriver driver : subDrivers) {
@@ -655,14 +737,14 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
 
     @Override
     public void actuate(ReferenceActuator actuator, boolean on) throws Exception {
-        String command = getCommand(actuator, CommandType.ACTUATE_BOOLEAN_COMMAND);
-        command = substituteVariable(command, "Id", actuator.getId());
-        command = substituteVariable(command, "Name", actuator.getName());
-        command = substituteVariable(command, "Index", actuator.getIndex());
-        command = substituteVariable(command, "BooleanValue", on);
-        command = substituteVariable(command, "True", on ? on : null);
-        command = substituteVariable(command, "False", on ? null : on);
-        sendGcode(command);
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("Id", actuator.getId());
+        variables.put("Name", actuator.getName());
+        variables.put("Index", actuator.getIndex());
+        variables.put("BooleanValue", on);
+        variables.put("True", on ? on : null);
+        variables.put("False", on ? null : on);
+        streamGcode(render(actuator, CommandType.ACTUATE_BOOLEAN_COMMAND, variables));
 
         for (ReferenceDriver driver : subDrivers) {
             driver.actuate(actuator, on);
@@ -671,13 +753,13 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
 
     @Override
     public void actuate(ReferenceActuator actuator, double value) throws Exception {
-        String command = getCommand(actuator, CommandType.ACTUATE_DOUBLE_COMMAND);
-        command = substituteVariable(command, "Id", actuator.getId());
-        command = substituteVariable(command, "Name", actuator.getName());
-        command = substituteVariable(command, "Index", actuator.getIndex());
-        command = substituteVariable(command, "DoubleValue", value);
-        command = substituteVariable(command, "IntegerValue", (int) value);
-        sendGcode(command);
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("Id", actuator.getId());
+        variables.put("Name", actuator.getName());
+        variables.put("Index", actuator.getIndex());
+        variables.put("DoubleValue", value);
+        variables.put("IntegerValue", (int) value);
+        streamGcode(render(actuator, CommandType.ACTUATE_DOUBLE_COMMAND, variables));
 
         for (ReferenceDriver driver : subDrivers) {
             driver.actuate(actuator, value);
@@ -686,8 +768,8 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
     
     @Override
     public String actuatorRead(ReferenceActuator actuator) throws Exception {
-        String command = getCommand(actuator, CommandType.ACTUATOR_READ_COMMAND);
-        String regex = getCommand(actuator, CommandType.ACTUATOR_READ_REGEX);
+        CommandTemplate command = getCommandTemplate(actuator, CommandType.ACTUATOR_READ_COMMAND);
+        Pattern regex = getCommandPattern(actuator, CommandType.ACTUATOR_READ_REGEX);
         if (command == null || regex == null) {
             // If the command or regex is null we'll query the subdrivers. The first
             // to respond with a non-null value wins.
@@ -702,17 +784,17 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
             return null;
         }
 
-        command = substituteVariable(command, "Id", actuator.getId());
-        command = substituteVariable(command, "Name", actuator.getName());
-        command = substituteVariable(command, "Index", actuator.getIndex());
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("Id", actuator.getId());
+        variables.put("Name", actuator.getName());
+        variables.put("Index", actuator.getIndex());
 
-        List<String> responses = sendGcode(command);
+        List<String> responses = sendGcode(command.render(variables));
 
         for (String line : responses) {
-            if (line.matches(regex)) {
+            Matcher matcher = regex.matcher(line);
+            if (matcher.matches()) {
                 Logger.trace("actuatorRead response: {}", line);
-                Matcher matcher = Pattern.compile(regex).matcher(line);
-                matcher.matches();
 
                 try {
                     String s = matcher.group("Value");
@@ -730,6 +812,8 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
     public synchronized void disconnect() {
         disconnectRequested = true;
         connected = false;
+        inFlightCommands.clear();
+        inFlightCharacters = 0;
 
         try {
             if (readerThread != null && readerThread.isAlive()) {
@@ -762,7 +846,12 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         return sendGcode(gCode, timeoutMilliseconds);
     }
 
-    protected List<String> sendGcode(String gCode, long timeout) throws Exception {
+    /**
+     * Send each line of gCode and wait for it to be confirmed. Like every method that talks to
+     * the controller this holds the driver's lock, so that a command sent from another thread,
+     * such as a feed done ahead of time, can't take this one's responses.
+     */
+    protected synchronized List<String> sendGcode(String gCode, long timeout) throws Exception {
         if (gCode == null) {
             return new ArrayList<>();
         }
@@ -777,12 +866,44 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         return responses;
     }
 
+    /**
+     * Like sendGcode(), but if streaming is enabled the commands are streamed and this returns
+     * without waiting for them to be confirmed. Only the responses that happened to arrive while
+     * sending are returned.
+     */
+    protected synchronized List<String> streamGcode(String gCode) throws Exception {
+        if (!streaming || !connected) {
+            return sendGcode(gCode);
+        }
+        if (gCode == null) {
+            return new ArrayList<>();
+        }
+        List<String> responses = new ArrayList<>();
+        for (String command : gCode.split("\n")) {
+            command = command.trim();
+            if (command.length() == 0) {
+                continue;
+            }
+            if (command.length() + 1 > streamingBufferSize) {
+                // Too long to ever fit in the buffer alongside anything else.
+                responses.addAll(sendCommand(command, timeoutMilliseconds));
+            }
+            else {
+                responses.addAll(streamCommand(command, timeoutMilliseconds));
+            }
+        }
+        return responses;
+    }
+
     public List<String> sendCommand(String command) throws Exception {
         return sendCommand(command, timeoutMilliseconds);
     }
 
-    public List<String> sendCommand(String command, long timeout) throws Exception {
-        List<String> responses = new ArrayList<>();
+    public synchronized List<String> sendCommand(String command, long timeout)
+            throws Exception {
+        // Any streamed commands must be confirmed before we can tell which response belongs to
+        // this one.
+        List<String> responses = flush(timeout);
 
         // Read any responses that might be queued up so that when we wait
         // for a response to a command we actually wait for the one we expect.
@@ -806,6 +927,8 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         boolean found = false;
         boolean foundError = false;
         String errorResponse = "";
+        Pattern confirmRegex = getCommandPattern(null, CommandType.COMMAND_CONFIRM_REGEX);
+        Pattern errorRegex = getCommandPattern(null, CommandType.COMMAND_ERROR_REGEX);
         // Loop until we've timed out
         while (System.currentTimeMillis() - t < timeout) {
             // Wait to see if a response came in. We wait up until the number of millis remaining
@@ -819,13 +942,13 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
             // Store the response that was received
             responses.add(response);
             // If the response is an ok or error we're done
-            if (response.matches(getCommand(null, CommandType.COMMAND_CONFIRM_REGEX))) {
+            if (confirmRegex.matcher(response).matches()) {
                 found = true;
                 break;
             }
 
-            if (getCommand(null, CommandType.COMMAND_ERROR_REGEX) != null) {
-                if (response.matches(getCommand(null, CommandType.COMMAND_ERROR_REGEX))) {
+            if (errorRegex != null) {
+                if (errorRegex.matcher(response).matches()) {
                     foundError = true;
                     errorResponse = response;
                     break;
@@ -848,6 +971,98 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         return responses;
     }
 
+    /**
+     * Send a command without waiting for it to be confirmed. If the controller's receive buffer
+     * can't hold it yet, wait for earlier commands to be confirmed until there is room.
+     */
+    protected synchronized List<String> streamCommand(String command, long timeout)
+            throws Exception {
+        List<String> responses = new ArrayList<>();
+        int length = command.length() + 1;
+        while (inFlightCharacters + length > streamingBufferSize) {
+            receiveConfirmation(timeout, responses);
+        }
+
+        Logger.trace("[{}] >> {}", portName, command);
+        output.write(command.getBytes());
+        output.write("\n".getBytes());
+        inFlightCommands.add(command);
+        inFlightCharacters += length;
+
+        // Consume any confirmations that have already arrived without waiting.
+        while (!inFlightCommands.isEmpty() && !responseQueue.isEmpty()) {
+            receiveConfirmation(timeout, responses);
+        }
+
+        Logger.debug("streamCommand({} {}) => {}, {} in flight",
+                new Object[] {portName, command, responses, inFlightCommands.size()});
+        return responses;
+    }
+
+    /**
+     * Wait for the next response and, if it confirms or rejects the oldest streamed command,
+     * retire that command. Other responses are just collected.
+     *
+     * A timeout or an error leaves nothing in flight, so that the next command doesn't wait on
+     * confirmations that are never coming. On a timeout we can't tell what the controller got,
+     * so the remaining commands are forgotten. On an error the controller carries on with the
+     * commands after the one it rejected, so their confirmations are waited for first.
+     */
+    private void receiveConfirmation(long timeout, List<String> responses) throws Exception {
+        if (timeout == -1) {
+            timeout = Long.MAX_VALUE;
+        }
+        String response = responseQueue.poll(timeout, TimeUnit.MILLISECONDS);
+        if (response == null) {
+            String command = inFlightCommands.peek();
+            Logger.warn("Timeout waiting for response to streamed command {}, forgetting {} "
+                    + "commands in flight.", command, inFlightCommands.size());
+            inFlightCommands.clear();
+            inFlightCharacters = 0;
+            throw new Exception("Timeout waiting for response to streamed command " + command);
+        }
+        responses.add(response);
+        if (getCommandPattern(null, CommandType.COMMAND_CONFIRM_REGEX).matcher(response)
+                .matches()) {
+            inFlightCharacters -= inFlightCommands.remove().length() + 1;
+            return;
+        }
+        Pattern errorRegex = getCommandPattern(null, CommandType.COMMAND_ERROR_REGEX);
+        if (errorRegex != null && errorRegex.matcher(response).matches()) {
+            String command = inFlightCommands.remove();
+            inFlightCharacters -= command.length() + 1;
+            try {
+                flush(timeout);
+            }
+            catch (Exception e) {
+                Logger.warn("After streamed command {} failed: {}", command, e.getMessage());
+            }
+            throw new Exception(
+                    "Controller raised an error on streamed command " + command + ": " + response);
+        }
+    }
+
+    /**
+     * Wait until every streamed command has been confirmed and return the responses received
+     * while waiting. Does nothing if no commands are in flight.
+     */
+    protected synchronized List<String> flush(long timeout) throws Exception {
+        List<String> responses = new ArrayList<>();
+        while (!inFlightCommands.isEmpty()) {
+            receiveConfirmation(timeout, responses);
+        }
+        return responses;
+    }
+
+    @Override
+    public void waitForCompletion() throws Exception {
+        flush(timeoutMilliseconds);
+
+        for (ReferenceDriver driver : subDrivers) {
+            driver.waitForCompletion();
+        }
+    }
+
     public void run() {
         while (!disconnectRequested) {
             String line;
@@ -870,18 +1085,17 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
     }
 
     private boolean processPositionReport(String line) {
-        if (getCommand(null, CommandType.POSITION_REPORT_REGEX) == null) {
+        Pattern positionReportRegex = getCommandPattern(null, CommandType.POSITION_REPORT_REGEX);
+        if (positionReportRegex == null) {
             return false;
         }
 
-        if (!line.matches(getCommand(null, CommandType.POSITION_REPORT_REGEX))) {
+        Matcher matcher = positionReportRegex.matcher(line);
+        if (!matcher.matches()) {
             return false;
         }
 
         Logger.trace("Position report: {}", line);
-        Matcher matcher =
-                Pattern.compile(getCommand(null, CommandType.POSITION_REPORT_REGEX)).matcher(line);
-        matcher.matches();
         for (Axis axis : axes) {
             try {
                 String s = matcher.group(axis.getName());
@@ -901,33 +1115,15 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
     }
 
     /**
-     * Find matches of variables in the format {Name:Format} and replace them with the specified
-     * value formatted using String.format with the specified Format. Format is optional and
-     * defaults to %s. A null value replaces the variable with "".
+     * Render the command with the given variables, or return null if there is no such command.
+     * Variables that are not in the map are left in place.
      */
-    static protected String substituteVariable(String command, String name, Object value) {
-        if (command == null) {
-            return command;
-        }
-        StringBuffer sb = new StringBuffer();
-        Matcher matcher = Pattern.compile("\\{(\\w+)(?::(.+?))?\\}").matcher(command);
-        while (matcher.find()) {
-            String n = matcher.group(1);
-            if (!n.equals(name)) {
-                continue;
-            }
-            String format = matcher.group(2);
-            if (format == null) {
-                format = "%s";
-            }
-            String v = "";
-            if (value != null) {
-                v = String.format((Locale) null, format, value);
-            }
-            matcher.appendReplacement(sb, v);
+    protected String render(HeadMountable hm, CommandType type, Map<String, Object> variables) {
+        CommandTemplate template = getCommandTemplate(hm, type);
+        if (template == null) {
+            return null;
         }
-        matcher.appendTail(sb);
-        return sb.toString();
+        return template.render(variables);
     }
 
     @Override
@@ -1051,6 +1247,22 @@ public class GcodeDriver extends AbstractSerialPortDriver implements Runnable {
         this.timeoutMilliseconds = timeoutMilliseconds;
     }
 
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public int getStreamingBufferSize() {
+        return streamingBufferSize;
+    }
+
+    public void setStreamingBufferSize(int streamingBufferSize) {
+        this.streamingBufferSize = streamingBufferSize;
+    }
+
     public int getConnectWaitTimeMilliseconds() {
         return connectWaitTimeMilliseconds;
     }
@@ -15,6 +15,7 @@ import java.io.StringWriter;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
+import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
@@ -72,6 +73,8 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
                 FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,}));
         
         JLabel lblUnits = new JLabel("Units");
@@ -128,6 +131,21 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
         nonSquarenessFactorTf = new JTextField();
         settingsPanel.add(nonSquarenessFactorTf, "4, 10, fill, default");
         nonSquarenessFactorTf.setColumns(5);
+        
+        JLabel lblStreaming = new JLabel("Stream Commands");
+        settingsPanel.add(lblStreaming, "2, 12, right, default");
+        
+        streamingCb = new JCheckBox("");
+        streamingCb.setToolTipText(
+                "Send commands without waiting for each to be confirmed, as long as they fit in the controller's receive buffer.");
+        settingsPanel.add(streamingCb, "4, 12");
+        
+        JLabel lblStreamingBufferSize = new JLabel("Receive Buffer Size [Chars]");
+        settingsPanel.add(lblStreamingBufferSize, "6, 12, right, default");
+        
+        streamingBufferSizeTf = new JTextField();
+        settingsPanel.add(streamingBufferSizeTf, "8, 12, fill, default");
+        streamingBufferSizeTf.setColumns(5);
     }
 
     @Override
@@ -145,6 +163,8 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
         addWrappedBinding(driver, "backlashFeedRateFactor", backlashFeedRateFactorTf, "text", doubleConverter);
         addWrappedBinding(driver, "timeoutMilliseconds", commandTimeoutTf, "text", intConverter);
         addWrappedBinding(driver, "connectWaitTimeMilliseconds", connectWaitTimeTf, "text", intConverter);
+        addWrappedBinding(driver, "streaming", streamingCb, "selected");
+        addWrappedBinding(driver, "streamingBufferSize", streamingBufferSizeTf, "text", intConverter);
         
         ComponentDecorators.decorateWithAutoSelect(maxFeedRateTf);
         ComponentDecorators.decorateWithAutoSelect(backlashOffsetXTf);
@@ -153,6 +173,7 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
         ComponentDecorators.decorateWithAutoSelect(backlashFeedRateFactorTf);
         ComponentDecorators.decorateWithAutoSelect(commandTimeoutTf);
         ComponentDecorators.decorateWithAutoSelect(connectWaitTimeTf);
+        ComponentDecorators.decorateWithAutoSelect(streamingBufferSizeTf);
     }
 
     public final Action exportProfileAction = new AbstractAction() {
@@ -289,6 +310,8 @@ public class GcodeDriverSettings extends AbstractConfigurationWizard {
     private JTextField commandTimeoutTf;
     private JTextField connectWaitTimeTf;
     private JComboBox unitsCb;
+    private JCheckBox streamingCb;
+    private JTextField streamingBufferSizeTf;
 
     static class HeadMountableItem {
         private HeadMountable hm;
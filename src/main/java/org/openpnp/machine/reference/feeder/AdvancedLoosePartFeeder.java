@@ -19,6 +19,7 @@
 
 package org.openpnp.machine.reference.feeder;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.swing.Action;
@@ -30,6 +31,8 @@ import org.openpnp.gui.support.PropertySheetWizardAdapter;
 import org.openpnp.gui.support.Wizard;
 import org.openpnp.machine.reference.ReferenceFeeder;
 import org.openpnp.machine.reference.feeder.wizards.AdvancedLoosePartFeederConfigurationWizard;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
 import org.openpnp.spi.Camera;
 import org.openpnp.spi.Nozzle;
@@ -38,6 +41,7 @@ import org.openpnp.util.MovableUtils;
 import org.openpnp.util.OpenCvUtils;
 import org.openpnp.util.VisionUtils;
 import org.openpnp.vision.pipeline.CvPipeline;
+import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,8 +55,24 @@ public class AdvancedLoosePartFeeder extends ReferenceFeeder {
     @Element(required = false)
     private CvPipeline trainingPipeline = createDefaultTrainingPipeline();
 
+    /**
+     * The number of parts that may be picked from the detections of a single capture before the
+     * camera is moved back over the feeder to run vision again. 1 runs vision for every feed.
+     */
+    @Attribute(required = false)
+    private int cachedPicks = 1;
+
+    /**
+     * Cached detections within this distance of a pick are dropped, since the nozzle may have
+     * moved them.
+     */
+    @Element(required = false)
+    private Length pickDisturbanceRadius = new Length(0, LengthUnit.Millimeters);
+
     private Location pickLocation;
 
+    private final PickCandidateCache candidates = new PickCandidateCache();
+
     @Override
     public Location getPickLocation() throws Exception {
         return pickLocation == null ? location : pickLocation;
@@ -60,21 +80,37 @@ public class AdvancedLoosePartFeeder extends ReferenceFeeder {
 
     @Override
     public void feed(Nozzle nozzle) throws Exception {
+        Location candidate = candidates.next(cachedPicks, location, part);
+        if (candidate != null) {
+            pickLocation = candidate;
+            logger.debug("{} fed cached detection {}, {}", getName(), pickLocation, candidates);
+            return;
+        }
         Camera camera = nozzle.getHead().getDefaultCamera();
         // Move to the feeder pick location
         MovableUtils.moveToLocationAtSafeZ(camera, location);
+        // Keep the other detections from the first capture, which sees the whole feeder.
+        List<Location> others = new ArrayList<>();
         for (int i = 0; i < 3; i++) {
-            pickLocation = getPickLocation(camera, nozzle);
+            pickLocation = getPickLocation(camera, nozzle, i == 0 ? others : null);
             camera.moveTo(pickLocation);
         }
+        candidates.store(others, pickLocation, location, part);
+        logger.debug("{} fed detected part {}, {}", getName(), pickLocation, candidates);
+    }
+
+    @Override
+    public void postPick(Nozzle nozzle) throws Exception {
+        candidates.picked(pickDisturbanceRadius);
     }
 
-    private Location getPickLocation(Camera camera, Nozzle nozzle) throws Exception {
+    private Location getPickLocation(Camera camera, Nozzle nozzle, List<Location> others)
+            throws Exception {
         // Process the pipeline to extract RotatedRect results
         pipeline.setProperty("camera", camera);
         pipeline.setProperty("nozzle", nozzle);
         pipeline.setProperty("feeder", this);
-        pipeline.process();
+        pipeline.processHeadless();
         // Grab the results
         List<RotatedRect> results = (List<RotatedRect>) pipeline.getResult("results").model;
         if (results.isEmpty()) {
@@ -88,7 +124,18 @@ public class AdvancedLoosePartFeeder extends ReferenceFeeder {
                     .getLinearDistanceTo(camera.getLocation());
             return da.compareTo(db);
         });
-        RotatedRect result = results.get(0);
+        if (others != null) {
+            for (RotatedRect other : results.subList(1, results.size())) {
+                others.add(toPickLocation(camera, other));
+            }
+        }
+        Location location = toPickLocation(camera, results.get(0));
+        MainFrame.get().getCameraViews().getCameraView(camera)
+                .showFilteredImage(OpenCvUtils.toBufferedImage(pipeline.getWorkingImage()), 250);
+        return location;
+    }
+
+    private Location toPickLocation(Camera camera, RotatedRect result) {
         Location location = VisionUtils.getPixelLocation(camera, result.center.x, result.center.y);
         // Get the result's Location
         // Update the location with the result's rotation
@@ -100,17 +147,40 @@ public class AdvancedLoosePartFeeder extends ReferenceFeeder {
                         this.location.convertToUnits(location.getUnits()).getZ()
                                 + part.getHeight().convertToUnits(location.getUnits()).getValue(),
                         null);
-        MainFrame.get().getCameraViews().getCameraView(camera)
-                .showFilteredImage(OpenCvUtils.toBufferedImage(pipeline.getWorkingImage()), 250);
         return location;
     }
 
+    public int getCachedPicks() {
+        return cachedPicks;
+    }
+
+    public void setCachedPicks(int cachedPicks) {
+        this.cachedPicks = cachedPicks;
+        candidates.invalidate();
+    }
+
+    public Length getPickDisturbanceRadius() {
+        return pickDisturbanceRadius;
+    }
+
+    public void setPickDisturbanceRadius(Length pickDisturbanceRadius) {
+        this.pickDisturbanceRadius = pickDisturbanceRadius;
+    }
+
+    /**
+     * Get the cache of detections, which counts how many feeds it saved.
+     */
+    public PickCandidateCache getCandidates() {
+        return candidates;
+    }
+
     public CvPipeline getPipeline() {
         return pipeline;
     }
 
     public void resetPipeline() {
         pipeline = createDefaultPipeline();
+        candidates.invalidate();
     }
 
     public CvPipeline getTrainingPipeline() {
@@ -0,0 +1,135 @@
+package org.openpnp.machine.reference.feeder;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.openpnp.model.Length;
+import org.openpnp.model.Location;
+import org.openpnp.model.Part;
+
+/**
+ * Remembers the other parts a vision feeder found in the same capture as the one it fed, so that
+ * following feeds can pick them without moving the camera and running vision again.
+ *
+ * The candidates are dropped when:
+ * <ul>
+ * <li>The configured number of picks has been made since the capture.</li>
+ * <li>A pick is made within the disturbance radius of a candidate, which removes just that
+ * candidate.</li>
+ * <li>A fed part is not confirmed by picked() before the next feed, which means the pick failed,
+ * for instance on a vacuum sense check, and the parts may have been disturbed.</li>
+ * <li>The feeder's location or part changes.</li>
+ * </ul>
+ */
+public class PickCandidateCache {
+    private final List<Location> candidates = new ArrayList<>();
+    private Location captureLocation;
+    private Part capturePart;
+    private Location lastPick;
+    private boolean pickPending;
+    private int picks;
+    private long hits;
+    private long misses;
+
+    /**
+     * Get the next candidate to feed, or null if vision must be run again.
+     *
+     * @param maxPicks The number of picks allowed per capture, including the part chosen by the
+     *        capture itself. 1 or less disables the cache.
+     * @param feederLocation The feeder's current location.
+     * @param part The feeder's current part.
+     */
+    public synchronized Location next(int maxPicks, Location feederLocation, Part part) {
+        if (pickPending) {
+            // The last fed part was never picked.
+            invalidate();
+        }
+        if (captureLocation != null
+                && (!captureLocation.equals(feederLocation) || capturePart != part)) {
+            invalidate();
+        }
+        if (candidates.isEmpty() || picks >= maxPicks) {
+            candidates.clear();
+            misses++;
+            return null;
+        }
+        // Take the candidate closest to the last pick to keep the moves short.
+        Location next = candidates.get(0);
+        for (Location candidate : candidates) {
+            if (candidate.getLinearDistanceTo(lastPick) < next.getLinearDistanceTo(lastPick)) {
+                next = candidate;
+            }
+        }
+        candidates.remove(next);
+        fed(next);
+        hits++;
+        return next;
+    }
+
+    /**
+     * Replace the candidates with those from a new capture, and record that the part at
+     * pickLocation was fed from it.
+     */
+    public synchronized void store(List<Location> candidates, Location pickLocation,
+            Location feederLocation, Part part) {
+        this.candidates.clear();
+        this.candidates.addAll(candidates);
+        this.captureLocation = feederLocation;
+        this.capturePart = part;
+        picks = 0;
+        fed(pickLocation);
+    }
+
+    /**
+     * Confirm that the last fed part was picked, and drop any candidates it may have disturbed.
+     */
+    public synchronized void picked(Length disturbanceRadius) {
+        pickPending = false;
+        if (lastPick == null) {
+            return;
+        }
+        double radius = disturbanceRadius.convertToUnits(lastPick.getUnits()).getValue();
+        for (Iterator<Location> i = candidates.iterator(); i.hasNext();) {
+            if (i.next().getLinearDistanceTo(lastPick) <= radius) {
+                i.remove();
+            }
+        }
+    }
+
+    public synchronized void invalidate() {
+        candidates.clear();
+        captureLocation = null;
+        capturePart = null;
+        pickPending = false;
+    }
+
+    public synchronized int size() {
+        return candidates.size();
+    }
+
+    /**
+     * The number of feeds that used a cached candidate.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * The number of feeds that had to run vision.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d cached, %d hits, %d misses", candidates.size(), hits, misses);
+    }
+
+    private void fed(Location pickLocation) {
+        lastPick = pickLocation;
+        pickPending = true;
+        picks++;
+    }
+}
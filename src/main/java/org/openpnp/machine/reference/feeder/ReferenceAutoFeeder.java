@@ -82,6 +82,14 @@ public class ReferenceAutoFeeder extends ReferenceFeeder {
         }
     }
     
+    /**
+     * The feed is done by the actuator alone, so it can be done ahead of time.
+     */
+    @Override
+    public boolean isNozzleRequiredToFeed() {
+        return false;
+    }
+
     @Override
     public void postPick(Nozzle nozzle) throws Exception {
         if (postPickActuatorName == null || postPickActuatorName.equals("")) {
@@ -223,7 +223,7 @@ public class ReferenceDragFeeder extends ReferenceFeeder {
         // head.moveTo(head.getX(), head.getY(), z, head.getC());
 
         // Settle the camera
-        Thread.sleep(camera.getSettleTimeMs());
+        camera.settle();
 
         VisionProvider visionProvider = camera.getVisionProvider();
 
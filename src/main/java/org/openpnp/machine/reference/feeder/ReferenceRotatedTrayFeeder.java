@@ -178,10 +178,17 @@ public class ReferenceRotatedTrayFeeder extends ReferenceFeeder {
 		this.trayRotation = trayrotation;
 	}
 
+	@Override
+	public boolean isFeedCounted() {
+		return true;
+	}
+
+	@Override
 	public int getFeedCount() {
 		return feedCount;
 	}
 
+	@Override
 	public void setFeedCount(int feedCount) {
 		int oldValue = this.feedCount;
 		this.feedCount = feedCount;
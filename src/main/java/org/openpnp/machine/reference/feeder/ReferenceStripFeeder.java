@@ -268,7 +268,7 @@ public class ReferenceStripFeeder extends ReferenceFeeder {
             pipeline.setProperty("DetectFixedCirclesHough.minDistance", pxMinDistance);
             pipeline.setProperty("DetectFixedCirclesHough.minDiameter", pxMinDiameter);
             pipeline.setProperty("DetectFixedCirclesHough.maxDiameter", pxMaxDiameter);
-            pipeline.process();
+            pipeline.processHeadless();
     
             try {
                 MainFrame.get().getCameraViews().getCameraView(camera)
@@ -381,10 +381,17 @@ public class ReferenceStripFeeder extends ReferenceFeeder {
         this.tapeWidth = tapeWidth;
     }
 
+    @Override
+    public boolean isFeedCounted() {
+        return true;
+    }
+
+    @Override
     public int getFeedCount() {
         return feedCount;
     }
 
+    @Override
     public void setFeedCount(int feedCount) {
         int oldValue = this.feedCount;
         this.feedCount = feedCount;
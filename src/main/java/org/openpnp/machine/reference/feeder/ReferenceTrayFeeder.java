@@ -117,10 +117,17 @@ public class ReferenceTrayFeeder extends ReferenceFeeder {
         this.offsets = offsets;
     }
 
+    @Override
+    public boolean isFeedCounted() {
+        return true;
+    }
+
+    @Override
     public int getFeedCount() {
         return feedCount;
     }
 
+    @Override
     public void setFeedCount(int feedCount) {
         int oldValue = this.feedCount;
         this.feedCount = feedCount;
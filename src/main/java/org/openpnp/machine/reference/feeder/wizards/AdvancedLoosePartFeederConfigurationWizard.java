@@ -30,10 +30,14 @@ import javax.swing.JButton;
 import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JTextField;
 import javax.swing.SwingConstants;
 import javax.swing.border.TitledBorder;
 
 import org.openpnp.gui.MainFrame;
+import org.openpnp.gui.components.ComponentDecorators;
+import org.openpnp.gui.support.IntegerConverter;
+import org.openpnp.gui.support.LengthConverter;
 import org.openpnp.machine.reference.feeder.AdvancedLoosePartFeeder;
 import org.openpnp.model.Configuration;
 import org.openpnp.util.UiUtils;
@@ -48,6 +52,9 @@ import com.jgoodies.forms.layout.RowSpec;
 public class AdvancedLoosePartFeederConfigurationWizard
         extends AbstractReferenceFeederConfigurationWizard {
     private final AdvancedLoosePartFeeder feeder;
+    private JTextField textFieldCachedPicks;
+    private JTextField textFieldDisturbanceRadius;
+    private JLabel lblCacheStatisticsValue;
 
     public AdvancedLoosePartFeederConfigurationWizard(AdvancedLoosePartFeeder feeder) {
         super(feeder);
@@ -91,6 +98,41 @@ public class AdvancedLoosePartFeederConfigurationWizard
         JButton btnResetTrainingPipeline = new JButton("Reset");
         btnResetTrainingPipeline.addActionListener(new BtnResetTrainingPipelineActionListener());
         panel.add(btnResetTrainingPipeline, "6, 4");
+
+        JPanel panelCache = new JPanel();
+        panelCache.setBorder(new TitledBorder(null, "Detection Cache", TitledBorder.LEADING,
+                TitledBorder.TOP, null, null));
+        contentPanel.add(panelCache);
+        panelCache.setLayout(new FormLayout(
+                new ColumnSpec[] {FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,
+                        FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,},
+                new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,}));
+
+        JLabel lblCachedPicks = new JLabel("Picks Per Capture");
+        lblCachedPicks.setToolTipText(
+                "Number of parts to pick from one capture before running vision again.");
+        panelCache.add(lblCachedPicks, "2, 2, right, default");
+
+        textFieldCachedPicks = new JTextField();
+        panelCache.add(textFieldCachedPicks, "4, 2");
+        textFieldCachedPicks.setColumns(10);
+
+        JLabel lblDisturbanceRadius = new JLabel("Disturbance Radius");
+        lblDisturbanceRadius.setToolTipText(
+                "Cached parts this close to a pick are discarded as they may have moved.");
+        panelCache.add(lblDisturbanceRadius, "2, 4, right, default");
+
+        textFieldDisturbanceRadius = new JTextField();
+        panelCache.add(textFieldDisturbanceRadius, "4, 4");
+        textFieldDisturbanceRadius.setColumns(10);
+
+        JLabel lblCacheStatistics = new JLabel("Statistics");
+        panelCache.add(lblCacheStatistics, "2, 6, right, default");
+
+        lblCacheStatisticsValue = new JLabel(feeder.getCandidates().toString());
+        panelCache.add(lblCacheStatisticsValue, "4, 6");
         
         JPanel warningPanel = new JPanel();
         FlowLayout flowLayout = (FlowLayout) warningPanel.getLayout();
@@ -103,6 +145,20 @@ public class AdvancedLoosePartFeederConfigurationWizard
         warningPanel.add(lblWarningThisFeeder);
     }
 
+    @Override
+    public void createBindings() {
+        super.createBindings();
+        IntegerConverter intConverter = new IntegerConverter();
+        LengthConverter lengthConverter = new LengthConverter();
+
+        addWrappedBinding(feeder, "cachedPicks", textFieldCachedPicks, "text", intConverter);
+        addWrappedBinding(feeder, "pickDisturbanceRadius", textFieldDisturbanceRadius, "text",
+                lengthConverter);
+
+        ComponentDecorators.decorateWithAutoSelect(textFieldCachedPicks);
+        ComponentDecorators.decorateWithAutoSelectAndLengthConversion(textFieldDisturbanceRadius);
+    }
+
     private void editPipeline() throws Exception {
         CvPipeline pipeline = feeder.getPipeline();
         pipeline.setProperty("camera", Configuration.get().getMachine().getDefaultHead().getDefaultCamera());
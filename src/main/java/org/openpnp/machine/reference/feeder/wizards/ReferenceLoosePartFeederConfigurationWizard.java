@@ -26,9 +26,13 @@ import java.awt.event.ActionListener;
 import javax.swing.JButton;
 import javax.swing.JDialog;
 import javax.swing.JPanel;
+import javax.swing.JTextField;
 import javax.swing.border.TitledBorder;
 
 import org.openpnp.gui.MainFrame;
+import org.openpnp.gui.components.ComponentDecorators;
+import org.openpnp.gui.support.IntegerConverter;
+import org.openpnp.gui.support.LengthConverter;
 import org.openpnp.machine.reference.feeder.ReferenceLoosePartFeeder;
 import org.openpnp.model.Configuration;
 import org.openpnp.util.UiUtils;
@@ -48,6 +52,9 @@ import java.awt.FlowLayout;
 public class ReferenceLoosePartFeederConfigurationWizard
         extends AbstractReferenceFeederConfigurationWizard {
     private final ReferenceLoosePartFeeder feeder;
+    private JTextField textFieldCachedPicks;
+    private JTextField textFieldDisturbanceRadius;
+    private JLabel lblCacheStatisticsValue;
 
     public ReferenceLoosePartFeederConfigurationWizard(ReferenceLoosePartFeeder feeder) {
         super(feeder);
@@ -79,6 +86,41 @@ public class ReferenceLoosePartFeederConfigurationWizard
             }
         });
         panel.add(btnResetPipeline, "4, 2");
+
+        JPanel panelCache = new JPanel();
+        panelCache.setBorder(new TitledBorder(null, "Detection Cache", TitledBorder.LEADING,
+                TitledBorder.TOP, null, null));
+        contentPanel.add(panelCache);
+        panelCache.setLayout(new FormLayout(
+                new ColumnSpec[] {FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,
+                        FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,},
+                new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,}));
+
+        JLabel lblCachedPicks = new JLabel("Picks Per Capture");
+        lblCachedPicks.setToolTipText(
+                "Number of parts to pick from one capture before running vision again.");
+        panelCache.add(lblCachedPicks, "2, 2, right, default");
+
+        textFieldCachedPicks = new JTextField();
+        panelCache.add(textFieldCachedPicks, "4, 2");
+        textFieldCachedPicks.setColumns(10);
+
+        JLabel lblDisturbanceRadius = new JLabel("Disturbance Radius");
+        lblDisturbanceRadius.setToolTipText(
+                "Cached parts this close to a pick are discarded as they may have moved.");
+        panelCache.add(lblDisturbanceRadius, "2, 4, right, default");
+
+        textFieldDisturbanceRadius = new JTextField();
+        panelCache.add(textFieldDisturbanceRadius, "4, 4");
+        textFieldDisturbanceRadius.setColumns(10);
+
+        JLabel lblCacheStatistics = new JLabel("Statistics");
+        panelCache.add(lblCacheStatistics, "2, 6, right, default");
+
+        lblCacheStatisticsValue = new JLabel(feeder.getCandidates().toString());
+        panelCache.add(lblCacheStatisticsValue, "4, 6");
         
         JPanel warningPanel = new JPanel();
         FlowLayout flowLayout = (FlowLayout) warningPanel.getLayout();
@@ -91,6 +133,20 @@ public class ReferenceLoosePartFeederConfigurationWizard
         warningPanel.add(lblWarningThisFeeder);
     }
 
+    @Override
+    public void createBindings() {
+        super.createBindings();
+        IntegerConverter intConverter = new IntegerConverter();
+        LengthConverter lengthConverter = new LengthConverter();
+
+        addWrappedBinding(feeder, "cachedPicks", textFieldCachedPicks, "text", intConverter);
+        addWrappedBinding(feeder, "pickDisturbanceRadius", textFieldDisturbanceRadius, "text",
+                lengthConverter);
+
+        ComponentDecorators.decorateWithAutoSelect(textFieldCachedPicks);
+        ComponentDecorators.decorateWithAutoSelectAndLengthConversion(textFieldDisturbanceRadius);
+    }
+
     private void editPipeline() throws Exception {
         CvPipeline pipeline = feeder.getPipeline();
         pipeline.setProperty("camera", Configuration.get().getMachine().getDefaultHead().getDefaultCamera());
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2011 Jason von Nieda <jason@vonnieda.org>
+ * 
+ * This file is part of OpenPnP.
+ * 
+ * OpenPnP is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * OpenPnP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with OpenPnP. If not, see
+ * <http://www.gnu.org/licenses/>.
+ * 
+ * For more information about OpenPnP visit http://openpnp.org
+ */
+
+
+package org.openpnp.machine.reference.planner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.PlannedPlacement;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.PnpJobPlanner;
+import org.openpnp.model.Part;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.NozzleTip;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+import org.openpnp.spi.base.PartResolutionIndex;
+import org.simpleframework.xml.Root;
+
+/**
+ * Plans a cycle by solving it as an assignment problem between Nozzles and JobPlacements. The
+ * solution is the same one the CartesianProductPnpJobPlanner would find: the most nozzles filled,
+ * then the fewest nozzle tip changes and, among equally good solutions, the one that comes first
+ * when the nozzles are taken in order and the placements in the order given. It runs in
+ * polynomial time and never materializes the product of the candidate lists.
+ * 
+ * Description of the planner:
+ * 
+ * 1. For each Nozzle, scan the JobPlacements in order and keep the ones it can handle, split into
+ * those the currently loaded tip can handle and those that need a tip change. Only the first N of
+ * each kind are kept, where N is the number of nozzles. The other N - 1 nozzles can use up at most
+ * N - 1 of them, so any solution using a later candidate can swap it for an earlier unused one of
+ * the same cost.
+ * 
+ * 2. Score an assignment as one point per tip change plus N + 1 points per empty nozzle, so that
+ * filling a nozzle always beats saving tip changes, and find the optimal score with the Hungarian
+ * algorithm. Each nozzle gets its own "empty" column so leaving it empty is always possible.
+ * 
+ * 3. Fix the nozzles one at a time, in order. For each, take the first candidate that still allows
+ * the remaining nozzles to reach the optimal score, or leave it empty if none does.
+ */
+@Root
+public class AssignmentPnpJobPlanner implements PnpJobPlanner {
+    private static final int INFEASIBLE = 1000000;
+
+    @Override
+    public List<PlannedPlacement> plan(Head head, List<JobPlacement> jobPlacements,
+            PartResolutionIndex index) {
+        List<Nozzle> nozzles = head.getNozzles();
+        int nozzleCount = nozzles.size();
+        int emptyCost = nozzleCount + 1;
+
+        // Collect the candidate JobPlacements for each Nozzle, in order, along with the number of
+        // tip changes each one would require.
+        List<JobPlacement> columns = new ArrayList<>();
+        Map<JobPlacement, Integer> columnIndexes = new IdentityHashMap<>();
+        List<List<Integer>> candidates = new ArrayList<>();
+        List<List<Integer>> candidateCosts = new ArrayList<>();
+        for (Nozzle nozzle : nozzles) {
+            List<Integer> nozzleCandidates = new ArrayList<>();
+            List<Integer> nozzleCosts = new ArrayList<>();
+            NozzleTip nozzleTip = nozzle.getNozzleTip();
+            int[] kept = new int[2];
+            for (JobPlacement jobPlacement : jobPlacements) {
+                if (kept[0] >= nozzleCount && kept[1] >= nozzleCount) {
+                    break;
+                }
+                Part part = jobPlacement.placement.getPart();
+                if (!index.nozzleCanHandle(nozzle, part)) {
+                    continue;
+                }
+                // With no tip loaded every placement needs a change, so they all cost the same.
+                int cost = (nozzleTip == null || nozzleTip.canHandle(part)) ? 0 : 1;
+                if (kept[cost] >= nozzleCount) {
+                    continue;
+                }
+                kept[cost]++;
+                Integer column = columnIndexes.get(jobPlacement);
+                if (column == null) {
+                    column = columns.size();
+                    columns.add(jobPlacement);
+                    columnIndexes.put(jobPlacement, column);
+                }
+                nozzleCandidates.add(column);
+                nozzleCosts.add(cost);
+            }
+            candidates.add(nozzleCandidates);
+            candidateCosts.add(nozzleCosts);
+        }
+
+        // Build the cost matrix. Nozzles may only use their own candidates.
+        int[][] costs = new int[nozzleCount][columns.size()];
+        for (int i = 0; i < nozzleCount; i++) {
+            Arrays.fill(costs[i], INFEASIBLE);
+            for (int j = 0; j < candidates.get(i).size(); j++) {
+                costs[i][candidates.get(i).get(j)] = candidateCosts.get(i).get(j);
+            }
+        }
+
+        boolean[] usedColumns = new boolean[columns.size()];
+        int optimum = solve(costs, 0, usedColumns, emptyCost);
+
+        // Fix each nozzle in turn to the first candidate that still allows an optimal solution.
+        List<PlannedPlacement> plannedPlacements = new ArrayList<>();
+        int fixedCost = 0;
+        for (int i = 0; i < nozzleCount; i++) {
+            boolean assigned = false;
+            for (int column : candidates.get(i)) {
+                if (usedColumns[column]) {
+                    continue;
+                }
+                usedColumns[column] = true;
+                int cost = fixedCost + costs[i][column]
+                        + solve(costs, i + 1, usedColumns, emptyCost);
+                if (cost == optimum) {
+                    fixedCost += costs[i][column];
+                    plannedPlacements
+                            .add(new PlannedPlacement(nozzles.get(i), columns.get(column)));
+                    assigned = true;
+                    break;
+                }
+                usedColumns[column] = false;
+            }
+            if (!assigned) {
+                fixedCost += emptyCost;
+            }
+        }
+        return plannedPlacements;
+    }
+
+    /**
+     * Find the minimum total cost of assigning the nozzles from firstRow onward, using the
+     * Hungarian algorithm. Each nozzle can either take an unused column or be left empty.
+     */
+    static int solve(int[][] costs, int firstRow, boolean[] usedColumns, int emptyCost) {
+        int n = costs.length - firstRow;
+        if (n <= 0) {
+            return 0;
+        }
+        List<Integer> available = new ArrayList<>();
+        for (int j = 0; j < usedColumns.length; j++) {
+            if (!usedColumns[j]) {
+                available.add(j);
+            }
+        }
+        // Columns past the available placements are the "empty" columns, one per nozzle.
+        int m = available.size() + n;
+        int[][] a = new int[n + 1][m + 1];
+        for (int i = 1; i <= n; i++) {
+            for (int j = 1; j <= m; j++) {
+                a[i][j] = j <= available.size() ? costs[firstRow + i - 1][available.get(j - 1)]
+                        : emptyCost;
+            }
+        }
+
+        // Hungarian algorithm with potentials, O(n^2 * m). Indexes are 1 based, column 0 is a
+        // virtual column used while augmenting.
+        int[] u = new int[n + 1];
+        int[] v = new int[m + 1];
+        int[] p = new int[m + 1];
+        int[] way = new int[m + 1];
+        for (int i = 1; i <= n; i++) {
+            p[0] = i;
+            int j0 = 0;
+            int[] minv = new int[m + 1];
+            Arrays.fill(minv, Integer.MAX_VALUE);
+            boolean[] used = new boolean[m + 1];
+            do {
+                used[j0] = true;
+                int i0 = p[j0];
+                int delta = Integer.MAX_VALUE;
+                int j1 = 0;
+                for (int j = 1; j <= m; j++) {
+                    if (used[j]) {
+                        continue;
+                    }
+                    int cur = a[i0][j] - u[i0] - v[j];
+                    if (cur < minv[j]) {
+                        minv[j] = cur;
+                        way[j] = j0;
+                    }
+                    if (minv[j] < delta) {
+                        delta = minv[j];
+                        j1 = j;
+                    }
+                }
+                for (int j = 0; j <= m; j++) {
+                    if (used[j]) {
+                        u[p[j]] += delta;
+                        v[j] -= delta;
+                    }
+                    else {
+                        minv[j] -= delta;
+                    }
+                }
+                j0 = j1;
+            } while (p[j0] != 0);
+            do {
+                int j1 = way[j0];
+                p[j0] = p[j1];
+                j0 = j1;
+            } while (j0 != 0);
+        }
+
+        int total = 0;
+        for (int j = 1; j <= m; j++) {
+            if (p[j] != 0) {
+                total += a[p[j]][j];
+            }
+        }
+        return total;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2011 Jason von Nieda <jason@vonnieda.org>
+ * 
+ * This file is part of OpenPnP.
+ * 
+ * OpenPnP is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * OpenPnP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with OpenPnP. If not, see
+ * <http://www.gnu.org/licenses/>.
+ * 
+ * For more information about OpenPnP visit http://openpnp.org
+ */
+
+
+package org.openpnp.machine.reference.planner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.PlannedPlacement;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.PnpJobPlanner;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+import org.openpnp.spi.base.PartResolutionIndex;
+import org.openpnp.util.Collect;
+import org.simpleframework.xml.Root;
+
+/**
+ * The original brute force planner. It is kept as a reference for AssignmentPnpJobPlanner, which
+ * produces the same solutions, but it should not be used with large jobs or with more than two
+ * nozzles since the number of candidate solutions grows exponentially with the number of nozzles.
+ * 
+ * Description of the planner:
+ * 
+ * 1. Create a List<List<JobPlacement>> where each List<JobPlacement> is a List of JobPlacements
+ * that the corresponding (in order) Nozzle can handle in Nozzle order.
+ * 
+ * In addition, each List<JobPlacement> contains one instance of null which represents a solution
+ * where that Nozzle does not perform a placement.
+ * 
+ * 2. Create the Cartesian product of all of the List<JobPlacement>. The resulting List<List
+ * <JobPlacement>> represents possible solutions for a single cycle with each JobPlacement
+ * corresponding to a Nozzle.
+ * 
+ * 3. Filter out any solutions where the same JobPlacement is represented more than once. We don't
+ * want more than one Nozzle trying to place the same Placement.
+ * 
+ * 4. Sort the solutions by fewest nulls followed by fewest nozzle changes. The result is that we
+ * prefer solutions that use more nozzles in a cycle and require fewer nozzle changes.
+ * 
+ * Note: TODO: Originally planned to have this sort by part height but that went out the window
+ * during development. Need to think about how to best combine the height requirement with the want
+ * to fill all nozzles and perform minimal nozzle changes. Based on IRC discussion, the part height
+ * thing might be a red herring - most machines will have enough Z to place all parts regardless of
+ * height order.
+ */
+@Root
+public class CartesianProductPnpJobPlanner implements PnpJobPlanner {
+    @Override
+    public List<PlannedPlacement> plan(Head head, List<JobPlacement> jobPlacements,
+            PartResolutionIndex index) {
+        // Create a List of Lists of JobPlacements that each Nozzle can handle, including
+        // one instance of null per Nozzle. The null indicates a possible "no solution"
+        // for that Nozzle.
+        List<List<JobPlacement>> solutions = head.getNozzles().stream().map(nozzle -> {
+            return Stream.concat(jobPlacements.stream().filter(jobPlacement -> {
+                return index.nozzleCanHandle(nozzle, jobPlacement.placement.getPart());
+            }), Stream.of((JobPlacement) null)).collect(Collectors.toList());
+        }).collect(Collectors.toList());
+
+        // Get the cartesian product of those Lists
+        List<JobPlacement> result = Collect.cartesianProduct(solutions).stream()
+                // Filter out any results that contains the same JobPlacement more than once
+                .filter(list -> {
+                    // Note: A previous version of this code just dumped everything into a
+                    // set and compared the size. This worked for two nozzles since there would
+                    // never be more than two nulls, but for > 2 nozzles there will always be a
+                    // solution that has > 2 nulls, which means the size will never match.
+                    // This version of the code ignores the nulls (since they are valid
+                    // solutions) and instead only checks for duplicate valid JobPlacements.
+                    // There is probably a more clever way to do this, but it isn't coming
+                    // to me at the moment.
+                    HashSet<JobPlacement> set = new HashSet<>();
+                    for (JobPlacement jp : list) {
+                        if (jp == null) {
+                            continue;
+                        }
+                        if (set.contains(jp)) {
+                            return false;
+                        }
+                        set.add(jp);
+                    }
+                    return true;
+                })
+                // Sort by the solutions that contain the fewest nulls followed by the
+                // solutions that require the fewest nozzle changes.
+                .sorted(byFewestNulls.thenComparing(byFewestNozzleChanges(head)))
+                // And return the top result.
+                .findFirst().orElse(null);
+
+        List<PlannedPlacement> plannedPlacements = new ArrayList<>();
+        for (Nozzle nozzle : head.getNozzles()) {
+            // The solution is in Nozzle order, so grab the next one.
+            JobPlacement jobPlacement = result.remove(0);
+            if (jobPlacement == null) {
+                continue;
+            }
+            plannedPlacements.add(new PlannedPlacement(nozzle, jobPlacement));
+        }
+        return plannedPlacements;
+    }
+
+    // Sort a List<JobPlacement> by the number of nulls it contains in ascending order.
+    static Comparator<List<JobPlacement>> byFewestNulls = (a, b) -> {
+        return Collections.frequency(a, null) - Collections.frequency(b, null);
+    };
+
+    // Sort a List<JobPlacement> by the number of nozzle changes it will require in
+    // descending order.
+    static Comparator<List<JobPlacement>> byFewestNozzleChanges(Head head) {
+        return (a, b) -> {
+            int countA = 0, countB = 0;
+            for (int i = 0; i < head.getNozzles().size(); i++) {
+                Nozzle nozzle = head.getNozzles().get(i);
+                JobPlacement jpA = a.get(i);
+                JobPlacement jpB = b.get(i);
+                if (nozzle.getNozzleTip() == null) {
+                    countA++;
+                    countB++;
+                    continue;
+                }
+                if (jpA != null && !nozzle.getNozzleTip().canHandle(jpA.placement.getPart())) {
+                    countA++;
+                }
+                if (jpB != null && !nozzle.getNozzleTip().canHandle(jpB.placement.getPart())) {
+                    countB++;
+                }
+            }
+            return countA - countB;
+        };
+    }
+}
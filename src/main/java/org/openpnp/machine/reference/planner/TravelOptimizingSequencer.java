@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2011 Jason von Nieda <jason@vonnieda.org>
+ * 
+ * This file is part of OpenPnP.
+ * 
+ * OpenPnP is free software: you can redistribute it and/or modify it under the terms of the GNU
+ * General Public License as published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * OpenPnP is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even
+ * the implied warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+ * Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License along with OpenPnP. If not, see
+ * <http://www.gnu.org/licenses/>.
+ * 
+ * For more information about OpenPnP visit http://openpnp.org
+ */
+
+
+package org.openpnp.machine.reference.planner;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+
+/**
+ * Orders the JobPlacements of a whole job so that the head travels as little as possible in XY.
+ * Each placement is modeled as a move to its feeder's pick location followed by a move to its
+ * placement location, so the cost of an order is the sum of the distances from each placement
+ * location to the next pick location.
+ * 
+ * The planner always processes parts in order of height, and that sort is stable, so placements
+ * are only reordered within groups of equal part height. Each group is ordered with a nearest
+ * neighbour pass followed by 2-opt improvement until no improving move is left or the time budget
+ * runs out.
+ */
+public class TravelOptimizingSequencer {
+    public static class Report {
+        public final int placements;
+        public final double travelBefore;
+        public final double travelAfter;
+        public final long elapsedMs;
+        public final boolean converged;
+
+        public Report(int placements, double travelBefore, double travelAfter, long elapsedMs,
+                boolean converged) {
+            this.placements = placements;
+            this.travelBefore = travelBefore;
+            this.travelAfter = travelAfter;
+            this.elapsedMs = elapsedMs;
+            this.converged = converged;
+        }
+
+        @Override
+        public String toString() {
+            double saved = travelBefore == 0 ? 0 : (1 - travelAfter / travelBefore) * 100;
+            return String.format(
+                    "%d placements, estimated travel %.0f mm -> %.0f mm (%.1f%% less) in %d ms%s",
+                    placements, travelBefore, travelAfter, saved, elapsedMs,
+                    converged ? "" : ", time budget exhausted");
+        }
+    }
+
+    private final long timeBudgetMs;
+
+    public TravelOptimizingSequencer(long timeBudgetMs) {
+        this.timeBudgetMs = timeBudgetMs;
+    }
+
+    /**
+     * Reorder the given list in place.
+     * 
+     * @param jobPlacements The placements to order.
+     * @param pickLocations The pick location of each placement's feeder.
+     * @param placementLocations The machine location of each placement.
+     * @return A Report of the estimated travel before and after.
+     */
+    public Report sequence(List<JobPlacement> jobPlacements,
+            Map<JobPlacement, Location> pickLocations,
+            Map<JobPlacement, Location> placementLocations) {
+        long startTime = System.currentTimeMillis();
+        long deadline = startTime + timeBudgetMs;
+
+        // Group by part height, keeping the original order within each group.
+        TreeMap<Double, List<JobPlacement>> groups = new TreeMap<>();
+        for (JobPlacement jobPlacement : jobPlacements) {
+            groups.computeIfAbsent(jobPlacement.getPartHeight(), h -> new ArrayList<>())
+                    .add(jobPlacement);
+        }
+
+        List<JobPlacement> before = new ArrayList<>();
+        List<JobPlacement> after = new ArrayList<>();
+        boolean converged = true;
+        for (List<JobPlacement> group : groups.values()) {
+            Tour tour = new Tour(group, pickLocations, placementLocations);
+            // Start from wherever the previous group left the head.
+            if (!after.isEmpty()) {
+                tour.setStart(placementLocations.get(after.get(after.size() - 1)));
+            }
+            tour.nearestNeighbour();
+            converged &= tour.twoOpt(deadline);
+            before.addAll(group);
+            after.addAll(tour.getOrder());
+        }
+
+        double travelBefore = travel(before, pickLocations, placementLocations);
+        double travelAfter = travel(after, pickLocations, placementLocations);
+        if (travelAfter < travelBefore) {
+            jobPlacements.clear();
+            jobPlacements.addAll(after);
+        }
+        else {
+            travelAfter = travelBefore;
+        }
+        return new Report(jobPlacements.size(), travelBefore, travelAfter,
+                System.currentTimeMillis() - startTime, converged);
+    }
+
+    /**
+     * Order a set of locations to be visited one after another so that the XY travel between
+     * them is short.
+     * 
+     * @param locations The locations to visit.
+     * @param start Where the head starts from, or null to start at any of the locations.
+     * @return The indexes into locations in the order they should be visited.
+     */
+    public int[] sequence(List<Location> locations, Location start) {
+        Tour tour = new Tour(locations);
+        if (start != null) {
+            tour.setStart(start);
+        }
+        tour.nearestNeighbour();
+        tour.twoOpt(System.currentTimeMillis() + timeBudgetMs);
+        return tour.order.clone();
+    }
+
+    /**
+     * Estimate the total XY travel, in millimeters, of performing the placements in the given
+     * order, including the moves from each pick location to its placement location.
+     */
+    public static double travel(List<JobPlacement> jobPlacements,
+            Map<JobPlacement, Location> pickLocations,
+            Map<JobPlacement, Location> placementLocations) {
+        double travel = 0;
+        Location last = null;
+        for (JobPlacement jobPlacement : jobPlacements) {
+            Location pick = pickLocations.get(jobPlacement).convertToUnits(LengthUnit.Millimeters);
+            Location place =
+                    placementLocations.get(jobPlacement).convertToUnits(LengthUnit.Millimeters);
+            if (last != null) {
+                travel += last.getLinearDistanceTo(pick);
+            }
+            travel += pick.getLinearDistanceTo(place);
+            last = place;
+        }
+        return travel;
+    }
+
+    /**
+     * An open tour over a group of placements with an optional fixed starting point. Distances
+     * are asymmetric since leaving a node happens at its placement location and arriving happens
+     * at its pick location, so segment reversals are priced using prefix sums of the edge costs
+     * in both directions.
+     */
+    static class Tour {
+        final List<JobPlacement> jobPlacements;
+        final double[] pickX, pickY, placeX, placeY;
+        final int n;
+        int[] order;
+        boolean hasStart;
+        double startX, startY;
+        // forward[k] is the sum of the costs of edges (k' -> k'+1) for k' < k in the current order
+        // and backward[k] the same sum with each edge traversed the other way.
+        double[] forward, backward;
+
+        Tour(List<JobPlacement> jobPlacements, Map<JobPlacement, Location> pickLocations,
+                Map<JobPlacement, Location> placementLocations) {
+            this.jobPlacements = jobPlacements;
+            n = jobPlacements.size();
+            pickX = new double[n];
+            pickY = new double[n];
+            placeX = new double[n];
+            placeY = new double[n];
+            order = new int[n];
+            for (int i = 0; i < n; i++) {
+                JobPlacement jobPlacement = jobPlacements.get(i);
+                Location pick =
+                        pickLocations.get(jobPlacement).convertToUnits(LengthUnit.Millimeters);
+                Location place =
+                        placementLocations.get(jobPlacement).convertToUnits(LengthUnit.Millimeters);
+                pickX[i] = pick.getX();
+                pickY[i] = pick.getY();
+                placeX[i] = place.getX();
+                placeY[i] = place.getY();
+                order[i] = i;
+            }
+        }
+
+        /**
+         * A tour over plain locations, where each node is left from where it is entered.
+         */
+        Tour(List<Location> locations) {
+            this.jobPlacements = null;
+            n = locations.size();
+            pickX = new double[n];
+            pickY = new double[n];
+            placeX = pickX;
+            placeY = pickY;
+            order = new int[n];
+            for (int i = 0; i < n; i++) {
+                Location location = locations.get(i).convertToUnits(LengthUnit.Millimeters);
+                pickX[i] = location.getX();
+                pickY[i] = location.getY();
+                order[i] = i;
+            }
+        }
+
+        void setStart(Location start) {
+            start = start.convertToUnits(LengthUnit.Millimeters);
+            hasStart = true;
+            startX = start.getX();
+            startY = start.getY();
+        }
+
+        List<JobPlacement> getOrder() {
+            List<JobPlacement> result = new ArrayList<>();
+            for (int i : order) {
+                result.add(jobPlacements.get(i));
+            }
+            return result;
+        }
+
+        /**
+         * Cost of moving from placement a's placement location to placement b's pick location.
+         */
+        double cost(int a, int b) {
+            double dx = pickX[b] - placeX[a];
+            double dy = pickY[b] - placeY[a];
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+
+        double startCost(int b) {
+            if (!hasStart) {
+                return 0;
+            }
+            double dx = pickX[b] - startX;
+            double dy = pickY[b] - startY;
+            return Math.sqrt(dx * dx + dy * dy);
+        }
+
+        /**
+         * Cost of arriving at node b when it is placed at position i in the tour.
+         */
+        double enter(int i, int b) {
+            return i == 0 ? startCost(b) : cost(order[i - 1], b);
+        }
+
+        /**
+         * Cost of leaving node a towards the node following position j in the tour.
+         */
+        double leave(int j, int a) {
+            return j + 1 < n ? cost(a, order[j + 1]) : 0;
+        }
+
+        void nearestNeighbour() {
+            boolean[] visited = new boolean[n];
+            int last = -1;
+            for (int i = 0; i < n; i++) {
+                int best = -1;
+                double bestCost = Double.MAX_VALUE;
+                for (int j = 0; j < n; j++) {
+                    if (visited[j]) {
+                        continue;
+                    }
+                    double cost = last == -1 ? startCost(j) : cost(last, j);
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        best = j;
+                    }
+                }
+                visited[best] = true;
+                order[i] = best;
+                last = best;
+            }
+        }
+
+        void updatePrefixSums() {
+            forward = new double[n];
+            backward = new double[n];
+            for (int k = 1; k < n; k++) {
+                forward[k] = forward[k - 1] + cost(order[k - 1], order[k]);
+                backward[k] = backward[k - 1] + cost(order[k], order[k - 1]);
+            }
+        }
+
+        /**
+         * Apply improving segment reversals until none are left or the deadline passes.
+         * 
+         * @return true if the tour is 2-opt optimal, false if the deadline stopped it.
+         */
+        boolean twoOpt(long deadline) {
+            if (n < 3) {
+                return true;
+            }
+            updatePrefixSums();
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int i = 0; i < n - 1; i++) {
+                    if (System.currentTimeMillis() > deadline) {
+                        return false;
+                    }
+                    for (int j = i + 1; j < n; j++) {
+                        double before = enter(i, order[i]) + (forward[j] - forward[i])
+                                + leave(j, order[j]);
+                        double after = enter(i, order[j]) + (backward[j] - backward[i])
+                                + leave(j, order[i]);
+                        if (after < before - 1e-6) {
+                            reverse(i, j);
+                            updatePrefixSums();
+                            improved = true;
+                        }
+                    }
+                }
+            }
+            return true;
+        }
+
+        void reverse(int i, int j) {
+            while (i < j) {
+                int t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+                i++;
+                j--;
+            }
+        }
+    }
+}
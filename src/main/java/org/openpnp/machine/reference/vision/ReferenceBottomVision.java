@@ -1,17 +1,28 @@
 package org.openpnp.machine.reference.vision;
 
+import java.awt.image.BufferedImage;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import javax.swing.Action;
 import javax.swing.Icon;
 
 import org.apache.commons.io.IOUtils;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
 import org.opencv.core.RotatedRect;
 import org.openpnp.gui.MainFrame;
 import org.openpnp.gui.components.CameraView;
 import org.openpnp.gui.support.PropertySheetWizardAdapter;
 import org.openpnp.gui.support.Wizard;
+import org.openpnp.machine.reference.ReferenceHeadMountable;
 import org.openpnp.machine.reference.vision.wizards.ReferenceBottomVisionConfigurationWizard;
 import org.openpnp.machine.reference.vision.wizards.ReferenceBottomVisionPartConfigurationWizard;
 import org.openpnp.model.BoardLocation;
@@ -20,6 +31,7 @@ import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
 import org.openpnp.model.Part;
 import org.openpnp.spi.Camera;
+import org.openpnp.spi.Head;
 import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.PartAlignment;
 import org.openpnp.spi.PropertySheetHolder;
@@ -28,7 +40,9 @@ import org.openpnp.util.OpenCvUtils;
 import org.openpnp.util.Utils2D;
 import org.openpnp.util.VisionUtils;
 import org.openpnp.vision.pipeline.CvPipeline;
+import org.openpnp.vision.pipeline.CvStage;
 import org.openpnp.vision.pipeline.CvStage.Result;
+import org.openpnp.vision.pipeline.stages.ImageCapture;
 import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
@@ -36,6 +50,10 @@ import org.simpleframework.xml.ElementMap;
 import org.simpleframework.xml.Root;
 
 public class ReferenceBottomVision implements PartAlignment {
+    /**
+     * The smallest region, in pixels, worth aligning a part in when several nozzles share a frame.
+     */
+    private static final int MIN_REGION_SIZE = 32;
 
 
     @Element(required = false)
@@ -48,6 +66,13 @@ public class ReferenceBottomVision implements PartAlignment {
     @Attribute(required = false)
     protected boolean preRotate = false;
 
+    /**
+     * Align the parts on all the nozzles of a head from a single frame when they fit in the
+     * camera's view together, see findOffsets(Map, ExecutorService).
+     */
+    @Attribute(required = false)
+    protected boolean multiNozzle = false;
+
     @ElementMap(required = false)
     protected Map<String, PartSettings> partSettingsByPartId = new HashMap<>();
 
@@ -101,7 +126,7 @@ public class ReferenceBottomVision implements PartAlignment {
             CvPipeline pipeline = partSettings.getPipeline();
             pipeline.setProperty("camera", camera);
             pipeline.setProperty("nozzle", nozzle);
-            pipeline.process();
+            pipeline.processHeadless();
             if (!((pipeline.getResult("result")).model instanceof RotatedRect)) {
                 throw new Exception("Bottom vision alignment failed for part " + part.getId()
                         + " on nozzle " + nozzle.getName() + ". No result found.");
@@ -119,7 +144,7 @@ public class ReferenceBottomVision implements PartAlignment {
             nozzle.moveTo(
                     new Location(LengthUnit.Millimeters, Double.NaN, Double.NaN, Double.NaN,
                             placementAngle + angle));
-            pipeline.process();
+            pipeline.processHeadless();
             if (!((pipeline.getResult("result")).model instanceof RotatedRect)) {
                 throw new Exception("Bottom vision alignment failed for part " + part.getId()
                         + " on nozzle " + nozzle.getName() + ". No result found.");
@@ -159,8 +184,299 @@ public class ReferenceBottomVision implements PartAlignment {
 
         pipeline.setProperty("camera", camera);
         pipeline.setProperty("nozzle", nozzle);
-        pipeline.process();
+        pipeline.processHeadless();
+
+        return getOffsets(part, nozzle, camera, pipeline, preRotateAngle);
+    }
+
+    /**
+     * Like findOffsets(), but only the move to the camera and the capture are done on the calling
+     * thread. The part's pipeline is then run on a copy, on the given executor, so that the caller
+     * can move the next nozzle to the camera in the meantime. Pre-rotation moves again based on a
+     * first result, and a pipeline without an ImageCapture stage does not capture where expected,
+     * so in those cases everything is done on the calling thread.
+     */
+    public Future<PartAlignmentOffset> findOffsetsAsync(Part part, BoardLocation boardLocation,
+            Location placementLocation, Nozzle nozzle, ExecutorService executor)
+            throws Exception {
+        PartSettings partSettings = getPartSettings(part);
+        CvPipeline pipeline = partSettings.getPipeline();
+        ImageCapture imageCapture = getImageCapture(pipeline);
+        if (!isEnabled() || !partSettings.isEnabled() || preRotate || imageCapture == null) {
+            return CompletableFuture.completedFuture(
+                    findOffsets(part, boardLocation, placementLocation, nozzle));
+        }
+
+        Camera camera = VisionUtils.getBottomVisionCamera();
+        Location startLocation = camera.getLocation();
+        Length partHeight = part.getHeight();
+        Location partHeightLocation =
+                new Location(partHeight.getUnits(), 0, 0, partHeight.getValue(), 0);
+        startLocation = startLocation.add(partHeightLocation).derive(null, null, null, 0.0);
+
+        MovableUtils.moveToLocationAtSafeZ(nozzle, startLocation);
+
+        BufferedImage image =
+                imageCapture.isSettleFirst() ? camera.settleAndCapture() : camera.capture();
+        String xml = pipeline.toXmlString();
+
+        return executor.submit(() -> {
+            CvPipeline copy = new CvPipeline(xml);
+            try {
+                copy.setProperty("camera", camera);
+                copy.setProperty("nozzle", nozzle);
+                copy.setProperty(ImageCapture.CAPTURED_IMAGE_PROPERTY, image);
+                copy.processHeadless();
+                return getOffsets(part, nozzle, camera, copy, 0);
+            }
+            finally {
+                copy.release();
+            }
+        });
+    }
+
+    /**
+     * Align the parts on several nozzles of the same head from a single capture. The head is
+     * moved so that the nozzles are centered on the camera as a group, one frame is captured and
+     * split into a square region around each nozzle, and each part's pipeline is run on its
+     * region in parallel on the given executor. The regions are centered on where the nozzles
+     * ended up, including their tips' calibrated runout, and are as large as they can be without
+     * overlapping each other or leaving the frame.
+     *
+     * Only parts that could be aligned this way are in the result, and the caller should align
+     * the rest with findOffsets() as usual. Parts are left out when they are not enabled for
+     * bottom vision, when their pipeline has no ImageCapture stage, when pre-rotation is on, when
+     * the nozzles don't fit in the frame together, and when the result is ambiguous: missing, or
+     * running into the edge of the region, which is what a part too large for its region or a
+     * neighbouring part reaching into it looks like.
+     *
+     * @param parts The part on each nozzle.
+     * @return The offsets of the parts that were aligned, by nozzle.
+     */
+    public Map<Nozzle, PartAlignmentOffset> findOffsets(Map<Nozzle, Part> parts,
+            ExecutorService executor) throws Exception {
+        Map<Nozzle, PartAlignmentOffset> offsetsByNozzle = new HashMap<>();
+        if (!isEnabled() || preRotate) {
+            return offsetsByNozzle;
+        }
+
+        Map<Nozzle, ImageCapture> imageCaptures = new LinkedHashMap<>();
+        Head head = null;
+        for (Entry<Nozzle, Part> entry : parts.entrySet()) {
+            Nozzle nozzle = entry.getKey();
+            PartSettings partSettings = getPartSettings(entry.getValue());
+            ImageCapture imageCapture = getImageCapture(partSettings.getPipeline());
+            if (!partSettings.isEnabled() || imageCapture == null
+                    || !(nozzle instanceof ReferenceHeadMountable)
+                    || (head != null && nozzle.getHead() != head)) {
+                continue;
+            }
+            head = nozzle.getHead();
+            imageCaptures.put(nozzle, imageCapture);
+        }
+        if (imageCaptures.size() < 2) {
+            return offsetsByNozzle;
+        }
+
+        Camera camera = VisionUtils.getBottomVisionCamera();
+        Location unitsPerPixel = camera.getUnitsPerPixel();
+
+        // Each nozzle's offset from the center of the group, which is where it will be relative to
+        // the center of the camera.
+        Location center = new Location(unitsPerPixel.getUnits());
+        for (Nozzle nozzle : imageCaptures.keySet()) {
+            center = center.add(((ReferenceHeadMountable) nozzle).getHeadOffsets());
+        }
+        double count = imageCaptures.size();
+        center = center.multiply(1 / count, 1 / count, 0, 0);
+        Map<Nozzle, Location> nozzleOffsets = new HashMap<>();
+        for (Nozzle nozzle : imageCaptures.keySet()) {
+            nozzleOffsets.put(nozzle,
+                    ((ReferenceHeadMountable) nozzle).getHeadOffsets().subtract(center));
+        }
+        if (getRegionSize(camera, getNozzlePixels(camera, nozzleOffsets)) < MIN_REGION_SIZE) {
+            Logger.debug("Nozzles {} don't fit in the frame together, aligning one at a time.",
+                    imageCaptures.keySet());
+            return offsetsByNozzle;
+        }
+
+        Location cameraLocation = camera.getLocation();
+        boolean settleFirst = false;
+        boolean first = true;
+        for (Nozzle nozzle : imageCaptures.keySet()) {
+            Length partHeight = parts.get(nozzle)
+                                     .getHeight();
+            Location location = cameraLocation.add(nozzleOffsets.get(nozzle))
+                                              .add(new Location(partHeight.getUnits(), 0, 0,
+                                                      partHeight.getValue(), 0))
+                                              .derive(null, null, null, 0.0);
+            if (first) {
+                MovableUtils.moveToLocationAtSafeZ(nozzle, location);
+                first = false;
+            }
+            else {
+                // The head is already in place, so this only moves the nozzle's Z and rotation,
+                // and the head by any difference in the nozzle tips' runout.
+                nozzle.moveTo(location);
+            }
+            settleFirst |= imageCaptures.get(nozzle)
+                                        .isSettleFirst();
+        }
+
+        // Only the last nozzle moved is exactly where it was sent, so find where each one ended
+        // up. A nozzle's location includes its tip's calibrated runout.
+        for (Nozzle nozzle : imageCaptures.keySet()) {
+            nozzleOffsets.put(nozzle, nozzle.getLocation().subtract(cameraLocation));
+        }
+        Map<Nozzle, Point> nozzlePixels = getNozzlePixels(camera, nozzleOffsets);
+        int size = getRegionSize(camera, nozzlePixels);
+        if (size < MIN_REGION_SIZE) {
+            Logger.debug("Nozzles {} don't fit in the frame together with their runout, aligning "
+                    + "one at a time.", imageCaptures.keySet());
+            return offsetsByNozzle;
+        }
+
+        BufferedImage image = settleFirst ? camera.settleAndCapture() : camera.capture();
+        Mat mat = OpenCvUtils.toMat(image);
+        Map<Nozzle, Future<PartAlignmentOffset>> futures = new LinkedHashMap<>();
+        try {
+            for (Nozzle nozzle : imageCaptures.keySet()) {
+                Part part = parts.get(nozzle);
+                Point pixel = nozzlePixels.get(nozzle);
+                Rect region = new Rect((int) Math.round(pixel.x - size / 2.0),
+                        (int) Math.round(pixel.y - size / 2.0), size, size);
+                Mat regionMat = mat.submat(region)
+                                   .clone();
+                BufferedImage regionImage = OpenCvUtils.toBufferedImage(regionMat);
+                regionMat.release();
+                String xml = getPartSettings(part).getPipeline()
+                                                  .toXmlString();
+                Location offsets = nozzleOffsets.get(nozzle)
+                                                .convertToUnits(unitsPerPixel.getUnits())
+                                                .derive(null, null, 0.0, 0.0);
+                futures.put(nozzle, executor.submit(() -> {
+                    CvPipeline copy = new CvPipeline(xml);
+                    try {
+                        copy.setProperty("camera", camera);
+                        copy.setProperty("nozzle", nozzle);
+                        copy.setProperty(ImageCapture.CAPTURED_IMAGE_PROPERTY, regionImage);
+                        copy.processHeadless();
+                        return getRegionOffsets(part, nozzle, camera, copy, region, offsets);
+                    }
+                    finally {
+                        copy.release();
+                    }
+                }));
+            }
+        }
+        finally {
+            mat.release();
+        }
+
+        for (Entry<Nozzle, Future<PartAlignmentOffset>> entry : futures.entrySet()) {
+            try {
+                PartAlignmentOffset offsets = entry.getValue()
+                                                   .get();
+                if (offsets != null) {
+                    offsetsByNozzle.put(entry.getKey(), offsets);
+                }
+            }
+            catch (ExecutionException e) {
+                Logger.debug("Multi-nozzle alignment of {} failed, aligning on its own: {}",
+                        entry.getKey(), e.getCause());
+            }
+        }
+        return offsetsByNozzle;
+    }
+
+    /**
+     * Get where each nozzle is in the camera's frame from where it is relative to the center of
+     * the camera.
+     */
+    private static Map<Nozzle, Point> getNozzlePixels(Camera camera,
+            Map<Nozzle, Location> nozzleOffsets) {
+        Location unitsPerPixel = camera.getUnitsPerPixel();
+        Map<Nozzle, Point> nozzlePixels = new HashMap<>();
+        for (Entry<Nozzle, Location> entry : nozzleOffsets.entrySet()) {
+            Location offsets = entry.getValue()
+                                    .convertToUnits(unitsPerPixel.getUnits());
+            nozzlePixels.put(entry.getKey(),
+                    new Point(camera.getWidth() / 2.0 + offsets.getX() / unitsPerPixel.getX(),
+                            camera.getHeight() / 2.0 - offsets.getY() / unitsPerPixel.getY()));
+        }
+        return nozzlePixels;
+    }
 
+    /**
+     * Get the size of the largest square regions around the given pixels that neither overlap
+     * each other nor leave the frame.
+     */
+    private static int getRegionSize(Camera camera, Map<Nozzle, Point> nozzlePixels) {
+        int width = camera.getWidth();
+        int height = camera.getHeight();
+        double half = Double.MAX_VALUE;
+        for (Point a : nozzlePixels.values()) {
+            half = Math.min(half, Math.min(Math.min(a.x, width - a.x), Math.min(a.y, height - a.y)));
+            for (Point b : nozzlePixels.values()) {
+                if (a != b) {
+                    half = Math.min(half, Math.max(Math.abs(a.x - b.x), Math.abs(a.y - b.y)) / 2);
+                }
+            }
+        }
+        return (int) Math.floor(half) * 2;
+    }
+
+    /**
+     * Work out the offsets from the result of a pipeline run on one nozzle's region of a
+     * multi-nozzle frame, or return null if the result is ambiguous.
+     *
+     * @param nozzleOffsets Where the nozzle is relative to the center of the camera.
+     */
+    private PartAlignmentOffset getRegionOffsets(Part part, Nozzle nozzle, Camera camera,
+            CvPipeline pipeline, Rect region, Location nozzleOffsets) {
+        Result result = pipeline.getResult("result");
+        if (result == null || !(result.model instanceof RotatedRect)) {
+            Logger.debug("No result for {} on {} in the multi-nozzle frame.", part.getId(),
+                    nozzle.getName());
+            return null;
+        }
+        RotatedRect rect = (RotatedRect) result.model;
+        Rect bounds = rect.boundingRect();
+        if (rect.size.area() == 0 || bounds.x <= 0 || bounds.y <= 0
+                || bounds.x + bounds.width >= region.width
+                || bounds.y + bounds.height >= region.height) {
+            Logger.debug("Result rect {} for {} on {} reaches the edge of its region.", rect,
+                    part.getId(), nozzle.getName());
+            return null;
+        }
+        Logger.debug("Result rect {} in region {}", rect, region);
+
+        Location offsets = VisionUtils.getPixelCenterOffsets(camera, region.x + rect.center.x,
+                region.y + rect.center.y)
+                                      .subtract(nozzleOffsets)
+                                      .derive(null, null, null, -getAngle(rect));
+        Logger.debug("Final offsets {}", offsets);
+
+        OpenCvUtils.saveDebugImage(ReferenceBottomVision.class, "findOffsets", "result",
+                pipeline.getWorkingImage());
+
+        return new PartAlignmentOffset(offsets, false);
+    }
+
+    private static ImageCapture getImageCapture(CvPipeline pipeline) {
+        for (CvStage stage : pipeline.getStages()) {
+            if (stage instanceof ImageCapture && stage.isEnabled()) {
+                return (ImageCapture) stage;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Work out the offsets from the result of a processed pipeline.
+     */
+    private PartAlignmentOffset getOffsets(Part part, Nozzle nozzle, Camera camera,
+            CvPipeline pipeline, double preRotateAngle) throws Exception {
         Result result = pipeline.getResult("result");
         if (!(result.model instanceof RotatedRect)) {
             throw new Exception("Bottom vision alignment failed for part " + part.getId()
@@ -173,22 +489,8 @@ public class ReferenceBottomVision implements PartAlignment {
         // the center of the camera to the located part.
         Location offsets = VisionUtils.getPixelCenterOffsets(camera, rect.center.x, rect.center.y);
 
-        // We assume that the part is never picked more than 45º rotated
-        // so if OpenCV tells us it's rotated more than 45º we correct
-        // it. This seems to happen quite a bit when the angle of rotation
-        // is close to 0.
-        double angle = rect.angle;
-        while (Math.abs(angle) > 45) {
-            if (angle < 0) {
-                angle += 90;
-            }
-            else {
-                angle -= 90;
-            }
-        }
-
         // Set the angle on the offsets.
-        offsets = offsets.derive(null, null, null, -angle);
+        offsets = offsets.derive(null, null, null, -getAngle(rect));
         Logger.debug("Final offsets {}", offsets);
 
         OpenCvUtils.saveDebugImage(ReferenceBottomVision.class, "findOffsets", "result",
@@ -212,6 +514,26 @@ public class ReferenceBottomVision implements PartAlignment {
         return new PartAlignmentOffset(offsets, false);
     }
 
+    /**
+     * Get the angle of the part from the result rect.
+     */
+    private static double getAngle(RotatedRect rect) {
+        // We assume that the part is never picked more than 45º rotated
+        // so if OpenCV tells us it's rotated more than 45º we correct
+        // it. This seems to happen quite a bit when the angle of rotation
+        // is close to 0.
+        double angle = rect.angle;
+        while (Math.abs(angle) > 45) {
+            if (angle < 0) {
+                angle += 90;
+            }
+            else {
+                angle -= 90;
+            }
+        }
+        return angle;
+    }
+
     @Override
     public boolean canHandle(Part part) {
         PartSettings partSettings = getPartSettings(part);
@@ -272,6 +594,14 @@ public class ReferenceBottomVision implements PartAlignment {
         this.preRotate = preRotate;
     }
 
+    public boolean isMultiNozzle() {
+        return multiNozzle;
+    }
+
+    public void setMultiNozzle(boolean multiNozzle) {
+        this.multiNozzle = multiNozzle;
+    }
+
     @Override
     public String getPropertySheetHolderTitle() {
         return "Bottom Vision";
@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -15,12 +16,14 @@ import org.opencv.features2d.KeyPoint;
 import org.openpnp.gui.MainFrame;
 import org.openpnp.gui.support.PropertySheetWizardAdapter;
 import org.openpnp.gui.support.Wizard;
+import org.openpnp.machine.reference.planner.TravelOptimizingSequencer;
 import org.openpnp.machine.reference.vision.wizards.ReferenceFiducialLocatorConfigurationWizard;
 import org.openpnp.machine.reference.vision.wizards.ReferenceFiducialLocatorPartConfigurationWizard;
 import org.openpnp.model.Board;
 import org.openpnp.model.BoardLocation;
 import org.openpnp.model.Configuration;
 import org.openpnp.model.Footprint;
+import org.openpnp.model.Length;
 import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
 import org.openpnp.model.Panel;
@@ -54,6 +57,21 @@ public class ReferenceFiducialLocator implements FiducialLocator {
     @ElementMap(required = false)
     protected Map<String, PartSettings> partSettingsByPartId = new HashMap<>();
 
+    /**
+     * If a pass finds the fiducial within this distance of the camera it is not moved there for
+     * another pass. Zero always makes all three passes.
+     */
+    @Element(required = false)
+    protected Length convergenceTolerance = new Length(0, LengthUnit.Millimeters);
+
+    /**
+     * If true locateBoards() visits the fiducials of all the boards in one optimized path.
+     */
+    @Attribute(required = false)
+    protected boolean batchLocate = false;
+
+    private static final long BATCH_SEQUENCE_TIME_MS = 200;
+
     public Location locateBoard(BoardLocation boardLocation) throws Exception {
         return locateBoard(boardLocation, false);
     }
@@ -70,7 +88,80 @@ public class ReferenceFiducialLocator implements FiducialLocator {
             fiducials = getFiducials(boardLocation);
         }
 
+        List<Placement> chosen = chooseFiducials(fiducials);
+        Placement placementA = chosen.get(0);
+        Placement placementB = chosen.get(1);
+
+        // Run the fiducial check on each and get their actual locations
+        Location actualLocationA = getFiducialLocation(boardLocation, placementA);
+        if (actualLocationA == null) {
+            throw new Exception("Unable to locate first fiducial.");
+        }
+        Location actualLocationB = getFiducialLocation(boardLocation, placementB);
+        if (actualLocationB == null) {
+            throw new Exception("Unable to locate second fiducial.");
+        }
+
+        return calculateBoardLocation(boardLocation, placementA, placementB, actualLocationA,
+                actualLocationB);
+    }
+
+    /**
+     * Locate each of the given boards. In batch mode the fiducials of all of the boards are
+     * visited in a single travel-minimizing path instead of board by board. Each board is
+     * located from the same two fiducials, and with the same calculation, as locateBoard() would
+     * use.
+     */
+    @Override
+    public Map<BoardLocation, Location> locateBoards(List<BoardLocation> boardLocations)
+            throws Exception {
+        Map<BoardLocation, Location> results = new LinkedHashMap<>();
+        if (!batchLocate) {
+            for (BoardLocation boardLocation : boardLocations) {
+                results.put(boardLocation, locateBoard(boardLocation));
+            }
+            return results;
+        }
+
+        // Two fiducials per board, at 2 * i and 2 * i + 1 for board i.
+        List<Placement> fiducials = new ArrayList<>();
+        List<Location> idealLocations = new ArrayList<>();
+        for (BoardLocation boardLocation : boardLocations) {
+            for (Placement fiducial : chooseFiducials(getFiducials(boardLocation))) {
+                fiducials.add(fiducial);
+                idealLocations.add(Utils2D.calculateBoardPlacementLocation(boardLocation,
+                        fiducial.getLocation()));
+            }
+        }
+
+        Camera camera = Configuration.get().getMachine().getDefaultHead().getDefaultCamera();
+        int[] order = new TravelOptimizingSequencer(BATCH_SEQUENCE_TIME_MS)
+                .sequence(idealLocations, camera.getLocation());
+
+        Location[] actualLocations = new Location[fiducials.size()];
+        for (int i : order) {
+            BoardLocation boardLocation = boardLocations.get(i / 2);
+            actualLocations[i] = getFiducialLocation(boardLocation, fiducials.get(i));
+            if (actualLocations[i] == null) {
+                throw new Exception(String.format("Unable to locate %s fiducial of board %s.",
+                        i % 2 == 0 ? "first" : "second", boardLocation.getBoard().getName()));
+            }
+        }
+
+        for (int i = 0; i < boardLocations.size(); i++) {
+            BoardLocation boardLocation = boardLocations.get(i);
+            results.put(boardLocation,
+                    calculateBoardLocation(boardLocation, fiducials.get(2 * i),
+                            fiducials.get(2 * i + 1), actualLocations[2 * i],
+                            actualLocations[2 * i + 1]));
+        }
+        return results;
+    }
 
+    /**
+     * Choose the two fiducials, out of those given, that a board is located by.
+     */
+    private static List<Placement> chooseFiducials(List<Placement> fiducials) throws Exception {
         if (fiducials.size() < 2) {
             throw new Exception(String.format(
                     "The board side contains only %d placements marked as fiducials, but at least 2 are required.",
@@ -80,21 +171,14 @@ public class ReferenceFiducialLocator implements FiducialLocator {
         // Find the two that are most distant from each other
         List<Placement> mostDistant = getMostDistantPlacements(fiducials);
 
-        Placement placementA = mostDistant.get(0);
-        Placement placementB = mostDistant.get(1);
-
-        Logger.debug("Chose {} and {}", placementA.getId(), placementB.getId());
+        Logger.debug("Chose {} and {}", mostDistant.get(0).getId(), mostDistant.get(1).getId());
 
-        // Run the fiducial check on each and get their actual locations
-        Location actualLocationA = getFiducialLocation(boardLocation, placementA);
-        if (actualLocationA == null) {
-            throw new Exception("Unable to locate first fiducial.");
-        }
-        Location actualLocationB = getFiducialLocation(boardLocation, placementB);
-        if (actualLocationB == null) {
-            throw new Exception("Unable to locate second fiducial.");
-        }
+        return mostDistant;
+    }
 
+    private static Location calculateBoardLocation(BoardLocation boardLocation,
+            Placement placementA, Placement placementB, Location actualLocationA,
+            Location actualLocationB) throws Exception {
         // Calculate the linear distance between the ideal points and the
         // located points. If they differ by more than a few percent we
         // probably made a mistake.
@@ -158,7 +242,7 @@ public class ReferenceFiducialLocator implements FiducialLocator {
         return getFiducialLocation(location, part);
     }
     
-    private Location getFiducialLocation(Location location, Part part) throws Exception {
+    protected Location getFiducialLocation(Location location, Part part) throws Exception {
         Camera camera = Configuration.get().getMachine().getDefaultHead().getDefaultCamera();
 
         org.openpnp.model.Package pkg = part.getPackage();
@@ -197,7 +281,7 @@ public class ReferenceFiducialLocator implements FiducialLocator {
             List<KeyPoint> keypoints;
             try {
                 // Perform vision operation
-                pipeline.process();
+                pipeline.processHeadless();
                 
                 // Get the results
                 keypoints = (List<KeyPoint>) pipeline.getResult("results").getModel();
@@ -234,6 +318,15 @@ public class ReferenceFiducialLocator implements FiducialLocator {
             location = locations.get(0);
             
             Logger.debug("{} located at {}", part.getId(), location);
+
+            // Stop if the camera is already close enough that another pass won't improve it.
+            double tolerance =
+                    convergenceTolerance.convertToUnits(location.getUnits()).getValue();
+            if (tolerance > 0 && location.getLinearDistanceTo(camera.getLocation()) <= tolerance) {
+                Logger.debug("{} converged after {} passes", part.getId(), i + 1);
+                break;
+            }
+
             // Move to where we actually found the fid
             camera.moveTo(location);
         }
@@ -288,6 +381,22 @@ public class ReferenceFiducialLocator implements FiducialLocator {
         return pipeline;
     }
 
+    public Length getConvergenceTolerance() {
+        return convergenceTolerance;
+    }
+
+    public void setConvergenceTolerance(Length convergenceTolerance) {
+        this.convergenceTolerance = convergenceTolerance;
+    }
+
+    public boolean isBatchLocate() {
+        return batchLocate;
+    }
+
+    public void setBatchLocate(boolean batchLocate) {
+        this.batchLocate = batchLocate;
+    }
+
     public void setPipeline(CvPipeline pipeline) {
         this.pipeline = pipeline;
     }
@@ -11,10 +11,13 @@ import javax.swing.JDialog;
 import javax.swing.JLabel;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JTextField;
 import javax.swing.border.TitledBorder;
 
 import org.openpnp.gui.MainFrame;
+import org.openpnp.gui.components.ComponentDecorators;
 import org.openpnp.gui.support.AbstractConfigurationWizard;
+import org.openpnp.gui.support.LengthConverter;
 import org.openpnp.gui.support.MessageBoxes;
 import org.openpnp.machine.reference.vision.ReferenceFiducialLocator;
 import org.openpnp.machine.reference.vision.ReferenceFiducialLocator.PartSettings;
@@ -37,6 +40,8 @@ import com.jgoodies.forms.layout.RowSpec;
 public class ReferenceFiducialLocatorConfigurationWizard extends AbstractConfigurationWizard {
     private final ReferenceFiducialLocator fiducialLocator;
     private static Part defaultPart = createDefaultPart();
+    private JTextField textFieldConvergenceTolerance;
+    private JCheckBox chckbxBatchLocate;
 
     public ReferenceFiducialLocatorConfigurationWizard(ReferenceFiducialLocator fiducialLocator) {
         this.fiducialLocator = fiducialLocator;
@@ -55,6 +60,10 @@ public class ReferenceFiducialLocatorConfigurationWizard extends AbstractConfigu
                 FormSpecs.RELATED_GAP_COLSPEC,
                 FormSpecs.DEFAULT_COLSPEC,},
             new RowSpec[] {
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,}));
 
@@ -102,6 +111,23 @@ public class ReferenceFiducialLocatorConfigurationWizard extends AbstractConfigu
             }
         });
         panel.add(btnResetAllTo, "8, 2");
+
+        JLabel lblConvergenceTolerance = new JLabel("Convergence Tolerance");
+        lblConvergenceTolerance.setToolTipText(
+                "Stop homing in once a fiducial is found this close to the camera. 0 disables.");
+        panel.add(lblConvergenceTolerance, "2, 4");
+
+        textFieldConvergenceTolerance = new JTextField();
+        panel.add(textFieldConvergenceTolerance, "4, 4");
+        textFieldConvergenceTolerance.setColumns(10);
+
+        JLabel lblBatchLocate = new JLabel("Optimize Fiducial Path?");
+        lblBatchLocate.setToolTipText(
+                "Visit the fiducials of all boards in one path rather than board by board.");
+        panel.add(lblBatchLocate, "2, 6");
+
+        chckbxBatchLocate = new JCheckBox("");
+        panel.add(chckbxBatchLocate, "4, 6");
     }
     
     private void editPipeline() throws Exception {
@@ -138,6 +164,14 @@ public class ReferenceFiducialLocatorConfigurationWizard extends AbstractConfigu
 
     @Override
     public void createBindings() {
+        LengthConverter lengthConverter = new LengthConverter();
+
+        addWrappedBinding(fiducialLocator, "convergenceTolerance", textFieldConvergenceTolerance,
+                "text", lengthConverter);
+        addWrappedBinding(fiducialLocator, "batchLocate", chckbxBatchLocate, "selected");
+
+        ComponentDecorators.decorateWithAutoSelectAndLengthConversion(
+                textFieldConvergenceTolerance);
     }
     
     @Override
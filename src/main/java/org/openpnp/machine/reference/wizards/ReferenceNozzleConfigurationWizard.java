@@ -67,6 +67,8 @@ public class ReferenceNozzleConfigurationWizard extends AbstractConfigurationWiz
     private JTextField vacSenseActuatorNameTf;
     private JLabel lblPartOnLowers;
     private JCheckBox invertVacuumLogicChk;
+    private JCheckBox adaptiveDwellChk;
+    private JTextField vacuumPollTf;
 
     public ReferenceNozzleConfigurationWizard(ReferenceNozzle nozzle) {
         this.nozzle = nozzle;
@@ -203,6 +205,10 @@ public class ReferenceNozzleConfigurationWizard extends AbstractConfigurationWiz
                 FormSpecs.RELATED_GAP_COLSPEC,
                 FormSpecs.DEFAULT_COLSPEC,},
             new RowSpec[] {
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
                 FormSpecs.DEFAULT_ROWSPEC,
                 FormSpecs.RELATED_GAP_ROWSPEC,
@@ -220,6 +226,21 @@ public class ReferenceNozzleConfigurationWizard extends AbstractConfigurationWiz
         
         invertVacuumLogicChk = new JCheckBox("");
         panel.add(invertVacuumLogicChk, "4, 4");
+        
+        JLabel lblAdaptiveDwell = new JLabel("Adaptive Dwell?");
+        lblAdaptiveDwell.setToolTipText(
+                "Poll the vacuum level and continue as soon as it is reached. The dwell times become timeouts.");
+        panel.add(lblAdaptiveDwell, "2, 6, right, default");
+        
+        adaptiveDwellChk = new JCheckBox("");
+        panel.add(adaptiveDwellChk, "4, 6");
+        
+        JLabel lblVacuumPoll = new JLabel("Vacuum Poll Interval (ms)");
+        panel.add(lblVacuumPoll, "2, 8, right, default");
+        
+        vacuumPollTf = new JTextField();
+        panel.add(vacuumPollTf, "4, 8");
+        vacuumPollTf.setColumns(10);
 
 
     }
@@ -243,6 +264,8 @@ public class ReferenceNozzleConfigurationWizard extends AbstractConfigurationWiz
         addWrappedBinding(nozzle, "placeDwellMilliseconds", placeDwellTf, "text", intConverter);
         addWrappedBinding(nozzle, "vacuumSenseActuatorName", vacSenseActuatorNameTf, "text");
         addWrappedBinding(nozzle, "invertVacuumSenseLogic", invertVacuumLogicChk, "selected");
+        addWrappedBinding(nozzle, "adaptiveDwell", adaptiveDwellChk, "selected");
+        addWrappedBinding(nozzle, "vacuumPollMilliseconds", vacuumPollTf, "text", intConverter);
 
         ComponentDecorators.decorateWithAutoSelect(nameTf);
         ComponentDecorators.decorateWithAutoSelect(pickDwellTf);
@@ -252,5 +275,6 @@ public class ReferenceNozzleConfigurationWizard extends AbstractConfigurationWiz
         ComponentDecorators.decorateWithAutoSelectAndLengthConversion(locationZ);
         ComponentDecorators.decorateWithAutoSelectAndLengthConversion(textFieldSafeZ);
         ComponentDecorators.decorateWithAutoSelect(vacSenseActuatorNameTf);
+        ComponentDecorators.decorateWithAutoSelect(vacuumPollTf);
     }
 }
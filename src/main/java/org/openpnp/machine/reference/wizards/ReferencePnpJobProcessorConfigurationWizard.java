@@ -20,13 +20,25 @@
 package org.openpnp.machine.reference.wizards;
 
 import javax.swing.BoxLayout;
+import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
 import javax.swing.border.TitledBorder;
 
+import org.openpnp.gui.MainFrame;
+import org.openpnp.gui.components.ComponentDecorators;
 import org.openpnp.gui.support.AbstractConfigurationWizard;
+import org.openpnp.gui.support.IntegerConverter;
+import org.openpnp.gui.support.LongConverter;
+import org.openpnp.gui.support.MessageBoxes;
+import org.openpnp.machine.reference.FiducialCheckCache.FreshnessPolicy;
 import org.openpnp.machine.reference.ReferencePnpJobProcessor;
+import org.openpnp.machine.reference.planner.TravelOptimizingSequencer;
+import org.openpnp.model.Job;
 
 import com.jgoodies.forms.layout.ColumnSpec;
 import com.jgoodies.forms.layout.FormLayout;
@@ -37,6 +49,16 @@ import com.jgoodies.forms.layout.RowSpec;
 public class ReferencePnpJobProcessorConfigurationWizard extends AbstractConfigurationWizard {
     private final ReferencePnpJobProcessor jobProcessor;
     private JCheckBox parkWhenComplete;
+    private JCheckBox optimizePlacementOrder;
+    private JTextField optimizePlacementOrderTimeMs;
+    private JButton btnEstimatePlacementOrder;
+    private JCheckBox prefeed;
+    private JCheckBox asyncAlignment;
+    private JCheckBox journalProgress;
+    private JTextField journalSyncIntervalMs;
+    private JComboBox fiducialCheckFreshness;
+    private JTextField fiducialCheckMaxPlacements;
+    private JTextField fiducialCheckMaxAgeMs;
 
     public ReferencePnpJobProcessorConfigurationWizard(ReferencePnpJobProcessor jobProcessor) {
         this.jobProcessor = jobProcessor;
@@ -47,18 +69,153 @@ public class ReferencePnpJobProcessorConfigurationWizard extends AbstractConfigu
                 TitledBorder.TOP, null, null));
         contentPanel.add(panelGeneral);
         panelGeneral.setLayout(new FormLayout(
-                new ColumnSpec[] {FormSpecs.DEFAULT_COLSPEC, FormSpecs.DEFAULT_COLSPEC,},
-                new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, RowSpec.decode("16px"),}));
+                new ColumnSpec[] {FormSpecs.DEFAULT_COLSPEC, FormSpecs.DEFAULT_COLSPEC,
+                        FormSpecs.RELATED_GAP_COLSPEC, FormSpecs.DEFAULT_COLSPEC,},
+                new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, RowSpec.decode("16px"),
+                        FormSpecs.RELATED_GAP_ROWSPEC, RowSpec.decode("16px"),
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, RowSpec.decode("16px"),
+                        FormSpecs.RELATED_GAP_ROWSPEC, RowSpec.decode("16px"),
+                        FormSpecs.RELATED_GAP_ROWSPEC, RowSpec.decode("16px"),
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,}));
 
         JLabel lblParkWhenComplete = new JLabel("Park When Complete");
         panelGeneral.add(lblParkWhenComplete, "1, 2, right, top");
 
         parkWhenComplete = new JCheckBox("");
         panelGeneral.add(parkWhenComplete, "2, 2");
+
+        JLabel lblOptimizePlacementOrder = new JLabel("Optimize Placement Order");
+        panelGeneral.add(lblOptimizePlacementOrder, "1, 4, right, top");
+
+        optimizePlacementOrder = new JCheckBox("");
+        panelGeneral.add(optimizePlacementOrder, "2, 4");
+
+        JLabel lblOptimizePlacementOrderTime = new JLabel("Optimization Time Limit (ms)");
+        panelGeneral.add(lblOptimizePlacementOrderTime, "1, 6, right, default");
+
+        optimizePlacementOrderTimeMs = new JTextField();
+        panelGeneral.add(optimizePlacementOrderTimeMs, "2, 6");
+        optimizePlacementOrderTimeMs.setColumns(10);
+
+        btnEstimatePlacementOrder = new JButton("Estimate");
+        btnEstimatePlacementOrder.setToolTipText(
+                "Show how much optimizing would shorten the open job's travel.");
+        btnEstimatePlacementOrder.addActionListener(e -> estimatePlacementOrder());
+        panelGeneral.add(btnEstimatePlacementOrder, "4, 6");
+
+        JLabel lblPrefeed = new JLabel("Prefeed Next Cycle");
+        lblPrefeed.setToolTipText(
+                "Feed the next cycle during alignment, if the feeders don't need the nozzle.");
+        panelGeneral.add(lblPrefeed, "1, 8, right, top");
+
+        prefeed = new JCheckBox("");
+        panelGeneral.add(prefeed, "2, 8");
+
+        JLabel lblAsyncAlignment = new JLabel("Align In Background");
+        lblAsyncAlignment.setToolTipText(
+                "Process bottom vision while the next nozzle moves to the camera.");
+        panelGeneral.add(lblAsyncAlignment, "1, 10, right, top");
+
+        asyncAlignment = new JCheckBox("");
+        panelGeneral.add(asyncAlignment, "2, 10");
+
+        JLabel lblJournalProgress = new JLabel("Journal Progress");
+        lblJournalProgress.setToolTipText(
+                "Record each place next to the job file, so a crash doesn't lose what was placed.");
+        panelGeneral.add(lblJournalProgress, "1, 12, right, top");
+
+        journalProgress = new JCheckBox("");
+        panelGeneral.add(journalProgress, "2, 12");
+
+        JLabel lblJournalSyncInterval = new JLabel("Journal Sync Interval (ms)");
+        panelGeneral.add(lblJournalSyncInterval, "1, 14, right, default");
+
+        journalSyncIntervalMs = new JTextField();
+        panelGeneral.add(journalSyncIntervalMs, "2, 14");
+        journalSyncIntervalMs.setColumns(10);
+
+        JPanel panelFiducialChecks = new JPanel();
+        panelFiducialChecks.setBorder(new TitledBorder(null, "Placement Fiducial Checks",
+                TitledBorder.LEADING, TitledBorder.TOP, null, null));
+        contentPanel.add(panelFiducialChecks);
+        panelFiducialChecks.setLayout(new FormLayout(
+                new ColumnSpec[] {FormSpecs.DEFAULT_COLSPEC, FormSpecs.DEFAULT_COLSPEC,},
+                new RowSpec[] {FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,
+                        FormSpecs.RELATED_GAP_ROWSPEC, FormSpecs.DEFAULT_ROWSPEC,}));
+
+        JLabel lblFiducialCheckFreshness = new JLabel("Reuse Measurement");
+        panelFiducialChecks.add(lblFiducialCheckFreshness, "1, 2, right, default");
+
+        fiducialCheckFreshness = new JComboBox(FreshnessPolicy.values());
+        panelFiducialChecks.add(fiducialCheckFreshness, "2, 2");
+
+        JLabel lblFiducialCheckMaxPlacements = new JLabel("Max Placements");
+        panelFiducialChecks.add(lblFiducialCheckMaxPlacements, "1, 4, right, default");
+
+        fiducialCheckMaxPlacements = new JTextField();
+        panelFiducialChecks.add(fiducialCheckMaxPlacements, "2, 4");
+        fiducialCheckMaxPlacements.setColumns(10);
+
+        JLabel lblFiducialCheckMaxAge = new JLabel("Max Age (ms)");
+        panelFiducialChecks.add(lblFiducialCheckMaxAge, "1, 6, right, default");
+
+        fiducialCheckMaxAgeMs = new JTextField();
+        panelFiducialChecks.add(fiducialCheckMaxAgeMs, "2, 6");
+        fiducialCheckMaxAgeMs.setColumns(10);
+    }
+
+    /**
+     * Run the sequencer on the open job in the background and show its report.
+     */
+    private void estimatePlacementOrder() {
+        Job job = MainFrame.get().getJobTab().getJob();
+        btnEstimatePlacementOrder.setEnabled(false);
+        Thread thread = new Thread(() -> {
+            try {
+                TravelOptimizingSequencer.Report report = jobProcessor.estimatePlacementOrder(job);
+                SwingUtilities.invokeLater(
+                        () -> MessageBoxes.infoBox("Placement Order", report.toString()));
+            }
+            catch (Exception e) {
+                SwingUtilities.invokeLater(
+                        () -> MessageBoxes.errorBox(getTopLevelAncestor(), "Placement Order", e));
+            }
+            finally {
+                SwingUtilities.invokeLater(() -> btnEstimatePlacementOrder.setEnabled(true));
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
     }
 
     @Override
     public void createBindings() {
+        LongConverter longConverter = new LongConverter();
+        IntegerConverter intConverter = new IntegerConverter();
+
         addWrappedBinding(jobProcessor, "parkWhenComplete", parkWhenComplete, "selected");
+        addWrappedBinding(jobProcessor, "optimizePlacementOrder", optimizePlacementOrder,
+                "selected");
+        addWrappedBinding(jobProcessor, "optimizePlacementOrderTimeMs",
+                optimizePlacementOrderTimeMs, "text", longConverter);
+        addWrappedBinding(jobProcessor, "prefeed", prefeed, "selected");
+        addWrappedBinding(jobProcessor, "asyncAlignment", asyncAlignment, "selected");
+        addWrappedBinding(jobProcessor, "journalProgress", journalProgress, "selected");
+        addWrappedBinding(jobProcessor, "journalSyncIntervalMs", journalSyncIntervalMs, "text",
+                longConverter);
+
+        addWrappedBinding(jobProcessor, "fiducialCheckFreshness", fiducialCheckFreshness,
+                "selectedItem");
+        addWrappedBinding(jobProcessor, "fiducialCheckMaxPlacements", fiducialCheckMaxPlacements,
+                "text", intConverter);
+        addWrappedBinding(jobProcessor, "fiducialCheckMaxAgeMs", fiducialCheckMaxAgeMs, "text",
+                longConverter);
+
+        ComponentDecorators.decorateWithAutoSelect(optimizePlacementOrderTimeMs);
+        ComponentDecorators.decorateWithAutoSelect(journalSyncIntervalMs);
+        ComponentDecorators.decorateWithAutoSelect(fiducialCheckMaxPlacements);
+        ComponentDecorators.decorateWithAutoSelect(fiducialCheckMaxAgeMs);
     }
 }
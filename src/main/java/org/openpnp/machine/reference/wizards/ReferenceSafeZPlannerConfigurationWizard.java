@@ -0,0 +1,76 @@
+package org.openpnp.machine.reference.wizards;
+
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.border.TitledBorder;
+
+import org.openpnp.gui.components.ComponentDecorators;
+import org.openpnp.gui.support.AbstractConfigurationWizard;
+import org.openpnp.gui.support.LengthConverter;
+import org.openpnp.machine.reference.ReferenceSafeZPlanner;
+
+import com.jgoodies.forms.layout.ColumnSpec;
+import com.jgoodies.forms.layout.FormLayout;
+import com.jgoodies.forms.layout.FormSpecs;
+import com.jgoodies.forms.layout.RowSpec;
+
+@SuppressWarnings("serial")
+public class ReferenceSafeZPlannerConfigurationWizard extends AbstractConfigurationWizard {
+    private final ReferenceSafeZPlanner planner;
+    private JCheckBox chckbxEnabled;
+    private JTextField textFieldClearance;
+
+    public ReferenceSafeZPlannerConfigurationWizard(ReferenceSafeZPlanner planner) {
+        this.planner = planner;
+
+        JPanel panel = new JPanel();
+        panel.setBorder(new TitledBorder(null, "General", TitledBorder.LEADING, TitledBorder.TOP,
+                null, null));
+        contentPanel.add(panel);
+        panel.setLayout(new FormLayout(new ColumnSpec[] {
+                FormSpecs.RELATED_GAP_COLSPEC,
+                ColumnSpec.decode("right:default"),
+                FormSpecs.RELATED_GAP_COLSPEC,
+                FormSpecs.DEFAULT_COLSPEC,},
+            new RowSpec[] {
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,
+                FormSpecs.RELATED_GAP_ROWSPEC,
+                FormSpecs.DEFAULT_ROWSPEC,}));
+
+        JLabel lblEnabled = new JLabel("Enabled?");
+        lblEnabled.setToolTipText(
+                "Raise the nozzles only as far as needed to clear the obstacle regions.");
+        panel.add(lblEnabled, "2, 2");
+
+        chckbxEnabled = new JCheckBox("");
+        panel.add(chckbxEnabled, "4, 2");
+
+        JLabel lblClearance = new JLabel("Clearance");
+        lblClearance.setToolTipText("How far above an obstacle the bottom of a part is kept.");
+        panel.add(lblClearance, "2, 4");
+
+        textFieldClearance = new JTextField();
+        panel.add(textFieldClearance, "4, 4");
+        textFieldClearance.setColumns(10);
+
+        JLabel lblRegions = new JLabel(String.format(
+                "%d obstacle regions. Regions are edited in machine.xml.",
+                planner.getRegions().size()));
+        panel.add(lblRegions, "2, 6, 3, 1");
+    }
+
+    @Override
+    public void createBindings() {
+        LengthConverter lengthConverter = new LengthConverter();
+
+        addWrappedBinding(planner, "enabled", chckbxEnabled, "selected");
+        addWrappedBinding(planner, "clearance", textFieldClearance, "text", lengthConverter);
+
+        ComponentDecorators.decorateWithAutoSelectAndLengthConversion(textFieldClearance);
+    }
+}
@@ -24,8 +24,11 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
@@ -113,6 +116,33 @@ public class Board extends AbstractModelObject implements PropertyChangeListener
         firePropertyChange("fiducials", oldValue, fiducials);
     }
 
+    /**
+     * Add all of the given fiducials with a single copy of the list and a single property change.
+     * 
+     * @param fiducials
+     */
+    public void addFiducials(Collection<Fiducial> fiducials) {
+        ArrayList<Fiducial> oldValue = this.fiducials;
+        this.fiducials = new ArrayList<>(oldValue.size() + fiducials.size());
+        this.fiducials.addAll(oldValue);
+        this.fiducials.addAll(fiducials);
+        firePropertyChange("fiducials", oldValue, this.fiducials);
+    }
+
+    /**
+     * Remove all of the given fiducials with a single copy of the list and a single property
+     * change.
+     *
+     * @param fiducials
+     */
+    public void removeFiducials(Collection<Fiducial> fiducials) {
+        Set<Fiducial> removed = new HashSet<>(fiducials);
+        ArrayList<Fiducial> oldValue = this.fiducials;
+        this.fiducials = new ArrayList<>(oldValue);
+        this.fiducials.removeIf(removed::contains);
+        firePropertyChange("fiducials", oldValue, this.fiducials);
+    }
+
     public List<Placement> getPlacements() {
         return Collections.unmodifiableList(placements);
     }
@@ -137,6 +167,44 @@ public class Board extends AbstractModelObject implements PropertyChangeListener
         }
     }
 
+    /**
+     * Add all of the given placements with a single copy of the list and a single property
+     * change. Use this instead of calling addPlacement() in a loop when importing.
+     * 
+     * @param placements
+     */
+    public void addPlacements(Collection<Placement> placements) {
+        ArrayList<Placement> oldValue = this.placements;
+        this.placements = new ArrayList<>(oldValue.size() + placements.size());
+        this.placements.addAll(oldValue);
+        this.placements.addAll(placements);
+        firePropertyChange("placements", oldValue, this.placements);
+        for (Placement placement : placements) {
+            if (placement != null) {
+                placement.addPropertyChangeListener(this);
+            }
+        }
+    }
+
+    /**
+     * Remove all of the given placements with a single copy of the list and a single property
+     * change.
+     * 
+     * @param placements
+     */
+    public void removePlacements(Collection<Placement> placements) {
+        Set<Placement> removed = new HashSet<>(placements);
+        Object oldValue = this.placements;
+        this.placements = new ArrayList<>(this.placements);
+        this.placements.removeIf(removed::contains);
+        firePropertyChange("placements", oldValue, this.placements);
+        for (Placement placement : removed) {
+            if (placement != null) {
+                placement.removePropertyChangeListener(this);
+            }
+        }
+    }
+
     public List<BoardPad> getSolderPastePads() {
         return Collections.unmodifiableList(solderPastePads);
     }
@@ -161,6 +229,41 @@ public class Board extends AbstractModelObject implements PropertyChangeListener
         }
     }
 
+    /**
+     * Add all of the given pads with a single copy of the list and a single property change.
+     * 
+     * @param pads
+     */
+    public void addSolderPastePads(Collection<BoardPad> pads) {
+        ArrayList<BoardPad> oldValue = solderPastePads;
+        solderPastePads = new ArrayList<>(oldValue.size() + pads.size());
+        solderPastePads.addAll(oldValue);
+        solderPastePads.addAll(pads);
+        firePropertyChange("solderPastePads", oldValue, solderPastePads);
+        for (BoardPad pad : pads) {
+            if (pad != null) {
+                pad.addPropertyChangeListener(this);
+            }
+        }
+    }
+
+    /**
+     * Remove all of the given pads with a single copy of the list and a single property change.
+     * 
+     * @param pads
+     */
+    public void removeSolderPastePads(Collection<BoardPad> pads) {
+        Set<BoardPad> removed = new HashSet<>(pads);
+        Object oldValue = solderPastePads;
+        solderPastePads = new ArrayList<>(solderPastePads);
+        solderPastePads.removeIf(removed::contains);
+        firePropertyChange("solderPastePads", oldValue, solderPastePads);
+        for (BoardPad pad : removed) {
+            if (pad != null) {
+                pad.removePropertyChangeListener(this);
+            }
+        }
+    }
 
     public String getName() {
         return name;
@@ -192,6 +295,43 @@ public class Board extends AbstractModelObject implements PropertyChangeListener
         firePropertyChange("dirty", oldValue, dirty);
     }
 
+    /**
+     * Replace the content of this board with that of a board read from its file in the
+     * background, with a single property change for each list.
+     */
+    void setContents(Board board) {
+        setName(board.name);
+        setDimensions(board.dimensions);
+
+        ArrayList<Fiducial> oldFiducials = fiducials;
+        fiducials = board.fiducials;
+        firePropertyChange("fiducials", oldFiducials, fiducials);
+
+        ArrayList<Placement> oldPlacements = placements;
+        placements = board.placements;
+        firePropertyChange("placements", oldPlacements, placements);
+        for (Placement placement : oldPlacements) {
+            placement.removePropertyChangeListener(this);
+        }
+        for (Placement placement : placements) {
+            placement.removePropertyChangeListener(board);
+            placement.addPropertyChangeListener(this);
+        }
+
+        ArrayList<BoardPad> oldPads = solderPastePads;
+        solderPastePads = board.solderPastePads;
+        firePropertyChange("solderPastePads", oldPads, solderPastePads);
+        for (BoardPad pad : oldPads) {
+            pad.removePropertyChangeListener(this);
+        }
+        for (BoardPad pad : solderPastePads) {
+            pad.removePropertyChangeListener(board);
+            pad.addPropertyChangeListener(this);
+        }
+
+        setDirty(false);
+    }
+
     public void propertyChange(PropertyChangeEvent evt) {
         if (evt.getSource() != Board.this || !evt.getPropertyName().equals("dirty")) {
             setDirty(true);
@@ -19,19 +19,39 @@
 
 package org.openpnp.model;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.prefs.Preferences;
 
+import javax.swing.SwingUtilities;
+
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.openpnp.ConfigurationListener;
+import org.openpnp.JobLoadListener;
 import org.openpnp.Scripting;
 import org.openpnp.spi.Machine;
 import org.openpnp.util.ResourceUtils;
@@ -44,13 +64,25 @@ import org.simpleframework.xml.convert.AnnotationStrategy;
 import org.simpleframework.xml.core.Persister;
 import org.simpleframework.xml.stream.Format;
 import org.simpleframework.xml.stream.HyphenStyle;
-import org.simpleframework.xml.stream.Style;
 
 import com.google.common.eventbus.EventBus;
 
 public class Configuration extends AbstractModelObject {
     private static Configuration instance;
 
+    private static final Serializer serializer =
+            new Persister(new AnnotationStrategy(), new Format(new HyphenStyle()));
+
+    /**
+     * Reads configuration and board files in parallel.
+     */
+    private static final ExecutorService loadExecutor =
+            Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+                Thread thread = new Thread(r, "Configuration loader");
+                thread.setDaemon(true);
+                return thread;
+            });
+
     private static final String PREF_UNITS = "Configuration.units";
     private static final String PREF_UNITS_DEF = "Millimeters";
 
@@ -70,6 +102,10 @@ public class Configuration extends AbstractModelObject {
     private LinkedHashMap<String, Part> parts = new LinkedHashMap<>();
     private Machine machine;
     private LinkedHashMap<File, Board> boards = new LinkedHashMap<>();
+    /**
+     * Boards that loadJob() is still loading in the background, by file. Guarded by boards.
+     */
+    private Map<File, CompletableFuture<Void>> pendingBoards = new HashMap<>();
     private boolean loaded;
     private Set<ConfigurationListener> listeners = Collections.synchronizedSet(new HashSet<>());
     private File configurationDirectory;
@@ -210,64 +246,40 @@ public class Configuration extends AbstractModelObject {
     }
 
     public synchronized void load() throws Exception {
-        boolean forceSave = false;
         boolean overrideUserConfig = Boolean.getBoolean("overrideUserConfig");
-
+        boolean forceSave = overrideUserConfig
+                || !new File(configurationDirectory, "packages.xml").exists()
+                || !new File(configurationDirectory, "parts.xml").exists()
+                || !new File(configurationDirectory, "machine.xml").exists();
+
+        // Packages and parts don't refer to each other until configurationLoaded(), so they are
+        // read in the background while the machine is read here.
+        Future<PackagesConfigurationHolder> packagesHolder = loadExecutor.submit(
+                () -> readConfiguration(PackagesConfigurationHolder.class, "packages.xml",
+                        overrideUserConfig));
+        Future<PartsConfigurationHolder> partsHolder =
+                loadExecutor.submit(() -> readConfiguration(PartsConfigurationHolder.class,
+                        "parts.xml", overrideUserConfig));
+        MachineConfigurationHolder machineHolder = null;
+        Exception machineException = null;
         try {
-            File file = new File(configurationDirectory, "packages.xml");
-            if (overrideUserConfig || !file.exists()) {
-                Logger.info("No packages.xml found in configuration directory, loading defaults.");
-                file = File.createTempFile("packages", "xml");
-                FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/packages.xml"), file);
-                forceSave = true;
-            }
-            loadPackages(file);
+            machineHolder = readConfiguration(MachineConfigurationHolder.class, "machine.xml",
+                    overrideUserConfig);
         }
         catch (Exception e) {
-            String message = e.getMessage();
-            if (e.getCause() != null && e.getCause().getMessage() != null) {
-                message = e.getCause().getMessage();
-            }
-            throw new Exception("Error while reading packages.xml (" + message + ")", e);
+            machineException = e;
         }
 
-
-        try {
-            File file = new File(configurationDirectory, "parts.xml");
-            if (overrideUserConfig || !file.exists()) {
-                Logger.info("No parts.xml found in configuration directory, loading defaults.");
-                file = File.createTempFile("parts", "xml");
-                FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/parts.xml"), file);
-                forceSave = true;
-            }
-            loadParts(file);
-        }
-        catch (Exception e) {
-            String message = e.getMessage();
-            if (e.getCause() != null && e.getCause().getMessage() != null) {
-                message = e.getCause().getMessage();
-            }
-            throw new Exception("Error while reading parts.xml (" + message + ")", e);
+        for (Package pkg : getConfiguration(packagesHolder, "packages.xml").packages) {
+            addPackage(pkg);
         }
-
-
-        try {
-            File file = new File(configurationDirectory, "machine.xml");
-            if (overrideUserConfig || !file.exists()) {
-                Logger.info("No machine.xml found in configuration directory, loading defaults.");
-                file = File.createTempFile("machine", "xml");
-                FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/machine.xml"), file);
-                forceSave = true;
-            }
-            loadMachine(file);
+        for (Part part : getConfiguration(partsHolder, "parts.xml").parts) {
+            addPart(part);
         }
-        catch (Exception e) {
-            String message = e.getMessage();
-            if (e.getCause() != null && e.getCause().getMessage() != null) {
-                message = e.getCause().getMessage();
-            }
-            throw new Exception("Error while reading machine.xml (" + message + ")", e);
+        if (machineException != null) {
+            throw readError("machine.xml", machineException);
         }
+        machine = machineHolder.machine;
 
         loaded = true;
 
@@ -337,105 +349,137 @@ public class Configuration extends AbstractModelObject {
         if (id == null) {
             return null;
         }
-        return parts.get(id.toUpperCase());
+        // Boards loading in the background look up their placements' parts.
+        synchronized (parts) {
+            return parts.get(id.toUpperCase());
+        }
     }
 
     public List<Part> getParts() {
-        return Collections.unmodifiableList(new ArrayList<>(parts.values()));
+        synchronized (parts) {
+            return Collections.unmodifiableList(new ArrayList<>(parts.values()));
+        }
     }
 
     public void addPart(Part part) {
         if (null == part.getId()) {
             throw new Error("Part with null Id cannot be added to Configuration.");
         }
-        parts.put(part.getId().toUpperCase(), part);
+        synchronized (parts) {
+            parts.put(part.getId().toUpperCase(), part);
+        }
         firePropertyChange("parts", null, parts);
     }
 
     public void removePart(Part part) {
-        parts.remove(part.getId().toUpperCase());
+        synchronized (parts) {
+            parts.remove(part.getId().toUpperCase());
+        }
         firePropertyChange("parts", null, parts);
     }
 
     public List<Board> getBoards() {
-        return Collections.unmodifiableList(new ArrayList<>(boards.values()));
+        synchronized (boards) {
+            return Collections.unmodifiableList(new ArrayList<>(boards.values()));
+        }
     }
 
     public Machine getMachine() {
         return machine;
     }
 
+    /**
+     * Get the board for the given file, loading it if it is not already loaded. A board that is
+     * still being loaded in the background by loadJob(File, Executor, JobLoadListener) is
+     * returned as it is, and gets its content when that finishes.
+     */
     public Board getBoard(File file) throws Exception {
         if (!file.exists()) {
             Board board = new Board(file);
             board.setName(file.getName());
-            Serializer serializer = createSerializer();
             serializer.write(board, file);
         }
         file = file.getCanonicalFile();
-        if (boards.containsKey(file)) {
-            return boards.get(file);
+        synchronized (boards) {
+            if (boards.containsKey(file)) {
+                return boards.get(file);
+            }
         }
         Board board = loadBoard(file);
-        boards.put(file, board);
+        synchronized (boards) {
+            boards.put(file, board);
+        }
         firePropertyChange("boards", null, boards);
         return board;
     }
 
-    private void loadMachine(File file) throws Exception {
-        Serializer serializer = createSerializer();
-        MachineConfigurationHolder holder = serializer.read(MachineConfigurationHolder.class, file);
-        machine = holder.machine;
-    }
-
     private void saveMachine(File file) throws Exception {
         MachineConfigurationHolder holder = new MachineConfigurationHolder();
         holder.machine = machine;
-        Serializer serializer = createSerializer();
-        serializer.write(holder, new ByteArrayOutputStream());
-        serializer.write(holder, file);
-    }
-
-    private void loadPackages(File file) throws Exception {
-        Serializer serializer = createSerializer();
-        PackagesConfigurationHolder holder =
-                serializer.read(PackagesConfigurationHolder.class, file);
-        for (Package pkg : holder.packages) {
-            addPackage(pkg);
-        }
+        writeAtomically(file, out -> serializer.write(holder, out));
     }
 
     private void savePackages(File file) throws Exception {
-        Serializer serializer = createSerializer();
         PackagesConfigurationHolder holder = new PackagesConfigurationHolder();
         holder.packages = new ArrayList<>(packages.values());
-        serializer.write(holder, new ByteArrayOutputStream());
-        serializer.write(holder, file);
-    }
-
-    private void loadParts(File file) throws Exception {
-        Serializer serializer = createSerializer();
-        PartsConfigurationHolder holder = serializer.read(PartsConfigurationHolder.class, file);
-        for (Part part : holder.parts) {
-            addPart(part);
-        }
+        writeAtomically(file, out -> serializer.write(holder, out));
     }
 
     private void saveParts(File file) throws Exception {
-        Serializer serializer = createSerializer();
         PartsConfigurationHolder holder = new PartsConfigurationHolder();
         holder.parts = new ArrayList<>(parts.values());
-        serializer.write(holder, new ByteArrayOutputStream());
-        serializer.write(holder, file);
+        writeAtomically(file, out -> serializer.write(holder, out));
     }
 
+    /**
+     * Load a job and all of its boards, returning once everything is loaded. This can't be
+     * called on the event dispatch thread: a board that the GUI is loading gets its content
+     * there, so waiting for it would never end. Use loadJob(File, Executor, JobLoadListener)
+     * instead.
+     */
     public Job loadJob(File file) throws Exception {
-        Serializer serializer = createSerializer();
+        if (SwingUtilities.isEventDispatchThread()) {
+            throw new Exception("Can't wait for a job to load on the event dispatch thread.");
+        }
+        CompletableFuture<Job> loaded = new CompletableFuture<>();
+        loadJob(file, Runnable::run, new JobLoadListener.Adapter() {
+            @Override
+            public void jobLoaded(Job job) {
+                loaded.complete(job);
+            }
+
+            @Override
+            public void jobLoadFailed(Job job, Exception e) {
+                loaded.completeExceptionally(e);
+            }
+        });
+        try {
+            return loaded.get();
+        }
+        catch (ExecutionException e) {
+            throw (Exception) e.getCause();
+        }
+    }
+
+    /**
+     * Load a job, returning as soon as the job file itself is read. Boards that are not already
+     * loaded are given to the job empty, and are read in parallel in the background. As each one
+     * is read its placements and other content are added to it and the listener is told. The job
+     * is isLoading() until the listener's jobLoaded() or jobLoadFailed(), and must not be run or
+     * saved before then.
+     *
+     * @param executor Where the loaded content is added to the boards and the listener is
+     *        called, such as SwingUtilities::invokeLater.
+     */
+    public Job loadJob(File file, Executor executor, JobLoadListener listener) throws Exception {
         Job job = serializer.read(Job.class, file);
         job.setFile(file);
+        job.setLoading(true);
 
         // Once the Job is loaded we need to resolve any Boards that it
         // references.
+        List<CompletableFuture<Void>> boardLoads = new ArrayList<>();
+        boolean boardsAdded = false;
         for (BoardLocation boardLocation : job.getBoardLocations()) {
             String boardFilename = boardLocation.getBoardFile();
             // First see if we can find the board at the given filename
@@ -450,17 +494,86 @@ public class Configuration extends AbstractModelObject {
             if (!boardFile.exists()) {
                 throw new Exception("Board file not found: " + boardFilename);
             }
-            Board board = getBoard(boardFile);
+            boardFile = boardFile.getCanonicalFile();
+            Board board;
+            synchronized (boards) {
+                board = boards.get(boardFile);
+                if (board == null) {
+                    board = new Board(boardFile);
+                    board.setName(boardFile.getName());
+                    boards.put(boardFile, board);
+                    CompletableFuture<Void> load = loadBoard(board, job, executor, listener);
+                    pendingBoards.put(boardFile, load);
+                    File loadFile = boardFile;
+                    load.whenComplete((v, t) -> {
+                        synchronized (boards) {
+                            pendingBoards.remove(loadFile);
+                            if (t != null) {
+                                boards.remove(loadFile);
+                            }
+                        }
+                    });
+                    boardsAdded = true;
+                }
+                // Wait for any board that is still being loaded, whoever started it.
+                CompletableFuture<Void> pending = pendingBoards.get(boardFile);
+                if (pending != null) {
+                    boardLoads.add(pending);
+                }
+            }
             boardLocation.setBoard(board);
         }
-
+        if (boardsAdded) {
+            firePropertyChange("boards", null, boards);
+        }
         job.setDirty(false);
 
+        CompletableFuture.allOf(boardLoads.toArray(new CompletableFuture<?>[0]))
+                .whenCompleteAsync((v, t) -> {
+                    job.setLoading(false);
+                    if (t != null) {
+                        while (t instanceof CompletionException && t.getCause() != null) {
+                            t = t.getCause();
+                        }
+                        listener.jobLoadFailed(job,
+                                t instanceof Exception ? (Exception) t : new Exception(t));
+                        return;
+                    }
+                    try {
+                        restoreJobProgress(job);
+                    }
+                    catch (Exception e) {
+                        listener.jobLoadFailed(job, e);
+                        return;
+                    }
+                    listener.jobLoaded(job);
+                }, executor);
         return job;
     }
 
+    /**
+     * Restore any progress the job made after it was last saved. The journal's feeder records
+     * are only newer than the machine configuration if it wasn't saved since. Restored feed
+     * counts are saved to the machine configuration right away, which also keeps them from
+     * being restored again over later changes.
+     */
+    private void restoreJobProgress(Job job) throws Exception {
+        File journalFile = JobJournal.getFile(job.getFile());
+        if (journalFile.exists()) {
+            File machineFile = new File(configurationDirectory, "machine.xml");
+            boolean restoreFeeders = journalFile.lastModified() > machineFile.lastModified();
+            if (JobJournal.replay(job, restoreFeeders ? machine : null)) {
+                synchronized (this) {
+                    saveMachine(machineFile);
+                }
+            }
+        }
+    }
+
     public void saveJob(Job job, File file) throws Exception {
-        Serializer serializer = createSerializer();
+        if (job.isLoading()) {
+            throw new Exception("The job can't be saved until it has finished loading.");
+        }
         Set<Board> boards = new HashSet<>();
         // Fix the paths to any boards in the Job
         for (BoardLocation boardLocation : job.getBoardLocations()) {
@@ -480,10 +593,17 @@ public class Configuration extends AbstractModelObject {
             saveBoard(board);
         }
         // Save the job
-        serializer.write(job, new ByteArrayOutputStream());
-        serializer.write(job, file);
+        writeAtomically(file, out -> serializer.write(job, out));
         job.setFile(file);
         job.setDirty(false);
+        // Everything in the journal is in the file now.
+        JobJournal journal = job.getJournal();
+        if (journal != null && journal.getFile().equals(JobJournal.getFile(file))) {
+            journal.checkpoint();
+        }
+        else {
+            JobJournal.getFile(file).delete();
+        }
     }
     
     public String getImgurClientId() {
@@ -491,28 +611,136 @@ public class Configuration extends AbstractModelObject {
     }
 
     public void saveBoard(Board board) throws Exception {
-        Serializer serializer = createSerializer();
-        serializer.write(board, new ByteArrayOutputStream());
-        serializer.write(board, board.getFile());
+        synchronized (boards) {
+            CompletableFuture<Void> pending = pendingBoards.get(board.getFile());
+            if (pending != null && !pending.isDone()) {
+                throw new Exception(
+                        "Board " + board.getName() + " can't be saved until it has loaded.");
+            }
+        }
+        writeAtomically(board.getFile(), out -> serializer.write(board, out));
         board.setDirty(false);
     }
 
     private Board loadBoard(File file) throws Exception {
-        Serializer serializer = createSerializer();
         Board board = serializer.read(Board.class, file);
         board.setFile(file);
         board.setDirty(false);
         return board;
     }
 
+    /**
+     * Read a board's file in the background, reporting how much of it has been read as the
+     * parser streams through it, then add what was read to the board on the executor.
+     */
+    private CompletableFuture<Void> loadBoard(Board board, Job job, Executor executor,
+            JobLoadListener listener) {
+        File file = board.getFile();
+        long length = Math.max(1, file.length());
+        return CompletableFuture.supplyAsync(() -> {
+            try (InputStream in = new CountingInputStream(
+                    new BufferedInputStream(new FileInputStream(file))) {
+                private int percent = -1;
+
+                @Override
+                protected synchronized void afterRead(int n) {
+                    super.afterRead(n);
+                    int read = (int) (getByteCount() * 100 / length);
+                    if (read > percent) {
+                        percent = read;
+                        executor.execute(() -> listener.boardLoadProgress(job, board, read));
+                    }
+                }
+            }) {
+                return serializer.read(Board.class, in);
+            }
+            catch (Exception e) {
+                throw new CompletionException(
+                        new Exception("Error while reading " + file.getName() + " ("
+                                + e.getMessage() + ")", e));
+            }
+        }, loadExecutor).thenAcceptAsync(loaded -> {
+            board.setContents(loaded);
+            listener.boardLoaded(job, board);
+        }, executor);
+    }
+
+    /**
+     * Writes the content of a file.
+     */
+    public interface ContentWriter {
+        void write(OutputStream out) throws Exception;
+    }
+
+    /**
+     * Write a file by writing a temporary file next to it and, once that is complete and synced
+     * to disk, renaming it over the original. A failure or crash part way through leaves the
+     * original as it was.
+     */
+    public static void writeAtomically(File file, ContentWriter writer) throws Exception {
+        File directory = file.getAbsoluteFile().getParentFile();
+        directory.mkdirs();
+        File temp = File.createTempFile(file.getName(), ".tmp", directory);
+        try {
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                writer.write(out);
+                out.flush();
+                out.getFD().sync();
+            }
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            }
+            catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Get the serializer for the configuration, job and board files. It is shared, so the schema
+     * it builds for each class is only worked out once, and is safe to use from several threads
+     * at once.
+     */
     public static Serializer createSerializer() {
-        Style style = new HyphenStyle();
-        Format format = new Format(style);
-        AnnotationStrategy strategy = new AnnotationStrategy();
-        Serializer serializer = new Persister(strategy, format);
         return serializer;
     }
 
+    /**
+     * Read one of the configuration files, or the default for it if it doesn't exist in the
+     * configuration directory or the user configuration is being overridden.
+     */
+    private <T> T readConfiguration(Class<T> type, String name, boolean overrideUserConfig)
+            throws Exception {
+        File file = new File(configurationDirectory, name);
+        if (overrideUserConfig || !file.exists()) {
+            Logger.info("No {} found in configuration directory, loading defaults.", name);
+            file = File.createTempFile(name.replace(".xml", ""), "xml");
+            FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/" + name), file);
+        }
+        return serializer.read(type, file);
+    }
+
+    private static <T> T getConfiguration(Future<T> future, String name) throws Exception {
+        try {
+            return future.get();
+        }
+        catch (ExecutionException e) {
+            throw readError(name, e.getCause());
+        }
+    }
+
+    private static Exception readError(String name, Throwable e) {
+        String message = e.getMessage();
+        if (e.getCause() != null && e.getCause().getMessage() != null) {
+            message = e.getCause().getMessage();
+        }
+        return new Exception("Error while reading " + name + " (" + message + ")", e);
+    }
+
     public static String createId(String prefix) {
         return prefix + System.currentTimeMillis();
     }
@@ -23,8 +23,11 @@ import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.openpnp.util.IdentifiableList;
 import org.simpleframework.xml.ElementList;
@@ -44,6 +47,8 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
 
     private transient File file;
     private transient boolean dirty;
+    private transient JobJournal journal;
+    private transient boolean loading;
 
     public Job() {
         addPropertyChangeListener(this);
@@ -77,6 +82,40 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
         boardLocation.removePropertyChangeListener(this);
     }
 
+    /**
+     * Add all of the given BoardLocations with a single copy of the list and a single property
+     * change.
+     * 
+     * @param boardLocations
+     */
+    public void addBoardLocations(Collection<BoardLocation> boardLocations) {
+        ArrayList<BoardLocation> oldValue = this.boardLocations;
+        this.boardLocations = new ArrayList<>(oldValue.size() + boardLocations.size());
+        this.boardLocations.addAll(oldValue);
+        this.boardLocations.addAll(boardLocations);
+        firePropertyChange("boardLocations", oldValue, this.boardLocations);
+        for (BoardLocation boardLocation : boardLocations) {
+            boardLocation.addPropertyChangeListener(this);
+        }
+    }
+
+    /**
+     * Remove all of the given BoardLocations with a single copy of the list and a single property
+     * change.
+     * 
+     * @param boardLocations
+     */
+    public void removeBoardLocations(Collection<BoardLocation> boardLocations) {
+        Set<BoardLocation> removed = new HashSet<>(boardLocations);
+        ArrayList<BoardLocation> oldValue = this.boardLocations;
+        this.boardLocations = new ArrayList<>(oldValue);
+        this.boardLocations.removeIf(removed::contains);
+        firePropertyChange("boardLocations", oldValue, this.boardLocations);
+        for (BoardLocation boardLocation : removed) {
+            boardLocation.removePropertyChangeListener(this);
+        }
+    }
+
     public void removeAllBoards() {
         ArrayList<BoardLocation> oldValue = boardLocations;
         boardLocations = new ArrayList<>();
@@ -127,6 +166,28 @@ public class Job extends AbstractModelObject implements PropertyChangeListener {
         firePropertyChange("file", oldValue, file);
     }
 
+    /**
+     * The journal recording this job's progress while it runs, if any.
+     */
+    public JobJournal getJournal() {
+        return journal;
+    }
+
+    public void setJournal(JobJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * True while the job's boards are still being loaded in the background.
+     */
+    public boolean isLoading() {
+        return loading;
+    }
+
+    public void setLoading(boolean loading) {
+        this.loading = loading;
+    }
+
     public boolean isDirty() {
         return dirty;
     }
@@ -0,0 +1,248 @@
+package org.openpnp.model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.openpnp.spi.Feeder;
+import org.openpnp.spi.Machine;
+import org.pmw.tinylog.Logger;
+
+/**
+ * An append-only record of a job's progress, kept next to the job file so that what was placed
+ * survives the application dying before the job is saved. The journal starts with a snapshot of
+ * the placed state, written whole with an atomic rename, and each place then appends a line.
+ * Configuration.loadJob() replays the journal over the loaded job, and saving the job starts the
+ * journal over from a new snapshot.
+ *
+ * Each record is written straight through to the file, so it survives the process dying. Getting
+ * it onto the disk as well, to survive the machine losing power, costs a sync, so that is only
+ * done once every syncIntervalMs.
+ *
+ * Records are one per line, with URL encoded fields separated by spaces:
+ *
+ * reset - Mark everything in the job as not placed.
+ * placed board-index placement-id true|false - Set the placed state of a placement.
+ * feed-count feeder-id count - Set the feed count of a feeder that isFeedCounted().
+ */
+public class JobJournal implements Closeable {
+    private final Job job;
+    private final File file;
+    private final long syncIntervalMs;
+    private FileOutputStream out;
+    private long lastSync;
+
+    private JobJournal(Job job, File file, long syncIntervalMs) {
+        this.job = job;
+        this.file = file;
+        this.syncIntervalMs = syncIntervalMs;
+    }
+
+    /**
+     * Get the journal file for a job file.
+     */
+    public static File getFile(File jobFile) {
+        return new File(jobFile.getParentFile(), jobFile.getName() + ".journal");
+    }
+
+    /**
+     * Start journaling a job that has a file, replacing any existing journal with a snapshot of
+     * the job's current placed state. The journal is closed with close().
+     *
+     * @param syncIntervalMs The longest time a record may go without being synced to disk, or 0
+     *        to sync every record.
+     */
+    public static JobJournal open(Job job, long syncIntervalMs) throws Exception {
+        if (job.getFile() == null) {
+            throw new IOException("Only a job that has been saved can be journaled.");
+        }
+        JobJournal journal = new JobJournal(job, getFile(job.getFile()), syncIntervalMs);
+        journal.checkpoint();
+        job.setJournal(journal);
+        return journal;
+    }
+
+    /**
+     * Start the journal over from a snapshot of the job's current placed state. Called when the
+     * job is saved, after which the earlier records are no longer needed.
+     */
+    public synchronized void checkpoint() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        sb.append(record("reset"));
+        for (String placed : getPlaced(job)) {
+            String[] fields = placed.split("/", 2);
+            sb.append(record("placed", fields[0], fields[1], "true"));
+        }
+        closeStream();
+        Configuration.writeAtomically(file,
+                stream -> stream.write(sb.toString().getBytes(StandardCharsets.UTF_8)));
+        out = new FileOutputStream(file, true);
+        lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * Record the placed state of a placement.
+     */
+    public synchronized void placed(BoardLocation boardLocation, String placementId,
+            boolean placed) throws IOException {
+        int index = job.getBoardLocations().indexOf(boardLocation);
+        if (index < 0) {
+            return;
+        }
+        append(record("placed", String.valueOf(index), placementId, String.valueOf(placed)));
+    }
+
+    /**
+     * Record the feed count of a feeder, if it isFeedCounted().
+     */
+    public synchronized void feeder(Feeder feeder) throws IOException {
+        if (feeder.isFeedCounted()) {
+            append(record("feed-count", feeder.getId(), String.valueOf(feeder.getFeedCount())));
+        }
+    }
+
+    /**
+     * Sync and close the journal. The file is left behind for loadJob() until the job is saved.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (job.getJournal() == this) {
+            job.setJournal(null);
+        }
+        closeStream();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Apply the journal of a job that has just been loaded from its file, if there is one.
+     * Records that no longer fit the job are skipped, as is a last line that was cut short. If
+     * that changes what is placed the job is marked dirty.
+     *
+     * @param machine The machine whose feeders to restore, or null to leave feeders alone.
+     * @return true if any feeder's feed count was restored, in which case the machine
+     *         configuration needs to be saved.
+     */
+    public static boolean replay(Job job, Machine machine) throws IOException {
+        File file = getFile(job.getFile());
+        if (!file.exists()) {
+            return false;
+        }
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        String[] lines = content.split("\n", -1);
+        List<BoardLocation> boardLocations = job.getBoardLocations();
+        Set<String> placedBefore = getPlaced(job);
+        boolean feedersChanged = false;
+        // The last entry is whatever follows the final newline, so it is empty or cut short.
+        for (int i = 0; i < lines.length - 1; i++) {
+            try {
+                String[] fields = lines[i].split(" ");
+                for (int j = 0; j < fields.length; j++) {
+                    fields[j] = URLDecoder.decode(fields[j], "UTF-8");
+                }
+                if (fields[0].equals("reset")) {
+                    for (BoardLocation boardLocation : boardLocations) {
+                        boardLocation.clearAllPlaced();
+                    }
+                }
+                else if (fields[0].equals("placed") && fields.length == 4) {
+                    int index = Integer.parseInt(fields[1]);
+                    if (index >= 0 && index < boardLocations.size()) {
+                        boardLocations.get(index)
+                                      .setPlaced(fields[2], Boolean.parseBoolean(fields[3]));
+                    }
+                }
+                else if (fields[0].equals("feed-count") && fields.length == 3) {
+                    Feeder feeder = machine == null ? null : machine.getFeeder(fields[1]);
+                    int journaled = Integer.parseInt(fields[2]);
+                    if (feeder != null && feeder.isFeedCounted()
+                            && feeder.getFeedCount() != journaled) {
+                        feeder.setFeedCount(journaled);
+                        feedersChanged = true;
+                    }
+                }
+                else {
+                    Logger.warn("Unknown job journal record {} in {}", lines[i], file);
+                }
+            }
+            catch (Exception e) {
+                Logger.warn("Bad job journal record {} in {}: {}", lines[i], file,
+                        e.getMessage());
+            }
+        }
+        boolean placedChanged = !placedBefore.equals(getPlaced(job));
+        if (placedChanged) {
+            job.setDirty(true);
+        }
+        if (placedChanged || feedersChanged) {
+            Logger.info("Restored job progress from {}", file);
+        }
+        return feedersChanged;
+    }
+
+    /**
+     * Get the placements in the job that are marked placed, as board index/placement id.
+     */
+    private static Set<String> getPlaced(Job job) {
+        Set<String> placed = new HashSet<>();
+        List<BoardLocation> boardLocations = job.getBoardLocations();
+        for (int i = 0; i < boardLocations.size(); i++) {
+            BoardLocation boardLocation = boardLocations.get(i);
+            if (boardLocation.getBoard() == null) {
+                continue;
+            }
+            for (Placement placement : boardLocation.getBoard().getPlacements()) {
+                if (boardLocation.getPlaced(placement.getId())) {
+                    placed.add(i + "/" + placement.getId());
+                }
+            }
+        }
+        return placed;
+    }
+
+    private void append(String record) throws IOException {
+        if (out == null) {
+            throw new IOException("Job journal " + file + " is closed.");
+        }
+        out.write(record.getBytes(StandardCharsets.UTF_8));
+        long now = System.currentTimeMillis();
+        if (now - lastSync >= syncIntervalMs) {
+            out.getChannel().force(false);
+            lastSync = now;
+        }
+    }
+
+    private void closeStream() throws IOException {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.getChannel().force(false);
+        }
+        finally {
+            out.close();
+            out = null;
+        }
+    }
+
+    private static String record(String... fields) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String field : fields) {
+            if (sb.length() > 0) {
+                sb.append(' ');
+            }
+            sb.append(URLEncoder.encode(field, "UTF-8"));
+        }
+        return sb.append('\n').toString();
+    }
+}
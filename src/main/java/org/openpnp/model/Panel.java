@@ -1,5 +1,7 @@
 package org.openpnp.model;
 
+import java.util.ArrayList;
+import java.util.List;
 
 import org.openpnp.util.IdentifiableList;
 import org.simpleframework.xml.Element;
@@ -142,6 +144,7 @@ public class Panel extends AbstractModelObject implements Identifiable {
         double pcbWidthX = rootPCB.getBoard().getDimensions().getX();
         double pcbHeightY = rootPCB.getBoard().getDimensions().getY();
 
+        List<BoardLocation> newPCBs = new ArrayList<>();
         for (int j = 0; j < getRows(); j++) {
             for (int i = 0; i < getColumns(); i++) {
                 // We already have board 0,0 in the list as this is the root
@@ -163,8 +166,9 @@ public class Panel extends AbstractModelObject implements Identifiable {
                 newPCB.setLocation(newPCB.getLocation().rotateXyCenterPoint(rootPCB.getLocation(),
                         rootPCB.getLocation().getRotation()));
 
-                job.addBoardLocation(newPCB);
+                newPCBs.add(newPCB);
             }
         }
+        job.addBoardLocations(newPCBs);
     }
 }
@@ -61,12 +61,20 @@ public interface Camera extends HeadMountable, WizardConfigurable,
     public BufferedImage capture();
 
     /**
-     * Same as capture(), but waits the settle time before capturing.
+     * Same as capture(), but waits for the camera to settle before capturing.
      * 
      * @return
      */
     public BufferedImage settleAndCapture();
 
+    /**
+     * Wait for the camera to settle after a move, without capturing an image for the caller.
+     * The wait is never longer than the settle time.
+     * 
+     * @return The time spent settling in milliseconds.
+     */
+    public long settle();
+
     /**
      * Registers a listener to receive continuous images from the camera at a rate less than or
      * equal to maximumFps images per second.
@@ -75,6 +75,42 @@ public interface Feeder extends Identifiable, Named, WizardConfigurable, Propert
      */
     public void feed(Nozzle nozzle) throws Exception;
 
+    /**
+     * Return true if feed() needs the Nozzle, or anything else on the Head, to be at the feeder.
+     * Feeders that return false, such as those that advance with an Actuator, may be fed ahead of
+     * time, while the Nozzle that will pick from them is still busy elsewhere. The next call to
+     * feed() after such a feed is then skipped. Such a feed() is called on a thread of its own,
+     * while the job carries on, so it must only use the machine through the driver, which
+     * serializes its commands.
+     * 
+     * @return
+     */
+    public boolean isNozzleRequiredToFeed();
+
+    /**
+     * Return true if the Feeder picks by a count of the parts it has fed, such as a strip or tray
+     * feeder. The count is then kept in the job journal and restored from it, and a feed that
+     * goes unused can be undone by setting the count back.
+     * 
+     * @return
+     */
+    public boolean isFeedCounted();
+
+    /**
+     * Get the number of parts fed so far. Only meaningful if isFeedCounted(), otherwise 0.
+     * 
+     * @return
+     */
+    public int getFeedCount();
+
+    /**
+     * Set the number of parts fed so far, so that the next feed presents the part after that
+     * many. Ignored unless isFeedCounted().
+     * 
+     * @param feedCount
+     */
+    public void setFeedCount(int feedCount);
+
     public void postPick(Nozzle nozzle) throws Exception;
     
     public int getRetryCount();
@@ -1,5 +1,8 @@
 package org.openpnp.spi;
 
+import java.util.List;
+import java.util.Map;
+
 import org.openpnp.gui.support.Wizard;
 import org.openpnp.model.BoardLocation;
 import org.openpnp.model.Location;
@@ -16,6 +19,17 @@ public interface FiducialLocator extends PropertySheetHolder {
 
     public Location locateBoard(BoardLocation boardLocation, boolean checkPanel) throws Exception;
 
+    /**
+     * Locate each of the given BoardLocations, as locateBoard(BoardLocation) would, possibly
+     * visiting their fiducials in a different order.
+     * 
+     * @param boardLocations
+     * @return The located Location of each BoardLocation.
+     * @throws Exception
+     */
+    public Map<BoardLocation, Location> locateBoards(List<BoardLocation> boardLocations)
+            throws Exception;
+
     public Location getHomeFiducialLocation(Location location, Part part) throws Exception;
     
     /**
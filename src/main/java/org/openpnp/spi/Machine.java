@@ -197,6 +197,12 @@ public interface Machine extends WizardConfigurable, PropertySheetHolder, Closea
 
     public FiducialLocator getFiducialLocator();
 
+    /**
+     * Get the SafeZPlanner used by MovableUtils to decide how high to raise the head for a move.
+     * May return null, in which case moves go to full safe Z.
+     */
+    public SafeZPlanner getSafeZPlanner();
+
     public Location getDiscardLocation();
 
     public void setSpeed(double speed);
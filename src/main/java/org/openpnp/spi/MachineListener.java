@@ -38,6 +38,12 @@ public interface MachineListener {
 
     void machineBusy(Machine machine, boolean busy);
 
+    /**
+     * Called after the machine has been homed. Positions measured before homing, such as
+     * fiducial locations, may no longer be valid.
+     */
+    void machineHomed(Machine machine);
+
     static public class Adapter implements MachineListener {
 
         @Override
@@ -57,5 +63,8 @@ public interface MachineListener {
 
         @Override
         public void machineBusy(Machine machine, boolean busy) {}
+
+        @Override
+        public void machineHomed(Machine machine) {}
     }
 }
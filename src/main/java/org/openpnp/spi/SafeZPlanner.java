@@ -0,0 +1,32 @@
+package org.openpnp.spi;
+
+import org.openpnp.model.Location;
+
+/**
+ * Decides how high the head must go to move a HeadMountable from where it is to a new Location
+ * without hitting anything. MovableUtils delegates to the Machine's SafeZPlanner, so anything
+ * moving through MovableUtils.moveToLocationAtSafeZ() uses it.
+ */
+public interface SafeZPlanner extends PropertySheetHolder {
+    /**
+     * Move the HeadMountable to the Location, first raising the head as far as needed to clear
+     * any obstacles along the way, moving in X, Y and C, and then moving to the Location's Z.
+     *
+     * @param hm
+     * @param location
+     * @param speed
+     * @throws Exception
+     */
+    public void moveToLocationAtSafeZ(HeadMountable hm, Location location, double speed)
+            throws Exception;
+
+    /**
+     * Raise the HeadMountable clear of its surroundings, for instance after a pick or place. The
+     * next moveToLocationAtSafeZ() raises it further if the move needs it.
+     *
+     * @param hm
+     * @param speed
+     * @throws Exception
+     */
+    public void moveToClearanceZ(HeadMountable hm, double speed) throws Exception;
+}
@@ -18,6 +18,7 @@ import org.openpnp.model.Location;
 import org.openpnp.spi.Camera;
 import org.openpnp.spi.Head;
 import org.openpnp.spi.VisionProvider;
+import org.pmw.tinylog.Logger;
 import org.simpleframework.xml.Attribute;
 import org.simpleframework.xml.Element;
 
@@ -40,6 +41,39 @@ public abstract class AbstractCamera extends AbstractModelObject implements Came
     @Attribute(required = false)
     protected long settleTimeMs = 250;
 
+    /**
+     * If true, settle() captures frames until two in a row differ by less than settleThreshold
+     * instead of always waiting settleTimeMs. settleTimeMs is still the longest it will wait.
+     */
+    @Attribute(required = false)
+    protected boolean settleAdaptive = false;
+
+    /**
+     * The mean absolute difference, in gray levels from 0 to 255, between the downsampled
+     * consecutive frames below which the camera is considered settled.
+     */
+    @Attribute(required = false)
+    protected double settleThreshold = 1.0;
+
+    /**
+     * Frames are reduced to a grid of this many columns, with rows in proportion, before being
+     * compared during an adaptive settle.
+     */
+    protected static final int SETTLE_GRID_COLUMNS = 32;
+
+    /**
+     * Each grid cell averages at most this many samples in each direction, which keeps the cost
+     * of comparing frames independent of the camera resolution.
+     */
+    protected static final int SETTLE_CELL_SAMPLES = 4;
+
+    /**
+     * How long an adaptive settle waits before trying again when a capture returns no frame.
+     */
+    protected static final int SETTLE_RETRY_MS = 10;
+
+    private final SettleStatistics settleStatistics = new SettleStatistics();
+
     protected Set<ListenerEntry> listeners = Collections.synchronizedSet(new HashSet<>());
 
     protected Head head;
@@ -136,15 +170,127 @@ public abstract class AbstractCamera extends AbstractModelObject implements Came
     }
 
     public BufferedImage settleAndCapture() {
-        try {
-            Thread.sleep(getSettleTimeMs());
-        }
-        catch (Exception e) {
+        settle();
+        return capture();
+    }
 
+    /**
+     * Wait for the camera to settle. By default this just waits settleTimeMs. If settleAdaptive
+     * is set frames are captured until two consecutive frames differ by less than
+     * settleThreshold, or until settleTimeMs has passed.
+     * 
+     * @return The time spent settling in milliseconds.
+     */
+    @Override
+    public long settle() {
+        long t = System.currentTimeMillis();
+        if (!settleAdaptive) {
+            try {
+                Thread.sleep(getSettleTimeMs());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return System.currentTimeMillis() - t;
         }
+        long deadline = t + getSettleTimeMs();
+        double[] last = null;
+        double difference = Double.POSITIVE_INFINITY;
+        do {
+            BufferedImage image = captureForSettle();
+            if (image == null) {
+                // No frame this time, so try again shortly. If the camera never returns one
+                // this waits out the settle time, the same as a fixed settle.
+                try {
+                    Thread.sleep(SETTLE_RETRY_MS);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                continue;
+            }
+            double[] next = downsample(image);
+            if (last != null) {
+                difference = difference(last, next);
+                if (difference < settleThreshold) {
+                    break;
+                }
+            }
+            last = next;
+        } while (System.currentTimeMillis() < deadline && !Thread.currentThread().isInterrupted());
+        long elapsed = System.currentTimeMillis() - t;
+        boolean settled = difference < settleThreshold;
+        settleStatistics.add(elapsed, settled);
+        Logger.debug("{} settle {} in {} ms, difference {}, {}", getName(),
+                settled ? "done" : "timed out", elapsed, difference, settleStatistics);
+        return elapsed;
+    }
+
+    /**
+     * Capture a frame to be compared during an adaptive settle. Subclasses can override this to
+     * skip work, such as scripting events, that is only needed for the frame that is returned
+     * to the caller. May return null if no frame is available.
+     */
+    protected BufferedImage captureForSettle() {
         return capture();
     }
 
+    /**
+     * Reduce the image to a small grid of average luminance values that can be compared cheaply
+     * between frames.
+     */
+    protected static double[] downsample(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int columns = Math.min(SETTLE_GRID_COLUMNS, width);
+        int rows = Math.max(1, Math.min(height, columns * height / width));
+        double[] grid = new double[columns * rows + 2];
+        // Remember the size so that frames of different sizes never compare as equal.
+        grid[columns * rows] = width;
+        grid[columns * rows + 1] = height;
+        for (int row = 0; row < rows; row++) {
+            int y0 = row * height / rows;
+            int y1 = (row + 1) * height / rows;
+            int yStep = Math.max(1, (y1 - y0) / SETTLE_CELL_SAMPLES);
+            for (int column = 0; column < columns; column++) {
+                int x0 = column * width / columns;
+                int x1 = (column + 1) * width / columns;
+                int xStep = Math.max(1, (x1 - x0) / SETTLE_CELL_SAMPLES);
+                double sum = 0;
+                int count = 0;
+                for (int y = y0; y < y1; y += yStep) {
+                    for (int x = x0; x < x1; x += xStep) {
+                        int rgb = image.getRGB(x, y);
+                        sum += 0.299 * ((rgb >> 16) & 0xff) + 0.587 * ((rgb >> 8) & 0xff)
+                                + 0.114 * (rgb & 0xff);
+                        count++;
+                    }
+                }
+                grid[row * columns + column] = sum / count;
+            }
+        }
+        return grid;
+    }
+
+    /**
+     * The mean absolute difference between two results of downsample().
+     */
+    protected static double difference(double[] a, double[] b) {
+        int n = a.length - 2;
+        if (a.length != b.length || a[n] != b[n] || a[n + 1] != b[n + 1]) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += Math.abs(a[i] - b[i]);
+        }
+        return sum / n;
+    }
+
+    public SettleStatistics getSettleStatistics() {
+        return settleStatistics;
+    }
+
     protected void broadcastCapture(BufferedImage img) {
         for (ListenerEntry listener : new ArrayList<>(listeners)) {
             if (listener.lastFrameSent < (System.currentTimeMillis()
@@ -163,6 +309,22 @@ public abstract class AbstractCamera extends AbstractModelObject implements Came
         this.settleTimeMs = settleTimeMs;
     }
 
+    public boolean isSettleAdaptive() {
+        return settleAdaptive;
+    }
+
+    public void setSettleAdaptive(boolean settleAdaptive) {
+        this.settleAdaptive = settleAdaptive;
+    }
+
+    public double getSettleThreshold() {
+        return settleThreshold;
+    }
+
+    public void setSettleThreshold(double settleThreshold) {
+        this.settleThreshold = settleThreshold;
+    }
+
     @Override
     public Icon getPropertySheetHolderIcon() {
         return Icons.captureCamera;
@@ -183,6 +345,68 @@ public abstract class AbstractCamera extends AbstractModelObject implements Came
         return getName();
     }
     
+    /**
+     * The times taken by adaptive settles on a camera, for use in tuning the threshold.
+     */
+    public static class SettleStatistics {
+        private long count;
+        private long timeouts;
+        private long totalTimeMs;
+        private long minTimeMs = Long.MAX_VALUE;
+        private long maxTimeMs;
+
+        synchronized void add(long timeMs, boolean settled) {
+            count++;
+            if (!settled) {
+                timeouts++;
+            }
+            totalTimeMs += timeMs;
+            minTimeMs = Math.min(minTimeMs, timeMs);
+            maxTimeMs = Math.max(maxTimeMs, timeMs);
+        }
+
+        public synchronized long getCount() {
+            return count;
+        }
+
+        /**
+         * The number of settles that reached the settle time without the frames settling.
+         */
+        public synchronized long getTimeouts() {
+            return timeouts;
+        }
+
+        public synchronized long getTotalTimeMs() {
+            return totalTimeMs;
+        }
+
+        public synchronized long getMinTimeMs() {
+            return count == 0 ? 0 : minTimeMs;
+        }
+
+        public synchronized long getMaxTimeMs() {
+            return maxTimeMs;
+        }
+
+        public synchronized double getAverageTimeMs() {
+            return count == 0 ? 0 : (double) totalTimeMs / count;
+        }
+
+        public synchronized void reset() {
+            count = 0;
+            timeouts = 0;
+            totalTimeMs = 0;
+            minTimeMs = Long.MAX_VALUE;
+            maxTimeMs = 0;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("count %d, timeouts %d, min %d ms, avg %.1f ms, max %d ms", count,
+                    timeouts, getMinTimeMs(), getAverageTimeMs(), maxTimeMs);
+        }
+    }
+
     protected class ListenerEntry {
         public CameraListener listener;
         public int maximumFps;
@@ -98,4 +98,22 @@ public abstract class AbstractFeeder extends AbstractModelObject implements Feed
     }
     
     public void postPick(Nozzle nozzle) throws Exception { }
+
+    @Override
+    public boolean isNozzleRequiredToFeed() {
+        return true;
+    }
+
+    @Override
+    public boolean isFeedCounted() {
+        return false;
+    }
+
+    @Override
+    public int getFeedCount() {
+        return 0;
+    }
+
+    @Override
+    public void setFeedCount(int feedCount) {}
 }
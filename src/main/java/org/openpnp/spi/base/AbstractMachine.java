@@ -180,6 +180,7 @@ public abstract class AbstractMachine extends AbstractModelObject implements Mac
         for (Head head : heads) {
             head.home();
         }
+        fireMachineHomed();
     }
 
     @Override
@@ -242,6 +243,12 @@ public abstract class AbstractMachine extends AbstractModelObject implements Mac
         }
     }
 
+    public void fireMachineHomed() {
+        for (MachineListener listener : listeners) {
+            listener.machineHomed(this);
+        }
+    }
+
     public void fireMachineEnabled() {
         for (MachineListener listener : listeners) {
             listener.machineEnabled(this);
@@ -0,0 +1,169 @@
+package org.openpnp.spi.base;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openpnp.model.AbstractModelObject;
+import org.openpnp.model.Part;
+import org.openpnp.spi.Feeder;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.spi.NozzleTip;
+import org.openpnp.spi.PartAlignment;
+
+/**
+ * Caches the answers to the questions a job processor asks about each Part: which enabled Feeders
+ * serve it, which NozzleTips on each Nozzle can handle it and which PartAlignment aligns it. The
+ * static methods in AbstractPnpJobProcessor answer these by searching the machine each time, which
+ * adds up when they are asked for every placement and, during planning, for every Nozzle and
+ * placement.
+ *
+ * The index is meant to live for a single job. Feeders are watched for enabled changes, and a
+ * change to any of them causes the feeder lookup to be rebuilt. Callers that change a Feeder in a
+ * way that isn't announced should call invalidateFeeders(). Call dispose() when the job is done
+ * to stop watching the Feeders.
+ */
+public class PartResolutionIndex implements PropertyChangeListener {
+    private final Machine machine;
+
+    private Map<Part, List<Feeder>> feeders;
+    private final List<AbstractModelObject> watchedFeeders = new ArrayList<>();
+    private final Map<Part, Map<Nozzle, List<NozzleTip>>> nozzleTips = new IdentityHashMap<>();
+    private final Map<Part, PartAlignment> partAligners = new IdentityHashMap<>();
+
+    public PartResolutionIndex(Machine machine) {
+        this.machine = machine;
+    }
+
+    /**
+     * Find the first enabled Feeder that is able to feed the given Part.
+     *
+     * @see AbstractPnpJobProcessor#findFeeder(Machine, Part)
+     */
+    public synchronized Feeder findFeeder(Part part) throws Exception {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            if (feeders == null) {
+                indexFeeders();
+            }
+            for (Feeder feeder : feeders.getOrDefault(part, Collections.emptyList())) {
+                // A Feeder's part can be changed without notice, so check it is still valid.
+                if (feeder.getPart() == part && feeder.isEnabled()) {
+                    return feeder;
+                }
+            }
+            // Rebuild once before giving up in case something changed that we weren't told about.
+            feeders = null;
+        }
+        throw new Exception("No compatible, enabled feeder found for part " + part.getId());
+    }
+
+    /**
+     * Forget which Feeders are enabled for each Part. The next lookup will search the machine
+     * again.
+     */
+    public synchronized void invalidateFeeders() {
+        feeders = null;
+    }
+
+    /**
+     * Get the NozzleTips on the Nozzle that can handle the Part, in the Nozzle's order.
+     */
+    public synchronized List<NozzleTip> getNozzleTips(Nozzle nozzle, Part part) {
+        Map<Nozzle, List<NozzleTip>> byNozzle =
+                nozzleTips.computeIfAbsent(part, p -> new IdentityHashMap<>());
+        List<NozzleTip> tips = byNozzle.get(nozzle);
+        if (tips == null) {
+            tips = new ArrayList<>();
+            for (NozzleTip nozzleTip : nozzle.getNozzleTips()) {
+                if (nozzleTip.canHandle(part)) {
+                    tips.add(nozzleTip);
+                }
+            }
+            tips = Collections.unmodifiableList(tips);
+            byNozzle.put(nozzle, tips);
+        }
+        return tips;
+    }
+
+    /**
+     * @see AbstractPnpJobProcessor#nozzleCanHandle(Nozzle, Part)
+     */
+    public boolean nozzleCanHandle(Nozzle nozzle, Part part) {
+        return !getNozzleTips(nozzle, part).isEmpty();
+    }
+
+    /**
+     * @see AbstractPnpJobProcessor#findNozzleTip(Nozzle, Part)
+     */
+    public NozzleTip findNozzleTip(Nozzle nozzle, Part part) throws Exception {
+        List<NozzleTip> tips = getNozzleTips(nozzle, part);
+        if (tips.isEmpty()) {
+            throw new Exception("No compatible nozzle tip on nozzle " + nozzle.getName()
+                    + " found for part " + part.getId());
+        }
+        return tips.get(0);
+    }
+
+    /**
+     * @see AbstractPnpJobProcessor#findNozzleTip(Head, Part)
+     */
+    public NozzleTip findNozzleTip(Head head, Part part) throws Exception {
+        for (Nozzle nozzle : head.getNozzles()) {
+            List<NozzleTip> tips = getNozzleTips(nozzle, part);
+            if (!tips.isEmpty()) {
+                return tips.get(0);
+            }
+        }
+        throw new Exception(
+                "No compatible nozzle tip on any nozzle found for part " + part.getId());
+    }
+
+    /**
+     * @see AbstractPnpJobProcessor#findPartAligner(Machine, Part)
+     */
+    public synchronized PartAlignment findPartAligner(Part part) throws Exception {
+        if (!partAligners.containsKey(part)) {
+            partAligners.put(part, AbstractPnpJobProcessor.findPartAligner(machine, part));
+        }
+        return partAligners.get(part);
+    }
+
+    /**
+     * Stop watching the machine's Feeders.
+     */
+    public synchronized void dispose() {
+        for (AbstractModelObject feeder : watchedFeeders) {
+            feeder.removePropertyChangeListener("enabled", this);
+        }
+        watchedFeeders.clear();
+        feeders = null;
+    }
+
+    @Override
+    public synchronized void propertyChange(PropertyChangeEvent evt) {
+        feeders = null;
+    }
+
+    private void indexFeeders() {
+        // Re-register in case Feeders were added or removed since the last time.
+        dispose();
+        Map<Part, List<Feeder>> feeders = new IdentityHashMap<>();
+        for (Feeder feeder : machine.getFeeders()) {
+            if (feeder instanceof AbstractModelObject) {
+                AbstractModelObject o = (AbstractModelObject) feeder;
+                o.addPropertyChangeListener("enabled", this);
+                watchedFeeders.add(o);
+            }
+            if (feeder.isEnabled() && feeder.getPart() != null) {
+                feeders.computeIfAbsent(feeder.getPart(), p -> new ArrayList<>()).add(feeder);
+            }
+        }
+        this.feeders = feeders;
+    }
+}
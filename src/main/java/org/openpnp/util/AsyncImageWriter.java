@@ -0,0 +1,313 @@
+package org.openpnp.util;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfInt;
+import org.opencv.highgui.Highgui;
+import org.openpnp.model.Configuration;
+import org.pmw.tinylog.Logger;
+
+/**
+ * Writes images to disk on a background thread so that vision code does not wait on encoding or
+ * disk I/O. Images are queued up to a fixed capacity, after which the oldest queued image is
+ * dropped to make room, so a slow disk can never hold up a job.
+ *
+ * Debug images go to log/vision in the configuration directory in the configured encoding. Once
+ * the images there use more than the quota the oldest are deleted. Images written to an explicit
+ * file, such as by the ImageWrite stage, use the format given by the file's extension and do not
+ * count against the quota.
+ */
+public class AsyncImageWriter {
+    static {
+        nu.pattern.OpenCV.loadShared();
+        System.loadLibrary(org.opencv.core.Core.NATIVE_LIBRARY_NAME);
+    }
+
+    public enum Encoding {
+        Png(".png"),
+        Jpeg(".jpg"),
+        /**
+         * Uncompressed, the fastest to write.
+         */
+        Bmp(".bmp");
+
+        private final String extension;
+
+        Encoding(String extension) {
+            this.extension = extension;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private static AsyncImageWriter instance;
+
+    private final File directory;
+    private final ArrayDeque<Job> queue = new ArrayDeque<>();
+    private Thread thread;
+    private boolean busy;
+
+    private Encoding encoding = Encoding.Png;
+    private int pngCompression = 1;
+    private int jpegQuality = 90;
+    private int capacity = 32;
+    private long quotaBytes = 500L * 1024 * 1024;
+
+    private ArrayDeque<File> quotaFiles;
+    private long quotaUsed;
+
+    private long written;
+    private long dropped;
+
+    /**
+     * Get the writer for debug images in log/vision under the configuration directory.
+     */
+    public static synchronized AsyncImageWriter get() {
+        if (instance == null) {
+            File directory = new File(Configuration.get().getConfigurationDirectory(), "log");
+            instance = new AsyncImageWriter(new File(directory, "vision"));
+        }
+        return instance;
+    }
+
+    public AsyncImageWriter(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Queue a debug image to be written to the debug directory as name plus the encoding's
+     * extension. The Mat is copied, so the caller may release or change it right away.
+     */
+    public void writeDebugImage(String name, Mat mat) {
+        enqueue(new Job(mat.clone(), null, name));
+    }
+
+    /**
+     * Queue an image to be written to the given file, in the format given by its extension. The
+     * Mat is copied, so the caller may release or change it right away.
+     */
+    public void write(File file, Mat mat) {
+        enqueue(new Job(mat.clone(), file, null));
+    }
+
+    /**
+     * Wait until every queued image has been written.
+     *
+     * @return false if the queue did not empty within timeoutMs.
+     * @throws InterruptedException
+     */
+    public synchronized boolean flush(long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (!queue.isEmpty() || busy) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            wait(remaining);
+        }
+        return true;
+    }
+
+    private synchronized void enqueue(Job job) {
+        while (queue.size() >= capacity) {
+            queue.removeFirst().mat.release();
+            dropped++;
+        }
+        queue.add(job);
+        if (thread == null) {
+            thread = new Thread(this::run, "AsyncImageWriter");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        notifyAll();
+    }
+
+    private void run() {
+        while (true) {
+            Job job;
+            synchronized (this) {
+                busy = false;
+                notifyAll();
+                while (queue.isEmpty()) {
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                job = queue.removeFirst();
+                busy = true;
+            }
+            try {
+                job.write();
+            }
+            catch (Exception e) {
+                Logger.warn("Failed to write image: {}", e.getMessage());
+            }
+            finally {
+                job.mat.release();
+            }
+        }
+    }
+
+    private void writeDebugImage(Job job) {
+        Encoding encoding;
+        MatOfInt params;
+        synchronized (this) {
+            encoding = this.encoding;
+            params = getParams(encoding);
+        }
+        directory.mkdirs();
+        File file = new File(directory, job.name + encoding.getExtension());
+        imwrite(file, job.mat, params);
+        applyQuota(file);
+    }
+
+    private MatOfInt getParams(Encoding encoding) {
+        switch (encoding) {
+            case Png:
+                return new MatOfInt(Highgui.CV_IMWRITE_PNG_COMPRESSION, pngCompression);
+            case Jpeg:
+                return new MatOfInt(Highgui.CV_IMWRITE_JPEG_QUALITY, jpegQuality);
+            default:
+                return new MatOfInt();
+        }
+    }
+
+    private void imwrite(File file, Mat mat, MatOfInt params) {
+        if (mat.type() == CvType.CV_32F) {
+            // Scale floating point images the same way OpenCvUtils.toBufferedImage() does.
+            mat.convertTo(mat, CvType.CV_8UC1, 255);
+        }
+        if (!Highgui.imwrite(file.getAbsolutePath(), mat, params)) {
+            Logger.warn("Failed to write image {}", file);
+            return;
+        }
+        synchronized (this) {
+            written++;
+        }
+    }
+
+    /**
+     * Account for a newly written debug image and delete the oldest images until the directory
+     * is back under the quota. The directory is scanned once, the first time.
+     */
+    private void applyQuota(File file) {
+        long quotaBytes;
+        synchronized (this) {
+            quotaBytes = this.quotaBytes;
+        }
+        if (quotaFiles == null) {
+            quotaFiles = new ArrayDeque<>();
+            File[] files = directory.listFiles(File::isFile);
+            if (files != null) {
+                Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+                for (File f : files) {
+                    if (!f.equals(file)) {
+                        quotaFiles.add(f);
+                        quotaUsed += f.length();
+                    }
+                }
+            }
+        }
+        quotaFiles.add(file);
+        quotaUsed += file.length();
+        while (quotaUsed > quotaBytes && quotaFiles.size() > 1) {
+            File oldest = quotaFiles.removeFirst();
+            long length = oldest.length();
+            if (oldest.delete() || !oldest.exists()) {
+                quotaUsed -= length;
+            }
+        }
+    }
+
+    public synchronized Encoding getEncoding() {
+        return encoding;
+    }
+
+    public synchronized void setEncoding(Encoding encoding) {
+        this.encoding = encoding;
+    }
+
+    public synchronized int getPngCompression() {
+        return pngCompression;
+    }
+
+    /**
+     * Set the PNG compression level, from 0, the fastest, to 9, the smallest.
+     */
+    public synchronized void setPngCompression(int pngCompression) {
+        this.pngCompression = Math.max(0, Math.min(9, pngCompression));
+    }
+
+    public synchronized int getJpegQuality() {
+        return jpegQuality;
+    }
+
+    public synchronized void setJpegQuality(int jpegQuality) {
+        this.jpegQuality = Math.max(0, Math.min(100, jpegQuality));
+    }
+
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = Math.max(1, capacity);
+    }
+
+    public synchronized long getQuotaBytes() {
+        return quotaBytes;
+    }
+
+    public synchronized void setQuotaBytes(long quotaBytes) {
+        this.quotaBytes = quotaBytes;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * The number of images written since startup.
+     */
+    public synchronized long getWritten() {
+        return written;
+    }
+
+    /**
+     * The number of images dropped because the queue was full.
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    private class Job {
+        final Mat mat;
+        final File file;
+        final String name;
+
+        Job(Mat mat, File file, String name) {
+            this.mat = mat;
+            this.file = file;
+            this.name = name;
+        }
+
+        void write() {
+            if (file == null) {
+                writeDebugImage(this);
+            }
+            else {
+                imwrite(file, mat, new MatOfInt());
+            }
+        }
+    }
+}
@@ -1,22 +1,27 @@
 package org.openpnp.util;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.openpnp.model.Identifiable;
 
 /**
  * A List specifically for storing implementations of Identifiable. This class adds a get(String)
- * method for getting the Identifiable object with the specified id from the list. Currently
- * performs a simple search through the list but is intended to be indexed eventually.
- * 
- * TODO: Perform indexing on insert and remove so that get(String) can perform better. Consider what
- * happens if an id changes out from under us.
- * 
+ * method for getting the Identifiable object with the specified id from the list.
+ *
+ * get(String) uses an index from id to object which is rebuilt on the first lookup after the list
+ * is modified, so lookups, including those that miss, are constant time. The index can't see an
+ * object's id change, so call reindex() after changing the id of an object in the list.
+ *
  * @param <E>
  */
 public class IdentifiableList<E extends Identifiable> extends ArrayList<E> {
     private static final long serialVersionUID = -2350184908321182804L;
-    
+
+    private transient Map<String, E> index;
+    private transient int indexModCount;
+
     public String createId(String prefix) {
         for (int i = 0; ; i++) {
             if (get(prefix + i) == null) {
@@ -26,11 +31,36 @@ public class IdentifiableList<E extends Identifiable> extends ArrayList<E> {
     }
 
     public E get(String id) {
+        Map<String, E> index = this.index;
+        if (index == null || indexModCount != modCount) {
+            index = buildIndex();
+        }
+        return index.get(id);
+    }
+
+    /**
+     * Rebuild the index after the id of an object in the list has changed.
+     */
+    public void reindex() {
+        index = null;
+    }
+
+    @Override
+    public E set(int i, E e) {
+        // ArrayList doesn't count set() as a modification, so drop the index explicitly.
+        index = null;
+        return super.set(i, e);
+    }
+
+    private Map<String, E> buildIndex() {
+        int modCount = this.modCount;
+        Map<String, E> index = new HashMap<>(size() * 2);
         for (E e : this) {
-            if (e.getId().equals(id)) {
-                return e;
-            }
+            // Keep the first object with a given id, as a search through the list would.
+            index.putIfAbsent(e.getId(), e);
         }
-        return null;
+        this.index = index;
+        this.indexModCount = modCount;
+        return index;
     }
 }
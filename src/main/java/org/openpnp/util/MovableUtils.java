@@ -3,6 +3,7 @@ package org.openpnp.util;
 import org.openpnp.model.Location;
 import org.openpnp.spi.Head;
 import org.openpnp.spi.HeadMountable;
+import org.openpnp.spi.SafeZPlanner;
 
 public class MovableUtils {
     /**
@@ -10,6 +11,9 @@ public class MovableUtils {
      * safe-Z all of it's components, then moving the HeadMountable in X, Y and C, followed by
      * moving in Z.
      * 
+     * If the machine has a SafeZPlanner the move is handed to it, and it may raise the head less
+     * than full safe Z or combine the moves.
+     * 
      * @param hm
      * @param location
      * @param speed
@@ -18,6 +22,11 @@ public class MovableUtils {
     public static void moveToLocationAtSafeZ(HeadMountable hm, Location location, double speed)
             throws Exception {
         Head head = hm.getHead();
+        SafeZPlanner planner = head.getMachine().getSafeZPlanner();
+        if (planner != null) {
+            planner.moveToLocationAtSafeZ(hm, location, speed);
+            return;
+        }
         head.moveToSafeZ(speed);
         hm.moveTo(location.derive(null, null, Double.NaN, null), speed);
         hm.moveTo(location, speed);
@@ -26,4 +35,25 @@ public class MovableUtils {
     public static void moveToLocationAtSafeZ(HeadMountable hm, Location location) throws Exception {
         moveToLocationAtSafeZ(hm, location, hm.getHead().getMachine().getSpeed());
     }
+
+    /**
+     * Raises the given HeadMountable clear of its surroundings, such as after a pick or a place.
+     * Without a SafeZPlanner this is the same as moveToSafeZ().
+     * 
+     * @param hm
+     * @param speed
+     * @throws Exception
+     */
+    public static void moveToClearanceZ(HeadMountable hm, double speed) throws Exception {
+        SafeZPlanner planner = hm.getHead().getMachine().getSafeZPlanner();
+        if (planner != null) {
+            planner.moveToClearanceZ(hm, speed);
+            return;
+        }
+        hm.moveToSafeZ(speed);
+    }
+
+    public static void moveToClearanceZ(HeadMountable hm) throws Exception {
+        moveToClearanceZ(hm, hm.getHead().getMachine().getSpeed());
+    }
 }
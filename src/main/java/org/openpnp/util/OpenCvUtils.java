@@ -2,15 +2,12 @@ package org.openpnp.util;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferByte;
-import java.io.File;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
-import javax.imageio.ImageIO;
-
 import org.opencv.core.Core;
 import org.opencv.core.CvType;
 import org.opencv.core.Mat;
@@ -18,7 +15,6 @@ import org.opencv.core.Point;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgproc.Imgproc;
-import org.openpnp.model.Configuration;
 import org.openpnp.model.Length;
 import org.openpnp.model.Location;
 import org.openpnp.spi.Camera;
@@ -59,6 +55,14 @@ public class OpenCvUtils {
     }
 
     public static Mat toMat(BufferedImage img) {
+        return toMat(img, new Mat());
+    }
+
+    /**
+     * Copy the image into the given Mat, reusing its memory if it is already the right size and
+     * type, and return it.
+     */
+    public static Mat toMat(BufferedImage img, Mat mat) {
         Integer type = null;
         if (img.getType() == BufferedImage.TYPE_BYTE_GRAY) {
             type = CvType.CV_8UC1;
@@ -70,7 +74,7 @@ public class OpenCvUtils {
             img = ImageUtils.convertBufferedImage(img, BufferedImage.TYPE_3BYTE_BGR);
             type = CvType.CV_8UC3;
         }
-        Mat mat = new Mat(img.getHeight(), img.getWidth(), type);
+        mat.create(img.getHeight(), img.getWidth(), type);
         mat.put(0, 0, ((DataBufferByte) img.getRaster().getDataBuffer()).getData());
         return mat;
     }
@@ -211,34 +215,30 @@ public class OpenCvUtils {
         return mat;
     }
     
-    public synchronized static void saveDebugImage(Class implementationClass, String function, String identifier, BufferedImage img) {
-        if (img == null) {
+    /**
+     * Queue an image to be saved to log/vision by the AsyncImageWriter if debug logging is
+     * enabled. The image is copied before returning, and encoding and disk I/O happen on a
+     * background thread.
+     */
+    public static void saveDebugImage(Class implementationClass, String function, String identifier, BufferedImage img) {
+        if (img == null || !LogUtils.isDebugEnabled()) {
             return;
         }
-        if (LogUtils.isDebugEnabled()) {
-            try {
-                File file = new File(Configuration.get().getConfigurationDirectory(), "log");
-                file = new File(file, "vision");
-                file.mkdirs();
-                DateFormat df = new SimpleDateFormat("YYYY-MM-dd'T'HH.mm.ss.SSS");
-                file = new File(file, String.format("%s_%s_%s_%s.png", 
-                        implementationClass.getSimpleName(), 
-                        function, 
-                        df.format(new Date()), 
-                        identifier));
-                ImageIO.write(img, "PNG", file);
-            }
-            catch (Exception e) {
-                e.printStackTrace();
-            }
-        }
+        Mat mat = toMat(img);
+        saveDebugImage(implementationClass, function, identifier, mat);
+        mat.release();
     }
 
     public static void saveDebugImage(Class implementationClass, String function, String identifier, Mat mat) {
-        if (mat == null) {
+        if (mat == null || !LogUtils.isDebugEnabled()) {
             return;
         }
-        saveDebugImage(implementationClass, function, identifier, OpenCvUtils.toBufferedImage(mat));
+        DateFormat df = new SimpleDateFormat("YYYY-MM-dd'T'HH.mm.ss.SSS");
+        AsyncImageWriter.get().writeDebugImage(String.format("%s_%s_%s_%s", 
+                implementationClass.getSimpleName(), 
+                function, 
+                df.format(new Date()), 
+                identifier), mat);
     }
     
     private enum MinMaxState {
@@ -250,60 +250,91 @@ public class OpenCvUtils {
      * Ported from the C++ version in FireSight by Karl Lew, which is licensed under the 
      * MIT license.
      * https://github.com/firepick1/FireSight
+     * 
+     * The first channel of the Mat is copied into a primitive array once and scanned there,
+     * rather than crossing JNI for every pixel.
+     * 
      * @param mat
      * @param rangeMin
      * @param rangeMax
      * @return
      */
     public static List<java.awt.Point> matMaxima(Mat mat, double rangeMin, double rangeMax) {
+        return matMaxima(toDoubleArray(mat), mat.rows(), mat.cols(), rangeMin, rangeMax);
+    }
+
+    /**
+     * Get the first channel of the Mat as a row major array.
+     */
+    private static double[] toDoubleArray(Mat mat) {
+        int rows = mat.rows();
+        int cols = mat.cols();
+        double[] data = new double[rows * cols];
+        if (mat.type() == CvType.CV_32FC1) {
+            // The usual case, a matchTemplate result.
+            float[] row = new float[cols];
+            for (int r = 0; r < rows; r++) {
+                mat.get(r, 0, row);
+                for (int c = 0; c < cols; c++) {
+                    data[r * cols + c] = row[c];
+                }
+            }
+            return data;
+        }
+        Mat channel = mat;
+        if (mat.channels() > 1) {
+            channel = new Mat();
+            Core.extractChannel(mat, channel, 0);
+        }
+        Mat converted = new Mat();
+        channel.convertTo(converted, CvType.CV_64F);
+        converted.get(0, 0, data);
+        converted.release();
+        if (channel != mat) {
+            channel.release();
+        }
+        return data;
+    }
+
+    private static List<java.awt.Point> matMaxima(double[] data, int rows, int cols,
+            double rangeMin, double rangeMax) {
         List<java.awt.Point> locations = new ArrayList<>();
 
-        int rEnd = mat.rows() - 1;
-        int cEnd = mat.cols() - 1;
+        int rEnd = rows - 1;
+        int cEnd = cols - 1;
 
         // CHECK EACH ROW MAXIMA FOR LOCAL 2D MAXIMA
         for (int r = 0; r <= rEnd; r++) {
+            int row = r * cols;
             MinMaxState state = MinMaxState.BEFORE_INFLECTION;
-            double curVal = mat.get(r, 0)[0];
+            double curVal = data[row];
             for (int c = 1; c <= cEnd; c++) {
-                double val = mat.get(r, c)[0];
+                double val = data[row + c];
 
                 if (val == curVal) {
                     continue;
                 }
                 else if (curVal < val) {
-                    if (state == MinMaxState.BEFORE_INFLECTION) {
-                        // n/a
-                    }
-                    else {
-                        state = MinMaxState.BEFORE_INFLECTION;
-                    }
+                    state = MinMaxState.BEFORE_INFLECTION;
                 }
                 else { // curVal > val
                     if (state == MinMaxState.BEFORE_INFLECTION) {
-                        if (rangeMin <= curVal && curVal <= rangeMax) { // ROW
-                                                                        // MAXIMA
-                            if (0 < r && (mat.get(r - 1, c - 1)[0] >= curVal
-                                    || mat.get(r - 1, c)[0] >= curVal)) {
-                                // cout << "reject:r-1 " << r << "," << c-1 <<
-                                // endl;
+                        if (rangeMin <= curVal && curVal <= rangeMax) { // ROW MAXIMA
+                            if (0 < r && (at(data, cols, r - 1, c - 1) >= curVal
+                                    || at(data, cols, r - 1, c) >= curVal)) {
                                 // - x x
                                 // - - -
                                 // - - -
                             }
-                            else if (r < rEnd && (mat.get(r + 1, c - 1)[0] > curVal
-                                    || mat.get(r + 1, c)[0] > curVal)) {
-                                // cout << "reject:r+1 " << r << "," << c-1 <<
-                                // endl;
+                            else if (r < rEnd && (at(data, cols, r + 1, c - 1) > curVal
+                                    || at(data, cols, r + 1, c) > curVal)) {
                                 // - - -
                                 // - - -
                                 // - x x
                             }
-                            else if (1 < c && (0 < r && mat.get(r - 1, c - 2)[0] >= curVal
-                                    || mat.get(r, c - 2)[0] > curVal
-                                    || r < rEnd && mat.get(r + 1, c - 2)[0] > curVal)) {
-                                // cout << "reject:c-2 " << r << "," << c-1 <<
-                                // endl;
+                            else if (1 < c && (0 < r && at(data, cols, r - 1, c - 2) >= curVal
+                                    || at(data, cols, r, c - 2) > curVal
+                                    || r < rEnd && at(data, cols, r + 1, c - 2) > curVal)) {
                                 // x - -
                                 // x - -
                                 // x - -
@@ -314,9 +345,6 @@ public class OpenCvUtils {
                         }
                         state = MinMaxState.AFTER_INFLECTION;
                     }
-                    else {
-                        // n/a
-                    }
                 }
 
                 curVal = val;
@@ -325,27 +353,21 @@ public class OpenCvUtils {
             // PROCESS END OF ROW
             if (state == MinMaxState.BEFORE_INFLECTION) {
                 if (rangeMin <= curVal && curVal <= rangeMax) { // ROW MAXIMA
-                    if (0 < r && (mat.get(r - 1, cEnd - 1)[0] >= curVal
-                            || mat.get(r - 1, cEnd)[0] >= curVal)) {
-                        // cout << "rejectEnd:r-1 " << r << "," << cEnd-1 <<
-                        // endl;
+                    if (0 < r && (at(data, cols, r - 1, cEnd - 1) >= curVal
+                            || at(data, cols, r - 1, cEnd) >= curVal)) {
                         // - x x
                         // - - -
                         // - - -
                     }
-                    else if (r < rEnd && (mat.get(r + 1, cEnd - 1)[0] > curVal
-                            || mat.get(r + 1, cEnd)[0] > curVal)) {
-                        // cout << "rejectEnd:r+1 " << r << "," << cEnd-1 <<
-                        // endl;
+                    else if (r < rEnd && (at(data, cols, r + 1, cEnd - 1) > curVal
+                            || at(data, cols, r + 1, cEnd) > curVal)) {
                         // - - -
                         // - - -
                         // - x x
                     }
-                    else if (1 < r && mat.get(r - 1, cEnd - 2)[0] >= curVal
-                            || mat.get(r, cEnd - 2)[0] > curVal
-                            || r < rEnd && mat.get(r + 1, cEnd - 2)[0] > curVal) {
-                        // cout << "rejectEnd:cEnd-2 " << r << "," << cEnd-1 <<
-                        // endl;
+                    else if (1 < r && at(data, cols, r - 1, cEnd - 2) >= curVal
+                            || at(data, cols, r, cEnd - 2) > curVal
+                            || r < rEnd && at(data, cols, r + 1, cEnd - 2) > curVal) {
                         // x - -
                         // x - -
                         // x - -
@@ -358,5 +380,16 @@ public class OpenCvUtils {
         }
 
         return locations;
-    }    
+    }
+
+    /**
+     * Get a neighbour's value. Like Mat.get(), which the neighbour checks used to call, a column
+     * outside the Mat is an error rather than wrapping to the next row.
+     */
+    private static double at(double[] data, int cols, int r, int c) {
+        if (c < 0 || c >= cols) {
+            throw new IndexOutOfBoundsException("Column " + c + " of " + cols);
+        }
+        return data[r * cols + c];
+    }
 }
@@ -6,6 +6,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
 
 import org.openpnp.model.BoardLocation;
 import org.openpnp.model.Configuration;
@@ -138,28 +139,50 @@ public class VisionUtils {
     }
     
     public static PartAlignment.PartAlignmentOffset findPartAlignmentOffsets(PartAlignment p, Part part, BoardLocation boardLocation, Location placementLocation, Nozzle nozzle) throws Exception {
+        return withPartAlignmentScripts(part, nozzle,
+                () -> p.findOffsets(part, boardLocation, placementLocation, nozzle));
+    }
+
+    /**
+     * Run an alignment between the Vision.PartAlignment.Before and Vision.PartAlignment.After
+     * script events.
+     */
+    public static <T> T withPartAlignmentScripts(Part part, Nozzle nozzle, Callable<T> alignment)
+            throws Exception {
+        return withPartAlignmentScripts(Collections.singletonMap(nozzle, part), alignment);
+    }
+
+    /**
+     * Run an alignment of the parts on several nozzles at once, firing the
+     * Vision.PartAlignment.Before script event for each nozzle and part before it and
+     * Vision.PartAlignment.After for each after it.
+     */
+    public static <T> T withPartAlignmentScripts(Map<Nozzle, Part> parts, Callable<T> alignment)
+            throws Exception {
+        for (Map.Entry<Nozzle, Part> entry : parts.entrySet()) {
+            firePartAlignmentScript("Vision.PartAlignment.Before", entry.getValue(),
+                    entry.getKey());
+        }
+        try {
+            return alignment.call();
+        }
+        finally {
+            for (Map.Entry<Nozzle, Part> entry : parts.entrySet()) {
+                firePartAlignmentScript("Vision.PartAlignment.After", entry.getValue(),
+                        entry.getKey());
+            }
+        }
+    }
+
+    private static void firePartAlignmentScript(String event, Part part, Nozzle nozzle) {
         try {
             Map<String, Object> globals = new HashMap<>();
             globals.put("part", part);
             globals.put("nozzle", nozzle);
-            Configuration.get().getScripting().on("Vision.PartAlignment.Before", globals);
+            Configuration.get().getScripting().on(event, globals);
         }
         catch (Exception e) {
             Logger.warn(e);
         }
-        try {
-            return p.findOffsets(part, boardLocation, placementLocation, nozzle);
-        }
-        finally {
-            try {
-                Map<String, Object> globals = new HashMap<>();
-                globals.put("part", part);
-                globals.put("nozzle", nozzle);
-                Configuration.get().getScripting().on("Vision.PartAlignment.After", globals);
-            }
-            catch (Exception e) {
-                Logger.warn(e);
-            }
-        }
     }
 }
@@ -5,8 +5,11 @@ import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.beanutils.PropertyUtils;
 import org.opencv.core.Core;
@@ -24,6 +27,7 @@ import org.simpleframework.xml.core.Persister;
 import org.simpleframework.xml.stream.Format;
 import org.simpleframework.xml.stream.HyphenStyle;
 import org.simpleframework.xml.stream.Style;
+import org.pmw.tinylog.Logger;
 
 /**
  * A CvPipeline performs computer vision operations on a working image by processing in series a
@@ -40,6 +44,12 @@ import org.simpleframework.xml.stream.Style;
  * 
  * RoboRealm: http://www.roborealm.com/
  * 
+ * There are two ways to run a pipeline. process() keeps a copy of the image from every stage so
+ * that the editor can show each of them. processHeadless() is intended for machine operations
+ * that only read models and the final working image: it only keeps images from stages that are
+ * referenced by other stages or named by the caller, and copies them into buffers that are
+ * reused from one run to the next.
+ * 
  * TODO: Add measuring to image window.
  * 
  * TODO: Add info showing pixel coordinates when mouse is in image window.
@@ -62,6 +72,14 @@ public class CvPipeline {
     private Object workingModel;
     
     private long totalProcessingTimeNs;
+
+    private long allocatedBytes;
+
+    /**
+     * Buffers holding the images retained by processHeadless(), reused across runs. These are
+     * only released by release().
+     */
+    private Map<CvStage, Mat> retainedImages = new HashMap<>();
     
     public CvPipeline() {
         
@@ -191,10 +209,57 @@ public class CvPipeline {
       this.totalProcessingTimeNs = totalProcessingTimeNs;
     }
 
+    /**
+     * Get the number of bytes of image data allocated during the last run. This counts images
+     * returned by stages and the copies made by the pipeline. It does not include temporary Mats
+     * that stages allocate and release internally.
+     * 
+     * @return
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * Process the pipeline, keeping a copy of the image from every stage.
+     */
     public void process() {
+        process(false, Collections.emptySet());
+    }
 
+    /**
+     * Process the pipeline without keeping the images of stages that nothing refers to. Every
+     * stage still gets a Result with its model, but its image is null unless another stage
+     * refers to it by name or it is one of retainedStageNames. The working image is always
+     * available after processing.
+     * 
+     * @param retainedStageNames Names of stages whose images the caller needs after processing.
+     */
+    public void processHeadless(String... retainedStageNames) {
+        Set<String> retained = new HashSet<>();
+        Collections.addAll(retained, retainedStageNames);
+        for (CvStage stage : stages) {
+            if (stage.isEnabled()) {
+                retained.addAll(stage.getReferencedStageNames());
+            }
+        }
+        process(true, retained);
+    }
+
+    private void process(boolean headless, Set<String> retainedStageNames) {
         totalProcessingTimeNs = 0;
-        release();
+        allocatedBytes = 0;
+        releaseResults(!headless);
+        // Drop buffers for stages that are no longer retained.
+        for (Iterator<Map.Entry<CvStage, Mat>> i = retainedImages.entrySet().iterator(); i
+                .hasNext();) {
+            Map.Entry<CvStage, Mat> entry = i.next();
+            if (!stages.contains(entry.getKey())
+                    || !retainedStageNames.contains(entry.getKey().getName())) {
+                entry.getValue().release();
+                i.remove();
+            }
+        }
         for (CvStage stage : stages) {
             // Process and time the stage and get the result.
             long processingTimeNs = System.nanoTime();
@@ -220,47 +285,101 @@ public class CvPipeline {
             if(stage.isEnabled() && model != null) {
               workingModel=model;
             }
-            // If the result image is null and there is a working image,
-            // replace the result image with a clone of the working image.
-            if (image == null) {
-                if (workingImage != null) {
-                    image = workingImage.clone();
-                }
-            }
             // If the result image is not null:
             // Release the working image if the result image is different.
             // Replace the working image with the result image.
-            // Clone the result image for storage.
-            else {
-                if (workingImage != null && workingImage != image) {
-                    workingImage.release();
+            if (image != null) {
+                if (workingImage != image) {
+                    releaseWorkingImage();
+                    if (!retainedImages.containsValue(image)) {
+                        allocatedBytes += sizeOf(image);
+                    }
                 }
                 workingImage = image;
-                image = image.clone();
+            }
+            // Store a copy of the working image as the result image. In headless mode this is
+            // only done for retained stages, and the copy goes into a reused buffer.
+            image = null;
+            if (workingImage != null) {
+                if (!headless) {
+                    image = workingImage.clone();
+                    allocatedBytes += sizeOf(image);
+                }
+                else if (retainedStageNames.contains(stage.getName())) {
+                    image = retainedImages.get(stage);
+                    if (image == null) {
+                        image = new Mat();
+                        retainedImages.put(stage, image);
+                    }
+                    if (!image.size().equals(workingImage.size())
+                            || image.type() != workingImage.type()) {
+                        allocatedBytes += sizeOf(workingImage);
+                    }
+                    workingImage.copyTo(image);
+                }
             }
 
             results.put(stage, new Result(image, model, processingTimeNs));
         }
+        if (headless) {
+            Logger.trace("CvPipeline processed in {} ms, allocated {} bytes: {}",
+                    totalProcessingTimeNs / 1e6, allocatedBytes, getStageTimes());
+        }
+    }
+
+    private String getStageTimes() {
+        StringBuilder sb = new StringBuilder();
+        for (CvStage stage : stages) {
+            Result result = results.get(stage);
+            if (result != null) {
+                sb.append(String.format("%s %.3f ms, ", stage.getName(),
+                        result.processingTimeNs / 1e6));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static long sizeOf(Mat mat) {
+        return mat.total() * mat.elemSize();
     }
 
     /**
-     * Release any temporary resources associated with the processing of the pipeline. Should be
-     * called when the pipeline is no longer needed. This is primarily to release retained native
-     * resources from OpenCV.
+     * Release the working image unless it is one of the retained buffers, which can happen when
+     * a stage returns another stage's image as its own.
      */
-    public void release() {
-        if (workingImage != null) {
+    private void releaseWorkingImage() {
+        if (workingImage != null && !retainedImages.containsValue(workingImage)) {
             workingImage.release();
         }
+        workingImage = null;
+    }
+
+    private void releaseResults(boolean releaseRetainedImages) {
+        releaseWorkingImage();
         for (Result result : results.values()) {
-            if (result.image != null) {
+            if (result.image != null && !retainedImages.containsValue(result.image)) {
                 result.image.release();
             }
         }
+        if (releaseRetainedImages) {
+            for (Mat image : retainedImages.values()) {
+                image.release();
+            }
+            retainedImages.clear();
+        }
         workingModel=null;
         results.clear();
     }
 
+    /**
+     * Release any temporary resources associated with the processing of the pipeline. Should be
+     * called when the pipeline is no longer needed. This is primarily to release retained native
+     * resources from OpenCV.
+     */
+    public void release() {
+        releaseResults(true);
+    }
+
     /**
      * Convert the pipeline to an XML string that can be read back in with #fromXmlString.
      * 
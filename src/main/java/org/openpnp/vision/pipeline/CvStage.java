@@ -7,6 +7,9 @@ import java.beans.EventSetDescriptor;
 import java.beans.Introspector;
 import java.beans.MethodDescriptor;
 import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.opencv.core.Mat;
 import org.simpleframework.xml.Attribute;
@@ -56,6 +59,35 @@ public abstract class CvStage {
         this.enabled = enabled;
     }
 
+    /**
+     * Get the names of the stages whose results this stage reads. By convention stages refer to
+     * other stages with String properties whose names end in StageName, so this collects the
+     * values of those.
+     * 
+     * @return
+     */
+    public Set<String> getReferencedStageNames() {
+        Set<String> names = new HashSet<>();
+        for (Class<?> c = getClass(); c != CvStage.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (field.getType() != String.class || !field.getName().endsWith("StageName")) {
+                    continue;
+                }
+                try {
+                    field.setAccessible(true);
+                    String name = (String) field.get(this);
+                    if (name != null && !name.trim().isEmpty()) {
+                        names.add(name);
+                    }
+                }
+                catch (Exception e) {
+                    // Not readable, so it can't be referenced either.
+                }
+            }
+        }
+        return names;
+    }
+
     public String getCategory() {
         try {
             Stage a = getClass().getAnnotation(Stage.class);
@@ -15,6 +15,13 @@ import org.openpnp.vision.pipeline.Property;
   description="Capture an image from the pipeline camera.")
 
 public class ImageCapture extends CvStage {
+    /**
+     * The pipeline property holding an image that was already captured, as a BufferedImage. When
+     * it is set the stage uses it instead of capturing, so a caller can capture on the machine
+     * thread and process the pipeline elsewhere.
+     */
+    public static final String CAPTURED_IMAGE_PROPERTY = "capturedImage";
+
     @Attribute
     @Property(description="Wait for the camera to settle before capturing an image.")
     private boolean settleFirst;
@@ -29,6 +36,11 @@ public class ImageCapture extends CvStage {
 
     @Override
     public Result process(CvPipeline pipeline) throws Exception {
+        BufferedImage capturedImage =
+                (BufferedImage) pipeline.getProperty(CAPTURED_IMAGE_PROPERTY);
+        if (capturedImage != null) {
+            return new Result(OpenCvUtils.toMat(capturedImage));
+        }
         Camera camera = (Camera) pipeline.getProperty("camera");
         if (camera == null) {
             throw new Exception("No Camera set on pipeline.");
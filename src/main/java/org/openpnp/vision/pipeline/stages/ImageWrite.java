@@ -2,14 +2,14 @@ package org.openpnp.vision.pipeline.stages;
 
 import java.io.File;
 
-import org.opencv.highgui.Highgui;
+import org.openpnp.util.AsyncImageWriter;
 import org.openpnp.vision.pipeline.CvPipeline;
 import org.openpnp.vision.pipeline.CvStage;
 import org.simpleframework.xml.Attribute;
 
 /**
  * Save the working image to the specified path. The format is chosen based on the filename's
- * extension.
+ * extension. The image is written in the background by the AsyncImageWriter.
  */
 public class ImageWrite extends CvStage {
     @Attribute
@@ -25,7 +25,7 @@ public class ImageWrite extends CvStage {
 
     @Override
     public Result process(CvPipeline pipeline) throws Exception {
-        Highgui.imwrite(file.getAbsolutePath(), pipeline.getWorkingImage());
+        AsyncImageWriter.get().write(file, pipeline.getWorkingImage());
         return null;
     }
 }
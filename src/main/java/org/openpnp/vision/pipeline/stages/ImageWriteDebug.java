@@ -2,8 +2,8 @@ package org.openpnp.vision.pipeline.stages;
 
 import java.io.File;
 
-import org.opencv.highgui.Highgui;
 import org.openpnp.model.Configuration;
+import org.openpnp.util.AsyncImageWriter;
 import org.openpnp.util.LogUtils;
 import org.openpnp.vision.pipeline.CvPipeline;
 import org.openpnp.vision.pipeline.CvStage;
@@ -11,7 +11,8 @@ import org.simpleframework.xml.Attribute;
 
 /**
  * Save the working image as an image file in the debug directory using the specified prefix and
- * suffix. The suffix should be a file extension (including the period).
+ * suffix. The suffix should be a file extension (including the period). The image is written in
+ * the background by the AsyncImageWriter.
  */
 public class ImageWriteDebug extends CvStage {
     @Attribute
@@ -42,7 +43,7 @@ public class ImageWriteDebug extends CvStage {
             return null;
         }
         File file = Configuration.get().createResourceFile(getClass(), prefix, suffix);
-        Highgui.imwrite(file.getAbsolutePath(), pipeline.getWorkingImage());
+        AsyncImageWriter.get().write(file, pipeline.getWorkingImage());
         return null;
     }
 }
@@ -124,8 +124,8 @@ public class MatchPartTemplate extends CvStage {
 
             model = (List<?>) pipeline.getResult(modelStageName.toString()).model;
         }
-        Mat originalImage = pipeline.getWorkingImage()
-                                    .clone();
+        // The working image is only read, so it doesn't need to be copied.
+        Mat originalImage = pipeline.getWorkingImage();
 
         if (model == null || originalImage == null) {
             if (log) {
@@ -146,7 +146,7 @@ public class MatchPartTemplate extends CvStage {
         }
 
         Mat timage = template.image.clone();
-        Result result = new Result(originalImage);
+        Result result = null;
         RotatedRect rrect = null;
 
         if (model instanceof RotatedRect) {
@@ -232,6 +232,7 @@ public class MatchPartTemplate extends CvStage {
                  */
             }
             Result mresult = matchTemplate(image, timage);
+            mresult.image.release();
             List<TemplateMatch> matches = (List<TemplateMatch>) mresult.model;
             double rotScore = 0;
             // get the best of local matches
@@ -254,6 +255,8 @@ public class MatchPartTemplate extends CvStage {
                 Logger.info("rotation" + i + " score = " + rotScore);
             }
         }
+        image.release();
+        timage.release();
         // correct original model's angle to the orientation detected
         orect.angle = rrect.angle + (winrot - 1) * angleAdv;
 
@@ -271,7 +274,7 @@ public class MatchPartTemplate extends CvStage {
             Logger.info("NO MATCH FOUND!!!!!!!");
             return null;
         }
-        result = new Result(originalImage, new ArrayList<RotatedRect>());
+        result = new Result(null, new ArrayList<RotatedRect>());
 
         ((List<RotatedRect>) result.model).add(orect);
         if (log) {
@@ -0,0 +1,82 @@
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.openpnp.util.AsyncImageWriter;
+import org.openpnp.util.AsyncImageWriter.Encoding;
+
+import com.google.common.io.Files;
+
+public class AsyncImageWriterTest {
+    static {
+        nu.pattern.OpenCV.loadShared();
+        System.loadLibrary(org.opencv.core.Core.NATIVE_LIBRARY_NAME);
+    }
+
+    @Test
+    public void testEncodings() throws Exception {
+        File directory = Files.createTempDir();
+        AsyncImageWriter writer = new AsyncImageWriter(directory);
+        Mat mat = new Mat(32, 32, CvType.CV_8UC3, new Scalar(0, 128, 255));
+        for (Encoding encoding : Encoding.values()) {
+            writer.setEncoding(encoding);
+            writer.writeDebugImage("image", mat);
+            Assert.assertTrue(writer.flush(10000));
+            Assert.assertTrue(new File(directory, "image" + encoding.getExtension()).length() > 0);
+        }
+        // The caller's Mat is untouched and can be released right away.
+        mat.release();
+
+        File file = new File(directory, "explicit.png");
+        Mat gray = new Mat(8, 8, CvType.CV_8UC1, new Scalar(7));
+        writer.write(file, gray);
+        gray.release();
+        Assert.assertTrue(writer.flush(10000));
+        Assert.assertTrue(file.length() > 0);
+        Assert.assertEquals(4, writer.getWritten());
+    }
+
+    /**
+     * Once over the quota the oldest debug images are deleted.
+     */
+    @Test
+    public void testQuota() throws Exception {
+        File directory = Files.createTempDir();
+        AsyncImageWriter writer = new AsyncImageWriter(directory);
+        writer.setEncoding(Encoding.Bmp);
+        Mat mat = new Mat(100, 100, CvType.CV_8UC3, new Scalar(1, 2, 3));
+        // Each image is about 30 kB, so only three fit.
+        writer.setQuotaBytes(100 * 1024);
+        for (int i = 0; i < 10; i++) {
+            writer.writeDebugImage("image" + i, mat);
+            Assert.assertTrue(writer.flush(10000));
+        }
+        mat.release();
+        Assert.assertEquals(3, directory.listFiles().length);
+        Assert.assertTrue(new File(directory, "image9.bmp").exists());
+        Assert.assertFalse(new File(directory, "image6.bmp").exists());
+    }
+
+    /**
+     * When the queue is full the oldest queued images are dropped rather than blocking.
+     */
+    @Test
+    public void testDropOldest() throws Exception {
+        File directory = Files.createTempDir();
+        AsyncImageWriter writer = new AsyncImageWriter(directory);
+        writer.setCapacity(2);
+        Mat mat = new Mat(400, 400, CvType.CV_8UC3, new Scalar(1, 2, 3));
+        writer.setPngCompression(9);
+        for (int i = 0; i < 50; i++) {
+            writer.writeDebugImage("image" + i, mat);
+        }
+        mat.release();
+        Assert.assertTrue(writer.flush(30000));
+        Assert.assertTrue(writer.getDropped() > 0);
+        Assert.assertEquals(50, writer.getDropped() + writer.getWritten());
+        Assert.assertTrue(new File(directory, "image49.png").exists());
+    }
+}
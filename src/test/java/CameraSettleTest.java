@@ -0,0 +1,182 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openpnp.gui.support.Wizard;
+import org.openpnp.machine.reference.ReferenceCamera;
+import org.openpnp.model.Configuration;
+import org.openpnp.spi.PropertySheetHolder;
+
+import com.google.common.io.Files;
+
+public class CameraSettleTest {
+    @Before
+    public void before() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+    }
+
+    /**
+     * An adaptive settle returns as soon as the frames stop moving rather than waiting the full
+     * settle time.
+     */
+    @Test
+    public void testAdaptiveSettle() throws Exception {
+        ShakingCamera camera = new ShakingCamera(5);
+        camera.setSettleTimeMs(10000);
+        camera.setSettleAdaptive(true);
+        long time = camera.settle();
+        Assert.assertTrue(time < 5000);
+        // Five shaking frames, then two still ones to compare.
+        Assert.assertEquals(7, camera.captures);
+        Assert.assertEquals(1, camera.getSettleStatistics().getCount());
+        Assert.assertEquals(0, camera.getSettleStatistics().getTimeouts());
+    }
+
+    /**
+     * The settle time is the upper bound for an adaptive settle.
+     */
+    @Test
+    public void testAdaptiveSettleTimeout() throws Exception {
+        ShakingCamera camera = new ShakingCamera(Integer.MAX_VALUE);
+        camera.setSettleTimeMs(200);
+        camera.setSettleAdaptive(true);
+        long time = camera.settle();
+        Assert.assertTrue(time >= 200);
+        Assert.assertEquals(1, camera.getSettleStatistics().getTimeouts());
+    }
+
+    /**
+     * Without adaptive settle the full settle time is waited and no frames are captured.
+     */
+    @Test
+    public void testFixedSettle() throws Exception {
+        ShakingCamera camera = new ShakingCamera(0);
+        camera.setSettleTimeMs(100);
+        long time = camera.settle();
+        Assert.assertTrue(time >= 100);
+        Assert.assertEquals(0, camera.captures);
+        Assert.assertEquals(0, camera.getSettleStatistics().getCount());
+    }
+
+    /**
+     * Captures that return no frame are retried rather than compared.
+     */
+    @Test
+    public void testAdaptiveSettleDroppedFrames() throws Exception {
+        ShakingCamera camera = new ShakingCamera(0) {
+            @Override
+            public synchronized BufferedImage internalCapture() {
+                BufferedImage image = super.internalCapture();
+                return captures % 2 == 0 ? null : image;
+            }
+        };
+        camera.setSettleTimeMs(10000);
+        camera.setSettleAdaptive(true);
+        long time = camera.settle();
+        Assert.assertTrue(time < 5000);
+        Assert.assertEquals(0, camera.getSettleStatistics().getTimeouts());
+    }
+
+    /**
+     * A camera that never returns a frame waits out the settle time, as a fixed settle would.
+     */
+    @Test
+    public void testAdaptiveSettleNoFrames() throws Exception {
+        ShakingCamera camera = new ShakingCamera(0) {
+            @Override
+            public synchronized BufferedImage internalCapture() {
+                captures++;
+                return null;
+            }
+        };
+        camera.setSettleTimeMs(200);
+        camera.setSettleAdaptive(true);
+        long time = camera.settle();
+        Assert.assertTrue(time >= 200);
+        Assert.assertTrue(camera.captures > 1);
+        Assert.assertEquals(1, camera.getSettleStatistics().getTimeouts());
+    }
+
+    /**
+     * Sensor noise alone stays under the default threshold.
+     */
+    @Test
+    public void testNoiseIsSettled() throws Exception {
+        NoisyCamera camera = new NoisyCamera();
+        camera.setSettleTimeMs(10000);
+        camera.setSettleAdaptive(true);
+        camera.settle();
+        Assert.assertEquals(0, camera.getSettleStatistics().getTimeouts());
+    }
+
+    /**
+     * Returns frames of a scene that moves for the given number of captures and then stops.
+     */
+    static class ShakingCamera extends TestCamera {
+        final int shakingFrames;
+        int captures;
+
+        ShakingCamera(int shakingFrames) {
+            this.shakingFrames = shakingFrames;
+        }
+
+        @Override
+        public synchronized BufferedImage internalCapture() {
+            int offset = captures < shakingFrames ? (captures % 2 == 0 ? 10 : -10) : 0;
+            captures++;
+            BufferedImage image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            g.setColor(Color.black);
+            g.fillRect(0, 0, 640, 480);
+            g.setColor(Color.white);
+            for (int x = 0; x < 640; x += 80) {
+                g.fillRect(x + offset, 100 + offset, 40, 280);
+            }
+            g.dispose();
+            return image;
+        }
+    }
+
+    /**
+     * Returns a still scene with a little noise on every pixel.
+     */
+    static class NoisyCamera extends TestCamera {
+        final Random random = new Random(1);
+
+        @Override
+        public synchronized BufferedImage internalCapture() {
+            BufferedImage image = new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB);
+            for (int y = 0; y < 480; y++) {
+                for (int x = 0; x < 640; x++) {
+                    int v = Math.max(0, Math.min(255, 128 + (int) (random.nextGaussian() * 4)));
+                    image.setRGB(x, y, (v << 16) | (v << 8) | v);
+                }
+            }
+            return image;
+        }
+    }
+
+    abstract static class TestCamera extends ReferenceCamera {
+        @Override
+        public Wizard getConfigurationWizard() {
+            return null;
+        }
+
+        @Override
+        public String getPropertySheetHolderTitle() {
+            return getClass().getSimpleName();
+        }
+
+        @Override
+        public PropertySheetHolder[] getChildPropertySheetHolders() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Scalar;
+import org.openpnp.vision.pipeline.CvPipeline;
+import org.openpnp.vision.pipeline.CvStage;
+import org.openpnp.vision.pipeline.stages.BlurGaussian;
+import org.openpnp.vision.pipeline.stages.ConvertColor;
+import org.openpnp.vision.pipeline.stages.FindContours;
+import org.openpnp.vision.pipeline.stages.ImageRecall;
+import org.openpnp.vision.pipeline.stages.MinAreaRectContours;
+import org.openpnp.vision.pipeline.stages.Threshold;
+
+public class CvPipelineTest {
+    /**
+     * Headless processing must produce the same models and working image as normal processing
+     * while only keeping images for stages that are referenced, reusing their buffers between
+     * runs.
+     */
+    @Test
+    public void testProcessHeadless() throws Exception {
+        CvPipeline pipeline = createPipeline();
+
+        pipeline.process();
+        @SuppressWarnings("unchecked")
+        List<RotatedRect> expected = (List<RotatedRect>) pipeline.getResult("results").model;
+        Mat expectedImage = pipeline.getWorkingImage().clone();
+        long fullAllocatedBytes = pipeline.getAllocatedBytes();
+        for (CvStage stage : pipeline.getStages()) {
+            Assert.assertNotNull(pipeline.getResult(stage).image);
+        }
+
+        pipeline.processHeadless("blur");
+        Mat retained = pipeline.getResult("image").image;
+        pipeline.processHeadless("blur");
+        Assert.assertSame(retained, pipeline.getResult("image").image);
+
+        @SuppressWarnings("unchecked")
+        List<RotatedRect> results = (List<RotatedRect>) pipeline.getResult("results").model;
+        Assert.assertEquals(expected.size(), results.size());
+        Assert.assertEquals(expected.get(0).center, results.get(0).center);
+        Assert.assertEquals(0, Core.norm(expectedImage, pipeline.getWorkingImage()), 0);
+
+        // "image" is referenced by ImageRecall, "contours" by MinAreaRectContours and "blur" by
+        // the caller. Nothing else keeps an image.
+        Assert.assertNotNull(pipeline.getResult("contours").image);
+        Assert.assertNotNull(pipeline.getResult("blur").image);
+        Assert.assertNull(pipeline.getResult("gray").image);
+        Assert.assertNull(pipeline.getResult("threshold").image);
+        Assert.assertNull(pipeline.getResult("results").image);
+        Assert.assertTrue(pipeline.getAllocatedBytes() < fullAllocatedBytes);
+
+        // Switching back gives every stage its image again.
+        pipeline.process();
+        Assert.assertNotNull(pipeline.getResult("gray").image);
+        pipeline.release();
+    }
+
+    private static CvPipeline createPipeline() {
+        CvPipeline pipeline = new CvPipeline();
+        pipeline.add("image", new CvStage() {
+            @Override
+            public Result process(CvPipeline pipeline) throws Exception {
+                Mat mat = new Mat(1024, 1280, CvType.CV_8UC3, new Scalar(0, 0, 0));
+                Core.rectangle(mat, new Point(400, 300), new Point(700, 500),
+                        new Scalar(255, 255, 255), -1);
+                return new Result(mat);
+            }
+        });
+        pipeline.add("gray", new ConvertColor());
+        BlurGaussian blur = new BlurGaussian();
+        blur.setKernelSize(5);
+        pipeline.add("blur", blur);
+        pipeline.add("threshold", new Threshold());
+        pipeline.add("contours", new FindContours());
+        MinAreaRectContours minAreaRect = new MinAreaRectContours();
+        minAreaRect.setContoursStageName("contours");
+        pipeline.add("results", minAreaRect);
+        ImageRecall recall = new ImageRecall();
+        recall.setImageStageName("image");
+        pipeline.add("recall", recall);
+        return pipeline;
+    }
+}
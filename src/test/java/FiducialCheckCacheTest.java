@@ -0,0 +1,116 @@
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.machine.reference.FiducialCheckCache;
+import org.openpnp.machine.reference.FiducialCheckCache.FreshnessPolicy;
+import org.openpnp.machine.reference.ReferenceMachine;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor;
+import org.openpnp.model.Board;
+import org.openpnp.model.Board.Side;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Job;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+
+import com.google.common.io.Files;
+
+public class FiducialCheckCacheTest {
+    private final BoardLocation board1 = new BoardLocation(new Board());
+    private final BoardLocation board2 = new BoardLocation(new Board());
+    private final Location location = new Location(LengthUnit.Millimeters, 10, 20, 0, 1);
+
+    @Test
+    public void testAlways() {
+        FiducialCheckCache cache = new FiducialCheckCache(FreshnessPolicy.Always, 10, 60000);
+        cache.put(board1, location);
+        Assert.assertNull(cache.get(board1));
+        Assert.assertEquals(0, cache.getHits());
+        Assert.assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testCycle() {
+        FiducialCheckCache cache = new FiducialCheckCache(FreshnessPolicy.Cycle, 10, 60000);
+        cache.nextCycle();
+        Assert.assertNull(cache.get(board1));
+        cache.put(board1, location);
+        Assert.assertEquals(location, cache.get(board1));
+        Assert.assertEquals(location, cache.get(board1));
+        Assert.assertNull(cache.get(board2));
+        cache.nextCycle();
+        Assert.assertNull(cache.get(board1));
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testPlacements() {
+        FiducialCheckCache cache = new FiducialCheckCache(FreshnessPolicy.Placements, 3, 60000);
+        cache.put(board1, location);
+        // The measuring check counts as the first of the three.
+        Assert.assertEquals(location, cache.get(board1));
+        Assert.assertEquals(location, cache.get(board1));
+        Assert.assertNull(cache.get(board1));
+    }
+
+    @Test
+    public void testTime() throws Exception {
+        long[] now = new long[] {1000};
+        FiducialCheckCache cache =
+                new FiducialCheckCache(FreshnessPolicy.Time, 10, 50, () -> now[0]);
+        cache.put(board1, location);
+        now[0] += 49;
+        Assert.assertEquals(location, cache.get(board1));
+        now[0] += 1;
+        Assert.assertNull(cache.get(board1));
+    }
+
+    /**
+     * Homing the machine drops the measurements the job processor made before it.
+     */
+    @Test
+    public void testHomingInvalidates() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        for (String name : new String[] {"machine.xml", "packages.xml", "parts.xml"}) {
+            FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/BasicJobTest/" + name),
+                    new File(workingDirectory, name));
+        }
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+        ReferenceMachine machine = (ReferenceMachine) Configuration.get().getMachine();
+
+        Board board = new Board();
+        for (int i = 0; i < 4; i++) {
+            board.addPlacement(BasicJobTest.createPlacement("R" + i, "R-0805-10K", 10 * i, 10, 0,
+                    0, Side.Top));
+        }
+        BoardLocation boardLocation = new BoardLocation(board);
+        boardLocation.setLocation(new Location(LengthUnit.Millimeters, 0, 0, 0, 0));
+        boardLocation.setSide(Side.Top);
+        Job job = new Job();
+        job.addBoardLocation(boardLocation);
+
+        ReferencePnpJobProcessor jobProcessor =
+                (ReferencePnpJobProcessor) machine.getPnpJobProcessor();
+        jobProcessor.setFiducialCheckFreshness(FreshnessPolicy.Job);
+        machine.setEnabled(true);
+        try {
+            jobProcessor.initialize(job);
+            // The first cycle, leaving the job part way through.
+            jobProcessor.next();
+            FiducialCheckCache cache = jobProcessor.getFiducialCheckCache();
+            cache.put(boardLocation, location);
+            Assert.assertEquals(location, cache.get(boardLocation));
+            machine.home();
+            Assert.assertNull(cache.get(boardLocation));
+            jobProcessor.abort();
+        }
+        finally {
+            machine.setEnabled(false);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.gui.support.Wizard;
+import org.openpnp.machine.reference.ReferenceCamera;
+import org.openpnp.machine.reference.ReferenceMachine;
+import org.openpnp.machine.reference.camera.FrameBuffer;
+import org.openpnp.model.Configuration;
+import org.openpnp.spi.PropertySheetHolder;
+
+import com.google.common.io.Files;
+
+public class FrameBufferTest {
+    @Test
+    public void testRing() throws Exception {
+        FrameBuffer buffer = new FrameBuffer(3);
+        Assert.assertNull(buffer.getNewest());
+        BufferedImage[] images = new BufferedImage[5];
+        for (int i = 0; i < images.length; i++) {
+            images[i] = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB);
+            buffer.put(images[i], i * 10);
+        }
+        Assert.assertSame(images[4], buffer.getNewest().getImage());
+        List<FrameBuffer.Frame> frames = buffer.getFrames();
+        Assert.assertEquals(3, frames.size());
+        Assert.assertSame(images[4], frames.get(0).getImage());
+        Assert.assertSame(images[2], frames.get(2).getImage());
+
+        Assert.assertSame(images[4], buffer.getNewest(40).getImage());
+        Assert.assertNull(buffer.getNewest(41));
+        Assert.assertNull(buffer.await(41, 50));
+    }
+
+    /**
+     * A consumer waiting for a frame wakes the capture thread rather than waiting out its frame
+     * interval.
+     */
+    @Test
+    public void testAwaitWakesCaptureThread() throws Exception {
+        FrameBuffer buffer = new FrameBuffer(2);
+        Thread thread = new Thread(() -> {
+            try {
+                while (true) {
+                    buffer.put(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB),
+                            System.nanoTime());
+                    buffer.awaitDemand(60000);
+                }
+            }
+            catch (InterruptedException e) {
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            long t = System.nanoTime();
+            FrameBuffer.Frame frame = buffer.await(t, 10000);
+            Assert.assertNotNull(frame);
+            Assert.assertTrue(frame.getTimestamp() >= t);
+            Assert.assertTrue(System.nanoTime() - t < 5000000000L);
+        }
+        finally {
+            thread.interrupt();
+        }
+    }
+
+    /**
+     * While a capture thread is running capture() uses its frames instead of capturing on the
+     * calling thread, and machine motion makes the buffered frames stale.
+     */
+    @Test
+    public void testCameraCapturesFromBuffer() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+
+        ThreadedCamera camera = new ThreadedCamera();
+        Thread thread = new Thread(camera);
+        thread.setDaemon(true);
+        thread.start();
+        try {
+            while (camera.getFrameBuffer().getNewest() == null) {
+                Thread.sleep(10);
+            }
+            BufferedImage first = camera.capture();
+            Assert.assertEquals(0, camera.callerCaptures);
+            // No motion, so the same frame is still good.
+            Assert.assertSame(first, camera.capture());
+
+            ReferenceMachine machine = (ReferenceMachine) Configuration.get().getMachine();
+            machine.fireMachineHeadActivity(machine.getDefaultHead());
+            BufferedImage second = camera.capture();
+            Assert.assertNotSame(first, second);
+            Assert.assertEquals(0, camera.callerCaptures);
+        }
+        finally {
+            thread.interrupt();
+            camera.close();
+        }
+    }
+
+    static class ThreadedCamera extends ReferenceCamera implements Runnable {
+        volatile Thread captureThread;
+        volatile int callerCaptures;
+
+        @Override
+        public void run() {
+            captureThread = Thread.currentThread();
+            while (!Thread.interrupted()) {
+                captureFrame();
+                try {
+                    // Long enough that the test would time out if captures had to wait for it.
+                    waitForNextFrame(60000);
+                }
+                catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        protected BufferedImage internalCapture() {
+            if (Thread.currentThread() != captureThread) {
+                callerCaptures++;
+            }
+            return new BufferedImage(4, 4, BufferedImage.TYPE_INT_RGB);
+        }
+
+        @Override
+        public Wizard getConfigurationWizard() {
+            return null;
+        }
+
+        @Override
+        public String getPropertySheetHolderTitle() {
+            return getClass().getSimpleName();
+        }
+
+        @Override
+        public PropertySheetHolder[] getChildPropertySheetHolders() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.model.Board;
+import org.openpnp.model.Fiducial;
+import org.openpnp.model.Identifiable;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.Placement;
+import org.openpnp.util.IdentifiableList;
+
+public class IdentifiableListTest {
+    static class Item implements Identifiable {
+        String id;
+
+        Item(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+    }
+
+    @Test
+    public void testIndexFollowsModifications() {
+        IdentifiableList<Item> list = new IdentifiableList<>();
+        for (int i = 0; i < 1000; i++) {
+            list.add(new Item("I" + i));
+        }
+        Assert.assertSame(list.get(500), list.get("I500"));
+        Assert.assertEquals("I1000", list.createId("I"));
+
+        Item removed = list.remove(500);
+        Assert.assertNull(list.get(removed.getId()));
+
+        Item replacement = new Item("R");
+        Item replaced = list.set(0, replacement);
+        Assert.assertNull(list.get(replaced.getId()));
+        Assert.assertSame(replacement, list.get("R"));
+
+        // The first of two objects with the same id wins, as with a search of the list.
+        Item duplicate = new Item("I1");
+        list.add(duplicate);
+        Assert.assertNotSame(duplicate, list.get("I1"));
+        Collections.reverse(list);
+        list.remove(list.size() - 2);
+        Assert.assertSame(duplicate, list.get("I1"));
+
+        // A changed id is found once the list is reindexed.
+        Item item = list.get("I2");
+        item.id = "X";
+        list.reindex();
+        Assert.assertNull(list.get("I2"));
+        Assert.assertSame(item, list.get("X"));
+
+        list.clear();
+        Assert.assertNull(list.get("X"));
+    }
+
+    @Test
+    public void testBoardBatchAddFiresOnce() {
+        Board board = new Board();
+        List<Placement> placements = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            placements.add(new Placement("P" + i));
+        }
+        int[] events = new int[1];
+        board.addPropertyChangeListener("placements", e -> events[0]++);
+        board.addPlacements(placements);
+        Assert.assertEquals(1, events[0]);
+        Assert.assertEquals(5000, board.getPlacements().size());
+        Assert.assertTrue(board.isDirty());
+
+        board.removePlacements(placements.subList(0, 2500));
+        Assert.assertEquals(2, events[0]);
+        Assert.assertEquals(2500, board.getPlacements().size());
+        Assert.assertSame(placements.get(2500), board.getPlacements().get(0));
+
+        List<Fiducial> fiducials = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Location location = new Location(LengthUnit.Millimeters, i, 0, 0, 0);
+            fiducials.add(() -> location);
+        }
+        board.addFiducials(fiducials);
+        board.addPropertyChangeListener("fiducials", e -> events[0]++);
+        board.removeFiducials(fiducials.subList(0, 2));
+        Assert.assertEquals(3, events[0]);
+        Assert.assertEquals(Collections.singletonList(fiducials.get(2)), board.getFiducials());
+    }
+}
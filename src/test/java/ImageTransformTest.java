@@ -0,0 +1,238 @@
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.RotatedRect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openpnp.machine.reference.camera.ImageTransform;
+import org.openpnp.machine.reference.camera.ImageTransform.Settings;
+
+/**
+ * Compares ImageTransform with the step by step transform ReferenceCamera used to run, one
+ * OpenCV call per step.
+ */
+public class ImageTransformTest {
+    static {
+        nu.pattern.OpenCV.loadShared();
+        System.loadLibrary(org.opencv.core.Core.NATIVE_LIBRARY_NAME);
+    }
+
+    /**
+     * Steps that only move whole pixels give exactly the same image.
+     */
+    @Test
+    public void testWholePixelSteps() {
+        Mat image = image(120, 91);
+        checkExact(image, testCase(0, 0, 0, 0, 0, 0, 0, false, true, false));
+        checkExact(image, testCase(0, 0, 0, 0, 0, 0, 0, false, false, true));
+        checkExact(image, testCase(0, 0, 0, 0, 0, 0, 0, false, true, true));
+        checkExact(image, testCase(0, 0, 0, 0, 0, 7, -3, false, false, false));
+        checkExact(image, testCase(0, 0, 0, 0, 0, 0, 0, true, false, false));
+        checkExact(image, testCase(80, 60, 0, 0, 0, -5, 9, true, true, false));
+        checkExact(image, testCase(0, 50, 0, 0, 0, 0, 0, false, false, false));
+    }
+
+    @Test
+    public void testInterpolatedSteps() {
+        Mat image = image(160, 120);
+        checkClose(image, testCase(0, 0, 200, 150, 0, 0, 0, false, false, false), 2, 0.5);
+        checkClose(image, testCase(0, 0, 0, 0, 90, 0, 0, false, false, false), 2, 0.5);
+        checkClose(image, testCase(0, 0, 0, 0, 33, 4, 2, false, true, false), 8, 1);
+        // One interpolation instead of two, so a little sharper than before.
+        checkClose(image, testCase(100, 100, 80, 80, -17, 3, 0, true, false, true), 40, 2);
+
+        Case undistort = testCase(0, 0, 0, 0, 0, 0, 0, false, false, false);
+        undistort.cameraMatrix = new double[] {150, 0, 80, 0, 150, 60, 0, 0, 1};
+        undistort.distortionCoefficients = new double[] {-0.2, 0.05, 0, 0, 0};
+        checkClose(image, undistort, 2, 0.5);
+    }
+
+    /**
+     * The map is kept while the settings and frame size stay the same, and the output buffer is
+     * reused.
+     */
+    @Test
+    public void testReuse() {
+        ImageTransform transform = new ImageTransform();
+        Mat image = image(64, 48);
+        Settings settings = testCase(0, 0, 0, 0, 10, 0, 0, false, false, false).toSettings();
+        Mat first = transform.apply(image, settings);
+        long address = first.dataAddr();
+        Mat second = transform.apply(image,
+                testCase(0, 0, 0, 0, 10, 0, 0, false, false, false).toSettings());
+        Assert.assertSame(first, second);
+        Assert.assertEquals(address, second.dataAddr());
+
+        Mat rotated = transform.apply(image,
+                testCase(0, 0, 0, 0, 90, 0, 0, false, false, false).toSettings());
+        // The bounding box of the rotated frame, which is a little larger than the frame.
+        Assert.assertTrue(rotated.cols() >= 48 && rotated.cols() < 64);
+        Assert.assertTrue(rotated.rows() >= 64);
+
+        // Nothing to do returns the input.
+        Assert.assertSame(image,
+                transform.apply(image,
+                        testCase(0, 0, 0, 0, 0, 0, 0, false, false, false).toSettings()));
+        transform.release();
+    }
+
+    private static void checkExact(Mat image, Case c) {
+        checkClose(image, c, 0, 0);
+    }
+
+    /**
+     * Check the largest and the mean difference from the old transform, over all channels.
+     */
+    private static void checkClose(Mat image, Case c, double maxDifference,
+            double meanDifference) {
+        Mat expected = c.oldTransform(image.clone());
+        Settings settings = c.toSettings();
+        ImageTransform transform = new ImageTransform();
+        Mat actual = transform.apply(ImageTransform.crop(image, settings), settings);
+        Assert.assertEquals(expected.size(), actual.size());
+        Assert.assertEquals(expected.type(), actual.type());
+        Mat difference = new Mat();
+        Core.absdiff(expected, actual, difference);
+        // The old rotation leaves a partially blended edge, compare the interior.
+        Rect interior = new Rect(2, 2, difference.cols() - 4, difference.rows() - 4);
+        Mat inner = difference.submat(interior).reshape(1);
+        Assert.assertTrue(Core.minMaxLoc(inner).maxVal <= maxDifference);
+        Assert.assertTrue(Core.mean(inner).val[0] <= meanDifference);
+        transform.release();
+    }
+
+    private static Case testCase(int cropWidth, int cropHeight, int scaleWidth,
+            int scaleHeight, double rotation, int offsetX, int offsetY, boolean deinterlace,
+            boolean flipX, boolean flipY) {
+        Case c = new Case();
+        c.cropWidth = cropWidth;
+        c.cropHeight = cropHeight;
+        c.scaleWidth = scaleWidth;
+        c.scaleHeight = scaleHeight;
+        c.rotation = rotation;
+        c.offsetX = offsetX;
+        c.offsetY = offsetY;
+        c.deinterlace = deinterlace;
+        c.flipX = flipX;
+        c.flipY = flipY;
+        return c;
+    }
+
+    /**
+     * A smooth color image, so that interpolating in one step or several gives nearly the same
+     * result.
+     */
+    private static Mat image(int width, int height) {
+        Random random = new Random(width * height);
+        byte[] data = new byte[width * height * 3];
+        random.nextBytes(data);
+        Mat mat = new Mat(height, width, CvType.CV_8UC3);
+        mat.put(0, 0, data);
+        Imgproc.GaussianBlur(mat, mat, new Size(15, 15), 0);
+        Core.normalize(mat, mat, 0, 255, Core.NORM_MINMAX);
+        return mat;
+    }
+
+    /**
+     * One set of camera settings, which can run the transform the way ReferenceCamera used to,
+     * one OpenCV call per step.
+     */
+    static class Case {
+        int cropWidth;
+        int cropHeight;
+        int scaleWidth;
+        int scaleHeight;
+        double rotation;
+        int offsetX;
+        int offsetY;
+        boolean deinterlace;
+        boolean flipX;
+        boolean flipY;
+        double[] cameraMatrix;
+        double[] distortionCoefficients;
+
+        Settings toSettings() {
+            return new Settings(cropWidth, cropHeight, scaleWidth, scaleHeight, rotation,
+                    offsetX, offsetY, deinterlace, flipX, flipY, cameraMatrix,
+                    distortionCoefficients);
+        }
+
+        Mat oldTransform(Mat mat) {
+            if (cropWidth != 0 || cropHeight != 0) {
+                int cw = (cropWidth != 0) ? cropWidth : (int) mat.size().width;
+                int ch = (cropHeight != 0) ? cropHeight : (int) mat.size().height;
+                Rect roi = new Rect((int) ((mat.size().width / 2) - (cw / 2)),
+                        (int) ((mat.size().height / 2) - (ch / 2)), cw, ch);
+                mat = new Mat(mat, roi).clone();
+            }
+
+            if (cameraMatrix != null) {
+                Mat cameraMatrixMat = new Mat(3, 3, CvType.CV_64FC1);
+                cameraMatrixMat.put(0, 0, cameraMatrix);
+                Mat distortionCoefficientsMat = new Mat(5, 1, CvType.CV_64FC1);
+                distortionCoefficientsMat.put(0, 0, distortionCoefficients);
+                Mat map1 = new Mat();
+                Mat map2 = new Mat();
+                Imgproc.initUndistortRectifyMap(cameraMatrixMat, distortionCoefficientsMat,
+                        Mat.eye(3, 3, CvType.CV_32F), cameraMatrixMat, mat.size(), CvType.CV_32FC1,
+                        map1, map2);
+                Mat dst = mat.clone();
+                Imgproc.remap(mat, dst, map1, map2, Imgproc.INTER_LINEAR);
+                mat = dst;
+            }
+
+            if (scaleWidth != 0 && scaleHeight != 0) {
+                Mat dst = new Mat();
+                Imgproc.resize(mat, dst, new Size(scaleWidth, scaleHeight));
+                mat = dst;
+            }
+
+            if (rotation != 0) {
+                Point center = new Point(mat.width() / 2D, mat.height() / 2D);
+                Mat mapMatrix = Imgproc.getRotationMatrix2D(center, rotation, 1.0);
+                Rect bbox = new RotatedRect(center, mat.size(), rotation).boundingRect();
+                mapMatrix.put(0, 2, mapMatrix.get(0, 2)[0] + bbox.width / 2D - center.x);
+                mapMatrix.put(1, 2, mapMatrix.get(1, 2)[0] + bbox.height / 2D - center.y);
+                Mat dst = new Mat();
+                Imgproc.warpAffine(mat, dst, mapMatrix, bbox.size(), Imgproc.INTER_LINEAR);
+                mat = dst;
+            }
+
+            if (offsetX != 0 || offsetY != 0) {
+                Mat mapMatrix = new Mat(2, 3, CvType.CV_32F);
+                mapMatrix.put(0, 0, 1, 0, offsetX);
+                mapMatrix.put(1, 0, 0, 1, offsetY);
+                Mat dst = mat.clone();
+                Imgproc.warpAffine(mat, dst, mapMatrix, mat.size(), Imgproc.INTER_LINEAR);
+                mat = dst;
+            }
+
+            if (deinterlace) {
+                Mat dst = Mat.zeros(mat.size(), mat.type());
+                for (int i = 0; i < mat.rows() / 2; i++) {
+                    mat.row(i).copyTo(dst.row(i * 2));
+                    mat.row(i + mat.rows() / 2).copyTo(dst.row(i * 2 + 1));
+                }
+                mat = dst;
+            }
+
+            if (flipX || flipY) {
+                int flipCode;
+                if (flipX && flipY) {
+                    flipCode = -1;
+                }
+                else {
+                    flipCode = flipX ? 0 : 1;
+                }
+                Core.flip(mat, mat, flipCode);
+            }
+            return mat;
+        }
+    }
+}
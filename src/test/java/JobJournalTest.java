@@ -0,0 +1,98 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.machine.reference.feeder.ReferenceStripFeeder;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Job;
+import org.openpnp.model.JobJournal;
+import org.openpnp.model.Placement;
+
+import com.google.common.io.Files;
+
+public class JobJournalTest {
+    /**
+     * Progress journaled since the job was last saved is restored when it is loaded again, up to
+     * a record that was cut short, and saving the job starts the journal over.
+     */
+    @Test
+    public void testReplay() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        File configurationDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(configurationDirectory);
+        Configuration.get().load();
+        // Feeder records are only restored over an older machine configuration.
+        new File(configurationDirectory, "machine.xml")
+                .setLastModified(System.currentTimeMillis() - 60000);
+
+        File jobDirectory = new File(workingDirectory, "pnp-test");
+        FileUtils.copyDirectory(new File("samples", "pnp-test"), jobDirectory);
+        File jobFile = new File(jobDirectory, "pnp-test.job.xml");
+        Job job = Configuration.get().loadJob(jobFile);
+        BoardLocation boardLocation = job.getBoardLocations().get(1);
+        Placement first = boardLocation.getBoard().getPlacements().get(0);
+        Placement second = boardLocation.getBoard().getPlacements().get(1);
+        ReferenceStripFeeder feeder =
+                (ReferenceStripFeeder) Configuration.get().getMachine().getFeeders().get(0);
+
+        JobJournal journal = JobJournal.open(job, 0);
+        boardLocation.setPlaced(first.getId(), true);
+        journal.placed(boardLocation, first.getId(), true);
+        feeder.setFeedCount(feeder.getFeedCount() + 3);
+        journal.feeder(feeder);
+        int feedCount = feeder.getFeedCount();
+        journal.close();
+        // A crash in the middle of the next record.
+        try (FileOutputStream out = new FileOutputStream(journal.getFile(), true)) {
+            out.write(("placed 1 " + second.getId()).getBytes(StandardCharsets.UTF_8));
+        }
+
+        feeder.setFeedCount(0);
+        job = Configuration.get().loadJob(jobFile);
+        boardLocation = job.getBoardLocations().get(1);
+        Assert.assertTrue(job.isDirty());
+        Assert.assertTrue(boardLocation.getPlaced(first.getId()));
+        Assert.assertFalse(boardLocation.getPlaced(second.getId()));
+        Assert.assertFalse(job.getBoardLocations().get(0).getPlaced(first.getId()));
+        Assert.assertEquals(feedCount, feeder.getFeedCount());
+        // The restored count is saved with the machine, and so isn't restored a second time.
+        File machineFile = new File(configurationDirectory, "machine.xml");
+        Assert.assertTrue(FileUtils.readFileToString(machineFile)
+                .contains("feed-count=\"" + feedCount + "\""));
+        feeder.setFeedCount(0);
+        Configuration.get().loadJob(jobFile);
+        Assert.assertEquals(0, feeder.getFeedCount());
+
+        // Once saved, the job file has the progress and the journal is no longer needed.
+        Configuration.get().saveJob(job, jobFile);
+        Assert.assertFalse(journal.getFile().exists());
+        job = Configuration.get().loadJob(jobFile);
+        Assert.assertFalse(job.isDirty());
+        Assert.assertTrue(job.getBoardLocations().get(1).getPlaced(first.getId()));
+    }
+
+    /**
+     * A write that fails part way leaves the original file as it was.
+     */
+    @Test
+    public void testWriteAtomically() throws Exception {
+        File file = new File(Files.createTempDir(), "file.xml");
+        Configuration.writeAtomically(file, out -> out.write("first".getBytes()));
+        try {
+            Configuration.writeAtomically(file, out -> {
+                out.write("sec".getBytes());
+                throw new Exception("Failed");
+            });
+            Assert.fail();
+        }
+        catch (Exception e) {
+            Assert.assertEquals("Failed", e.getMessage());
+        }
+        Assert.assertEquals("first", FileUtils.readFileToString(file));
+        Assert.assertEquals(1, file.getParentFile().list().length);
+    }
+}
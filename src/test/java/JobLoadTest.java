@@ -0,0 +1,119 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.JobLoadListener;
+import org.openpnp.model.Board;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Job;
+
+import com.google.common.io.Files;
+
+public class JobLoadTest {
+    /**
+     * The job is returned before its board is read, and the board's placements are added on the
+     * given executor once they are, after the progress has been reported.
+     */
+    @Test
+    public void testLoadInBackground() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        Configuration.initialize(new File(workingDirectory, ".openpnp"));
+        Configuration.get().load();
+        File jobDirectory = new File(workingDirectory, "pnp-test");
+        FileUtils.copyDirectory(new File("samples", "pnp-test"), jobDirectory);
+        File jobFile = new File(jobDirectory, "pnp-test.job.xml");
+
+        // Stands in for the event dispatch thread.
+        LinkedBlockingQueue<Runnable> queue = new LinkedBlockingQueue<>();
+        List<Integer> progress = new ArrayList<>();
+        List<Board> loadedBoards = new ArrayList<>();
+        Job[] loadedJob = new Job[1];
+        Job job = Configuration.get().loadJob(jobFile, queue::add, new JobLoadListener.Adapter() {
+            @Override
+            public void boardLoadProgress(Job job, Board board, int percent) {
+                progress.add(percent);
+            }
+
+            @Override
+            public void boardLoaded(Job job, Board board) {
+                loadedBoards.add(board);
+            }
+
+            @Override
+            public void jobLoaded(Job job) {
+                loadedJob[0] = job;
+            }
+
+            @Override
+            public void jobLoadFailed(Job job, Exception e) {
+                Assert.fail(e.getMessage());
+            }
+        });
+
+        // Both board locations share the one board, which nothing has been added to yet.
+        Board board = job.getBoardLocations().get(0).getBoard();
+        Assert.assertSame(board, job.getBoardLocations().get(1).getBoard());
+        Assert.assertTrue(board.getPlacements().isEmpty());
+        Assert.assertTrue(job.isLoading());
+        try {
+            Configuration.get().saveJob(job, jobFile);
+            Assert.fail();
+        }
+        catch (Exception e) {
+            // Saving now would write out the empty board.
+        }
+
+        while (loadedJob[0] == null) {
+            Runnable runnable = queue.poll(10, TimeUnit.SECONDS);
+            Assert.assertNotNull(runnable);
+            runnable.run();
+        }
+        Assert.assertSame(job, loadedJob[0]);
+        Assert.assertFalse(job.isLoading());
+        Assert.assertFalse(job.isDirty());
+        Assert.assertEquals(1, loadedBoards.size());
+        Assert.assertSame(board, loadedBoards.get(0));
+        Assert.assertEquals(100, (int) progress.get(progress.size() - 1));
+        Assert.assertEquals(30, board.getPlacements().size());
+        Assert.assertFalse(board.isDirty());
+        Assert.assertNotNull(board.getPlacements().get(0).getPart());
+
+        // The board is now cached, so loading the job again doesn't read it.
+        Assert.assertSame(board, Configuration.get().loadJob(jobFile).getBoardLocations().get(0)
+                .getBoard());
+        Configuration.get().saveJob(job, jobFile);
+    }
+
+    /**
+     * Waiting for a job to load on the event dispatch thread is refused, since a board that is
+     * loading for the GUI can only finish there.
+     */
+    @Test
+    public void testLoadAndWaitOnEventDispatchThread() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        Configuration.initialize(new File(workingDirectory, ".openpnp"));
+        Configuration.get().load();
+        File jobDirectory = new File(workingDirectory, "pnp-test");
+        FileUtils.copyDirectory(new File("samples", "pnp-test"), jobDirectory);
+        File jobFile = new File(jobDirectory, "pnp-test.job.xml");
+
+        Exception[] thrown = new Exception[1];
+        SwingUtilities.invokeAndWait(() -> {
+            try {
+                Configuration.get().loadJob(jobFile);
+            }
+            catch (Exception e) {
+                thrown[0] = e;
+            }
+        });
+        Assert.assertNotNull(thrown[0]);
+        Assert.assertFalse(Configuration.get().loadJob(jobFile).isLoading());
+    }
+}
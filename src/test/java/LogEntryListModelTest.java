@@ -0,0 +1,104 @@
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.gui.support.LogEntryListModel;
+import org.openpnp.gui.support.LogEntryListModel.LogEntryFilter;
+import org.pmw.tinylog.Level;
+import org.pmw.tinylog.LogEntry;
+
+public class LogEntryListModelTest {
+    /**
+     * Entries written from another thread reach the model in batches, the oldest are dropped
+     * past the line limit, and only entries passing the filters are listed.
+     */
+    @Test
+    public void testBatchedWrites() throws Exception {
+        LogEntryListModel model = new LogEntryListModel(100);
+        LogEntryFilter filter = new LogEntryFilter(logEntry -> logEntry.getLevel() == Level.INFO);
+        model.addFilter(filter);
+        ModelMirror mirror = new ModelMirror(model);
+        SwingUtilities.invokeAndWait(() -> model.addListDataListener(mirror));
+
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 1000; i++) {
+                try {
+                    model.write(entry(i % 2 == 0 ? Level.INFO : Level.DEBUG, "line " + i));
+                }
+                catch (Exception e) {
+                    throw new Error(e);
+                }
+            }
+        });
+        writer.start();
+        writer.join();
+
+        // The batch was scheduled before this runs.
+        SwingUtilities.invokeAndWait(() -> {
+            Assert.assertEquals(100, model.getOriginalLogEntries().size());
+            Assert.assertEquals(50, model.getSize());
+            Assert.assertEquals("line 900", model.getElementAt(0).getMessage());
+            Assert.assertEquals("line 998", model.getElementAt(49).getMessage());
+            // Far fewer notifications than lines written.
+            Assert.assertTrue(mirror.events < 1000);
+            Assert.assertEquals(model.getFilteredLogEntries(), mirror.rows);
+
+            filter.setFilter(logEntry -> true);
+            model.filter();
+            Assert.assertEquals(100, model.getSize());
+            Assert.assertEquals("line 900", model.getElementAt(0).getMessage());
+            Assert.assertEquals(model.getFilteredLogEntries(), mirror.rows);
+
+            model.clear();
+            Assert.assertEquals(0, model.getSize());
+            Assert.assertEquals(0, mirror.rows.size());
+        });
+    }
+
+    private static LogEntry entry(Level level, String message) {
+        return new LogEntry(new Date(), "1", Thread.currentThread(), null, "Test", "test",
+                "Test.java", 1, level, message, null);
+    }
+
+    /**
+     * Keeps a copy of the model's rows up to date from its events only, the way a JList does.
+     */
+    static class ModelMirror implements ListDataListener {
+        final LogEntryListModel model;
+        final List<LogEntry> rows = new ArrayList<>();
+        int events;
+
+        ModelMirror(LogEntryListModel model) {
+            this.model = model;
+            rows.addAll(model.getFilteredLogEntries());
+        }
+
+        @Override
+        public void intervalAdded(ListDataEvent e) {
+            events++;
+            for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                rows.add(i, model.getElementAt(i));
+            }
+        }
+
+        @Override
+        public void intervalRemoved(ListDataEvent e) {
+            events++;
+            rows.subList(e.getIndex0(), e.getIndex1() + 1).clear();
+        }
+
+        @Override
+        public void contentsChanged(ListDataEvent e) {
+            events++;
+            for (int i = e.getIndex0(); i <= e.getIndex1(); i++) {
+                rows.set(i, model.getElementAt(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openpnp.util.MatMaximaBenchmark;
+import org.openpnp.util.OpenCvUtils;
+
+/**
+ * Checks OpenCvUtils.matMaxima() against the per pixel Mat.get() implementation it replaced.
+ */
+public class MatMaximaTest {
+    static {
+        nu.pattern.OpenCV.loadShared();
+        System.loadLibrary(org.opencv.core.Core.NATIVE_LIBRARY_NAME);
+    }
+
+    @Test
+    public void testNoise() {
+        Random random = new Random(1);
+        for (int i = 0; i < 20; i++) {
+            Mat mat = randomMat(random, 3 + random.nextInt(60), 3 + random.nextInt(60), 0);
+            check(mat, 0.2, 0.9);
+            check(mat, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        }
+    }
+
+    /**
+     * Quantized values make plenty of plateaus and equal neighbours.
+     */
+    @Test
+    public void testPlateaus() {
+        Random random = new Random(2);
+        for (int i = 0; i < 20; i++) {
+            Mat mat = randomMat(random, 3 + random.nextInt(40), 3 + random.nextInt(40), 4);
+            check(mat, 0, 1);
+            check(mat, 0.5, 1);
+        }
+    }
+
+    /**
+     * A real matchTemplate result, which is what the vision code passes in.
+     */
+    @Test
+    public void testTemplateMatch() {
+        Random random = new Random(3);
+        Mat image = randomMat(random, 240, 320, 0);
+        Imgproc.GaussianBlur(image, image, new Size(9, 9), 0);
+        Mat template = image.submat(new Rect(100, 80, 30, 20)).clone();
+        Mat result = new Mat();
+        Imgproc.matchTemplate(image, template, result, Imgproc.TM_CCOEFF_NORMED);
+        check(result, 0.1, 1);
+        check(result, 0.99, 1);
+    }
+
+    /**
+     * Other depths, more than one channel and a Mat that is not continuous in memory.
+     */
+    @Test
+    public void testOtherMats() {
+        Random random = new Random(4);
+        Mat mat = randomMat(random, 50, 70, 8);
+
+        Mat bytes = new Mat();
+        mat.convertTo(bytes, CvType.CV_8U, 255);
+        check(bytes, 64, 255);
+
+        Mat doubles = new Mat();
+        mat.convertTo(doubles, CvType.CV_64F);
+        check(doubles, 0.3, 1);
+
+        List<Mat> channels = new ArrayList<>();
+        channels.add(mat);
+        channels.add(randomMat(random, 50, 70, 0));
+        channels.add(randomMat(random, 50, 70, 0));
+        Mat color = new Mat();
+        Core.merge(channels, color);
+        check(color, 0.3, 1);
+
+        Mat submat = mat.submat(new Rect(5, 7, 40, 30));
+        Assert.assertFalse(submat.isContinuous());
+        check(submat, 0.3, 1);
+    }
+
+    private static void check(Mat mat, double rangeMin, double rangeMax) {
+        List<java.awt.Point> expected = MatMaximaBenchmark.legacyMatMaxima(mat, rangeMin, rangeMax);
+        Assert.assertEquals(expected, OpenCvUtils.matMaxima(mat, rangeMin, rangeMax));
+    }
+
+    /**
+     * Random values in [0, 1), rounded to the given number of levels if it is not zero.
+     */
+    private static Mat randomMat(Random random, int rows, int cols, int levels) {
+        Mat mat = new Mat(rows, cols, CvType.CV_32FC1);
+        float[] data = new float[rows * cols];
+        for (int i = 0; i < data.length; i++) {
+            float value = random.nextFloat();
+            data[i] = levels == 0 ? value : (float) Math.floor(value * levels) / levels;
+        }
+        mat.put(0, 0, data);
+        return mat;
+    }
+}
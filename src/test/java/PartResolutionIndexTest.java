@@ -0,0 +1,68 @@
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openpnp.machine.reference.ReferenceMachine;
+import org.openpnp.machine.reference.feeder.ReferenceTubeFeeder;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Part;
+import org.openpnp.spi.base.PartResolutionIndex;
+
+import com.google.common.io.Files;
+
+public class PartResolutionIndexTest {
+    @Before
+    public void before() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+    }
+
+    /**
+     * Enabling and disabling feeders, including from outside the job, is reflected in the index
+     * without having to invalidate it by hand.
+     */
+    @Test
+    public void testFeederEnableChanges() throws Exception {
+        ReferenceMachine machine = new ReferenceMachine();
+        Part part = new Part("P1");
+        Part otherPart = new Part("P2");
+        ReferenceTubeFeeder other = createFeeder(machine, otherPart);
+        ReferenceTubeFeeder first = createFeeder(machine, part);
+        ReferenceTubeFeeder second = createFeeder(machine, part);
+
+        PartResolutionIndex index = new PartResolutionIndex(machine);
+        Assert.assertSame(first, index.findFeeder(part));
+        Assert.assertSame(other, index.findFeeder(otherPart));
+
+        first.setEnabled(false);
+        Assert.assertSame(second, index.findFeeder(part));
+
+        second.setEnabled(false);
+        try {
+            index.findFeeder(part);
+            Assert.fail("Expected no feeder to be found.");
+        }
+        catch (Exception e) {
+        }
+
+        first.setEnabled(true);
+        Assert.assertSame(first, index.findFeeder(part));
+
+        // After dispose the next lookup searches the machine again.
+        index.dispose();
+        first.setEnabled(false);
+        second.setEnabled(true);
+        Assert.assertSame(second, index.findFeeder(part));
+    }
+
+    private static ReferenceTubeFeeder createFeeder(ReferenceMachine machine, Part part)
+            throws Exception {
+        ReferenceTubeFeeder feeder = new ReferenceTubeFeeder();
+        feeder.setPart(part);
+        feeder.setEnabled(true);
+        machine.addFeeder(feeder);
+        return feeder;
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.machine.reference.feeder.PickCandidateCache;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.Part;
+
+public class PickCandidateCacheTest {
+    private static final Location FEEDER = new Location(LengthUnit.Millimeters, 100, 100, 0, 0);
+    private static final Length NO_RADIUS = new Length(0, LengthUnit.Millimeters);
+    private final Part part = new Part("P1");
+
+    @Test
+    public void testPicksPerCapture() {
+        PickCandidateCache cache = new PickCandidateCache();
+        Assert.assertNull(cache.next(3, FEEDER, part));
+        cache.store(Arrays.asList(mm(10, 0), mm(1, 0), mm(20, 0)), mm(0, 0), FEEDER, part);
+        cache.picked(NO_RADIUS);
+
+        // The closest to the last pick comes first.
+        Assert.assertEquals(mm(1, 0), cache.next(3, FEEDER, part));
+        cache.picked(NO_RADIUS);
+        Assert.assertEquals(mm(10, 0), cache.next(3, FEEDER, part));
+        cache.picked(NO_RADIUS);
+        // Three picks have been made from the capture, so vision must run again.
+        Assert.assertNull(cache.next(3, FEEDER, part));
+
+        Assert.assertEquals(2, cache.getHits());
+        Assert.assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testDisturbanceRadius() {
+        PickCandidateCache cache = new PickCandidateCache();
+        cache.store(Arrays.asList(mm(1, 0), mm(0, 1.5), mm(10, 0)), mm(0, 0), FEEDER, part);
+        cache.picked(new Length(2, LengthUnit.Millimeters));
+        Assert.assertEquals(1, cache.size());
+        Assert.assertEquals(mm(10, 0), cache.next(10, FEEDER, part));
+    }
+
+    /**
+     * If a fed part is never picked the pick failed, and the cache is dropped.
+     */
+    @Test
+    public void testFailedPick() {
+        PickCandidateCache cache = new PickCandidateCache();
+        cache.store(Arrays.asList(mm(1, 0), mm(2, 0)), mm(0, 0), FEEDER, part);
+        Assert.assertNull(cache.next(10, FEEDER, part));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testFeederChanges() {
+        PickCandidateCache cache = new PickCandidateCache();
+        cache.store(Arrays.asList(mm(1, 0), mm(2, 0)), mm(0, 0), FEEDER, part);
+        cache.picked(NO_RADIUS);
+        Assert.assertNull(cache.next(10, FEEDER.add(mm(1, 0)), part));
+
+        cache.store(Arrays.asList(mm(1, 0), mm(2, 0)), mm(0, 0), FEEDER, part);
+        cache.picked(NO_RADIUS);
+        Assert.assertNull(cache.next(10, FEEDER, new Part("P2")));
+    }
+
+    private static Location mm(double x, double y) {
+        return new Location(LengthUnit.Millimeters, x, y, 0, 0);
+    }
+}
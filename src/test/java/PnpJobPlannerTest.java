@@ -0,0 +1,161 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openpnp.machine.reference.ReferenceHead;
+import org.openpnp.machine.reference.ReferenceNozzle;
+import org.openpnp.machine.reference.ReferenceNozzleTip;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.PlannedPlacement;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.PnpJobPlanner;
+import org.openpnp.machine.reference.planner.AssignmentPnpJobPlanner;
+import org.openpnp.machine.reference.planner.CartesianProductPnpJobPlanner;
+import org.openpnp.model.Board;
+import org.openpnp.model.Board.Side;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Package;
+import org.openpnp.model.Part;
+import org.openpnp.model.Placement;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+import org.openpnp.spi.base.PartResolutionIndex;
+
+import com.google.common.io.Files;
+
+public class PnpJobPlannerTest {
+    @Before
+    public void before() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+    }
+
+    /**
+     * Plans random cycles with both the CartesianProductPnpJobPlanner and the
+     * AssignmentPnpJobPlanner and checks that they pick exactly the same solution.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testAssignmentMatchesCartesianProduct() throws Exception {
+        Random random = new Random(1);
+        PnpJobPlanner expectedPlanner = new CartesianProductPnpJobPlanner();
+        PnpJobPlanner planner = new AssignmentPnpJobPlanner();
+        PartResolutionIndex index = new PartResolutionIndex(Configuration.get().getMachine());
+        for (int i = 0; i < 2000; i++) {
+            int nozzleCount = 1 + random.nextInt(4);
+            int placementCount = 1 + random.nextInt(nozzleCount == 4 ? 6 : 9);
+            Head head = createHead(random, nozzleCount, 3);
+            List<JobPlacement> jobPlacements = createJobPlacements(random, placementCount, 3);
+
+            List<PlannedPlacement> expected = expectedPlanner.plan(head, jobPlacements, index);
+            List<PlannedPlacement> actual = planner.plan(head, jobPlacements, index);
+            Assert.assertEquals("Iteration " + i, toString(expected), toString(actual));
+        }
+    }
+
+    /**
+     * Make sure a large job with many nozzles fills every nozzle and never plans the same
+     * placement twice.
+     * 
+     * @throws Exception
+     */
+    @Test
+    public void testAssignmentLargeJob() throws Exception {
+        Random random = new Random(1);
+        Head head = createHead(random, 8, 3);
+        List<JobPlacement> jobPlacements = createJobPlacements(random, 2000, 3);
+        List<PlannedPlacement> plannedPlacements = new AssignmentPnpJobPlanner().plan(head,
+                jobPlacements, new PartResolutionIndex(Configuration.get().getMachine()));
+        Assert.assertEquals(8, plannedPlacements.size());
+        HashSet<JobPlacement> set = new HashSet<>();
+        for (PlannedPlacement plannedPlacement : plannedPlacements) {
+            Assert.assertTrue(set.add(plannedPlacement.jobPlacement));
+        }
+    }
+
+    private static String toString(List<PlannedPlacement> plannedPlacements) {
+        List<String> strings = new ArrayList<>();
+        for (PlannedPlacement plannedPlacement : plannedPlacements) {
+            strings.add(plannedPlacement.nozzle.getId() + " -> "
+                    + System.identityHashCode(plannedPlacement.jobPlacement));
+        }
+        return strings.toString();
+    }
+
+    /**
+     * Create a Head with the given number of nozzles. Each nozzle gets two nozzle tips that are
+     * each compatible with a random subset of the packages PKG0 .. PKGn, and one of the tips (or
+     * none) is loaded.
+     */
+    public static Head createHead(Random random, int nozzleCount, int packageCount)
+            throws Exception {
+        Head head = new ReferenceHead();
+        for (int i = 0; i < nozzleCount; i++) {
+            TestNozzle nozzle = new TestNozzle();
+            for (int j = 0; j < 2; j++) {
+                ReferenceNozzleTip nozzleTip = new ReferenceNozzleTip();
+                HashSet<Package> packages = new HashSet<>();
+                for (int k = 0; k < packageCount; k++) {
+                    if (random.nextBoolean()) {
+                        packages.add(getPackage(k));
+                    }
+                }
+                nozzleTip.setCompatiblePackages(packages);
+                nozzle.addNozzleTip(nozzleTip);
+            }
+            int loaded = random.nextInt(3);
+            nozzle.setNozzleTip(loaded < 2 ? (ReferenceNozzleTip) nozzle.getNozzleTips().get(loaded)
+                    : null);
+            head.addNozzle(nozzle);
+        }
+        return head;
+    }
+
+    /**
+     * Create JobPlacements for random parts using the packages PKG0 .. PKGn.
+     */
+    public static List<JobPlacement> createJobPlacements(Random random, int placementCount,
+            int packageCount) {
+        Board board = new Board();
+        BoardLocation boardLocation = new BoardLocation(board);
+        List<JobPlacement> jobPlacements = new ArrayList<>();
+        for (int i = 0; i < placementCount; i++) {
+            Part part = new Part("P" + i);
+            part.setPackage(getPackage(random.nextInt(packageCount)));
+            part.setHeight(new Length(1 + random.nextInt(3), LengthUnit.Millimeters));
+            Placement placement = new Placement("R" + i);
+            placement.setPart(part);
+            placement.setSide(Side.Top);
+            jobPlacements.add(new JobPlacement(boardLocation, placement));
+        }
+        jobPlacements.sort((a, b) -> Double.compare(a.getPartHeight(), b.getPartHeight()));
+        return jobPlacements;
+    }
+
+    private static Package getPackage(int index) {
+        for (Package pkg : packages) {
+            if (pkg.getId().equals("PKG" + index)) {
+                return pkg;
+            }
+        }
+        Package pkg = new Package("PKG" + index);
+        packages.add(pkg);
+        return pkg;
+    }
+
+    private static List<Package> packages = new ArrayList<>();
+
+    public static class TestNozzle extends ReferenceNozzle {
+        public void setNozzleTip(ReferenceNozzleTip nozzleTip) {
+            this.nozzleTip = nozzleTip;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openpnp.machine.reference.ReferenceActuator;
+import org.openpnp.machine.reference.ReferenceMachine;
+import org.openpnp.machine.reference.ReferenceNozzle;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor;
+import org.openpnp.machine.reference.driver.test.TestDriver;
+import org.openpnp.machine.reference.driver.test.TestDriver.TestDriverDelegate;
+import org.openpnp.machine.reference.feeder.ReferenceAutoFeeder;
+import org.openpnp.machine.reference.feeder.ReferenceAutoFeeder.ActuatorType;
+import org.openpnp.model.Board;
+import org.openpnp.model.Board.Side;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Job;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.spi.Feeder;
+import org.openpnp.spi.Nozzle;
+
+import com.google.common.io.Files;
+
+public class PrefeedTest {
+    @Before
+    public void before() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        for (String name : new String[] {"machine.xml", "packages.xml", "parts.xml"}) {
+            FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/BasicJobTest/" + name),
+                    new File(workingDirectory, name));
+        }
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+    }
+
+    /**
+     * Four placements from an actuator driven feeder on a two nozzle head make two cycles. With
+     * prefeed on, the first part of the second cycle is fed in the background during the first
+     * cycle, and each part is still fed exactly once.
+     */
+    @Test
+    public void testPrefeed() throws Exception {
+        List<String> ops = runJob(new ReferenceAutoFeeder(), true, Integer.MAX_VALUE);
+        Assert.assertEquals(1, count(ops, "prefeed"));
+        Assert.assertEquals(3, count(ops, "feed"));
+        Assert.assertEquals(4, count(ops, "pick"));
+        Assert.assertEquals(4, count(ops, "place"));
+        // Fed before the second cycle picks its first part.
+        Assert.assertTrue(ops.indexOf("prefeed") < indexOf(ops, "pick", 3));
+    }
+
+    @Test
+    public void testNoPrefeed() throws Exception {
+        List<String> ops = runJob(new ReferenceAutoFeeder(), false, Integer.MAX_VALUE);
+        Assert.assertEquals(0, count(ops, "prefeed"));
+        Assert.assertEquals(4, count(ops, "feed"));
+        Assert.assertEquals(2, count(ops.subList(0, ops.indexOf("place")), "feed"));
+    }
+
+    /**
+     * A part that was prefed for a cycle that never comes, because the job is aborted, is given
+     * back to a feeder that counts its feeds.
+     */
+    @Test
+    public void testAbortRollsBackPrefeed() throws Exception {
+        CountingAutoFeeder feeder = new CountingAutoFeeder();
+        List<String> ops = runJob(feeder, true, 1);
+        Assert.assertEquals(1, count(ops, "prefeed"));
+        Assert.assertEquals(2, count(ops, "place"));
+        Assert.assertEquals(2, feeder.getFeedCount());
+    }
+
+    private static List<String> runJob(ReferenceAutoFeeder feeder, boolean prefeed, int steps)
+            throws Exception {
+        ReferenceMachine machine = (ReferenceMachine) Configuration.get().getMachine();
+        for (Feeder existing : new ArrayList<>(machine.getFeeders())) {
+            machine.removeFeeder(existing);
+        }
+        feeder.setPart(Configuration.get().getPart("R-0805-10K"));
+        feeder.setLocation(new Location(LengthUnit.Millimeters, 0, 0, 0, 0));
+        feeder.setActuatorName(machine.getHead("H1").getActuator("A1").getName());
+        feeder.setActuatorType(ActuatorType.Boolean);
+        feeder.setActuatorValue(1);
+        feeder.setEnabled(true);
+        machine.addFeeder(feeder);
+
+        List<String> ops = Collections.synchronizedList(new ArrayList<>());
+        ((TestDriver) machine.getDriver()).setDelegate(new TestDriverDelegate() {
+            @Override
+            public void actuate(ReferenceActuator actuator, boolean on) throws Exception {
+                ops.add(Thread.currentThread().getName().equals("Prefeed") ? "prefeed" : "feed");
+            }
+
+            @Override
+            public void pick(ReferenceNozzle nozzle) throws Exception {
+                ops.add("pick");
+            }
+
+            @Override
+            public void place(ReferenceNozzle nozzle) throws Exception {
+                ops.add("place");
+            }
+        });
+
+        Board board = new Board();
+        board.setName("test");
+        for (int i = 0; i < 4; i++) {
+            board.addPlacement(BasicJobTest.createPlacement("R" + i, "R-0805-10K", 10 * i, 10, 0,
+                    0, Side.Top));
+        }
+        BoardLocation boardLocation = new BoardLocation(board);
+        boardLocation.setLocation(new Location(LengthUnit.Millimeters, 0, 0, 0, 0));
+        boardLocation.setSide(Side.Top);
+        Job job = new Job();
+        job.addBoardLocation(boardLocation);
+
+        ReferencePnpJobProcessor jobProcessor =
+                (ReferencePnpJobProcessor) machine.getPnpJobProcessor();
+        jobProcessor.setPrefeed(prefeed);
+        machine.setEnabled(true);
+        jobProcessor.initialize(job);
+        try {
+            for (int i = 0; i < steps && jobProcessor.next(); i++);
+            if (steps != Integer.MAX_VALUE) {
+                jobProcessor.abort();
+            }
+        }
+        finally {
+            machine.setEnabled(false);
+        }
+        return new ArrayList<>(ops);
+    }
+
+    /**
+     * An actuator driven feeder that counts its feeds, like a tray on a shuttle.
+     */
+    public static class CountingAutoFeeder extends ReferenceAutoFeeder {
+        private int feedCount;
+
+        @Override
+        public void feed(Nozzle nozzle) throws Exception {
+            super.feed(nozzle);
+            feedCount++;
+        }
+
+        @Override
+        public boolean isFeedCounted() {
+            return true;
+        }
+
+        @Override
+        public int getFeedCount() {
+            return feedCount;
+        }
+
+        @Override
+        public void setFeedCount(int feedCount) {
+            this.feedCount = feedCount;
+        }
+    }
+
+    private static int indexOf(List<String> ops, String op, int occurrence) {
+        for (int i = 0; i < ops.size(); i++) {
+            if (ops.get(i).equals(op) && --occurrence == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int count(List<String> ops, String op) {
+        int count = 0;
+        for (String o : ops) {
+            if (o.equals(op)) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
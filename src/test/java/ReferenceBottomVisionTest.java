@@ -1,7 +1,19 @@
 import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.junit.Assert;
 import org.junit.Test;
 import org.openpnp.machine.reference.ReferenceMachine;
+import org.openpnp.machine.reference.ReferenceNozzle;
+import org.openpnp.machine.reference.ReferenceNozzleTip;
+import org.openpnp.machine.reference.ReferenceNozzleTip.Calibration.CalibrationOffset;
+import org.openpnp.machine.reference.RunoutModel;
 import org.openpnp.machine.reference.camera.SimulatedUpCamera;
 import org.openpnp.machine.reference.driver.NullDriver;
 import org.openpnp.machine.reference.vision.ReferenceBottomVision;
@@ -9,6 +21,7 @@ import org.openpnp.model.Configuration;
 import org.openpnp.model.LengthUnit;
 import org.openpnp.model.Location;
 import org.openpnp.model.Part;
+import org.openpnp.spi.Head;
 import org.openpnp.spi.Machine;
 import org.openpnp.spi.Nozzle;
 import org.openpnp.spi.PartAlignment.PartAlignmentOffset;
@@ -27,7 +40,99 @@ public class ReferenceBottomVisionTest {
         testError(new Location(LengthUnit.Millimeters, 1, 2, 0, -13));
     }
     
+    /**
+     * The capture is processed in the background while the nozzle moves away, and gives the same
+     * result.
+     */
+    @Test
+    public void testAsync() throws Exception {
+        testError(new Location(LengthUnit.Millimeters, -1, 0.5, 0, 7), true);
+    }
+
+    /**
+     * Two nozzles close enough to share a frame are aligned from one capture, and two that are
+     * too far apart are left for the single nozzle path.
+     */
+    @Test
+    public void testMultiNozzle() throws Exception {
+        Location error = new Location(LengthUnit.Millimeters, 0.5, -1, 0, 9);
+        Location maxError = new Location(LengthUnit.Millimeters, 0.1, 0.1, 0, 0.01);
+
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+
+        Machine machine = Configuration.get().getMachine();
+        Head head = machine.getDefaultHead();
+        Nozzle n1 = head.getDefaultNozzle();
+        ReferenceNozzle n2 = new ReferenceNozzle();
+        n2.setName("N2");
+        n2.setHeadOffsets(new Location(LengthUnit.Millimeters, 10, 4, 0, 0));
+        head.addNozzle(n2);
+        n2.loadNozzleTip(n1.getNozzleTip());
+        SimulatedUpCamera camera = (SimulatedUpCamera) VisionUtils.getBottomVisionCamera();
+        Part part = Configuration.get().getPart("R0805-1K");
+        ReferenceBottomVision bottomVision =
+                (ReferenceBottomVision) machine.getPartAlignments().get(0);
+        NullDriver driver = (NullDriver) ((ReferenceMachine) machine).getDriver();
+        driver.setFeedRateMmPerMinute(0);
+
+        camera.setErrorOffsets(error);
+        machine.setEnabled(true);
+        n1.pick(part);
+        n2.pick(part);
+        Map<Nozzle, Part> parts = new LinkedHashMap<>();
+        parts.put(n1, part);
+        parts.put(n2, part);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Map<Nozzle, PartAlignmentOffset> offsets = bottomVision.findOffsets(parts, executor);
+            Assert.assertEquals(2, offsets.size());
+            for (PartAlignmentOffset offset : offsets.values()) {
+                Location location = offset.getLocation();
+                assertMaxDelta(location.getX(), error.getX(), maxError.getX());
+                assertMaxDelta(location.getY(), error.getY(), maxError.getY());
+                assertMaxDelta(location.getRotation(), error.getRotation(),
+                        maxError.getRotation());
+            }
+
+            // With runout on one tip, moving the other nozzle moves the head to make up for the
+            // difference, so the first nozzle isn't where its head offsets put it.
+            ReferenceNozzleTip nozzleTip = (ReferenceNozzleTip) n1.getNozzleTip();
+            n2.loadNozzleTip(new ReferenceNozzleTip());
+            List<CalibrationOffset> runout = new ArrayList<>();
+            for (double angle = 0; angle < 360; angle += 90) {
+                runout.add(new CalibrationOffset(
+                        new Location(LengthUnit.Millimeters, 1, -0.5, 0, 0), angle));
+            }
+            RunoutModel model = RunoutModel.fit(runout);
+            model.setNozzleId(n1.getId());
+            nozzleTip.getCalibration().setEnabled(true);
+            nozzleTip.getCalibration().setModel(model);
+            offsets = bottomVision.findOffsets(parts, executor);
+            Assert.assertEquals(2, offsets.size());
+            for (PartAlignmentOffset offset : offsets.values()) {
+                Location location = offset.getLocation();
+                assertMaxDelta(location.getX(), error.getX(), maxError.getX());
+                assertMaxDelta(location.getY(), error.getY(), maxError.getY());
+            }
+            nozzleTip.getCalibration().reset();
+
+            // The frame is 30mm across.
+            n2.setHeadOffsets(new Location(LengthUnit.Millimeters, 40, 0, 0, 0));
+            Assert.assertTrue(bottomVision.findOffsets(parts, executor).isEmpty());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
     public static void testError(Location error) throws Exception {
+        testError(error, false);
+    }
+
+    public static void testError(Location error, boolean async) throws Exception {
         Location maxError = new Location(LengthUnit.Millimeters, 0.1, 0.1, 0, 0.01);
 
         File workingDirectory = Files.createTempDir();
@@ -48,7 +153,22 @@ public class ReferenceBottomVisionTest {
         camera.setErrorOffsets(error);
         machine.setEnabled(true);
         nozzle.pick(part);
-        PartAlignmentOffset offset = bottomVision.findOffsets(part, null, null, nozzle);
+        PartAlignmentOffset offset;
+        if (async) {
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<PartAlignmentOffset> future =
+                        bottomVision.findOffsetsAsync(part, null, null, nozzle, executor);
+                nozzle.moveTo(new Location(LengthUnit.Millimeters, 0, 0, 0, 0));
+                offset = future.get();
+            }
+            finally {
+                executor.shutdown();
+            }
+        }
+        else {
+            offset = bottomVision.findOffsets(part, null, null, nozzle);
+        }
         Location offsets = offset.getLocation();
         assertMaxDelta(offsets.getX(), error.getX(), maxError.getX());
         assertMaxDelta(offsets.getY(), error.getY(), maxError.getY());
@@ -0,0 +1,104 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openpnp.machine.reference.vision.ReferenceFiducialLocator;
+import org.openpnp.model.Board;
+import org.openpnp.model.Board.Side;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.Part;
+import org.openpnp.model.Placement;
+
+import com.google.common.io.Files;
+
+public class ReferenceFiducialLocatorTest {
+    @Before
+    public void before() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+    }
+
+    /**
+     * Batch mode gives each board the same location as locating the boards one by one, with
+     * less travel between fiducials.
+     */
+    @Test
+    public void testBatchMatchesSequential() throws Exception {
+        Part fiducialPart = new Part("FIDUCIAL");
+        Board board = new Board();
+        board.addPlacement(createFiducial("F1", 2, 2, fiducialPart));
+        board.addPlacement(createFiducial("F2", 38, 28, fiducialPart));
+        board.addPlacement(createFiducial("F3", 2, 28, fiducialPart));
+
+        // A 6 x 4 panel of boards, in shuffled job order.
+        List<BoardLocation> boardLocations = new ArrayList<>();
+        for (int x = 0; x < 6; x++) {
+            for (int y = 0; y < 4; y++) {
+                BoardLocation boardLocation = new BoardLocation(board);
+                boardLocation.setSide(Side.Top);
+                boardLocation.setLocation(
+                        new Location(LengthUnit.Millimeters, x * 45, y * 35, 0, x * 15));
+                boardLocations.add(boardLocation);
+            }
+        }
+        Collections.shuffle(boardLocations, new Random(1));
+
+        TestFiducialLocator sequential = new TestFiducialLocator();
+        Map<BoardLocation, Location> expected = sequential.locateBoards(boardLocations);
+
+        TestFiducialLocator batch = new TestFiducialLocator();
+        batch.setBatchLocate(true);
+        Map<BoardLocation, Location> actual = batch.locateBoards(boardLocations);
+
+        Assert.assertEquals(48, batch.visits.size());
+        for (BoardLocation boardLocation : boardLocations) {
+            Location e = expected.get(boardLocation);
+            Location a = actual.get(boardLocation);
+            Assert.assertEquals(e.getX(), a.getX(), 1e-9);
+            Assert.assertEquals(e.getY(), a.getY(), 1e-9);
+            Assert.assertEquals(e.getRotation(), a.getRotation(), 1e-9);
+        }
+        Assert.assertTrue(travel(batch.visits) < travel(sequential.visits) / 2);
+    }
+
+    private static double travel(List<Location> visits) {
+        double travel = 0;
+        for (int i = 1; i < visits.size(); i++) {
+            travel += visits.get(i - 1).getLinearDistanceTo(visits.get(i));
+        }
+        return travel;
+    }
+
+    private static Placement createFiducial(String id, double x, double y, Part part) {
+        Placement placement = new Placement(id);
+        placement.setType(Placement.Type.Fiducial);
+        placement.setSide(Side.Top);
+        placement.setPart(part);
+        placement.setLocation(new Location(LengthUnit.Millimeters, x, y, 0, 0));
+        return placement;
+    }
+
+    /**
+     * Finds each fiducial slightly off from where it is expected, without a camera.
+     */
+    static class TestFiducialLocator extends ReferenceFiducialLocator {
+        final List<Location> visits = new ArrayList<>();
+
+        @Override
+        protected Location getFiducialLocation(Location location, Part part) throws Exception {
+            visits.add(location);
+            return location.add(new Location(LengthUnit.Millimeters, 0.1, -0.05, 0, 0));
+        }
+    }
+}
@@ -0,0 +1,89 @@
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openpnp.machine.reference.ReferenceMachine;
+import org.openpnp.machine.reference.ReferenceSafeZPlanner;
+import org.openpnp.machine.reference.ReferenceSafeZPlanner.Region;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.Machine;
+import org.openpnp.spi.MachineListener;
+import org.openpnp.spi.Nozzle;
+import org.openpnp.util.MovableUtils;
+
+import com.google.common.io.Files;
+
+public class ReferenceSafeZPlannerTest {
+    private ReferenceMachine machine;
+    private ReferenceSafeZPlanner planner;
+
+    @Before
+    public void before() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+        machine = (ReferenceMachine) Configuration.get().getMachine();
+        planner = (ReferenceSafeZPlanner) machine.getSafeZPlanner();
+        // A tray at the front left and a taller feeder bank behind it.
+        planner.getRegions().add(new Region("Tray", mm(0, 0, 0), mm(100, 50, 0),
+                new Length(-20, LengthUnit.Millimeters)));
+        planner.getRegions().add(new Region("Feeders", mm(0, 50, 0), mm(100, 100, 0),
+                new Length(-5, LengthUnit.Millimeters)));
+    }
+
+    @Test
+    public void testObstacleZ() {
+        Assert.assertEquals(-20, planner.getObstacleZ(mm(10, 10, 0), mm(90, 40, 0)), 1e-9);
+        Assert.assertEquals(-5, planner.getObstacleZ(mm(10, 10, 0), mm(10, 90, 0)), 1e-9);
+        // Leaving the mapped area means nothing is known about the path.
+        Assert.assertTrue(Double.isNaN(planner.getObstacleZ(mm(10, 10, 0), mm(150, 10, 0))));
+        Assert.assertTrue(Double.isNaN(planner.getObstacleZ(mm(-1, 10, 0), mm(-1, 10, 0))));
+    }
+
+    /**
+     * Moving between two pockets of the tray never goes near safe Z, and moving out of the
+     * mapped area goes all the way up.
+     */
+    @Test
+    public void testMoveWithinRegion() throws Exception {
+        planner.setEnabled(true);
+        machine.setEnabled(true);
+        Head head = machine.getDefaultHead();
+        Nozzle nozzle = head.getDefaultNozzle();
+        double[] maxZ = {Double.NEGATIVE_INFINITY};
+        MachineListener listener = new MachineListener.Adapter() {
+            @Override
+            public void machineHeadActivity(Machine machine, Head head) {
+                maxZ[0] = Math.max(maxZ[0], nozzle.getLocation().getZ());
+            }
+        };
+        machine.addListener(listener);
+        try {
+            MovableUtils.moveToLocationAtSafeZ(nozzle, mm(10, 10, -19.5));
+            MovableUtils.moveToClearanceZ(nozzle);
+            Assert.assertEquals(-19, nozzle.getLocation().getZ(), 1e-9);
+
+            maxZ[0] = Double.NEGATIVE_INFINITY;
+            MovableUtils.moveToLocationAtSafeZ(nozzle, mm(20, 10, -19.5));
+            Assert.assertEquals(-19, maxZ[0], 1e-9);
+            Assert.assertEquals(mm(20, 10, -19.5), nozzle.getLocation());
+
+            MovableUtils.moveToLocationAtSafeZ(nozzle, mm(150, 10, -19.5));
+            Assert.assertEquals(0, maxZ[0], 1e-9);
+        }
+        finally {
+            machine.removeListener(listener);
+            machine.setEnabled(false);
+        }
+    }
+
+    private static Location mm(double x, double y, double z) {
+        return new Location(LengthUnit.Millimeters, x, y, z, 0);
+    }
+}
@@ -0,0 +1,115 @@
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.machine.reference.ReferenceNozzleTip.Calibration;
+import org.openpnp.machine.reference.ReferenceNozzleTip.Calibration.CalibrationOffset;
+import org.openpnp.machine.reference.RunoutModel;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.simpleframework.xml.core.Persister;
+
+public class RunoutModelTest {
+    /**
+     * An eccentric tip seen through a slightly skewed camera is fitted exactly from six angles.
+     */
+    @Test
+    public void testEllipse() throws Exception {
+        List<CalibrationOffset> offsets = new ArrayList<>();
+        for (double angle = 0; angle < 360; angle += 60) {
+            offsets.add(new CalibrationOffset(ellipse(angle), angle));
+        }
+        RunoutModel model = RunoutModel.fit(offsets);
+        Assert.assertEquals(0, model.getMaxResidual(offsets), 1e-9);
+        Assert.assertFalse(model.hasResiduals());
+        for (double angle = -720; angle < 720; angle += 7.3) {
+            assertLocation(ellipse(angle), model.getOffset(angle));
+        }
+
+        model.setReferenceAngle(0);
+        assertLocation(new Location(LengthUnit.Millimeters), model.getOffset(0));
+        assertLocation(ellipse(90).subtract(ellipse(0)), model.getOffset(90));
+    }
+
+    /**
+     * An angle increment too coarse to fit the model to is made fine enough for three angles.
+     */
+    @Test
+    public void testSampleIncrement() throws Exception {
+        Assert.assertEquals(15, Calibration.getSampleIncrement(15), 0);
+        Assert.assertEquals(120, Calibration.getSampleIncrement(120), 0);
+        Assert.assertEquals(120, Calibration.getSampleIncrement(180), 0);
+        Assert.assertEquals(120, Calibration.getSampleIncrement(0), 0);
+
+        List<CalibrationOffset> offsets = new ArrayList<>();
+        for (double angle = 0; angle < 360; angle += Calibration.getSampleIncrement(200)) {
+            offsets.add(new CalibrationOffset(ellipse(angle), angle));
+        }
+        Assert.assertEquals(3, offsets.size());
+        RunoutModel.fit(offsets);
+    }
+
+    /**
+     * Runout that isn't an ellipse is matched at every measured angle by the residuals, and
+     * interpolated between them, including between the last angle and 360.
+     */
+    @Test
+    public void testResiduals() throws Exception {
+        List<CalibrationOffset> offsets = new ArrayList<>();
+        for (double angle = 0; angle < 360; angle += 15) {
+            offsets.add(new CalibrationOffset(bent(angle), angle));
+        }
+        RunoutModel model = RunoutModel.fit(offsets);
+        Assert.assertTrue(model.getMaxResidual(offsets) > 0.01);
+        model.setResiduals(offsets, 15);
+        for (double angle = 0; angle < 360; angle += 15) {
+            assertLocation(bent(angle), model.getOffset(angle));
+        }
+        Location between = model.getOffset(352.5);
+        Assert.assertEquals(0, between.getLinearDistanceTo(bent(352.5)), 0.003);
+        assertLocation(between, model.getOffset(-7.5));
+    }
+
+    /**
+     * The model is saved with the nozzle tip and gives the same offsets when loaded.
+     */
+    @Test
+    public void testPersistence() throws Exception {
+        List<CalibrationOffset> offsets = new ArrayList<>();
+        for (double angle = 0; angle < 360; angle += 30) {
+            offsets.add(new CalibrationOffset(bent(angle), angle));
+        }
+        RunoutModel model = RunoutModel.fit(offsets);
+        model.setResiduals(offsets, 30);
+        model.setNozzleId("N1");
+
+        Persister persister = new Persister();
+        StringWriter writer = new StringWriter();
+        persister.write(model, writer);
+        RunoutModel loaded = persister.read(RunoutModel.class, writer.toString());
+        Assert.assertEquals("N1", loaded.getNozzleId());
+        Assert.assertTrue(loaded.hasResiduals());
+        for (double angle = 0; angle < 360; angle += 11) {
+            assertLocation(model.getOffset(angle), loaded.getOffset(angle));
+        }
+    }
+
+    private static Location ellipse(double angle) {
+        double r = Math.toRadians(angle);
+        return new Location(LengthUnit.Millimeters, 0.1 + 0.05 * Math.cos(r) - 0.02 * Math.sin(r),
+                -0.2 + 0.021 * Math.cos(r) + 0.048 * Math.sin(r), 0, 0);
+    }
+
+    private static Location bent(double angle) {
+        double r = Math.toRadians(angle);
+        return ellipse(angle).add(new Location(LengthUnit.Millimeters, 0.03 * Math.cos(3 * r),
+                0.03 * Math.sin(3 * r), 0, 0));
+    }
+
+    private static void assertLocation(Location expected, Location actual) {
+        Assert.assertEquals(expected.getX(), actual.getX(), 1e-6);
+        Assert.assertEquals(expected.getY(), actual.getY(), 1e-6);
+    }
+}
@@ -0,0 +1,46 @@
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.Scripting;
+import org.openpnp.model.Configuration;
+
+import com.google.common.io.Files;
+
+public class ScriptingTest {
+    /**
+     * Event scripts are found through the index built at startup, run with fresh globals each
+     * time, and timed per event. Events without scripts are not run or timed at all.
+     */
+    @Test
+    public void testEventScripts() throws Exception {
+        File workingDirectory = new File(Files.createTempDir(), ".openpnp");
+        File eventsDirectory = new File(workingDirectory, "scripts/Events");
+        eventsDirectory.mkdirs();
+        FileUtils.writeStringToFile(new File(eventsDirectory, "Test.Event.js"),
+                "if (typeof previous !== 'undefined') { throw 'stale global'; }\n"
+                        + "var previous = 1;\n" + "counter.addAndGet(value);\n");
+        Configuration.initialize(workingDirectory);
+        Scripting scripting = new Scripting();
+
+        Assert.assertTrue(scripting.hasHandlers("Test.Event"));
+        Assert.assertFalse(scripting.hasHandlers("Test.Other"));
+
+        AtomicInteger counter = new AtomicInteger();
+        for (int i = 1; i <= 10; i++) {
+            Map<String, Object> globals = new HashMap<>();
+            globals.put("counter", counter);
+            globals.put("value", i);
+            scripting.on("Test.Event", globals);
+        }
+        scripting.on("Test.Other", null);
+
+        Assert.assertEquals(55, counter.get());
+        Assert.assertEquals(10, scripting.getEventStatistics().get("Test.Event").getCount());
+        Assert.assertNull(scripting.getEventStatistics().get("Test.Other"));
+    }
+}
@@ -0,0 +1,165 @@
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.machine.reference.ReferenceActuator;
+import org.openpnp.machine.reference.ReferenceMachine;
+import org.openpnp.machine.reference.ReferenceNozzle;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor;
+import org.openpnp.machine.reference.driver.test.TestDriver;
+import org.openpnp.machine.reference.driver.test.TestDriver.TestDriverDelegate;
+import org.openpnp.machine.reference.feeder.ReferenceAutoFeeder;
+import org.openpnp.machine.reference.feeder.ReferenceAutoFeeder.ActuatorType;
+import org.openpnp.machine.reference.planner.TravelOptimizingSequencer;
+import org.openpnp.model.Board;
+import org.openpnp.model.Board.Side;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Job;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Location;
+import org.openpnp.model.Part;
+import org.openpnp.model.Placement;
+import org.openpnp.spi.Feeder;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+
+import com.google.common.io.Files;
+
+public class TravelOptimizingSequencerTest {
+    /**
+     * Five clusters of placements, each fed from a feeder next to it and listed in a random
+     * order, are reordered to travel less, without losing or repeating any.
+     */
+    @Test
+    public void testBeatsBaseline() throws Exception {
+        Configuration.initialize(new File(Files.createTempDir(), ".openpnp"));
+        Random random = new Random(1);
+        Part part = new Part("P");
+        part.setHeight(new Length(1, LengthUnit.Millimeters));
+        BoardLocation boardLocation = new BoardLocation(new Board());
+        List<JobPlacement> jobPlacements = new ArrayList<>();
+        Map<JobPlacement, Location> pickLocations = new HashMap<>();
+        Map<JobPlacement, Location> placementLocations = new HashMap<>();
+        for (int i = 0; i < 25; i++) {
+            Placement placement = new Placement("R" + i);
+            placement.setPart(part);
+            JobPlacement jobPlacement = new JobPlacement(boardLocation, placement);
+            jobPlacements.add(jobPlacement);
+            int cluster = i / 5;
+            pickLocations.put(jobPlacement,
+                    new Location(LengthUnit.Millimeters, 200 * cluster, 0, 0, 0));
+            placementLocations.put(jobPlacement,
+                    new Location(LengthUnit.Millimeters, 200 * cluster + 5 * (i % 5), 10, 0, 0));
+        }
+        Collections.shuffle(jobPlacements, random);
+        List<JobPlacement> baseline = new ArrayList<>(jobPlacements);
+
+        TravelOptimizingSequencer.Report report = new TravelOptimizingSequencer(1000)
+                .sequence(jobPlacements, pickLocations, placementLocations);
+        double before = TravelOptimizingSequencer.travel(baseline, pickLocations,
+                placementLocations);
+        double after = TravelOptimizingSequencer.travel(jobPlacements, pickLocations,
+                placementLocations);
+        Assert.assertEquals(before, report.travelBefore, 1e-9);
+        Assert.assertEquals(after, report.travelAfter, 1e-9);
+        Assert.assertTrue(report.toString(), after < before / 2);
+        Assert.assertTrue(report.converged);
+        Assert.assertEquals(new HashSet<>(baseline), new HashSet<>(jobPlacements));
+        Assert.assertEquals(baseline.size(), jobPlacements.size());
+    }
+
+    /**
+     * A feeder that can't give a pick location when the job starts doesn't stop the job from
+     * being estimated, planned and run.
+     */
+    @Test
+    public void testThrowingFeeder() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        for (String name : new String[] {"machine.xml", "packages.xml", "parts.xml"}) {
+            FileUtils.copyURLToFile(ClassLoader.getSystemResource("config/BasicJobTest/" + name),
+                    new File(workingDirectory, name));
+        }
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+
+        ReferenceMachine machine = (ReferenceMachine) Configuration.get().getMachine();
+        for (Feeder feeder : new ArrayList<>(machine.getFeeders())) {
+            machine.removeFeeder(feeder);
+        }
+        EmptyUntilFedFeeder feeder = new EmptyUntilFedFeeder();
+        feeder.setPart(Configuration.get().getPart("R-0805-10K"));
+        feeder.setLocation(new Location(LengthUnit.Millimeters, 0, 0, 0, 0));
+        feeder.setActuatorName(machine.getHead("H1").getActuator("A1").getName());
+        feeder.setActuatorType(ActuatorType.Boolean);
+        feeder.setActuatorValue(1);
+        feeder.setEnabled(true);
+        machine.addFeeder(feeder);
+
+        List<String> placed = new ArrayList<>();
+        ((TestDriver) machine.getDriver()).setDelegate(new TestDriverDelegate() {
+            @Override
+            public void actuate(ReferenceActuator actuator, boolean on) throws Exception {
+                feeder.fed = true;
+            }
+
+            @Override
+            public void place(ReferenceNozzle nozzle) throws Exception {
+                placed.add("place");
+            }
+        });
+
+        Board board = new Board();
+        board.setName("test");
+        for (int i = 0; i < 4; i++) {
+            board.addPlacement(BasicJobTest.createPlacement("R" + i, "R-0805-10K", 10 * (3 - i),
+                    10 * (i % 2), 0, 0, Side.Top));
+        }
+        BoardLocation boardLocation = new BoardLocation(board);
+        boardLocation.setLocation(new Location(LengthUnit.Millimeters, 0, 0, 0, 0));
+        boardLocation.setSide(Side.Top);
+        Job job = new Job();
+        job.addBoardLocation(boardLocation);
+
+        ReferencePnpJobProcessor jobProcessor =
+                (ReferencePnpJobProcessor) machine.getPnpJobProcessor();
+        jobProcessor.setOptimizePlacementOrder(true);
+
+        // The estimate can be had before the job starts, and needs no machine.
+        TravelOptimizingSequencer.Report report = jobProcessor.estimatePlacementOrder(job);
+        Assert.assertEquals(4, report.placements);
+        Assert.assertTrue(report.toString(), report.travelAfter <= report.travelBefore);
+        Assert.assertEquals("R0", board.getPlacements().get(0).getId());
+
+        machine.setEnabled(true);
+        jobProcessor.initialize(job);
+        while (jobProcessor.next());
+        machine.setEnabled(false);
+        Assert.assertEquals(4, placed.size());
+    }
+
+    /**
+     * Like a tray feeder that is empty until it is refilled, throws from getPickLocation() until
+     * it has been fed.
+     */
+    public static class EmptyUntilFedFeeder extends ReferenceAutoFeeder {
+        boolean fed;
+
+        @Override
+        public Location getPickLocation() throws Exception {
+            if (!fed) {
+                throw new Exception("Tray empty.");
+            }
+            return super.getPickLocation();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.openpnp.machine.reference.ReferenceActuator;
+import org.openpnp.machine.reference.ReferenceNozzle;
+import org.openpnp.machine.reference.VacuumSettleStatistics;
+import org.openpnp.machine.reference.VacuumSettleStatistics.Histogram;
+import org.openpnp.model.Configuration;
+import org.openpnp.spi.Actuator;
+
+import com.google.common.io.Files;
+
+public class VacuumSettleStatisticsTest {
+    @Test
+    public void testHistogram() {
+        Histogram histogram = new Histogram();
+        for (int i = 0; i < 19; i++) {
+            histogram.add(5, false);
+        }
+        histogram.add(300, true);
+        Assert.assertEquals(20, histogram.getCount());
+        Assert.assertEquals(1, histogram.getTimeouts());
+        Assert.assertEquals(300, histogram.getMax());
+        // 5 ms falls in the 4-7 ms bucket.
+        Assert.assertEquals(7, histogram.getPercentile(0.5));
+        Assert.assertEquals(7, histogram.getPercentile(0.95));
+        Assert.assertEquals(300, histogram.getPercentile(1));
+        Assert.assertEquals(19, histogram.getCounts()[3]);
+    }
+
+    @Test
+    public void testByPartAndNozzleTip() {
+        VacuumSettleStatistics statistics = new VacuumSettleStatistics();
+        Assert.assertTrue(statistics.isEmpty());
+        statistics.addPick("R0603", "NT1", 10, false);
+        statistics.addPick("C0805", "NT1", 20, false);
+        statistics.addPlace("R0603", "NT1", 30, false);
+        Assert.assertEquals(1, statistics.getPickByPart("R0603").getCount());
+        Assert.assertEquals(2, statistics.getPickByNozzleTip("NT1").getCount());
+        Assert.assertEquals(1, statistics.getPlaceByNozzleTip("NT1").getCount());
+        Assert.assertNull(statistics.getPlaceByPart("C0805"));
+    }
+
+    /**
+     * The adaptive dwell returns as soon as the vacuum level is reached, well before the
+     * timeout.
+     */
+    @Test
+    public void testAwaitVacuumLevel() throws Exception {
+        File workingDirectory = Files.createTempDir();
+        workingDirectory = new File(workingDirectory, ".openpnp");
+        Configuration.initialize(workingDirectory);
+        Configuration.get().load();
+
+        TestNozzle nozzle = new TestNozzle();
+        nozzle.setVacuumPollMilliseconds(1);
+        RampActuator actuator = new RampActuator();
+
+        long t = System.currentTimeMillis();
+        double level = nozzle.awaitVacuumLevel(actuator, 50, true, 10000);
+        Assert.assertTrue(level >= 50);
+        Assert.assertTrue(System.currentTimeMillis() - t < 5000);
+
+        // Part off with inverted logic waits for the level to rise too.
+        nozzle.setInvertVacuumSenseLogic(true);
+        actuator.level = 0;
+        Assert.assertTrue(nozzle.awaitVacuumLevel(actuator, 50, false, 10000) >= 50);
+
+        // A level that is never reached times out with the last reading.
+        nozzle.setInvertVacuumSenseLogic(false);
+        actuator.level = 0;
+        t = System.currentTimeMillis();
+        Assert.assertTrue(nozzle.awaitVacuumLevel(actuator, 1e9, true, 50) < 1e9);
+        Assert.assertTrue(System.currentTimeMillis() - t >= 50);
+    }
+
+    static class TestNozzle extends ReferenceNozzle {
+        @Override
+        public double awaitVacuumLevel(Actuator actuator, double threshold,
+                boolean partOn, long timeoutMs) throws Exception {
+            return super.awaitVacuumLevel(actuator, threshold, partOn, timeoutMs);
+        }
+    }
+
+    /**
+     * Reads 10 higher each time.
+     */
+    static class RampActuator extends ReferenceActuator {
+        double level;
+
+        @Override
+        public String read() throws Exception {
+            level += 10;
+            return String.valueOf(level);
+        }
+    }
+}
@@ -169,6 +169,11 @@ public class VisionUtilsTest {
             return null;
         }
 
+        @Override
+        public long settle() {
+            return 0;
+        }
+
         @Override
         public long getSettleTimeMs() {
             return 0;
@@ -0,0 +1,121 @@
+package org.openpnp.machine.reference.driver;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CommandTemplateTest {
+    static final String MOVE_TO = "G0 {X:X%.4f} {Y:Y%.4f} {Z:Z%.4f} {Rotation:E%.4f} "
+            + "F{FeedRate:%.0f} ; Send standard Gcode move\nM400";
+
+    /**
+     * Render random moves with both CommandTemplate and the substituteVariable chain it replaces
+     * and check that the results are identical, including rounding and negative zero.
+     */
+    @Test
+    public void testRenderMatchesSubstituteVariable() throws Exception {
+        Random random = new Random(1);
+        CommandTemplate template = new CommandTemplate(MOVE_TO);
+        double[] specials = new double[] {0, -0.0, 0.00005, -0.00005, 1.23455, -1.23455, 2.5,
+                0.5, 1e-9, 123456789.123456789};
+        for (int i = 0; i < 100000; i++) {
+            Map<String, Object> variables = new LinkedHashMap<>();
+            variables.put("X", i < specials.length ? specials[i] : randomValue(random));
+            variables.put("Y", random.nextInt(10) == 0 ? null : randomValue(random));
+            variables.put("Z", randomValue(random));
+            variables.put("Rotation", random.nextInt(10) == 0 ? null : randomValue(random));
+            variables.put("FeedRate", random.nextDouble() * 50000);
+            Assert.assertEquals(substitute(MOVE_TO, variables), template.render(variables));
+        }
+    }
+
+    @Test
+    public void testRenderFormats() throws Exception {
+        String text = "M{Index:%d} {Id} {Name:%s} {DoubleValue:%.3f} {IntegerValue:%04d} "
+                + "{True:ON} {False:OFF} {BooleanValue:%b} {Missing:%.2f} {Value:%e}";
+        CommandTemplate template = new CommandTemplate(text);
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("Index", 7);
+        variables.put("Id", "N1");
+        variables.put("Name", "$1 \\ name");
+        variables.put("DoubleValue", -3.14159);
+        variables.put("IntegerValue", 42);
+        variables.put("True", true);
+        variables.put("False", null);
+        variables.put("BooleanValue", true);
+        variables.put("Value", 12345.678);
+        Assert.assertEquals("M7 N1 $1 \\ name -3.142 0042 ON  true {Missing:%.2f} "
+                + String.format("%e", 12345.678), template.render(variables));
+        Assert.assertEquals(text, template.getText());
+    }
+
+    @Test
+    public void testCommandInvalidation() throws Exception {
+        GcodeDriver.Command command = new GcodeDriver.Command(null,
+                GcodeDriver.CommandType.MOVE_TO_COMMAND, "G0 {X:X%.1f}");
+        Map<String, Object> variables = new HashMap<>();
+        variables.put("X", 1.0);
+        Assert.assertEquals("G0 X1.0", command.getTemplate().render(variables));
+        Assert.assertSame(command.getTemplate(), command.getTemplate());
+        command.setCommand("G1 {X:X%.2f}");
+        Assert.assertEquals("G1 X1.00", command.getTemplate().render(variables));
+
+        command.setCommand("^ok.*");
+        Assert.assertTrue(command.getPattern().matcher("ok T:20").matches());
+        command.setCommand("^error.*");
+        Assert.assertFalse(command.getPattern().matcher("ok T:20").matches());
+    }
+
+    private static double randomValue(Random random) {
+        double value = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(7));
+        // Values that land exactly on a rounding boundary are the interesting ones.
+        if (random.nextBoolean()) {
+            value = Math.round(value * 100000) / 100000.0;
+        }
+        return value;
+    }
+
+    static String substitute(String command, Map<String, Object> variables) {
+        for (Map.Entry<String, Object> entry : variables.entrySet()) {
+            command = substituteVariable(command, entry.getKey(), entry.getValue());
+        }
+        return command;
+    }
+
+    /**
+     * How GcodeDriver rendered commands before CommandTemplate, kept as the reference that it is
+     * checked against. Find matches of variables in the format {Name:Format} and replace them with
+     * the specified value formatted using String.format with the specified Format. Format is
+     * optional and defaults to %s. A null value replaces the variable with "".
+     */
+    static String substituteVariable(String command, String name, Object value) {
+        if (command == null) {
+            return command;
+        }
+        StringBuffer sb = new StringBuffer();
+        Matcher matcher = CommandTemplate.VARIABLE_PATTERN.matcher(command);
+        while (matcher.find()) {
+            String n = matcher.group(1);
+            if (!n.equals(name)) {
+                continue;
+            }
+            String format = matcher.group(2);
+            if (format == null) {
+                format = "%s";
+            }
+            String v = "";
+            if (value != null) {
+                v = String.format((Locale) null, format, value);
+            }
+            matcher.appendReplacement(sb, v);
+        }
+        matcher.appendTail(sb);
+        return sb.toString();
+    }
+}
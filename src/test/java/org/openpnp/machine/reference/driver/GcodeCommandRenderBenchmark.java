@@ -0,0 +1,101 @@
+package org.openpnp.machine.reference.driver;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Renders 1,000,000 MOVE_TO commands per invocation using the default GcodeDriver MOVE_TO
+ * command, once with the substituteVariable chain that GcodeDriver used to run for every move and
+ * once with a precompiled CommandTemplate. Results are reported per command.
+ * 
+ * Run with: mvn test-compile exec:java
+ * -Dexec.mainClass=org.openpnp.machine.reference.driver.GcodeCommandRenderBenchmark
+ * -Dexec.classpathScope=test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GcodeCommandRenderBenchmark {
+    static final int COMMANDS = 1000000;
+
+    private String text;
+    private CommandTemplate template;
+
+    @Setup
+    public void setup() throws Exception {
+        GcodeDriver driver = new GcodeDriver();
+        driver.createDefaults();
+        text = driver.getCommand(null, GcodeDriver.CommandType.MOVE_TO_COMMAND);
+        template = driver.getCommandTemplate(null, GcodeDriver.CommandType.MOVE_TO_COMMAND);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public void substituteVariable(Blackhole blackhole) {
+        for (int i = 0; i < COMMANDS; i++) {
+            String command = text;
+            command = CommandTemplateTest.substituteVariable(command, "Id", "N1");
+            command = CommandTemplateTest.substituteVariable(command, "Name", "N1");
+            command = CommandTemplateTest.substituteVariable(command, "FeedRate", 50000.0);
+            command = CommandTemplateTest.substituteVariable(command, "BacklashFeedRate", 50000.0);
+            command = CommandTemplateTest.substituteVariable(command, "X", x(i));
+            command = CommandTemplateTest.substituteVariable(command, "BacklashOffsetX", x(i));
+            command = CommandTemplateTest.substituteVariable(command, "Y", y(i));
+            command = CommandTemplateTest.substituteVariable(command, "BacklashOffsetY", y(i));
+            command = CommandTemplateTest.substituteVariable(command, "Z", -12.5);
+            command = CommandTemplateTest.substituteVariable(command, "Rotation", null);
+            blackhole.consume(command);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public void commandTemplate(Blackhole blackhole) {
+        Map<String, Object> variables = new HashMap<>();
+        for (int i = 0; i < COMMANDS; i++) {
+            variables.put("Id", "N1");
+            variables.put("Name", "N1");
+            variables.put("FeedRate", 50000.0);
+            variables.put("BacklashFeedRate", 50000.0);
+            variables.put("X", x(i));
+            variables.put("BacklashOffsetX", x(i));
+            variables.put("Y", y(i));
+            variables.put("BacklashOffsetY", y(i));
+            variables.put("Z", -12.5);
+            variables.put("Rotation", null);
+            blackhole.consume(template.render(variables));
+        }
+    }
+
+    private static double x(int i) {
+        return (i % 4000) * 0.0731;
+    }
+
+    private static double y(int i) {
+        return (i % 3000) * 0.0917;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(GcodeCommandRenderBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
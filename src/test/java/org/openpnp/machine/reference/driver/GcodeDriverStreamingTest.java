@@ -0,0 +1,171 @@
+package org.openpnp.machine.reference.driver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.openpnp.machine.reference.driver.GcodeDriver.CommandType;
+
+public class GcodeDriverStreamingTest {
+    private FakeControllerDriver driver;
+
+    @Before
+    public void setUp() {
+        driver = new FakeControllerDriver();
+        driver.start();
+    }
+
+    @After
+    public void tearDown() {
+        driver.disconnect();
+    }
+
+    /**
+     * Streamed commands are sent without waiting to be confirmed, and flush() collects whatever
+     * confirmations streamCommand() didn't already.
+     */
+    @Test
+    public void testOk() throws Exception {
+        List<String> responses = new ArrayList<>();
+        responses.addAll(driver.streamCommand("G1 X1", 1000));
+        responses.addAll(driver.streamCommand("G1 X2", 1000));
+        responses.addAll(driver.streamCommand("G1 X3", 1000));
+        responses.addAll(driver.flush(1000));
+        Assert.assertEquals(3, responses.size());
+        Assert.assertEquals(3, driver.received.size());
+        Assert.assertTrue(driver.flush(1000).isEmpty());
+        Assert.assertTrue(driver.sendCommand("M400", 1000).contains("ok"));
+    }
+
+    /**
+     * An error names the command that caused it, and the commands streamed after it are still
+     * confirmed rather than left for the next command to trip over.
+     */
+    @Test
+    public void testError() throws Exception {
+        driver.streamCommand("G1 X1", 1000);
+        driver.streamCommand("BAD", 1000);
+        driver.streamCommand("G1 X3", 1000);
+        try {
+            driver.flush(1000);
+            Assert.fail();
+        }
+        catch (Exception e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("BAD"));
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("error: bad"));
+        }
+        Assert.assertTrue(driver.flush(1000).isEmpty());
+        List<String> responses = driver.sendCommand("M400", 1000);
+        Assert.assertEquals(Collections.singletonList("ok"), responses);
+    }
+
+    /**
+     * A command that is never confirmed times out once, naming it, and doesn't make the
+     * following commands time out as well.
+     */
+    @Test
+    public void testTimeout() throws Exception {
+        driver.streamCommand("G1 X1", 1000);
+        driver.streamCommand("G1 X2", 1000);
+        driver.streamCommand("HANG", 1000);
+        try {
+            driver.flush(200);
+            Assert.fail();
+        }
+        catch (Exception e) {
+            Assert.assertTrue(e.getMessage(), e.getMessage().contains("HANG"));
+        }
+        Assert.assertTrue(driver.flush(200).isEmpty());
+        Assert.assertTrue(driver.sendCommand("M400", 1000).contains("ok"));
+    }
+
+    /**
+     * Commands sent from two threads at once each get their own confirmations.
+     */
+    @Test
+    public void testTwoThreads() throws Exception {
+        Exception[] thrown = new Exception[1];
+        Thread thread = new Thread(() -> {
+            try {
+                for (int i = 0; i < 500; i++) {
+                    driver.sendCommand("M42 P" + i, 1000);
+                }
+            }
+            catch (Exception e) {
+                thrown[0] = e;
+            }
+        });
+        thread.start();
+        for (int i = 0; i < 500; i++) {
+            driver.streamCommand("G1 X" + i, 1000);
+        }
+        driver.flush(1000);
+        thread.join();
+        Assert.assertNull(thrown[0]);
+        Assert.assertEquals(1000, driver.received.size());
+        Assert.assertTrue(driver.flush(1000).isEmpty());
+    }
+
+    /**
+     * A GcodeDriver talking to a fake controller instead of a serial port. It confirms every
+     * command with ok, except BAD which it rejects and HANG which it never answers.
+     */
+    static class FakeControllerDriver extends GcodeDriver {
+        final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        final LinkedBlockingQueue<String> replies = new LinkedBlockingQueue<>();
+
+        FakeControllerDriver() {
+            createDefaults();
+            commands.add(new Command(null, CommandType.COMMAND_ERROR_REGEX, "^error.*"));
+            output = new OutputStream() {
+                private StringBuilder line = new StringBuilder();
+
+                @Override
+                public void write(int b) throws IOException {
+                    if (b != '\n') {
+                        line.append((char) b);
+                        return;
+                    }
+                    String command = line.toString();
+                    line = new StringBuilder();
+                    received.add(command);
+                    if (command.equals("BAD")) {
+                        replies.add("error: bad");
+                    }
+                    else if (!command.equals("HANG")) {
+                        replies.add("ok");
+                    }
+                }
+            };
+        }
+
+        void start() {
+            Thread thread = new Thread(this);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        protected String readLine() throws TimeoutException, IOException {
+            try {
+                String line = replies.poll(100, TimeUnit.MILLISECONDS);
+                if (line == null) {
+                    throw new TimeoutException();
+                }
+                return line;
+            }
+            catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
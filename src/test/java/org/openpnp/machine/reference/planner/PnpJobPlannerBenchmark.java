@@ -0,0 +1,150 @@
+package org.openpnp.machine.reference.planner;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openpnp.machine.reference.ReferenceHead;
+import org.openpnp.machine.reference.ReferenceNozzle;
+import org.openpnp.machine.reference.ReferenceNozzleTip;
+import org.openpnp.machine.reference.ReferencePnpJobProcessor.PlannedPlacement;
+import org.openpnp.model.Board;
+import org.openpnp.model.Board.Side;
+import org.openpnp.model.BoardLocation;
+import org.openpnp.model.Configuration;
+import org.openpnp.model.Length;
+import org.openpnp.model.LengthUnit;
+import org.openpnp.model.Package;
+import org.openpnp.model.Part;
+import org.openpnp.model.Placement;
+import org.openpnp.spi.Head;
+import org.openpnp.spi.PnpJobProcessor.JobPlacement;
+import org.openpnp.spi.base.PartResolutionIndex;
+
+import com.google.common.io.Files;
+
+/**
+ * Compares the CartesianProductPnpJobPlanner with the AssignmentPnpJobPlanner at 2, 4 and 8
+ * nozzles. The cartesian product planner is only run against a small job since with 8 nozzles
+ * even 6 placements produce over 5 million candidate solutions. The assignment planner is run
+ * against both the small job and a 2,000 placement job.
+ * 
+ * Run with: mvn test-compile exec:java
+ * -Dexec.mainClass=org.openpnp.machine.reference.planner.PnpJobPlannerBenchmark
+ * -Dexec.classpathScope=test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PnpJobPlannerBenchmark {
+    @Param({"2", "4", "8"})
+    public int nozzleCount;
+
+    private Package[] packages;
+    private Head head;
+    private List<JobPlacement> smallJob;
+    private List<JobPlacement> largeJob;
+    private PartResolutionIndex index;
+
+    private CartesianProductPnpJobPlanner cartesianProductPlanner =
+            new CartesianProductPnpJobPlanner();
+    private AssignmentPnpJobPlanner assignmentPlanner = new AssignmentPnpJobPlanner();
+
+    @Setup
+    public void setup() throws Exception {
+        File workingDirectory = new File(Files.createTempDir(), ".openpnp");
+        Configuration.initialize(workingDirectory);
+        packages = new Package[] {new Package("PKG0"), new Package("PKG1"), new Package("PKG2")};
+        Random random = new Random(1);
+        head = createHead(random, nozzleCount);
+        smallJob = createJobPlacements(random, 6);
+        largeJob = createJobPlacements(random, 2000);
+        index = new PartResolutionIndex(Configuration.get().getMachine());
+    }
+
+    @Benchmark
+    public List<PlannedPlacement> cartesianProductSmallJob() {
+        return cartesianProductPlanner.plan(head, smallJob, index);
+    }
+
+    @Benchmark
+    public List<PlannedPlacement> assignmentSmallJob() {
+        return assignmentPlanner.plan(head, smallJob, index);
+    }
+
+    @Benchmark
+    public List<PlannedPlacement> assignmentLargeJob() {
+        return assignmentPlanner.plan(head, largeJob, index);
+    }
+
+    /**
+     * Create a Head with the given number of nozzles, each carrying two nozzle tips that handle a
+     * random subset of three packages, with one of them loaded.
+     */
+    private Head createHead(Random random, int nozzleCount) throws Exception {
+        Head head = new ReferenceHead();
+        for (int i = 0; i < nozzleCount; i++) {
+            BenchmarkNozzle nozzle = new BenchmarkNozzle();
+            for (int j = 0; j < 2; j++) {
+                ReferenceNozzleTip nozzleTip = new ReferenceNozzleTip();
+                HashSet<Package> compatiblePackages = new HashSet<>();
+                for (Package pkg : packages) {
+                    if (random.nextBoolean()) {
+                        compatiblePackages.add(pkg);
+                    }
+                }
+                nozzleTip.setCompatiblePackages(compatiblePackages);
+                nozzle.addNozzleTip(nozzleTip);
+            }
+            nozzle.setNozzleTip((ReferenceNozzleTip) nozzle.getNozzleTips().get(0));
+            head.addNozzle(nozzle);
+        }
+        return head;
+    }
+
+    private List<JobPlacement> createJobPlacements(Random random, int placementCount) {
+        BoardLocation boardLocation = new BoardLocation(new Board());
+        List<JobPlacement> jobPlacements = new ArrayList<>();
+        for (int i = 0; i < placementCount; i++) {
+            Part part = new Part("P" + i);
+            part.setPackage(packages[random.nextInt(packages.length)]);
+            part.setHeight(new Length(1 + random.nextInt(3), LengthUnit.Millimeters));
+            Placement placement = new Placement("R" + i);
+            placement.setPart(part);
+            placement.setSide(Side.Top);
+            jobPlacements.add(new JobPlacement(boardLocation, placement));
+        }
+        jobPlacements.sort((a, b) -> Double.compare(a.getPartHeight(), b.getPartHeight()));
+        return jobPlacements;
+    }
+
+    public static class BenchmarkNozzle extends ReferenceNozzle {
+        public void setNozzleTip(ReferenceNozzleTip nozzleTip) {
+            this.nozzleTip = nozzleTip;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(PnpJobPlannerBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
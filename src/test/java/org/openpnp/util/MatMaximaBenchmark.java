@@ -0,0 +1,160 @@
+package org.openpnp.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Finds the maxima of a 640x480 matchTemplate result, about the size a template match on a
+ * camera image produces, once with the old per pixel Mat.get() implementation and once with
+ * OpenCvUtils.matMaxima(), which copies the Mat into an array first.
+ * 
+ * Run with: mvn test-compile exec:java -Dexec.mainClass=org.openpnp.util.MatMaximaBenchmark
+ * -Dexec.classpathScope=test
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MatMaximaBenchmark {
+    static {
+        nu.pattern.OpenCV.loadShared();
+        System.loadLibrary(org.opencv.core.Core.NATIVE_LIBRARY_NAME);
+    }
+
+    private Mat result;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(0);
+        Mat image = new Mat(480 + 19, 640 + 29, CvType.CV_32FC1);
+        float[] data = new float[image.rows() * image.cols()];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextFloat();
+        }
+        image.put(0, 0, data);
+        Imgproc.GaussianBlur(image, image, new Size(9, 9), 0);
+        Mat template = image.submat(new Rect(300, 200, 30, 20)).clone();
+        result = new Mat();
+        Imgproc.matchTemplate(image, template, result, Imgproc.TM_CCOEFF_NORMED);
+    }
+
+    @Benchmark
+    public void matGet(Blackhole blackhole) {
+        blackhole.consume(legacyMatMaxima(result, 0.1, 1));
+    }
+
+    @Benchmark
+    public void array(Blackhole blackhole) {
+        blackhole.consume(OpenCvUtils.matMaxima(result, 0.1, 1));
+    }
+
+    private enum MinMaxState {
+        BEFORE_INFLECTION,
+        AFTER_INFLECTION
+    };
+
+    /**
+     * The original implementation, which read the Mat one pixel at a time with Mat.get(). Kept
+     * verbatim apart from comments as the baseline for this benchmark and for MatMaximaTest.
+     */
+    public static List<java.awt.Point> legacyMatMaxima(Mat mat, double rangeMin,
+            double rangeMax) {
+        List<java.awt.Point> locations = new ArrayList<>();
+
+        int rEnd = mat.rows() - 1;
+        int cEnd = mat.cols() - 1;
+
+        for (int r = 0; r <= rEnd; r++) {
+            MinMaxState state = MinMaxState.BEFORE_INFLECTION;
+            double curVal = mat.get(r, 0)[0];
+            for (int c = 1; c <= cEnd; c++) {
+                double val = mat.get(r, c)[0];
+
+                if (val == curVal) {
+                    continue;
+                }
+                else if (curVal < val) {
+                    if (state == MinMaxState.BEFORE_INFLECTION) {
+                        // n/a
+                    }
+                    else {
+                        state = MinMaxState.BEFORE_INFLECTION;
+                    }
+                }
+                else { // curVal > val
+                    if (state == MinMaxState.BEFORE_INFLECTION) {
+                        if (rangeMin <= curVal && curVal <= rangeMax) {
+                            if (0 < r && (mat.get(r - 1, c - 1)[0] >= curVal
+                                    || mat.get(r - 1, c)[0] >= curVal)) {
+                            }
+                            else if (r < rEnd && (mat.get(r + 1, c - 1)[0] > curVal
+                                    || mat.get(r + 1, c)[0] > curVal)) {
+                            }
+                            else if (1 < c && (0 < r && mat.get(r - 1, c - 2)[0] >= curVal
+                                    || mat.get(r, c - 2)[0] > curVal
+                                    || r < rEnd && mat.get(r + 1, c - 2)[0] > curVal)) {
+                            }
+                            else {
+                                locations.add(new java.awt.Point(c - 1, r));
+                            }
+                        }
+                        state = MinMaxState.AFTER_INFLECTION;
+                    }
+                    else {
+                        // n/a
+                    }
+                }
+
+                curVal = val;
+            }
+
+            if (state == MinMaxState.BEFORE_INFLECTION) {
+                if (rangeMin <= curVal && curVal <= rangeMax) {
+                    if (0 < r && (mat.get(r - 1, cEnd - 1)[0] >= curVal
+                            || mat.get(r - 1, cEnd)[0] >= curVal)) {
+                    }
+                    else if (r < rEnd && (mat.get(r + 1, cEnd - 1)[0] > curVal
+                            || mat.get(r + 1, cEnd)[0] > curVal)) {
+                    }
+                    else if (1 < r && mat.get(r - 1, cEnd - 2)[0] >= curVal
+                            || mat.get(r, cEnd - 2)[0] > curVal
+                            || r < rEnd && mat.get(r + 1, cEnd - 2)[0] > curVal) {
+                    }
+                    else {
+                        locations.add(new java.awt.Point(cEnd, r));
+                    }
+                }
+            }
+        }
+
+        return locations;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(MatMaximaBenchmark.class.getSimpleName()).build())
+                .run();
+    }
+}